@@ -8,12 +8,16 @@ import android.app.Service;
 import android.content.Intent;
 import android.os.Build;
 import android.os.Environment;
+import android.os.Handler;
 import android.os.IBinder;
+import android.os.Looper;
 import android.util.Log;
 
 import androidx.annotation.Nullable;
 import androidx.core.app.NotificationCompat;
 
+import com.fullsend.jarvis.ai.RuntimeTuning;
+
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
@@ -33,11 +37,25 @@ public class JarvisService extends Service {
     private static final String LOG_DIRECTORY = "JarvisAI";
     private static final String LOG_FILENAME = "jarvis_logs.txt";
     private File logFile;
+    
+    // Log lines are batched when the tuner sets a flush interval; 0 writes each event immediately
+    private final Handler logHandler = new Handler(Looper.getMainLooper());
+    private final StringBuilder pendingLog = new StringBuilder();
+    private volatile long logFlushIntervalMs;
+    private boolean flushScheduled;
+    private final Runnable flushTask = this::flushLog;
+    private final RuntimeTuning.KnobListener logFlushListener = (name, value) -> {
+        logFlushIntervalMs = value;
+        if (value == 0) {
+            logHandler.post(flushTask);
+        }
+    };
 
     @Override
     public void onCreate() {
         super.onCreate();
         initializeLogFile();
+        RuntimeTuning.get().addListener(RuntimeTuning.KNOB_LOG_FLUSH_INTERVAL_MS, logFlushListener);
         createNotificationChannel();
         startForeground(NOTIFICATION_ID, createNotification());
         logEvent("JarvisService started");
@@ -65,7 +83,10 @@ public class JarvisService extends Service {
     @Override
     public void onDestroy() {
         super.onDestroy();
+        RuntimeTuning.get().removeListener(RuntimeTuning.KNOB_LOG_FLUSH_INTERVAL_MS, logFlushListener);
         logEvent("JarvisService destroyed - AI system shutdown");
+        logHandler.removeCallbacks(flushTask);
+        flushLog();
     }
 
     private void initializeLogFile() {
@@ -122,17 +143,45 @@ public class JarvisService extends Service {
     }
 
     public void logEvent(String event) {
-        if (logFile == null || !logFile.exists()) {
-            initializeLogFile();
-        }
-        
         SimpleDateFormat dateFormat = new SimpleDateFormat("yyyy-MM-dd HH:mm:ss", Locale.US);
         String timestamp = dateFormat.format(new Date());
         String logEntry = String.format("[%s] %s\n", timestamp, event);
+        Log.d(TAG, "Logged: " + logEntry);
+        
+        long flushInterval = logFlushIntervalMs;
+        synchronized (pendingLog) {
+            pendingLog.append(logEntry);
+            if (flushInterval > 0) {
+                if (!flushScheduled) {
+                    flushScheduled = true;
+                    logHandler.postDelayed(flushTask, flushInterval);
+                }
+                return;
+            }
+        }
+        flushLog();
+    }
+    
+    /**
+     * Append every buffered line to the log file in one write
+     */
+    private void flushLog() {
+        String batch;
+        synchronized (pendingLog) {
+            flushScheduled = false;
+            if (pendingLog.length() == 0) {
+                return;
+            }
+            batch = pendingLog.toString();
+            pendingLog.setLength(0);
+        }
+        
+        if (logFile == null || !logFile.exists()) {
+            initializeLogFile();
+        }
         
         try (FileWriter writer = new FileWriter(logFile, true)) {
-            writer.append(logEntry);
-            Log.d(TAG, "Logged: " + logEntry);
+            writer.append(batch);
         } catch (IOException e) {
             Log.e(TAG, "Error writing to log file: " + e.getMessage());
         }
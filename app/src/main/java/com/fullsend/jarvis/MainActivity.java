@@ -33,6 +33,7 @@ import androidx.core.content.ContextCompat;
 
 import com.fullsend.jarvis.ai.JarvisAI;
 import com.fullsend.jarvis.ai.VoiceManager;
+import com.fullsend.jarvis.obd.OBDActivity;
 
 import java.io.File;
 import java.text.SimpleDateFormat;
@@ -67,8 +68,12 @@ public class MainActivity extends AppCompatActivity implements VoiceManager.Voic
     private boolean isVoiceEnabled = false;
     private boolean isAuthenticated = false;
     
+    // Wake phrase enrollment is offered once per launch while no templates are enrolled
+    private boolean wakeWordEnrollmentOffered = false;
+    
     // System
     private BroadcastReceiver batteryReceiver;
+    private BroadcastReceiver dtcReceiver;
     private Handler uiUpdateHandler;
     private Runnable timeUpdateRunnable;
 
@@ -95,6 +100,7 @@ public class MainActivity extends AppCompatActivity implements VoiceManager.Voic
         
         // Register battery receiver
         registerBatteryReceiver();
+        registerDtcReceiver();
         
         // Start time/date updates
         startTimeUpdates();
@@ -308,12 +314,46 @@ public class MainActivity extends AppCompatActivity implements VoiceManager.Voic
     
     private void startVoiceRecognition() {
         if (voiceManager != null) {
+            if (!voiceManager.isOnDeviceWakeWordEnabled() && !wakeWordEnrollmentOffered) {
+                // Without an enrolled wake phrase only the speech recognizer can listen for it
+                wakeWordEnrollmentOffered = true;
+                enrollWakeWord();
+                return;
+            }
             voiceManager.setWakeWordMode(true);
             voiceManager.startListening();
             logEvent("Voice recognition activated");
         }
     }
     
+    private void enrollWakeWord() {
+        if (voiceManager == null || voiceManager.isEnrollingWakeWord()) {
+            return;
+        }
+        logEvent("Wake word enrollment started");
+        voiceManager.enrollWakeWord(new VoiceManager.EnrollmentListener() {
+            @Override
+            public void onEnrollmentPrompt(String prompt) {
+                runOnUiThread(() -> {
+                    tvVoiceStatus.setText(prompt);
+                    tvVoiceStatus.setTextColor(getResources().getColor(R.color.neon_green, null));
+                });
+            }
+            
+            @Override
+            public void onEnrollmentFinished(boolean enrolled, String message) {
+                logEvent("Wake word enrollment " + (enrolled ? "complete" : "failed") + ": " + message);
+                runOnUiThread(() -> {
+                    updateVoiceUI();
+                    if (isVoiceEnabled) {
+                        voiceManager.setWakeWordMode(true);
+                        voiceManager.startListening();
+                    }
+                });
+            }
+        });
+    }
+    
     private void stopVoiceRecognition() {
         if (voiceManager != null) {
             voiceManager.stopListening();
@@ -471,6 +511,21 @@ public class MainActivity extends AppCompatActivity implements VoiceManager.Voic
         
         registerReceiver(batteryReceiver, new IntentFilter(Intent.ACTION_BATTERY_CHANGED));
     }
+    
+    private void registerDtcReceiver() {
+        dtcReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                int[] dtcs = intent.getIntArrayExtra(OBDActivity.EXTRA_DTCS);
+                if (dtcs != null && jarvisAI != null) {
+                    jarvisAI.updateContext(JarvisAI.CONTEXT_DTC_LIST, dtcs);
+                }
+            }
+        };
+        
+        ContextCompat.registerReceiver(this, dtcReceiver, new IntentFilter(OBDActivity.ACTION_DTCS_UPDATED),
+                ContextCompat.RECEIVER_NOT_EXPORTED);
+    }
 
     private void updateBatteryStatus(int batteryLevel) {
         String batteryText = "Battery at " + batteryLevel + "%. ";
@@ -485,6 +540,10 @@ public class MainActivity extends AppCompatActivity implements VoiceManager.Voic
         
         tvBatteryStatus.setText(batteryText);
         logEvent("Battery status: " + batteryLevel + "%");
+        
+        if (jarvisAI != null) {
+            jarvisAI.updateContext(JarvisAI.CONTEXT_BATTERY_LEVEL, batteryLevel);
+        }
     }
     
     private void logEvent(String event) {
@@ -570,12 +629,21 @@ public class MainActivity extends AppCompatActivity implements VoiceManager.Voic
         
         // Process command with AI
         if (jarvisAI != null) {
-            jarvisAI.processCommand(command);
+            jarvisAI.processCommand(voiceManager.getConversationId(), command);
         }
         
         logEvent("Voice command received: " + command);
     }
     
+    @Override
+    public void onPartialVoiceCommand(String partialCommand) {
+        // Let the AI prepare its answer while the user is still talking; recognition still
+        // runs to its normal end and the answer is only used if the final transcript agrees
+        if (jarvisAI != null) {
+            jarvisAI.onPartialCommand(partialCommand);
+        }
+    }
+    
     @Override
     public void onVoiceError(String error) {
         runOnUiThread(() -> {
@@ -711,6 +779,10 @@ public class MainActivity extends AppCompatActivity implements VoiceManager.Voic
                 }
                 break;
 
+            case "enroll_wake_word":
+                enrollWakeWord();
+                break;
+
             case "garage_perform_action":
                 if (parameters != null && parameters.containsKey("action")) {
                     Object act = parameters.get("action");
@@ -740,10 +812,17 @@ public class MainActivity extends AppCompatActivity implements VoiceManager.Voic
             voiceManager.cleanup();
         }
         
+        if (jarvisAI != null) {
+            jarvisAI.shutdown();
+        }
+        
         // Unregister battery receiver
         if (batteryReceiver != null) {
             unregisterReceiver(batteryReceiver);
         }
+        if (dtcReceiver != null) {
+            unregisterReceiver(dtcReceiver);
+        }
         
         logEvent("Jarvis AI shutdown complete");
     }
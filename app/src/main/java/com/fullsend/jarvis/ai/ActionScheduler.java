@@ -0,0 +1,347 @@
+package com.fullsend.jarvis.ai;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.Map;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.ScheduledFuture;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Priority- and resource-aware scheduler for AutonomousAgent work
+ *
+ * Features:
+ * - Three priority classes; the highest eligible class always starts first
+ * - Atomic concurrency slots: a global limit plus a smaller limit for background classes,
+ *   so maintenance can never occupy every worker a user request needs
+ * - Identical pending work (same key) is coalesced instead of queued twice; a duplicate in a
+ *   higher class takes the pending task's place, so a user request never waits behind maintenance
+ * - Per-type rate limits for background work: a type does not start again until its minimum
+ *   interval has passed (user-interactive work is never rate limited, but does reset the interval)
+ * - Background work waits while an OBD session or voice interaction is active
+ *   (InteractionState), up to a maximum deferral so it is never starved forever
+ * - Bounded queue with room reserved for user-interactive work: background classes are
+ *   rejected once they fill their own, smaller share
+ * - schedule() says whether work was queued, merged into pending work or rejected
+ */
+public class ActionScheduler {
+
+    private static final String TAG = "ActionScheduler";
+
+    static final long MAX_DEFERRAL_MS = 5 * 60 * 1000;
+
+    public enum Priority {
+        USER_INTERACTIVE,
+        DIAGNOSTICS,
+        MAINTENANCE;
+
+        public boolean isBackground() {
+            return this != USER_INTERACTIVE;
+        }
+    }
+
+    public enum ScheduleResult {
+        QUEUED,
+        ALREADY_QUEUED,
+        QUEUE_FULL,
+        SHUT_DOWN;
+
+        public boolean isRejected() {
+            return this == QUEUE_FULL || this == SHUT_DOWN;
+        }
+    }
+
+    private static final class Task {
+        final String type;
+        final String key;
+        final Priority priority;
+        final Runnable work;
+        final long enqueuedAt;
+        boolean deferred;
+
+        Task(String type, String key, Priority priority, Runnable work, long enqueuedAt) {
+            this.type = type;
+            this.key = key;
+            this.priority = priority;
+            this.work = work;
+            this.enqueuedAt = enqueuedAt;
+        }
+    }
+
+    private final ExecutorService executor;
+    private final ScheduledExecutorService timer;
+    private final int maxConcurrent;
+    private final int maxBackgroundConcurrent;
+    private final int maxPending;
+    private final int maxBackgroundPending;
+
+    // Queue state, guarded by lock
+    private final Object lock = new Object();
+    private final Map<Priority, ArrayDeque<Task>> pending = new EnumMap<>(Priority.class);
+    private final Map<String, Task> pendingByKey = new HashMap<>();
+    private final Map<String, Long> minIntervals = new HashMap<>();
+    private final Map<String, Long> lastStarted = new HashMap<>();
+    private ScheduledFuture<?> wakeUp;
+    private long wakeUpAt = Long.MAX_VALUE;
+    private boolean shutdown;
+
+    // Concurrency slots, taken with compare-and-set
+    private final AtomicInteger running = new AtomicInteger();
+    private final AtomicInteger runningBackground = new AtomicInteger();
+
+    // Statistics
+    private final AtomicLong started = new AtomicLong();
+    private final AtomicLong coalesced = new AtomicLong();
+    private final AtomicLong rejected = new AtomicLong();
+    private final AtomicLong deferred = new AtomicLong();
+
+    private final InteractionState.Listener interactionListener = active -> {
+        if (!active) {
+            drain();
+        }
+    };
+
+    public static class SchedulerStats {
+        public int running;
+        public int runningBackground;
+        public int pending;
+        public long started;
+        public long coalesced;
+        public long rejected;
+        public long deferred;
+    }
+
+    public ActionScheduler(ExecutorService executor, int maxConcurrent, int maxBackgroundConcurrent, int maxPending,
+                           int maxBackgroundPending) {
+        this.executor = executor;
+        this.maxConcurrent = maxConcurrent;
+        this.maxBackgroundConcurrent = Math.min(maxConcurrent, maxBackgroundConcurrent);
+        this.maxPending = maxPending;
+        this.maxBackgroundPending = Math.min(maxPending, maxBackgroundPending);
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "ActionScheduler");
+            thread.setDaemon(true);
+            return thread;
+        });
+        for (Priority priority : Priority.values()) {
+            pending.put(priority, new ArrayDeque<>());
+        }
+        InteractionState.get().addListener(interactionListener);
+    }
+
+    /**
+     * Minimum time between two starts of the given action type
+     */
+    public void setRateLimit(String type, long minIntervalMs) {
+        synchronized (lock) {
+            minIntervals.put(type, minIntervalMs);
+        }
+    }
+
+    /**
+     * Queue work; ALREADY_QUEUED means identical pending work will run instead of this one
+     */
+    public ScheduleResult schedule(String type, String key, Priority priority, Runnable work) {
+        synchronized (lock) {
+            if (shutdown) {
+                return ScheduleResult.SHUT_DOWN;
+            }
+            Task existing = pendingByKey.get(key);
+            if (existing != null) {
+                coalesced.incrementAndGet();
+                if (priority.ordinal() >= existing.priority.ordinal()) {
+                    Log.d(TAG, "Coalesced with pending " + key);
+                    return ScheduleResult.ALREADY_QUEUED;
+                }
+                // Promote: the higher-priority request replaces the pending one
+                pending.get(existing.priority).remove(existing);
+                Log.d(TAG, "Promoted pending " + key + " to " + priority);
+            } else if (pendingByKey.size() >= maxPending
+                    || (priority.isBackground() && pendingBackground() >= maxBackgroundPending)) {
+                rejected.incrementAndGet();
+                Log.w(TAG, "Queue full, rejected " + key + " (" + priority + ")");
+                return ScheduleResult.QUEUE_FULL;
+            }
+            Task task = new Task(type, key, priority, work, SystemClock.elapsedRealtime());
+            pendingByKey.put(key, task);
+            pending.get(priority).addLast(task);
+        }
+        drain();
+        return ScheduleResult.QUEUED;
+    }
+
+    private int pendingBackground() {
+        return pendingByKey.size() - pending.get(Priority.USER_INTERACTIVE).size();
+    }
+
+    /**
+     * Start every task that is eligible and has a free slot; arm a timer for the rest
+     */
+    private void drain() {
+        synchronized (lock) {
+            if (shutdown) {
+                return;
+            }
+            long now = SystemClock.elapsedRealtime();
+            long untilIdle = InteractionState.get().millisUntilIdle();
+            long nextCheck = Long.MAX_VALUE;
+
+            for (Priority priority : Priority.values()) {
+                Iterator<Task> iterator = pending.get(priority).iterator();
+                while (iterator.hasNext()) {
+                    Task task = iterator.next();
+
+                    long readyAt = priority.isBackground() ? rateLimitReadyAt(task.type) : 0;
+                    if (readyAt > now) {
+                        nextCheck = Math.min(nextCheck, readyAt);
+                        continue;
+                    }
+                    if (priority.isBackground() && untilIdle != 0) {
+                        long giveUpAt = task.enqueuedAt + MAX_DEFERRAL_MS;
+                        if (now < giveUpAt) {
+                            if (!task.deferred) {
+                                task.deferred = true;
+                                deferred.incrementAndGet();
+                            }
+                            // untilIdle < 0: woken by the interaction listener instead
+                            nextCheck = Math.min(nextCheck, untilIdle > 0 ? Math.min(now + untilIdle, giveUpAt) : giveUpAt);
+                            continue;
+                        }
+                        Log.i(TAG, "Running " + task.key + " after maximum deferral");
+                    }
+                    if (!acquireSlot(priority)) {
+                        // No slot for this class; lower classes cannot have one either
+                        break;
+                    }
+
+                    iterator.remove();
+                    pendingByKey.remove(task.key);
+                    lastStarted.put(task.type, now);
+                    start(task);
+                }
+            }
+            armWakeUp(nextCheck, now);
+        }
+    }
+
+    private long rateLimitReadyAt(String type) {
+        Long interval = minIntervals.get(type);
+        Long last = lastStarted.get(type);
+        if (interval == null || last == null) {
+            return 0;
+        }
+        return last + interval;
+    }
+
+    private boolean acquireSlot(Priority priority) {
+        while (true) {
+            int current = running.get();
+            if (current >= maxConcurrent) {
+                return false;
+            }
+            if (priority.isBackground() && !acquireBackgroundSlot()) {
+                return false;
+            }
+            if (running.compareAndSet(current, current + 1)) {
+                return true;
+            }
+            if (priority.isBackground()) {
+                runningBackground.decrementAndGet();
+            }
+        }
+    }
+
+    private boolean acquireBackgroundSlot() {
+        while (true) {
+            int current = runningBackground.get();
+            if (current >= maxBackgroundConcurrent) {
+                return false;
+            }
+            if (runningBackground.compareAndSet(current, current + 1)) {
+                return true;
+            }
+        }
+    }
+
+    private void releaseSlot(Priority priority) {
+        if (priority.isBackground()) {
+            runningBackground.decrementAndGet();
+        }
+        running.decrementAndGet();
+    }
+
+    private void start(Task task) {
+        started.incrementAndGet();
+        try {
+            executor.execute(() -> {
+                try {
+                    task.work.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Action failed: " + task.key, e);
+                } finally {
+                    releaseSlot(task.priority);
+                    drain();
+                }
+            });
+        } catch (RejectedExecutionException e) {
+            releaseSlot(task.priority);
+            Log.w(TAG, "Executor rejected " + task.key);
+        }
+    }
+
+    private void armWakeUp(long at, long now) {
+        if (at == Long.MAX_VALUE || at >= wakeUpAt) {
+            return;
+        }
+        if (wakeUp != null) {
+            wakeUp.cancel(false);
+        }
+        wakeUpAt = at;
+        wakeUp = timer.schedule(() -> {
+            synchronized (lock) {
+                wakeUpAt = Long.MAX_VALUE;
+                wakeUp = null;
+            }
+            drain();
+        }, Math.max(0, at - now), TimeUnit.MILLISECONDS);
+    }
+
+    public SchedulerStats getStats() {
+        SchedulerStats stats = new SchedulerStats();
+        stats.running = running.get();
+        stats.runningBackground = runningBackground.get();
+        synchronized (lock) {
+            stats.pending = pendingByKey.size();
+        }
+        stats.started = started.get();
+        stats.coalesced = coalesced.get();
+        stats.rejected = rejected.get();
+        stats.deferred = deferred.get();
+        return stats;
+    }
+
+    /**
+     * Drop pending work and stop the timer; running work finishes on the executor
+     */
+    public void shutdown() {
+        synchronized (lock) {
+            shutdown = true;
+            for (ArrayDeque<Task> queue : pending.values()) {
+                queue.clear();
+            }
+            pendingByKey.clear();
+        }
+        InteractionState.get().removeListener(interactionListener);
+        timer.shutdownNow();
+    }
+}
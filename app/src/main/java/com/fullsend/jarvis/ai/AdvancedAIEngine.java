@@ -5,14 +5,19 @@ import android.os.Handler;
 import android.os.Looper;
 import android.util.Log;
 
-import java.util.ArrayList;
-import java.util.HashMap;
+import java.io.File;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.CountDownLatch;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.ThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.UnaryOperator;
 
 /**
  * Advanced AI Engine with Self-Learning, Autonomous Capabilities, and Code Execution
@@ -29,8 +34,21 @@ public class AdvancedAIEngine {
     
     private static final String TAG = "AdvancedAIEngine";
     
+    // Upper bound on learned interactions kept in memory (oldest are evicted first)
+    private static final int MAX_KNOWLEDGE_ENTRIES = 256;
+    
+    // Key namespaces in the persistent knowledge store
+    private static final String KNOWLEDGE_DIRECTORY = "knowledge";
+    private static final String KEY_INTERACTION = "kb:";
+    private static final String KEY_PREFERENCE = "pref:";
+    private static final String KEY_COMMAND = "cmd:";
+    
+    // Analysis cache tag per intent; analyses quote the intent's confidence, which learning moves
+    private static final String CONTEXT_INTENT_CONFIDENCE = "intent_confidence:";
+    
     private Context context;
     private ExecutorService aiExecutor;
+    private KeyedSerialExecutor conversationLanes;
     private NeuralNetworkEngine neuralNetwork;
     private AutonomousAgent autonomousAgent;
     private CodeExecutionEngine codeExecutor;
@@ -38,16 +56,43 @@ public class AdvancedAIEngine {
     private PerformanceOptimizer performanceOptimizer;
     private PredictiveAnalytics predictiveAnalytics;
     
-    // AI State and Learning
+    // AI State and Learning - shared by all aiExecutor threads, so only concurrent structures
     private Map<String, Object> knowledgeBase;
-    private List<String> conversationHistory;
+    private ConcurrentLinkedQueue<String> knowledgeInsertionOrder;
+    private ConversationHistoryStore conversationHistory;
+    private ResponseCache<AIAnalysis> analysisCache;
     private Map<String, Double> userPreferences;
     private Map<String, Integer> commandFrequency;
+    private volatile KnowledgeStore knowledgeStore;
+    private final CountDownLatch knowledgeLoaded = new CountDownLatch(1);
+    
+    // How long shutdown() lets in-flight requests finish before the knowledge store is closed
+    private static final long SHUTDOWN_TIMEOUT_MS = 5000;
     
     // Performance Metrics
-    private long totalProcessingTime = 0;
-    private int totalRequests = 0;
-    private double averageResponseTime = 0;
+    private final LongAdder totalProcessingTime = new LongAdder();
+    private final LongAdder totalRequests = new LongAdder();
+    private final RequestLatencyTracker latencyTracker = new RequestLatencyTracker();
+    
+    // Autonomous actions report back asynchronously; their outcomes are only logged here
+    private final AutonomousAgent.AutonomousCallback autonomousCallback = new AutonomousAgent.AutonomousCallback() {
+        @Override
+        public void onAutonomousAction(String action, String result) {
+            Log.i(TAG, "Autonomous action executed: " + action + " -> " + result);
+        }
+        @Override
+        public void onProblemSolved(String problem, String solution) {
+            Log.i(TAG, "Problem solved: " + problem + " -> " + solution);
+        }
+        @Override
+        public void onErrorHandled(Exception error, String resolution) {}
+        @Override
+        public void onMaintenancePerformed(String maintenance) {}
+        @Override
+        public void onActionFailed(String action, String reason) {
+            Log.w(TAG, "Autonomous action not run: " + action + " (" + reason + ")");
+        }
+    };
     
     public interface AICallback {
         void onAIResponse(String response, AICapability capability);
@@ -56,6 +101,8 @@ public class AdvancedAIEngine {
         void onCodeExecution(String code, String result);
         void onPerformanceOptimization(String optimization);
         void onPrediction(String prediction, double confidence);
+        // The input was shed before it ran (e.g. superseded by a newer utterance); no response follows
+        void onInputDropped(String input, String reason);
     }
     
     public enum AICapability {
@@ -71,20 +118,53 @@ public class AdvancedAIEngine {
     
     public AdvancedAIEngine(Context context) {
         this.context = context;
-        this.aiExecutor = Executors.newFixedThreadPool(8); // Multi-threading for performance
-        this.knowledgeBase = new HashMap<>();
-        this.conversationHistory = new ArrayList<>();
-        this.userPreferences = new HashMap<>();
-        this.commandFrequency = new HashMap<>();
-        
+        // Multi-threading for performance; the tuner resizes the pool from here on
+        this.aiExecutor = Executors.newFixedThreadPool(RuntimeTuning.get().getValue(RuntimeTuning.KNOB_AI_POOL_SIZE));
+        this.conversationLanes = new KeyedSerialExecutor(aiExecutor); // Ordered per conversation
+        this.knowledgeBase = new ConcurrentHashMap<>();
+        this.knowledgeInsertionOrder = new ConcurrentLinkedQueue<>();
+        this.conversationHistory = new ConversationHistoryStore(context.getFilesDir());
+        this.analysisCache = new ResponseCache<>();
+        this.userPreferences = new ConcurrentHashMap<>();
+        this.commandFrequency = new ConcurrentHashMap<>();
+        
+        // Store recovery scans every segment, and this usually runs on the main thread
+        new Thread(this::loadKnowledgeBase, "KnowledgeBaseLoad").start();
         initializeAIComponents();
+        bindRuntimeKnobs();
     }
     
+    /**
+     * Let the performance optimizer resize the worker pool and analysis cache
+     */
+    private void bindRuntimeKnobs() {
+        RuntimeTuning tuning = RuntimeTuning.get();
+        tuning.addListener(RuntimeTuning.KNOB_AI_POOL_SIZE, poolSizeListener);
+        tuning.addListener(RuntimeTuning.KNOB_ANALYSIS_CACHE_SIZE, cacheSizeListener);
+    }
+    
+    private final RuntimeTuning.KnobListener poolSizeListener = (name, value) -> {
+        ThreadPoolExecutor pool = (ThreadPoolExecutor) aiExecutor;
+        // Core size may never exceed max size, so order the two updates by direction
+        if (value > pool.getMaximumPoolSize()) {
+            pool.setMaximumPoolSize(value);
+            pool.setCorePoolSize(value);
+        } else {
+            pool.setCorePoolSize(value);
+            pool.setMaximumPoolSize(value);
+        }
+    };
+    
+    private final RuntimeTuning.KnobListener cacheSizeListener =
+            (name, value) -> analysisCache.setMaxEntries(value);
+    
     private void initializeAIComponents() {
         Log.i(TAG, "Initializing Advanced AI Components...");
         
         // Initialize neural network engine
         neuralNetwork = new NeuralNetworkEngine(context);
+        neuralNetwork.setIntentConfidenceListener(
+                intent -> analysisCache.invalidate(CONTEXT_INTENT_CONFIDENCE + intent));
         
         // Initialize autonomous agent
         autonomousAgent = new AutonomousAgent(this);
@@ -96,7 +176,8 @@ public class AdvancedAIEngine {
         reverseEngine = new ReverseEngineeringEngine(context);
         
         // Initialize performance optimizer
-        performanceOptimizer = new PerformanceOptimizer(context);
+        performanceOptimizer = new PerformanceOptimizer(context, latencyTracker);
+        performanceOptimizer.start();
         
         // Initialize predictive analytics
         predictiveAnalytics = new PredictiveAnalytics(this);
@@ -105,24 +186,31 @@ public class AdvancedAIEngine {
     }
     
     /**
-     * Process user input with advanced AI capabilities
+     * Process user input in order within its conversation. Inputs for different conversations
+     * run in parallel; a newer utterance drops older ones in the same conversation that have
+     * not started yet, and their callbacks get onInputDropped.
      */
-    public void processInput(String input, AICallback callback) {
-        long startTime = System.currentTimeMillis();
+    public void processInput(String conversationId, String input, AICallback callback) {
+        long submittedAt = System.nanoTime();
         
-        aiExecutor.submit(() -> {
+        conversationLanes.executeLatest(conversationId, () -> {
             try {
+                awaitKnowledgeBase();
+                long startedAt = System.nanoTime();
+                
                 // Add to conversation history
                 conversationHistory.add("User: " + input);
                 
-                // Analyze input with neural network
-                AIAnalysis analysis = neuralNetwork.analyzeInput(input);
+                // Analyze input with neural network (same normalized input -> same analysis)
+                AIAnalysis analysis = analyzeInput(input);
                 
                 // Update user preferences based on input
                 updateUserPreferences(input, analysis);
+                long analyzedAt = System.nanoTime();
                 
                 // Generate response based on analysis
                 String response = generateIntelligentResponse(input, analysis);
+                long respondedAt = System.nanoTime();
                 
                 // Learn from interaction
                 learnFromInteraction(input, response, analysis);
@@ -131,8 +219,15 @@ public class AdvancedAIEngine {
                 checkAutonomousActions(input, analysis);
                 
                 // Update performance metrics
-                long processingTime = System.currentTimeMillis() - startTime;
-                updatePerformanceMetrics(processingTime);
+                long finishedAt = System.nanoTime();
+                latencyTracker.record(analysis.primaryCapability, submittedAt, startedAt,
+                        analyzedAt, respondedAt, finishedAt);
+                updatePerformanceMetrics(TimeUnit.NANOSECONDS.toMillis(finishedAt - submittedAt),
+                        String.format("queue %dms, analysis %dms, response %dms, learning %dms",
+                                TimeUnit.NANOSECONDS.toMillis(startedAt - submittedAt),
+                                TimeUnit.NANOSECONDS.toMillis(analyzedAt - startedAt),
+                                TimeUnit.NANOSECONDS.toMillis(respondedAt - analyzedAt),
+                                TimeUnit.NANOSECONDS.toMillis(finishedAt - respondedAt)));
                 
                 // Return response
                 new Handler(Looper.getMainLooper()).post(() -> {
@@ -151,7 +246,22 @@ public class AdvancedAIEngine {
                 // Autonomous error handling
                 autonomousAgent.handleError(e, input);
             }
-        });
+        }, (key, reason) -> new Handler(Looper.getMainLooper()).post(() -> {
+            callback.onInputDropped(input, reason);
+        }));
+    }
+    
+    private AIAnalysis analyzeInput(String input) {
+        String cacheKey = ResponseCache.normalize(input);
+        AIAnalysis analysis = analysisCache.get(cacheKey);
+        if (analysis == null) {
+            analysis = neuralNetwork.analyzeInput(input);
+            analysisCache.put(cacheKey, analysis, CONTEXT_INTENT_CONFIDENCE + analysis.getCommand());
+        } else {
+            // Intent confidence and accuracy metrics still see every input
+            neuralNetwork.recordCachedAnalysis(analysis);
+        }
+        return analysis;
     }
     
     /**
@@ -233,7 +343,7 @@ public class AdvancedAIEngine {
     
     private String generateProblemSolvingResponse(String input, AIAnalysis analysis) {
         // Autonomous problem solving
-        ProblemAnalysis problem = autonomousAgent.analyzeProblem(input);
+        AutonomousAgent.ProblemAnalysis problem = autonomousAgent.analyzeProblem(input);
         List<String> solutions = autonomousAgent.generateSolutions(problem);
         
         StringBuilder response = new StringBuilder();
@@ -243,7 +353,22 @@ public class AdvancedAIEngine {
             response.append((i + 1)).append(". ").append(solutions.get(i)).append("\n");
         }
         
-        response.append("\nI recommend solution #1 as it has the highest success probability. Shall I implement it autonomously?");
+        // Carry out the best-ranked solution when it is safe to; how it works out trains the ranking
+        if (problem.canResolveAutonomously && !solutions.isEmpty()) {
+            switch (autonomousAgent.applySolution(problem, solutions.get(0), autonomousCallback)) {
+                case QUEUED:
+                    response.append("\nI'm applying solution #1 now, as it has the highest success probability.");
+                    break;
+                case NO_MAPPED_ACTION:
+                    response.append("\nI recommend solution #1 as it has the highest success probability, but it needs manual steps.");
+                    break;
+                default:
+                    response.append("\nI recommend solution #1, but I couldn't start it right now. Please try again shortly.");
+                    break;
+            }
+        } else {
+            response.append("\nI recommend solution #1 as it has the highest success probability.");
+        }
         
         return response.toString();
     }
@@ -263,7 +388,7 @@ public class AdvancedAIEngine {
     private String generateReverseEngineeringResponse(String input, AIAnalysis analysis) {
         // Reverse engineering capabilities
         if (analysis.containsSystemAnalysisRequest) {
-            SystemAnalysis systemAnalysis = reverseEngine.analyzeSystem();
+            ReverseEngineeringEngine.SystemAnalysis systemAnalysis = reverseEngine.analyzeSystem();
             return "System Analysis Complete:\n\n" + systemAnalysis.getReport();
         } else {
             return "I can perform deep system analysis and reverse engineering. What component would you like me to analyze?";
@@ -272,12 +397,12 @@ public class AdvancedAIEngine {
     
     private String generatePerformanceResponse(String input, AIAnalysis analysis) {
         // Performance optimization
-        PerformanceReport report = performanceOptimizer.analyzePerformance();
+        PerformanceOptimizer.PerformanceReport report = performanceOptimizer.analyzePerformance();
         List<String> optimizations = performanceOptimizer.generateOptimizations(report);
         
         StringBuilder response = new StringBuilder();
         response.append("Performance Analysis:\n");
-        response.append("Current Performance Score: ").append(report.getPerformanceScore()).append("/100\n\n");
+        response.append("Current Performance Score: ").append(String.format("%.0f", report.getPerformanceScore())).append("/100\n\n");
         response.append("Recommended Optimizations:\n");
         
         for (String optimization : optimizations) {
@@ -291,12 +416,12 @@ public class AdvancedAIEngine {
     
     private String generatePredictiveResponse(String input, AIAnalysis analysis) {
         // Predictive analytics
-        List<Prediction> predictions = predictiveAnalytics.generatePredictions(input, analysis);
+        List<PredictiveAnalytics.Prediction> predictions = predictiveAnalytics.generatePredictions(input, analysis);
         
         StringBuilder response = new StringBuilder();
         response.append("Based on my predictive analysis:\n\n");
         
-        for (Prediction prediction : predictions) {
+        for (PredictiveAnalytics.Prediction prediction : predictions) {
             response.append("• ").append(prediction.getDescription())
                     .append(" (Confidence: ").append(String.format("%.1f", prediction.getConfidence() * 100))
                     .append("%)\n");
@@ -318,18 +443,14 @@ public class AdvancedAIEngine {
         // Add personalized touch based on user preferences
         StringBuilder personalization = new StringBuilder();
         
-        if (userPreferences.containsKey("technical_level")) {
-            double techLevel = userPreferences.get("technical_level");
-            if (techLevel > 0.7) {
-                personalization.append("\n\nTechnical Details: ").append(analysis.getTechnicalDetails());
-            }
+        Double techLevel = userPreferences.get("technical_level");
+        if (techLevel != null && techLevel > 0.7) {
+            personalization.append("\n\nTechnical Details: ").append(analysis.getTechnicalDetails());
         }
         
-        if (userPreferences.containsKey("response_style")) {
-            double formalityLevel = userPreferences.get("response_style");
-            if (formalityLevel < 0.3) {
-                personalization.append(" 😊");
-            }
+        Double formalityLevel = userPreferences.get("response_style");
+        if (formalityLevel != null && formalityLevel < 0.3) {
+            personalization.append(" 😊");
         }
         
         return personalization.toString();
@@ -339,73 +460,92 @@ public class AdvancedAIEngine {
      * Learn from user interactions to improve future responses
      */
     private void learnFromInteraction(String input, String response, AIAnalysis analysis) {
-        // Update knowledge base
-        knowledgeBase.put("last_interaction_" + System.currentTimeMillis(), 
-                         Map.of("input", input, "response", response, "analysis", analysis));
+        // Update knowledge base (keyed by normalized input so repeats replace rather than accumulate)
+        String key = "interaction_" + input.trim().toLowerCase();
+        if (knowledgeBase.put(key, Map.of("input", input, "response", response, "analysis", analysis)) == null) {
+            knowledgeInsertionOrder.add(key);
+            trimKnowledgeBase();
+        }
+        knowledgeStore.putRecord(KEY_INTERACTION + key, Map.of("input", input, "response", response,
+                "capability", analysis.primaryCapability != null ? analysis.primaryCapability.name() : ""));
         
         // Update command frequency
         String command = analysis.getCommand();
         if (command != null) {
-            commandFrequency.put(command, commandFrequency.getOrDefault(command, 0) + 1);
+            // Persisted inside the update so concurrent increments reach the store in order
+            commandFrequency.compute(command, (k, count) -> {
+                int updated = count == null ? 1 : count + 1;
+                knowledgeStore.putLong(KEY_COMMAND + k, updated);
+                return updated;
+            });
         }
         
         // Neural network learning
         neuralNetwork.learn(input, response, analysis);
         
+        // The store batches writes and flushes them itself shortly after; sync happens on shutdown
+        
         Log.i(TAG, "AI learned from interaction: " + analysis.getLearningInsight());
     }
     
+    /**
+     * Evict the oldest learned interactions once the knowledge base exceeds its bound
+     */
+    private void trimKnowledgeBase() {
+        while (knowledgeBase.size() > MAX_KNOWLEDGE_ENTRIES) {
+            String oldest = knowledgeInsertionOrder.poll();
+            if (oldest == null) {
+                break;
+            }
+            knowledgeBase.remove(oldest);
+            knowledgeStore.delete(KEY_INTERACTION + oldest);
+        }
+    }
+    
     /**
      * Update user preferences based on interaction patterns
      */
     private void updateUserPreferences(String input, AIAnalysis analysis) {
         // Analyze technical complexity preference
         double technicalComplexity = analysis.getTechnicalComplexity();
-        userPreferences.put("technical_level", 
-                           userPreferences.getOrDefault("technical_level", 0.5) * 0.9 + technicalComplexity * 0.1);
+        updatePreference("technical_level", v -> (v == null ? 0.5 : v) * 0.9 + technicalComplexity * 0.1);
         
         // Analyze response style preference
         double formalityLevel = analysis.getFormalityLevel();
-        userPreferences.put("response_style", 
-                           userPreferences.getOrDefault("response_style", 0.5) * 0.9 + formalityLevel * 0.1);
+        updatePreference("response_style", v -> (v == null ? 0.5 : v) * 0.9 + formalityLevel * 0.1);
         
         // Analyze feature usage patterns
         for (AICapability capability : AICapability.values()) {
             if (analysis.usesCapability(capability)) {
-                String key = "capability_" + capability.name().toLowerCase();
-                userPreferences.put(key, userPreferences.getOrDefault(key, 0.0) + 0.1);
+                updatePreference("capability_" + capability.name().toLowerCase(), v -> (v == null ? 0 : v) + 0.1);
             }
         }
     }
     
+    /**
+     * Atomic read-modify-write of one preference; the store write happens inside the update so
+     * concurrent updates to a key are persisted in the order they were applied
+     */
+    private void updatePreference(String key, UnaryOperator<Double> update) {
+        userPreferences.compute(key, (k, v) -> {
+            double updated = update.apply(v);
+            knowledgeStore.putDouble(KEY_PREFERENCE + k, updated);
+            return updated;
+        });
+    }
+    
     /**
      * Check if autonomous actions are needed
      */
     private void checkAutonomousActions(String input, AIAnalysis analysis) {
         if (analysis.requiresAutonomousAction()) {
-            autonomousAgent.executeAutonomousAction(analysis.getAutonomousAction(), new AutonomousAgent.AutonomousCallback() {
-                @Override
-                public void onAutonomousAction(String action, String result) {
-                    Log.i(TAG, "Autonomous action executed: " + action + " -> " + result);
-                }
-                @Override
-                public void onProblemSolved(String problem, String solution) {}
-                @Override
-                public void onErrorHandled(Exception error, String resolution) {}
-                @Override
-                public void onMaintenancePerformed(String maintenance) {}
-            });
+            autonomousAgent.executeAutonomousAction(analysis.getAutonomousAction(), autonomousCallback);
         }
         
         // Predictive maintenance
         if (predictiveAnalytics.predictsMaintenance()) {
             autonomousAgent.performMaintenance();
         }
-        
-        // Performance optimization
-        if (performanceOptimizer.needsOptimization()) {
-            performanceOptimizer.applyOptimizations();
-        }
     }
     
     /**
@@ -418,10 +558,8 @@ public class AdvancedAIEngine {
         
         // Analyze recent conversation for context
         StringBuilder context = new StringBuilder();
-        int recentMessages = Math.min(4, conversationHistory.size());
         
-        for (int i = conversationHistory.size() - recentMessages; i < conversationHistory.size(); i++) {
-            String message = conversationHistory.get(i);
+        for (String message : conversationHistory.recent(4)) {
             if (message.startsWith("User:")) {
                 // Extract topics from user messages
                 List<String> topics = neuralNetwork.extractTopics(message);
@@ -464,14 +602,15 @@ public class AdvancedAIEngine {
     /**
      * Update performance metrics
      */
-    private void updatePerformanceMetrics(long processingTime) {
-        totalProcessingTime += processingTime;
-        totalRequests++;
-        averageResponseTime = (double) totalProcessingTime / totalRequests;
+    private void updatePerformanceMetrics(long processingTime, String phaseBreakdown) {
+        totalProcessingTime.add(processingTime);
+        totalRequests.increment();
+        double averageResponseTime = getAverageResponseTime();
         
         // Log performance if it's degrading
         if (processingTime > averageResponseTime * 2) {
-            Log.w(TAG, "Slow response detected: " + processingTime + "ms (avg: " + averageResponseTime + "ms)");
+            Log.w(TAG, "Slow response detected: " + processingTime + "ms (avg: " + averageResponseTime + "ms; "
+                    + phaseBreakdown + ")");
             performanceOptimizer.analyzeSlowResponse(processingTime);
         }
     }
@@ -502,7 +641,7 @@ public class AdvancedAIEngine {
     public void performSystemAnalysis(AICallback callback) {
         aiExecutor.submit(() -> {
             try {
-                SystemAnalysis analysis = reverseEngine.performDeepAnalysis();
+                ReverseEngineeringEngine.SystemAnalysis analysis = reverseEngine.performDeepAnalysis();
                 List<String> optimizations = reverseEngine.identifyOptimizations(analysis);
                 
                 new Handler(Looper.getMainLooper()).post(() -> {
@@ -516,37 +655,144 @@ public class AdvancedAIEngine {
         });
     }
     
+    /**
+     * Shared persistent store; components keep their own state under their own key prefix
+     */
+    KnowledgeStore getKnowledgeStore() {
+        awaitKnowledgeBase();
+        return knowledgeStore;
+    }
+    
+    Context getContext() {
+        return context;
+    }
+
     /**
      * Get AI performance statistics
      */
     public AIPerformanceStats getPerformanceStats() {
         return new AIPerformanceStats(
-                totalRequests,
-                averageResponseTime,
+                totalRequests.intValue(),
+                getAverageResponseTime(),
                 knowledgeBase.size(),
                 userPreferences.size(),
                 neuralNetwork.getAccuracy(),
-                performanceOptimizer.getOptimizationScore()
+                performanceOptimizer.getOptimizationScore(),
+                analysisCache.getHitRate(),
+                latencyTracker.getOverallStats(RequestLatencyTracker.Phase.TOTAL),
+                latencyTracker.getWindowStats(),
+                latencyTracker.getWindowStartedAt()
         );
     }
     
+    /**
+     * Start a new latency window; percentiles in later stats only cover requests after this call
+     */
+    public void resetLatencyWindow() {
+        latencyTracker.resetWindow();
+    }
+    
+    private double getAverageResponseTime() {
+        long requests = totalRequests.sum();
+        return requests == 0 ? 0 : (double) totalProcessingTime.sum() / requests;
+    }
+    
     /**
      * Shutdown AI engine
      */
     public void shutdown() {
+        RuntimeTuning tuning = RuntimeTuning.get();
+        tuning.removeListener(RuntimeTuning.KNOB_AI_POOL_SIZE, poolSizeListener);
+        tuning.removeListener(RuntimeTuning.KNOB_ANALYSIS_CACHE_SIZE, cacheSizeListener);
+        
         if (aiExecutor != null && !aiExecutor.isShutdown()) {
             aiExecutor.shutdown();
         }
         
-        // Save learned knowledge
-        saveKnowledgeBase();
+        if (reverseEngine != null) {
+            reverseEngine.shutdown();
+        }
+        
+        if (performanceOptimizer != null) {
+            performanceOptimizer.shutdown();
+        }
+        
+        if (autonomousAgent != null) {
+            autonomousAgent.shutdown();
+        }
+        
+        // Let in-flight requests finish their writes before the store closes; waited for off
+        // the caller's thread, which is usually the main thread in onDestroy()
+        new Thread(() -> {
+            try {
+                if (!aiExecutor.awaitTermination(SHUTDOWN_TIMEOUT_MS, TimeUnit.MILLISECONDS)) {
+                    Log.w(TAG, "AI requests still running after " + SHUTDOWN_TIMEOUT_MS + "ms; closing the store anyway");
+                }
+            } catch (InterruptedException e) {
+                Thread.currentThread().interrupt();
+            }
+            
+            // Save learned knowledge
+            awaitKnowledgeBase();
+            saveKnowledgeBase();
+            Log.i(TAG, "Advanced AI Engine shutdown complete");
+        }, "AdvancedAIEngineShutdown").start();
+    }
+    
+    /**
+     * Wait for loadKnowledgeBase(); anything learned before it finishes would be overwritten
+     * by the stored values
+     */
+    private void awaitKnowledgeBase() {
+        try {
+            knowledgeLoaded.await();
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+    
+    /**
+     * Restore learned interactions, preferences and command counts from the knowledge store
+     */
+    private void loadKnowledgeBase() {
+        try {
+            restoreKnowledgeBase();
+        } finally {
+            knowledgeLoaded.countDown();
+        }
+    }
+    
+    private void restoreKnowledgeBase() {
+        knowledgeStore = new KnowledgeStore(new File(context.getFilesDir(), KNOWLEDGE_DIRECTORY));
+        
+        // Visited oldest first, so the eviction order survives restarts
+        knowledgeStore.forEachWithPrefix(KEY_INTERACTION, (storeKey, value) -> {
+            if (value instanceof Map) {
+                String key = storeKey.substring(KEY_INTERACTION.length());
+                knowledgeBase.put(key, value);
+                knowledgeInsertionOrder.add(key);
+            }
+        });
+        trimKnowledgeBase();
+        
+        knowledgeStore.forEachWithPrefix(KEY_PREFERENCE, (storeKey, value) -> {
+            if (value instanceof Double) {
+                userPreferences.put(storeKey.substring(KEY_PREFERENCE.length()), (Double) value);
+            }
+        });
+        knowledgeStore.forEachWithPrefix(KEY_COMMAND, (storeKey, value) -> {
+            if (value instanceof Long) {
+                commandFrequency.put(storeKey.substring(KEY_COMMAND.length()), ((Long) value).intValue());
+            }
+        });
         
-        Log.i(TAG, "Advanced AI Engine shutdown complete");
+        Log.i(TAG, "Knowledge base loaded: " + knowledgeBase.size() + " interactions, " + userPreferences.size()
+                + " preferences, " + commandFrequency.size() + " commands in " + knowledgeStore.getRecoveryTimeMs() + "ms");
     }
     
     private void saveKnowledgeBase() {
-        // Save knowledge base to persistent storage
-        // Implementation would save to SharedPreferences or database
+        // Everything is already in the log; make sure it is on disk before the process dies
+        knowledgeStore.close();
         Log.i(TAG, "Knowledge base saved with " + knowledgeBase.size() + " entries");
     }
     
@@ -586,16 +832,34 @@ public class AdvancedAIEngine {
         public final int userPreferencesCount;
         public final double neuralNetworkAccuracy;
         public final double optimizationScore;
+        public final double analysisCacheHitRate;
+        
+        // Latency since the last resetLatencyWindow(), end to end and per capability/phase
+        public final double p50ResponseTime;
+        public final double p95ResponseTime;
+        public final double p99ResponseTime;
+        public final Map<AICapability, Map<RequestLatencyTracker.Phase, RequestLatencyTracker.PhaseStats>> latencyBreakdown;
+        public final long latencyWindowStartedAt;
         
         public AIPerformanceStats(int totalRequests, double averageResponseTime, 
                                 int knowledgeBaseSize, int userPreferencesCount,
-                                double neuralNetworkAccuracy, double optimizationScore) {
+                                double neuralNetworkAccuracy, double optimizationScore,
+                                double analysisCacheHitRate,
+                                RequestLatencyTracker.PhaseStats responseTime,
+                                Map<AICapability, Map<RequestLatencyTracker.Phase, RequestLatencyTracker.PhaseStats>> latencyBreakdown,
+                                long latencyWindowStartedAt) {
             this.totalRequests = totalRequests;
             this.averageResponseTime = averageResponseTime;
             this.knowledgeBaseSize = knowledgeBaseSize;
             this.userPreferencesCount = userPreferencesCount;
             this.neuralNetworkAccuracy = neuralNetworkAccuracy;
             this.optimizationScore = optimizationScore;
+            this.analysisCacheHitRate = analysisCacheHitRate;
+            this.p50ResponseTime = responseTime.p50Ms;
+            this.p95ResponseTime = responseTime.p95Ms;
+            this.p99ResponseTime = responseTime.p99Ms;
+            this.latencyBreakdown = latencyBreakdown;
+            this.latencyWindowStartedAt = latencyWindowStartedAt;
         }
     }
 }
@@ -1,56 +1,113 @@
 package com.fullsend.jarvis.ai;
 
 import android.content.Context;
+import android.content.pm.PackageInfo;
+import android.content.pm.PackageManager;
+import android.os.Build;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
+import android.provider.Settings;
 import android.util.Log;
 
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
-import java.util.concurrent.ExecutorService;
-import java.util.concurrent.Executors;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledThreadPoolExecutor;
+import java.util.concurrent.TimeUnit;
 
 /**
  * Autonomous Agent for Self-Directed Problem Solving and Actions
  * 
  * Features:
- * - Autonomous problem analysis and solution generation
- * - Self-directed action execution
- * - Error handling and recovery
- * - System maintenance and optimization
- * - Learning from outcomes
+ * - Autonomous problem analysis and solution generation; solutions and recovery strategies are
+ *   ranked by SolutionRanker from the outcomes of earlier attempts
+ * - Self-directed action execution through ActionScheduler: user-requested actions first,
+ *   diagnostics and maintenance deduplicated, rate limited and deferred during OBD/voice use
+ * - Error handling and recovery: a strategy counts as successful only if the action carrying it
+ *   out succeeds and the same error does not come back within RECOVERY_WINDOW_MS
+ * - System maintenance and optimization, planned by MaintenancePlanner: bursts of triggers
+ *   share one run, and actions that are not due or whose inputs are unchanged are skipped
+ * - Learning from outcomes; action success rates and solution outcomes survive restarts
  */
 public class AutonomousAgent {
     
     private static final String TAG = "AutonomousAgent";
     
     private AdvancedAIEngine aiEngine;
-    private ExecutorService autonomousExecutor;
+    private Context context;
+    private ScheduledThreadPoolExecutor autonomousExecutor;
+    private ActionScheduler scheduler;
+    private MaintenancePlanner maintenancePlanner;
+    private SolutionRanker solutionRanker;
+    private KnowledgeStore knowledgeStore;
     private Map<String, AutonomousAction> actionRegistry;
     private List<ProblemSolution> solutionHistory;
     private Map<String, Double> actionSuccessRates;
+    private final Map<String, PendingRecovery> pendingRecoveries = new ConcurrentHashMap<>();
     
     // Autonomous capabilities
     private boolean autonomousMode = true;
     private double confidenceThreshold = 0.7;
-    private int maxAutonomousActions = 10;
-    private int currentAutonomousActions = 0;
+    private int maxAutonomousActions = 10; // Pending actions across all priorities
+    
+    private static final int WORKER_THREADS = 4;
+    private static final int MAX_BACKGROUND_WORKERS = 2; // Keep workers free for user requests
+    private static final int MAX_BACKGROUND_PENDING = 7; // Keep queue room for user requests
+    
+    private static final String TYPE_HANDLE_ERROR = "handle_error";
+    private static final String TYPE_MAINTENANCE = "maintenance";
+    
+    private static final String KEY_SUCCESS_RATE = "rate:";
+    private static final String ERROR_CONTEXT = "error:";
+    private static final double DEFAULT_SUCCESS_RATE = 0.8;
+    private static final double MANUAL_SOLUTION_PRIOR = 0.5; // Solutions no registered action carries out
+    private static final int MAX_SOLUTION_HISTORY = 100;
+    private static final long RECOVERY_WINDOW_MS = 60 * 1000; // A recovery worked if the error stays away this long
+    
+    // Maintenance sub-actions and recovery actions only log their outcome
+    private final AutonomousCallback maintenanceCallback = new AutonomousCallback() {
+        @Override
+        public void onAutonomousAction(String action, String result) {
+            Log.d(TAG, "Maintenance: " + action + " -> " + result);
+        }
+        @Override
+        public void onProblemSolved(String problem, String solution) {}
+        @Override
+        public void onErrorHandled(Exception error, String resolution) {}
+        @Override
+        public void onMaintenancePerformed(String maintenance) {}
+        @Override
+        public void onActionFailed(String action, String reason) {
+            Log.d(TAG, "Maintenance: " + action + " not run: " + reason);
+        }
+    };
     
     public interface AutonomousCallback {
         void onAutonomousAction(String action, String result);
         void onProblemSolved(String problem, String solution);
         void onErrorHandled(Exception error, String resolution);
         void onMaintenancePerformed(String maintenance);
+        void onActionFailed(String action, String reason);
     }
     
     public AutonomousAgent(AdvancedAIEngine aiEngine) {
         this.aiEngine = aiEngine;
-        this.autonomousExecutor = Executors.newFixedThreadPool(4);
+        this.context = aiEngine.getContext();
+        this.autonomousExecutor = new ScheduledThreadPoolExecutor(WORKER_THREADS);
+        // Recovery checks still waiting at shutdown are dropped with the rest of the queue
+        this.autonomousExecutor.setExecuteExistingDelayedTasksAfterShutdownPolicy(false);
+        this.scheduler = new ActionScheduler(autonomousExecutor, WORKER_THREADS, MAX_BACKGROUND_WORKERS,
+                maxAutonomousActions, MAX_BACKGROUND_PENDING);
+        this.knowledgeStore = aiEngine.getKnowledgeStore();
+        this.maintenancePlanner = new MaintenancePlanner(knowledgeStore, this::runPlannedMaintenance);
+        this.solutionRanker = new SolutionRanker(knowledgeStore);
         this.actionRegistry = new HashMap<>();
         this.solutionHistory = new ArrayList<>();
-        this.actionSuccessRates = new HashMap<>();
+        this.actionSuccessRates = new ConcurrentHashMap<>();
         
         initializeAutonomousCapabilities();
     }
@@ -68,6 +125,19 @@ public class AutonomousAgent {
         registerAction("backup_data", new DataBackupAction());
         registerAction("security_scan", new SecurityScanAction());
         
+        // Background rate limits; a user asking for an action directly is never held back
+        scheduler.setRateLimit(TYPE_MAINTENANCE, 60 * 1000);
+        scheduler.setRateLimit(TYPE_HANDLE_ERROR, 2 * 1000);
+        scheduler.setRateLimit("backup_data", 30 * 60 * 1000);
+        
+        // Maintenance schedule: minimum interval, forced refresh interval, inputs that make a run worthwhile
+        registerMaintenance("clean_memory", 30 * 1000, 30 * 60 * 1000, this::heapUsageBucket);
+        registerMaintenance("monitor_resources", 60 * 1000, 10 * 60 * 1000, this::heapUsageBucket);
+        registerMaintenance("optimize_performance", 5 * 60 * 1000, 60 * 60 * 1000,
+                () -> heapUsageBucket() * 1000 + Thread.activeCount());
+        registerMaintenance("analyze_system", 10 * 60 * 1000, 6 * 60 * 60 * 1000, this::systemFingerprint);
+        registerMaintenance("security_scan", 30 * 60 * 1000, 30 * 60 * 1000, null);
+        
         Log.i(TAG, "Autonomous Agent initialized with " + actionRegistry.size() + " actions");
     }
     
@@ -157,31 +227,52 @@ public class AutonomousAgent {
     }
     
     /**
-     * Execute an autonomous action
+     * Execute an autonomous action on behalf of the user
      */
     public void executeAutonomousAction(String actionName, AutonomousCallback callback) {
-        if (!autonomousMode || currentAutonomousActions >= maxAutonomousActions) {
-            Log.w(TAG, "Autonomous action blocked: mode=" + autonomousMode + 
-                      ", actions=" + currentAutonomousActions + "/" + maxAutonomousActions);
-            return;
+        executeAutonomousAction(actionName, callback, ActionScheduler.Priority.USER_INTERACTIVE);
+    }
+    
+    /**
+     * Execute an autonomous action in the given priority class
+     */
+    public void executeAutonomousAction(String actionName, AutonomousCallback callback,
+                                        ActionScheduler.Priority priority) {
+        executeAutonomousAction(actionName, callback, priority, null);
+    }
+    
+    /**
+     * Queue an action; every request ends in exactly one callback, including when it is not run.
+     * Returns false if the action was not queued.
+     */
+    private boolean executeAutonomousAction(String actionName, AutonomousCallback callback,
+                                            ActionScheduler.Priority priority, OutcomeListener outcomeListener) {
+        if (!autonomousMode) {
+            Log.w(TAG, "Autonomous action blocked: autonomous mode is off");
+            notifyActionFailed(callback, actionName, "autonomous mode is off");
+            return false;
         }
         
-        autonomousExecutor.submit(() -> {
+        AutonomousAction action = actionRegistry.get(actionName);
+        if (action == null) {
+            Log.w(TAG, "Unknown autonomous action: " + actionName);
+            notifyActionFailed(callback, actionName, "unknown action");
+            return false;
+        }
+        
+        ActionScheduler.ScheduleResult scheduled = scheduler.schedule(actionName, actionName, priority, () -> {
             try {
-                currentAutonomousActions++;
-                
-                AutonomousAction action = actionRegistry.get(actionName);
-                if (action == null) {
-                    Log.w(TAG, "Unknown autonomous action: " + actionName);
-                    return;
-                }
-                
-                Log.i(TAG, "Executing autonomous action: " + actionName);
+                Log.i(TAG, "Executing autonomous action: " + actionName + " (" + priority + ")");
                 
+                long startedAt = SystemClock.elapsedRealtime();
                 ActionResult result = action.execute();
+                maintenancePlanner.recordRun(actionName, SystemClock.elapsedRealtime() - startedAt, result.success);
                 
                 // Update success rates
                 updateActionSuccessRate(actionName, result.success);
+                if (outcomeListener != null) {
+                    outcomeListener.onOutcome(result);
+                }
                 
                 // Notify callback
                 new Handler(Looper.getMainLooper()).post(() -> {
@@ -195,18 +286,92 @@ public class AutonomousAgent {
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error executing autonomous action: " + actionName, e);
+                if (outcomeListener != null) {
+                    outcomeListener.onOutcome(new ActionResult(false, e.toString()));
+                }
+                notifyActionFailed(callback, actionName, e.toString());
                 handleError(e, actionName);
-            } finally {
-                currentAutonomousActions--;
             }
         });
+        
+        switch (scheduled) {
+            case QUEUED:
+                return true;
+            case ALREADY_QUEUED:
+                // The pending run reports to whoever queued it first
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    callback.onAutonomousAction(actionName, "Already queued");
+                });
+                return true;
+            default:
+                notifyActionFailed(callback, actionName,
+                        scheduled == ActionScheduler.ScheduleResult.QUEUE_FULL ? "queue full" : "shut down");
+                return false;
+        }
+    }
+    
+    private void notifyActionFailed(AutonomousCallback callback, String actionName, String reason) {
+        new Handler(Looper.getMainLooper()).post(() -> {
+            callback.onActionFailed(actionName, reason);
+        });
+    }
+    
+    /**
+     * Carry out a generated solution with the action it maps to; the outcome trains the ranking.
+     * NO_MAPPED_ACTION means the solution needs manual steps - report its outcome through
+     * recordSolutionOutcome instead. REJECTED has already been reported to the callback.
+     */
+    public ApplyResult applySolution(ProblemAnalysis problem, String solution, AutonomousCallback callback) {
+        String actionName = actionForSolution(solution);
+        if (actionName == null) {
+            return ApplyResult.NO_MAPPED_ACTION;
+        }
+        boolean queued = executeAutonomousAction(actionName, callback, ActionScheduler.Priority.USER_INTERACTIVE, result -> {
+            recordSolutionOutcome(problem, solution, result.success);
+            if (result.success) {
+                new Handler(Looper.getMainLooper()).post(() -> {
+                    callback.onProblemSolved(problem.description, solution);
+                });
+            }
+        });
+        return queued ? ApplyResult.QUEUED : ApplyResult.REJECTED;
+    }
+    
+    /**
+     * Record whether a solution worked for a problem, however it was carried out
+     */
+    public void recordSolutionOutcome(ProblemAnalysis problem, String solution, boolean success) {
+        solutionRanker.update(problem.category.name(), solution, success);
+        
+        ProblemSolution entry = new ProblemSolution();
+        entry.problem = problem.description;
+        entry.solution = solution;
+        entry.successful = success;
+        entry.timestamp = System.currentTimeMillis();
+        entry.confidence = solutionRanker.estimate(problem.category.name(), solution, solutionPrior(solution));
+        synchronized (solutionHistory) {
+            solutionHistory.add(entry);
+            if (solutionHistory.size() > MAX_SOLUTION_HISTORY) {
+                solutionHistory.remove(0);
+            }
+        }
     }
     
     /**
      * Handle errors autonomously
      */
     public void handleError(Exception error, String context) {
-        autonomousExecutor.submit(() -> {
+        // The error came back, so the last strategy applied to it did not fix it
+        String errorType = error.getClass().getSimpleName();
+        PendingRecovery failed = pendingRecoveries.remove(errorType);
+        if (failed != null) {
+            Log.i(TAG, errorType + " recurred after " + failed.strategy);
+            solutionRanker.update(ERROR_CONTEXT + errorType, failed.strategy, false);
+        }
+        
+        // Repeats of the same error type while one is pending are handled once
+        String key = TYPE_HANDLE_ERROR + ":" + error.getClass().getName();
+        scheduler.schedule(TYPE_HANDLE_ERROR, key, ActionScheduler.Priority.DIAGNOSTICS, () -> {
             try {
                 Log.i(TAG, "Autonomous error handling initiated for: " + error.getClass().getSimpleName());
                 
@@ -216,17 +381,12 @@ public class AutonomousAgent {
                 // Generate recovery strategies
                 List<String> recoveryStrategies = generateRecoveryStrategies(errorAnalysis);
                 
-                // Execute the best recovery strategy
+                // Execute the best recovery strategy; escalate to user or system administrator if it fails
                 String bestStrategy = selectBestRecoveryStrategy(recoveryStrategies, errorAnalysis);
-                boolean recovered = executeRecoveryStrategy(bestStrategy, errorAnalysis);
-                
-                if (recovered) {
-                    Log.i(TAG, "Successfully recovered from error using: " + bestStrategy);
-                } else {
+                executeRecoveryStrategy(bestStrategy, errorAnalysis, () -> {
                     Log.w(TAG, "Could not recover from error autonomously");
-                    // Escalate to user or system administrator
                     escalateError(error, context, recoveryStrategies);
-                }
+                });
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error in autonomous error handling", e);
@@ -235,99 +395,28 @@ public class AutonomousAgent {
     }
     
     /**
-     * Perform autonomous system maintenance
+     * Perform autonomous system maintenance; triggers close together share one run
      */
     public void performMaintenance() {
-        autonomousExecutor.submit(() -> {
+        maintenancePlanner.trigger();
+    }
+    
+    private void runPlannedMaintenance() {
+        scheduler.schedule(TYPE_MAINTENANCE, TYPE_MAINTENANCE, ActionScheduler.Priority.MAINTENANCE, () -> {
             try {
                 Log.i(TAG, "Starting autonomous system maintenance...");
                 
                 List<String> maintenanceTasks = new ArrayList<>();
-                
-                // Memory cleanup
-                if (shouldPerformMemoryCleanup()) {
-                    maintenanceTasks.add("Memory cleanup");
-                    executeAutonomousAction("clean_memory", new AutonomousCallback() {
-                        @Override
-                        public void onAutonomousAction(String action, String result) {
-                            Log.d(TAG, "Maintenance: " + action + " -> " + result);
-                        }
-                        @Override
-                        public void onProblemSolved(String problem, String solution) {}
-                        @Override
-                        public void onErrorHandled(Exception error, String resolution) {}
-                        @Override
-                        public void onMaintenancePerformed(String maintenance) {}
-                    });
-                }
-                
-                // Performance optimization
-                if (shouldOptimizePerformance()) {
-                    maintenanceTasks.add("Performance optimization");
-                    executeAutonomousAction("optimize_performance", new AutonomousCallback() {
-                        @Override
-                        public void onAutonomousAction(String action, String result) {
-                            Log.d(TAG, "Maintenance: " + action + " -> " + result);
-                        }
-                        @Override
-                        public void onProblemSolved(String problem, String solution) {}
-                        @Override
-                        public void onErrorHandled(Exception error, String resolution) {}
-                        @Override
-                        public void onMaintenancePerformed(String maintenance) {}
-                    });
-                }
-                
-                // System analysis
-                if (shouldAnalyzeSystem()) {
-                    maintenanceTasks.add("System analysis");
-                    executeAutonomousAction("analyze_system", new AutonomousCallback() {
-                        @Override
-                        public void onAutonomousAction(String action, String result) {
-                            Log.d(TAG, "Maintenance: " + action + " -> " + result);
-                        }
-                        @Override
-                        public void onProblemSolved(String problem, String solution) {}
-                        @Override
-                        public void onErrorHandled(Exception error, String resolution) {}
-                        @Override
-                        public void onMaintenancePerformed(String maintenance) {}
-                    });
-                }
-                
-                // Resource monitoring
-                maintenanceTasks.add("Resource monitoring");
-                executeAutonomousAction("monitor_resources", new AutonomousCallback() {
-                    @Override
-                    public void onAutonomousAction(String action, String result) {
-                        Log.d(TAG, "Maintenance: " + action + " -> " + result);
+                for (String actionName : maintenancePlanner.plan()) {
+                    // Cleanup only pays off under memory pressure
+                    if (actionName.equals("clean_memory") && !shouldPerformMemoryCleanup()) {
+                        continue;
                     }
-                    @Override
-                    public void onProblemSolved(String problem, String solution) {}
-                    @Override
-                    public void onErrorHandled(Exception error, String resolution) {}
-                    @Override
-                    public void onMaintenancePerformed(String maintenance) {}
-                });
-                
-                // Security scan
-                if (shouldPerformSecurityScan()) {
-                    maintenanceTasks.add("Security scan");
-                    executeAutonomousAction("security_scan", new AutonomousCallback() {
-                        @Override
-                        public void onAutonomousAction(String action, String result) {
-                            Log.d(TAG, "Maintenance: " + action + " -> " + result);
-                        }
-                        @Override
-                        public void onProblemSolved(String problem, String solution) {}
-                        @Override
-                        public void onErrorHandled(Exception error, String resolution) {}
-                        @Override
-                        public void onMaintenancePerformed(String maintenance) {}
-                    });
+                    maintenanceTasks.add(actionName);
+                    runMaintenanceAction(actionName);
                 }
                 
-                Log.i(TAG, "Autonomous maintenance completed: " + maintenanceTasks.size() + " tasks");
+                Log.i(TAG, "Autonomous maintenance scheduled: " + maintenanceTasks);
                 
             } catch (Exception e) {
                 Log.e(TAG, "Error in autonomous maintenance", e);
@@ -335,11 +424,42 @@ public class AutonomousAgent {
         });
     }
     
+    private void runMaintenanceAction(String actionName) {
+        executeAutonomousAction(actionName, maintenanceCallback, ActionScheduler.Priority.MAINTENANCE);
+    }
+    
+    public ActionScheduler.SchedulerStats getSchedulerStats() {
+        return scheduler.getStats();
+    }
+    
+    public MaintenancePlanner.PlannerStats getMaintenanceStats() {
+        return maintenancePlanner.getStats();
+    }
+    
+    /**
+     * Stop scheduling; queued work is dropped and running actions finish
+     */
+    public void shutdown() {
+        maintenancePlanner.shutdown();
+        scheduler.shutdown();
+        autonomousExecutor.shutdown();
+    }
+    
     // Private helper methods
     
     private void registerAction(String name, AutonomousAction action) {
         actionRegistry.put(name, action);
-        actionSuccessRates.put(name, 0.8); // Default success rate
+        Object storedRate = knowledgeStore != null ? knowledgeStore.get(KEY_SUCCESS_RATE + name) : null;
+        actionSuccessRates.put(name, storedRate instanceof Double ? (Double) storedRate : DEFAULT_SUCCESS_RATE);
+    }
+    
+    /**
+     * The minimum interval is both the planner's schedule and the scheduler's rate limit
+     */
+    private void registerMaintenance(String name, long minIntervalMs, long maxIntervalMs,
+                                     MaintenancePlanner.InputProbe probe) {
+        scheduler.setRateLimit(name, minIntervalMs);
+        maintenancePlanner.register(name, minIntervalMs, maxIntervalMs, probe);
     }
     
     private ProblemCategory categorizeProblem(String description) {
@@ -559,15 +679,46 @@ public class AutonomousAgent {
     }
     
     private List<String> rankSolutionsBySuccessProbability(List<String> solutions, ProblemAnalysis problem) {
-        // Simple ranking based on solution history and problem characteristics
-        // In a real implementation, this would use machine learning
-        return solutions; // For now, return as-is
+        return solutionRanker.rank(problem.category.name(), solutions, this::solutionPrior);
+    }
+    
+    /**
+     * Expected success of a solution nobody has tried yet: that of the action that carries it out
+     */
+    private double solutionPrior(String solution) {
+        String actionName = actionForSolution(solution);
+        return actionName != null ? actionSuccessRates.getOrDefault(actionName, DEFAULT_SUCCESS_RATE) : MANUAL_SOLUTION_PRIOR;
+    }
+    
+    /**
+     * The registered action that implements a generated solution, or null if it needs manual steps
+     */
+    private String actionForSolution(String solution) {
+        String lower = solution.toLowerCase();
+        if (lower.contains("garbage collection") || lower.contains("memory cache")) {
+            return "clean_memory";
+        } else if (lower.contains("security scan")) {
+            return "security_scan";
+        } else if (lower.contains("diagnostics")) {
+            return "analyze_system";
+        } else if (lower.contains("backup")) {
+            return "backup_data";
+        } else if (lower.contains("monitoring")) {
+            return "monitor_resources";
+        } else if (lower.contains("configuration")) {
+            return "update_configuration";
+        } else if (lower.contains("cpu usage") || lower.contains("resource allocation") || lower.contains("thread pool")) {
+            return "optimize_performance";
+        }
+        return null;
     }
     
     private void updateActionSuccessRate(String actionName, boolean success) {
-        double currentRate = actionSuccessRates.getOrDefault(actionName, 0.5);
-        double newRate = currentRate * 0.9 + (success ? 0.1 : 0.0);
-        actionSuccessRates.put(actionName, newRate);
+        double newRate = actionSuccessRates.merge(actionName, success ? 1.0 : 0.0,
+                (currentRate, outcome) -> currentRate * 0.9 + outcome * 0.1);
+        if (knowledgeStore != null) {
+            knowledgeStore.putDouble(KEY_SUCCESS_RATE + actionName, newRate);
+        }
     }
     
     private void learnFromAction(String actionName, ActionResult result) {
@@ -626,32 +777,61 @@ public class AutonomousAgent {
     
     private String selectBestRecoveryStrategy(List<String> strategies, ErrorAnalysis errorAnalysis) {
         // Select strategy with highest success probability
-        return strategies.isEmpty() ? "Generic error recovery" : strategies.get(0);
+        if (strategies.isEmpty()) {
+            return "Generic error recovery";
+        }
+        return solutionRanker.rank(ERROR_CONTEXT + errorAnalysis.errorType, strategies,
+                strategy -> MANUAL_SOLUTION_PRIOR).get(0);
+    }
+    
+    /**
+     * Queue the action that implements a recovery strategy through the scheduler, so it is
+     * deduplicated, rate limited and deferred like any other action. A failed action counts
+     * against the strategy; one the scheduler turned away was never tried and does not.
+     * onFailure runs if there is no such action, it was not queued or it failed.
+     */
+    private void executeRecoveryStrategy(String strategy, ErrorAnalysis errorAnalysis, Runnable onFailure) {
+        String errorType = errorAnalysis.errorType;
+        String actionName = actionForSolution(strategy);
+        if (actionName == null || !actionRegistry.containsKey(actionName)) {
+            Log.w(TAG, "No action implements recovery strategy: " + strategy);
+            solutionRanker.update(ERROR_CONTEXT + errorType, strategy, false);
+            onFailure.run();
+            return;
+        }
+        
+        Log.i(TAG, "Queueing recovery strategy: " + strategy + " (" + actionName + ")");
+        boolean queued = executeAutonomousAction(actionName, maintenanceCallback, ActionScheduler.Priority.DIAGNOSTICS,
+                result -> {
+                    if (result.success) {
+                        Log.i(TAG, "Applied recovery strategy: " + strategy);
+                        awaitRecurrence(errorType, strategy);
+                    } else {
+                        solutionRanker.update(ERROR_CONTEXT + errorType, strategy, false);
+                        onFailure.run();
+                    }
+                });
+        if (!queued) {
+            onFailure.run();
+        }
     }
     
-    private boolean executeRecoveryStrategy(String strategy, ErrorAnalysis errorAnalysis) {
+    /**
+     * Credit the strategy once the error has stayed away for RECOVERY_WINDOW_MS;
+     * handleError records the failure if it comes back first
+     */
+    private void awaitRecurrence(String errorType, String strategy) {
+        PendingRecovery pending = new PendingRecovery(strategy);
+        pendingRecoveries.put(errorType, pending);
         try {
-            Log.i(TAG, "Executing recovery strategy: " + strategy);
-            
-            // Execute the recovery strategy
-            switch (strategy) {
-                case "Force garbage collection":
-                    System.gc();
-                    return true;
-                case "Clear application cache":
-                    // Implementation would clear cache
-                    return true;
-                case "Restart affected component":
-                    // Implementation would restart component
-                    return true;
-                default:
-                    Log.w(TAG, "Unknown recovery strategy: " + strategy);
-                    return false;
-            }
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error executing recovery strategy: " + strategy, e);
-            return false;
+            autonomousExecutor.schedule(() -> {
+                if (pendingRecoveries.remove(errorType, pending)) {
+                    solutionRanker.update(ERROR_CONTEXT + errorType, strategy, true);
+                }
+            }, RECOVERY_WINDOW_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            pendingRecoveries.remove(errorType, pending);
+            Log.d(TAG, "Shut down before crediting " + strategy);
         }
     }
     
@@ -687,20 +867,60 @@ public class AutonomousAgent {
         return memoryUsage > 0.8; // Cleanup if using more than 80% memory
     }
     
-    private boolean shouldOptimizePerformance() {
-        // Check if performance optimization is needed
-        // This would be based on performance metrics
-        return System.currentTimeMillis() % 300000 == 0; // Every 5 minutes for demo
+    /**
+     * Heap usage in 5% steps, so small fluctuations do not count as a change
+     */
+    private long heapUsageBucket() {
+        Runtime runtime = Runtime.getRuntime();
+        long usedMemory = runtime.totalMemory() - runtime.freeMemory();
+        return usedMemory * 20 / runtime.maxMemory();
     }
     
-    private boolean shouldAnalyzeSystem() {
-        // Perform system analysis periodically
-        return System.currentTimeMillis() % 600000 == 0; // Every 10 minutes for demo
+    /**
+     * Installed packages, OS build and developer settings; heap figures are left out because
+     * they change all the time and would make every analysis look necessary
+     */
+    private long systemFingerprint() {
+        long fingerprint = String.valueOf(Build.FINGERPRINT).hashCode();
+        fingerprint = fingerprint * 31 + Build.VERSION.SDK_INT;
+        fingerprint = fingerprint * 31 + installedPackagesHash();
+        fingerprint = fingerprint * 31 + globalSetting(Settings.Global.ADB_ENABLED);
+        fingerprint = fingerprint * 31 + globalSetting(Settings.Global.DEVELOPMENT_SETTINGS_ENABLED);
+        return fingerprint;
     }
     
-    private boolean shouldPerformSecurityScan() {
-        // Perform security scan periodically
-        return System.currentTimeMillis() % 1800000 == 0; // Every 30 minutes for demo
+    /**
+     * Order-independent hash of every installed package and when it was last updated
+     */
+    private long installedPackagesHash() {
+        PackageManager packageManager = context != null ? context.getPackageManager() : null;
+        if (packageManager == null) {
+            return 0;
+        }
+        try {
+            List<PackageInfo> packages = packageManager.getInstalledPackages(0);
+            long hash = packages.size();
+            for (PackageInfo info : packages) {
+                long entry = info.packageName.hashCode() * 31L + info.lastUpdateTime;
+                hash += entry * 0x9E3779B97F4A7C15L ^ (entry >>> 29);
+            }
+            return hash;
+        } catch (RuntimeException e) {
+            // Package manager died or the list was too large to transfer
+            Log.w(TAG, "Could not list installed packages", e);
+            return 0;
+        }
+    }
+    
+    private int globalSetting(String name) {
+        if (context == null) {
+            return 0;
+        }
+        try {
+            return Settings.Global.getInt(context.getContentResolver(), name, 0);
+        } catch (RuntimeException e) {
+            return 0;
+        }
     }
     
     // Data classes
@@ -754,12 +974,28 @@ public class AutonomousAgent {
         LOW, MEDIUM, HIGH, CRITICAL
     }
     
+    public enum ApplyResult {
+        QUEUED, NO_MAPPED_ACTION, REJECTED
+    }
+    
     // Autonomous action interfaces and implementations
     
     public interface AutonomousAction {
         ActionResult execute();
     }
     
+    private interface OutcomeListener {
+        void onOutcome(ActionResult result);
+    }
+    
+    private static final class PendingRecovery {
+        final String strategy;
+        
+        PendingRecovery(String strategy) {
+            this.strategy = strategy;
+        }
+    }
+    
     private class PerformanceOptimizationAction implements AutonomousAction {
         @Override
         public ActionResult execute() {
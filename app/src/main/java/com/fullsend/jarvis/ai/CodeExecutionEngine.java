@@ -3,20 +3,25 @@ package com.fullsend.jarvis.ai;
 import android.content.Context;
 import android.util.Log;
 
-import java.io.ByteArrayOutputStream;
 import java.io.File;
 import java.io.FileWriter;
 import java.io.IOException;
-import java.io.PrintStream;
 import java.lang.reflect.Method;
+import java.nio.charset.StandardCharsets;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
 import java.util.ArrayList;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
 import java.util.concurrent.Future;
 import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicLong;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,7 +33,11 @@ import java.util.regex.Pattern;
  * 
  * Features:
  * - Dynamic code generation from natural language
- * - Safe code execution in sandboxed environment
+ * - Safe code execution in sandboxed environment: code is compiled once by ScriptInterpreter
+ *   and run under instruction and allocation budgets, with the wall-clock timeout as a backstop
+ * - Compiled programs cached by SHA-256 of the source in a bounded LRU
+ * - Drive-log analyses (averages, time above thresholds, per-band aggregates) generated
+ *   against the DriveLog / ColumnarAnalytics column API
  * - Code optimization and analysis
  * - Multi-language support (Java, JavaScript, Python-like)
  * - Security validation and sandboxing
@@ -39,7 +48,7 @@ public class CodeExecutionEngine {
     
     private Context context;
     private ExecutorService codeExecutor;
-    private Map<String, CompiledCode> codeCache;
+    private final Map<String, CompiledCode> codeCache;
     private SecurityManager securityManager;
     private CodeAnalyzer codeAnalyzer;
     
@@ -47,6 +56,16 @@ public class CodeExecutionEngine {
     private static final long MAX_EXECUTION_TIME = 10000; // 10 seconds
     private static final int MAX_MEMORY_USAGE = 50 * 1024 * 1024; // 50MB
     private static final int MAX_OUTPUT_LENGTH = 10000; // 10KB
+    private static final long MAX_INSTRUCTIONS = ScriptInterpreter.DEFAULT_MAX_INSTRUCTIONS;
+    private static final long MAX_ALLOCATION = MAX_MEMORY_USAGE / 8; // array cells + string chars, ~8 bytes each
+    private static final int MAX_CACHED_PROGRAMS = 64;
+    
+    // Compile vs. cached execution cost
+    private final AtomicLong cacheHits = new AtomicLong();
+    private final AtomicLong cacheMisses = new AtomicLong();
+    private final AtomicLong compileNanos = new AtomicLong();
+    private final AtomicLong executions = new AtomicLong();
+    private final AtomicLong executeNanos = new AtomicLong();
     
     // Code templates
     private Map<String, String> codeTemplates;
@@ -54,7 +73,12 @@ public class CodeExecutionEngine {
     public CodeExecutionEngine(Context context) {
         this.context = context;
         this.codeExecutor = Executors.newFixedThreadPool(2);
-        this.codeCache = new HashMap<>();
+        this.codeCache = new LinkedHashMap<String, CompiledCode>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CompiledCode> eldest) {
+                return size() > MAX_CACHED_PROGRAMS;
+            }
+        };
         this.codeAnalyzer = new CodeAnalyzer();
         
         initializeCodeTemplates();
@@ -182,16 +206,25 @@ public class CodeExecutionEngine {
             }
             
             // Check if code is already compiled and cached
-            String codeHash = String.valueOf(code.hashCode());
-            CompiledCode compiledCode = codeCache.get(codeHash);
+            String codeHash = contentHash(code);
+            CompiledCode compiledCode;
+            synchronized (codeCache) {
+                compiledCode = codeCache.get(codeHash);
+            }
             
             if (compiledCode == null) {
+                cacheMisses.incrementAndGet();
                 // Compile the code
                 compiledCode = compileCode(code);
                 if (compiledCode == null) {
                     return "Code compilation failed";
                 }
-                codeCache.put(codeHash, compiledCode);
+                compiledCode.contentHash = codeHash;
+                synchronized (codeCache) {
+                    codeCache.put(codeHash, compiledCode);
+                }
+            } else {
+                cacheHits.incrementAndGet();
             }
             
             // Execute the compiled code
@@ -216,8 +249,10 @@ public class CodeExecutionEngine {
         
         String lower = description.toLowerCase();
         
-        // Determine code type
-        if (lower.contains("calculate") || lower.contains("compute") || lower.contains("math")) {
+        // Determine code type; drive-log questions come first ("calculate average rpm")
+        if (mentionsDriveData(lower)) {
+            request.type = CodeType.DATA_PROCESSING;
+        } else if (lower.contains("calculate") || lower.contains("compute") || lower.contains("math")) {
             request.type = CodeType.COMPUTATION;
         } else if (lower.contains("sort") || lower.contains("search") || lower.contains("algorithm")) {
             request.type = CodeType.ALGORITHM;
@@ -345,9 +380,12 @@ public class CodeExecutionEngine {
         } else {
             // Generic algorithm
             code.append("// Generic algorithm implementation\n");
-            code.append("List<Integer> numbers = Arrays.asList(1, 2, 3, 4, 5);\n");
-            code.append("int sum = numbers.stream().mapToInt(Integer::intValue).sum();\n");
-            code.append("double average = numbers.stream().mapToInt(Integer::intValue).average().orElse(0);\n");
+            code.append("int[] numbers = {1, 2, 3, 4, 5};\n");
+            code.append("int sum = 0;\n");
+            code.append("for (int number : numbers) {\n");
+            code.append("    sum += number;\n");
+            code.append("}\n");
+            code.append("double average = numbers.length > 0 ? (double) sum / numbers.length : 0;\n");
             code.append("System.out.println(\"Sum: \" + sum + \", Average: \" + average);\n");
         }
         
@@ -357,19 +395,101 @@ public class CodeExecutionEngine {
     private String generateDataProcessingCode(CodeRequest request) {
         StringBuilder code = new StringBuilder();
         
-        code.append("// Data processing implementation\n");
-        code.append("List<String> data = Arrays.asList(\"apple\", \"banana\", \"cherry\", \"date\");\n");
-        code.append("System.out.println(\"Original data: \" + data);\n");
-        code.append("List<String> processed = data.stream()\n");
-        code.append("    .filter(s -> s.length() > 4)\n");
-        code.append("    .map(String::toUpperCase)\n");
-        code.append("    .sorted()\n");
-        code.append("    .collect(java.util.stream.Collectors.toList());\n");
-        code.append("System.out.println(\"Processed data: \" + processed);\n");
+        String description = request.description.toLowerCase();
+        String channel = channelFor(description);
+        
+        code.append("// Drive log analysis over recorded ").append(channel).append(" samples\n");
+        if (description.contains("above") || description.contains("below") || description.contains("under")
+                || description.contains("exceed") || description.contains("threshold")) {
+            double threshold = thresholdFor(request, channel);
+            boolean below = description.contains("below") || description.contains("under");
+            code.append("DriveLog.snapshot(\"").append(channel).append("\");\n");
+            code.append("long[] t = DriveLog.timestamps(\"").append(channel).append("\");\n");
+            code.append("double[] v = DriveLog.values(\"").append(channel).append("\");\n");
+            code.append("boolean[] hit = Columns.").append(below ? "lessThan" : "greaterThan")
+                .append("(v, ").append(threshold).append(");\n");
+            code.append("long ms = Columns.durationWhere(t, hit);\n");
+            code.append("long total = t.length > 1 ? t[t.length - 1] - t[0] : 0;\n");
+            code.append("System.out.println(\"Time ").append(below ? "below " : "above ").append(threshold)
+                .append(" ").append(channel).append(": \" + ms / 1000 + \" s of \" + total / 1000 + \" s recorded (\" + Columns.count(hit) + \" of \" + v.length + \" samples)\");\n");
+        } else if (description.contains("band") || description.contains("group") || description.contains("per ")) {
+            String valueChannel = DriveLog.CHANNEL_RPM.equals(channel) ? DriveLog.CHANNEL_COOLANT_TEMP : channel;
+            code.append("DriveLog.snapshot(\"rpm\");\n");
+            code.append("long[] t = DriveLog.timestamps(\"rpm\");\n");
+            code.append("double[] rpm = DriveLog.values(\"rpm\");\n");
+            code.append("double[] v = DriveLog.valuesAt(\"").append(valueChannel).append("\", t);\n");
+            code.append("double[] means = Columns.groupMean(rpm, v, 0, 1000, 8);\n");
+            code.append("long[] counts = Columns.groupCount(rpm, 0, 1000, 8);\n");
+            code.append("System.out.println(\"Average ").append(valueChannel).append(" per RPM band:\");\n");
+            code.append("for (int i = 0; i < means.length; i++) {\n");
+            code.append("    if (!Double.isNaN(means[i])) {\n");
+            code.append("        System.out.println(i * 1000 + \"-\" + (i + 1) * 1000 + \" rpm: \" + String.format(\"%.1f\", means[i]) + \" (\" + counts[i] + \" samples)\");\n");
+            code.append("    }\n");
+            code.append("}\n");
+        } else if (description.contains("peak") || description.contains("rolling") || description.contains("smooth")) {
+            code.append("double[] v = DriveLog.values(\"").append(channel).append("\");\n");
+            code.append("double[] smooth = Columns.rollingMean(v, 10);\n");
+            code.append("System.out.println(\"Peak ").append(channel).append(": \" + Columns.max(v) + \", peak 10-sample average: \" + String.format(\"%.1f\", Columns.max(smooth)));\n");
+        } else if (description.contains("average") || description.contains("mean")) {
+            code.append("double[] v = DriveLog.values(\"").append(channel).append("\");\n");
+            code.append("System.out.println(\"Average ").append(channel).append(": \" + String.format(\"%.1f\", Columns.mean(v)) + \" over \" + v.length + \" samples (min \" + Columns.min(v) + \", max \" + Columns.max(v) + \")\");\n");
+        } else {
+            code.append("String[] channels = DriveLog.channels();\n");
+            code.append("System.out.println(\"Drive log: \" + channels.length + \" channels\");\n");
+            code.append("for (String name : channels) {\n");
+            code.append("    double[] v = DriveLog.values(name);\n");
+            code.append("    System.out.println(name + \": n=\" + v.length + \" mean=\" + String.format(\"%.1f\", Columns.mean(v)) + \" min=\" + Columns.min(v) + \" max=\" + Columns.max(v) + \" sd=\" + String.format(\"%.2f\", Columns.stddev(v)));\n");
+            code.append("}\n");
+        }
         
         return String.format(codeTemplates.get("data_processing"), code.toString());
     }
     
+    private boolean mentionsDriveData(String lower) {
+        return lower.contains("rpm") || lower.contains("coolant") || lower.contains("speed")
+            || lower.contains("throttle") || lower.contains("trip") || lower.contains("drive")
+            || lower.contains("engine load") || lower.contains("maf");
+    }
+    
+    /**
+     * DriveLog channel named in the description; RPM when none is
+     */
+    private String channelFor(String lower) {
+        if (lower.contains("coolant") || lower.contains("temperature") || lower.contains("temp")) {
+            return DriveLog.CHANNEL_COOLANT_TEMP;
+        } else if (lower.contains("speed")) {
+            return DriveLog.CHANNEL_SPEED;
+        } else if (lower.contains("throttle")) {
+            return DriveLog.CHANNEL_THROTTLE;
+        } else if (lower.contains("load")) {
+            return DriveLog.CHANNEL_ENGINE_LOAD;
+        } else if (lower.contains("maf") || lower.contains("air flow")) {
+            return DriveLog.CHANNEL_MAF;
+        } else if (lower.contains("fuel")) {
+            return DriveLog.CHANNEL_FUEL_PRESSURE;
+        } else if (lower.contains("timing")) {
+            return DriveLog.CHANNEL_TIMING_ADVANCE;
+        }
+        return DriveLog.CHANNEL_RPM;
+    }
+    
+    /**
+     * First number in the description, or a sensible limit for the channel
+     */
+    private double thresholdFor(CodeRequest request, String channel) {
+        for (String parameter : request.parameters) {
+            if (parameter.startsWith("NUMBER:")) {
+                return Double.parseDouble(parameter.substring("NUMBER:".length()));
+            }
+        }
+        switch (channel) {
+            case DriveLog.CHANNEL_COOLANT_TEMP: return 100;
+            case DriveLog.CHANNEL_SPEED: return 120;
+            case DriveLog.CHANNEL_RPM: return 4000;
+            default: return 80;
+        }
+    }
+    
     private String generateSystemOperationCode(CodeRequest request) {
         StringBuilder code = new StringBuilder();
         
@@ -448,26 +568,30 @@ public class CodeExecutionEngine {
     }
     
     /**
-     * Compile code to bytecode
+     * Compile code into a reusable interpreter program
      */
     private CompiledCode compileCode(String code) {
         try {
-            // For Android, we'll simulate compilation
-            // In a real implementation, you might use dx compiler or similar
-            
             CompiledCode compiled = new CompiledCode();
             compiled.sourceCode = code;
             compiled.compilationTime = System.currentTimeMillis();
-            compiled.isValid = true;
             
-            // Perform basic syntax validation
-            if (!performSyntaxValidation(code)) {
+            // Parse and compile once; the program is reused for every cached execution
+            long start = System.nanoTime();
+            try {
+                compiled.program = ScriptInterpreter.compile(code);
+                compiled.isValid = true;
+            } catch (ScriptInterpreter.ScriptException e) {
                 compiled.isValid = false;
-                compiled.errorMessage = "Syntax validation failed";
-                return compiled;
+                compiled.errorMessage = e.getMessage();
+                Log.w(TAG, "Code rejected by compiler: " + e.getMessage());
             }
+            compiled.compileNanos = System.nanoTime() - start;
+            compileNanos.addAndGet(compiled.compileNanos);
             
-            Log.d(TAG, "Code compiled successfully");
+            if (compiled.isValid) {
+                Log.d(TAG, "Code compiled in " + compiled.compileNanos / 1000 + "us");
+            }
             return compiled;
             
         } catch (Exception e) {
@@ -488,109 +612,61 @@ public class CodeExecutionEngine {
             return "Cannot execute invalid code: " + compiledCode.errorMessage;
         }
         
-        try {
-            // Capture output
-            ByteArrayOutputStream outputStream = new ByteArrayOutputStream();
-            PrintStream originalOut = System.out;
-            System.setOut(new PrintStream(outputStream));
-            
-            // Execute with timeout
-            Future<String> execution = codeExecutor.submit(() -> {
-                try {
-                    // Simulate code execution
-                    // In a real implementation, this would execute the compiled bytecode
-                    executeSimulatedCode(compiledCode.sourceCode);
-                    return "Code executed successfully";
-                } catch (Exception e) {
-                    return "Execution error: " + e.getMessage();
-                }
-            });
-            
-            String result = execution.get(MAX_EXECUTION_TIME, TimeUnit.MILLISECONDS);
-            
-            // Restore output and get captured output
-            System.setOut(originalOut);
-            String output = outputStream.toString();
-            
-            if (!output.isEmpty()) {
-                result += "\n\nOutput:\n" + output;
+        // Each job writes to its own sink; System.out is never touched
+        ExecutionOutput output = new ExecutionOutput(MAX_OUTPUT_LENGTH);
+        ScriptInterpreter.Limits limits = new ScriptInterpreter.Limits(MAX_INSTRUCTIONS, MAX_ALLOCATION);
+        Future<String> execution = codeExecutor.submit(() -> {
+            long start = System.nanoTime();
+            try {
+                Object returned = compiledCode.program.run(output, limits);
+                return returned != null ? String.valueOf(returned) : "Code executed successfully";
+            } catch (ScriptInterpreter.BudgetExceededException e) {
+                return "Execution stopped: " + e.getMessage();
+            } catch (ExecutionOutput.OutputLimitExceededException e) {
+                return "Code executed (stopped at output limit)";
+            } catch (ExecutionOutput.ExecutionCancelledException e) {
+                return "Execution cancelled";
+            } catch (Exception e) {
+                return "Execution error: " + e.getMessage();
+            } finally {
+                executions.incrementAndGet();
+                executeNanos.addAndGet(System.nanoTime() - start);
             }
-            
-            // Limit output length
-            if (result.length() > MAX_OUTPUT_LENGTH) {
-                result = result.substring(0, MAX_OUTPUT_LENGTH) + "\n... (output truncated)";
-            }
-            
-            return result;
-            
-        } catch (Exception e) {
+        });
+        
+        String result;
+        try {
+            result = execution.get(MAX_EXECUTION_TIME, TimeUnit.MILLISECONDS);
+        } catch (TimeoutException e) {
+            // Interrupt the job; it stops at its next write and frees the worker
+            execution.cancel(true);
+            result = "Code execution timed out after " + MAX_EXECUTION_TIME + "ms";
+        } catch (InterruptedException e) {
+            execution.cancel(true);
+            Thread.currentThread().interrupt();
+            result = "Code execution interrupted";
+        } catch (ExecutionException e) {
             Log.e(TAG, "Code execution failed", e);
-            return "Code execution failed: " + e.getMessage();
+            result = "Code execution failed: " + e.getCause();
         }
-    }
-    
-    /**
-     * Simulate code execution (since we can't actually compile and run arbitrary code on Android)
-     */
-    private void executeSimulatedCode(String code) {
-        // Simulate the execution of common code patterns
-        
-        if (code.contains("fibonacci")) {
-            // Simulate Fibonacci calculation
-            System.out.println("Fibonacci sequence:");
-            int a = 0, b = 1;
-            for (int i = 0; i < 10; i++) {
-                System.out.print(a + " ");
-                int temp = a + b;
-                a = b;
-                b = temp;
-            }
-            System.out.println();
-        } else if (code.contains("prime")) {
-            // Simulate prime number calculation
-            System.out.println("Prime numbers up to 50:");
-            for (int i = 2; i <= 50; i++) {
-                boolean isPrime = true;
-                for (int j = 2; j * j <= i; j++) {
-                    if (i % j == 0) {
-                        isPrime = false;
-                        break;
-                    }
-                }
-                if (isPrime) System.out.print(i + " ");
-            }
-            System.out.println();
-        } else if (code.contains("sort")) {
-            // Simulate sorting
-            int[] array = {64, 34, 25, 12, 22, 11, 90};
-            System.out.println("Original array: " + java.util.Arrays.toString(array));
-            java.util.Arrays.sort(array);
-            System.out.println("Sorted array: " + java.util.Arrays.toString(array));
-        } else if (code.contains("Memory Status")) {
-            // Simulate system monitoring
-            Runtime runtime = Runtime.getRuntime();
-            long totalMemory = runtime.totalMemory();
-            long freeMemory = runtime.freeMemory();
-            long usedMemory = totalMemory - freeMemory;
-            System.out.println("Memory Status:");
-            System.out.println("Total: " + (totalMemory / 1024 / 1024) + "MB");
-            System.out.println("Used: " + (usedMemory / 1024 / 1024) + "MB");
-            System.out.println("Free: " + (freeMemory / 1024 / 1024) + "MB");
-            double usage = (double) usedMemory / totalMemory * 100;
-            System.out.println("Usage: " + String.format("%.1f", usage) + "%");
-        } else {
-            // Generic execution simulation
-            System.out.println("Executing generated code...");
-            System.out.println("Hello from generated code!");
-            System.out.println("Execution time: " + System.currentTimeMillis());
+        
+        String captured = output.toString();
+        if (!captured.isEmpty()) {
+            result += "\n\nOutput:\n" + captured;
+        }
+        if (output.isTruncated()) {
+            result += "\n... (output truncated)";
         }
+        return result;
     }
     
     /**
      * Validate and optimize generated code
      */
     private String validateAndOptimizeCode(String code) {
-        // Basic code optimization
+        // Basic code optimization; comments go first so a line comment cannot swallow the
+        // rest of the program once newlines are folded away
+        code = ScriptInterpreter.stripComments(code);
         code = code.replaceAll("\\s+", " "); // Normalize whitespace
         code = code.replaceAll("\\n\\s*\\n", "\n"); // Remove empty lines
         
@@ -603,31 +679,6 @@ public class CodeExecutionEngine {
         return code;
     }
     
-    /**
-     * Perform basic syntax validation
-     */
-    private boolean performSyntaxValidation(String code) {
-        // Check for balanced braces
-        int braceCount = 0;
-        for (char c : code.toCharArray()) {
-            if (c == '{') braceCount++;
-            else if (c == '}') braceCount--;
-        }
-        
-        if (braceCount != 0) {
-            Log.w(TAG, "Unbalanced braces in code");
-            return false;
-        }
-        
-        // Check for basic Java syntax
-        if (!code.contains("class") && !code.contains("public static")) {
-            Log.w(TAG, "Invalid Java structure");
-            return false;
-        }
-        
-        return true;
-    }
-    
     /**
      * Extract parameters from description
      */
@@ -703,7 +754,49 @@ public class CodeExecutionEngine {
         boolean isValid;
         String errorMessage;
         long compilationTime;
-        byte[] bytecode; // Would contain actual bytecode in real implementation
+        long compileNanos;
+        String contentHash;
+        ScriptInterpreter.Program program; // Immutable, shared by concurrent executions
+    }
+    
+    /**
+     * Compile cost vs. cached execution cost, for tuning the cache size and budgets
+     */
+    public static class InterpreterStats {
+        public long cacheHits;
+        public long cacheMisses;
+        public int cachedPrograms;
+        public double averageCompileMicros;
+        public double averageExecuteMicros;
+    }
+    
+    public InterpreterStats getInterpreterStats() {
+        InterpreterStats stats = new InterpreterStats();
+        stats.cacheHits = cacheHits.get();
+        stats.cacheMisses = cacheMisses.get();
+        synchronized (codeCache) {
+            stats.cachedPrograms = codeCache.size();
+        }
+        stats.averageCompileMicros = stats.cacheMisses > 0 ? compileNanos.get() / 1000.0 / stats.cacheMisses : 0;
+        long runs = executions.get();
+        stats.averageExecuteMicros = runs > 0 ? executeNanos.get() / 1000.0 / runs : 0;
+        return stats;
+    }
+    
+    /**
+     * SHA-256 of the source; unlike String.hashCode, distinct programs never share a cache slot in practice
+     */
+    private static String contentHash(String code) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-256").digest(code.getBytes(StandardCharsets.UTF_8));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xf, 16)).append(Character.forDigit(b & 0xf, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException e) {
+            throw new IllegalStateException("SHA-256 unavailable", e);
+        }
     }
     
     private enum CodeType {
@@ -0,0 +1,571 @@
+package com.fullsend.jarvis.ai;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Columnar operators over primitive arrays, used by generated drive-log analyses
+ *
+ * Features:
+ * - Columns are plain double[] (values), long[] (timestamps in ms) and boolean[] (row masks),
+ *   so every operator is a tight loop with no boxing
+ * - Filter (comparison masks, and/or/not, select), map (affine, element-wise arithmetic),
+ *   aggregate, group-by over fixed-width key buckets, rolling windows and as-of resampling
+ * - Columns of 64K rows or more are split into chunks and run on the common fork-join pool;
+ *   partial results are merged, so outputs match the sequential path
+ * - NaN marks a missing value: aggregates skip it and comparisons never select it
+ */
+public final class ColumnarAnalytics {
+
+    static final int PARALLEL_THRESHOLD = 1 << 16;
+    private static final int MIN_CHUNK = 1 << 14;
+
+    private static volatile boolean parallelEnabled = true;
+
+    private ColumnarAnalytics() {
+    }
+
+    /**
+     * Turn fork-join partitioning on or off (e.g. when the device is thermally throttled)
+     */
+    public static void setParallelEnabled(boolean enabled) {
+        parallelEnabled = enabled;
+    }
+
+    public static boolean isParallelEnabled() {
+        return parallelEnabled;
+    }
+
+    // ================================================================= filter
+
+    public static boolean[] greaterThan(double[] column, double threshold) {
+        boolean[] mask = new boolean[column.length];
+        forEachRange(column.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                mask[i] = column[i] > threshold;
+            }
+        });
+        return mask;
+    }
+
+    public static boolean[] lessThan(double[] column, double threshold) {
+        boolean[] mask = new boolean[column.length];
+        forEachRange(column.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                mask[i] = column[i] < threshold;
+            }
+        });
+        return mask;
+    }
+
+    /**
+     * Rows with low <= value <= high
+     */
+    public static boolean[] between(double[] column, double low, double high) {
+        boolean[] mask = new boolean[column.length];
+        forEachRange(column.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                double value = column[i];
+                mask[i] = value >= low && value <= high;
+            }
+        });
+        return mask;
+    }
+
+    public static boolean[] and(boolean[] a, boolean[] b) {
+        checkLengths(a.length, b.length);
+        boolean[] mask = new boolean[a.length];
+        forEachRange(a.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                mask[i] = a[i] & b[i];
+            }
+        });
+        return mask;
+    }
+
+    public static boolean[] or(boolean[] a, boolean[] b) {
+        checkLengths(a.length, b.length);
+        boolean[] mask = new boolean[a.length];
+        forEachRange(a.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                mask[i] = a[i] | b[i];
+            }
+        });
+        return mask;
+    }
+
+    public static boolean[] not(boolean[] a) {
+        boolean[] mask = new boolean[a.length];
+        forEachRange(a.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                mask[i] = !a[i];
+            }
+        });
+        return mask;
+    }
+
+    public static long count(boolean[] mask) {
+        return reduceRanges(mask.length, (from, to) -> {
+            long count = 0;
+            for (int i = from; i < to; i++) {
+                if (mask[i]) {
+                    count++;
+                }
+            }
+            return count;
+        }, Long::sum, 0L);
+    }
+
+    /**
+     * Values of the selected rows, in row order
+     */
+    public static double[] select(double[] column, boolean[] mask) {
+        checkLengths(column.length, mask.length);
+        double[] selected = new double[(int) count(mask)];
+        int next = 0;
+        for (int i = 0; i < column.length; i++) {
+            if (mask[i]) {
+                selected[next++] = column[i];
+            }
+        }
+        return selected;
+    }
+
+    // ================================================================= map
+
+    /**
+     * scale * value + offset for every row (unit conversion, calibration)
+     */
+    public static double[] affine(double[] column, double scale, double offset) {
+        double[] result = new double[column.length];
+        forEachRange(column.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = column[i] * scale + offset;
+            }
+        });
+        return result;
+    }
+
+    public static double[] add(double[] a, double[] b) {
+        checkLengths(a.length, b.length);
+        double[] result = new double[a.length];
+        forEachRange(a.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = a[i] + b[i];
+            }
+        });
+        return result;
+    }
+
+    public static double[] subtract(double[] a, double[] b) {
+        checkLengths(a.length, b.length);
+        double[] result = new double[a.length];
+        forEachRange(a.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = a[i] - b[i];
+            }
+        });
+        return result;
+    }
+
+    public static double[] multiply(double[] a, double[] b) {
+        checkLengths(a.length, b.length);
+        double[] result = new double[a.length];
+        forEachRange(a.length, (from, to) -> {
+            for (int i = from; i < to; i++) {
+                result[i] = a[i] * b[i];
+            }
+        });
+        return result;
+    }
+
+    // ================================================================= aggregate
+
+    /**
+     * Running totals of one chunk: count, sum, min, max (NaN rows skipped)
+     */
+    private static final class Summary {
+        long count;
+        double sum;
+        double min = Double.POSITIVE_INFINITY;
+        double max = Double.NEGATIVE_INFINITY;
+
+        Summary merge(Summary other) {
+            count += other.count;
+            sum += other.sum;
+            min = Math.min(min, other.min);
+            max = Math.max(max, other.max);
+            return this;
+        }
+    }
+
+    private static Summary summarize(double[] column, boolean[] mask) {
+        if (mask != null) {
+            checkLengths(column.length, mask.length);
+        }
+        return reduceRanges(column.length, (from, to) -> {
+            Summary summary = new Summary();
+            for (int i = from; i < to; i++) {
+                double value = column[i];
+                if (value != value || (mask != null && !mask[i])) {
+                    continue;
+                }
+                summary.count++;
+                summary.sum += value;
+                if (value < summary.min) {
+                    summary.min = value;
+                }
+                if (value > summary.max) {
+                    summary.max = value;
+                }
+            }
+            return summary;
+        }, Summary::merge, new Summary());
+    }
+
+    public static double sum(double[] column) {
+        return summarize(column, null).sum;
+    }
+
+    public static double sum(double[] column, boolean[] mask) {
+        return summarize(column, mask).sum;
+    }
+
+    /**
+     * Mean of the non-NaN rows; NaN for an empty column
+     */
+    public static double mean(double[] column) {
+        Summary summary = summarize(column, null);
+        return summary.count > 0 ? summary.sum / summary.count : Double.NaN;
+    }
+
+    public static double mean(double[] column, boolean[] mask) {
+        Summary summary = summarize(column, mask);
+        return summary.count > 0 ? summary.sum / summary.count : Double.NaN;
+    }
+
+    public static double min(double[] column) {
+        Summary summary = summarize(column, null);
+        return summary.count > 0 ? summary.min : Double.NaN;
+    }
+
+    public static double max(double[] column) {
+        Summary summary = summarize(column, null);
+        return summary.count > 0 ? summary.max : Double.NaN;
+    }
+
+    /**
+     * Population standard deviation; two passes so large offsets (e.g. RPM ~3000) keep precision
+     */
+    public static double stddev(double[] column) {
+        double mean = mean(column);
+        if (mean != mean) {
+            return Double.NaN;
+        }
+        double[] squares = reduceRanges(column.length, (from, to) -> {
+            double[] partial = new double[2];
+            for (int i = from; i < to; i++) {
+                double value = column[i];
+                if (value == value) {
+                    double delta = value - mean;
+                    partial[0] += delta * delta;
+                    partial[1]++;
+                }
+            }
+            return partial;
+        }, (a, b) -> new double[] {a[0] + b[0], a[1] + b[1]}, new double[2]);
+        return Math.sqrt(squares[0] / squares[1]);
+    }
+
+    // ================================================================= time series
+
+    /**
+     * Total time the mask holds, treating each sample as valid until the next one (ms)
+     */
+    public static long durationWhere(long[] timestamps, boolean[] mask) {
+        checkLengths(timestamps.length, mask.length);
+        int intervals = Math.max(0, timestamps.length - 1);
+        return reduceRanges(intervals, (from, to) -> {
+            long duration = 0;
+            for (int i = from; i < to; i++) {
+                if (mask[i]) {
+                    duration += timestamps[i + 1] - timestamps[i];
+                }
+            }
+            return duration;
+        }, Long::sum, 0L);
+    }
+
+    /**
+     * Trapezoidal integral over time in seconds (e.g. km/h samples -> km * 3600)
+     */
+    public static double integrate(long[] timestamps, double[] values) {
+        checkLengths(timestamps.length, values.length);
+        int intervals = Math.max(0, timestamps.length - 1);
+        return reduceRanges(intervals, (from, to) -> {
+            double area = 0;
+            for (int i = from; i < to; i++) {
+                double a = values[i];
+                double b = values[i + 1];
+                if (a == a && b == b) {
+                    area += (timestamps[i + 1] - timestamps[i]) * (a + b) * 0.0005;
+                }
+            }
+            return area;
+        }, Double::sum, 0.0);
+    }
+
+    /**
+     * Trailing mean over the last window rows (fewer at the start); NaN rows are skipped
+     */
+    public static double[] rollingMean(double[] column, int window) {
+        checkWindow(window);
+        double[] result = new double[column.length];
+        double sum = 0;
+        int count = 0;
+        for (int i = 0; i < column.length; i++) {
+            double value = column[i];
+            if (value == value) {
+                sum += value;
+                count++;
+            }
+            if (i >= window) {
+                double leaving = column[i - window];
+                if (leaving == leaving) {
+                    sum -= leaving;
+                    count--;
+                }
+            }
+            result[i] = count > 0 ? sum / count : Double.NaN;
+        }
+        return result;
+    }
+
+    /**
+     * Trailing maximum over the last window rows, O(n) with a monotonic index queue
+     */
+    public static double[] rollingMax(double[] column, int window) {
+        checkWindow(window);
+        double[] result = new double[column.length];
+        int[] queue = new int[column.length];
+        int head = 0;
+        int tail = 0;
+        for (int i = 0; i < column.length; i++) {
+            double value = column[i];
+            if (value == value) {
+                while (tail > head && column[queue[tail - 1]] <= value) {
+                    tail--;
+                }
+                queue[tail++] = i;
+            }
+            while (tail > head && queue[head] <= i - window) {
+                head++;
+            }
+            result[i] = tail > head ? column[queue[head]] : Double.NaN;
+        }
+        return result;
+    }
+
+    /**
+     * Value of the source series at each target time (last sample at or before it; NaN before the first)
+     */
+    public static double[] resample(long[] sourceTimes, double[] sourceValues, long[] targetTimes) {
+        checkLengths(sourceTimes.length, sourceValues.length);
+        double[] result = new double[targetTimes.length];
+        int source = -1;
+        for (int i = 0; i < targetTimes.length; i++) {
+            long time = targetTimes[i];
+            while (source + 1 < sourceTimes.length && sourceTimes[source + 1] <= time) {
+                source++;
+            }
+            result[i] = source >= 0 ? sourceValues[source] : Double.NaN;
+        }
+        return result;
+    }
+
+    // ================================================================= group by
+
+    /**
+     * Rows per key bucket [origin + b*width, origin + (b+1)*width); keys outside are dropped
+     */
+    public static long[] groupCount(double[] keys, double origin, double width, int buckets) {
+        checkBuckets(width, buckets);
+        return reduceRanges(keys.length, (from, to) -> {
+            long[] counts = new long[buckets];
+            for (int i = from; i < to; i++) {
+                int bucket = bucketOf(keys[i], origin, width, buckets);
+                if (bucket >= 0) {
+                    counts[bucket]++;
+                }
+            }
+            return counts;
+        }, (a, b) -> {
+            for (int i = 0; i < buckets; i++) {
+                a[i] += b[i];
+            }
+            return a;
+        }, new long[buckets]);
+    }
+
+    /**
+     * Mean value per key bucket; NaN for empty buckets
+     */
+    public static double[] groupMean(double[] keys, double[] values, double origin, double width, int buckets) {
+        checkLengths(keys.length, values.length);
+        checkBuckets(width, buckets);
+        // Per bucket: [sum, count]
+        double[] totals = reduceRanges(keys.length, (from, to) -> {
+            double[] partial = new double[buckets * 2];
+            for (int i = from; i < to; i++) {
+                double value = values[i];
+                int bucket = bucketOf(keys[i], origin, width, buckets);
+                if (bucket >= 0 && value == value) {
+                    partial[bucket * 2] += value;
+                    partial[bucket * 2 + 1]++;
+                }
+            }
+            return partial;
+        }, (a, b) -> {
+            for (int i = 0; i < a.length; i++) {
+                a[i] += b[i];
+            }
+            return a;
+        }, new double[buckets * 2]);
+
+        double[] means = new double[buckets];
+        for (int i = 0; i < buckets; i++) {
+            means[i] = totals[i * 2 + 1] > 0 ? totals[i * 2] / totals[i * 2 + 1] : Double.NaN;
+        }
+        return means;
+    }
+
+    private static int bucketOf(double key, double origin, double width, int buckets) {
+        double position = (key - origin) / width;
+        if (!(position >= 0) || position >= buckets) {
+            return -1; // also rejects NaN
+        }
+        return (int) position;
+    }
+
+    // ================================================================= partitioning
+
+    interface RangeAction {
+        void apply(int from, int to);
+    }
+
+    interface RangeReducer<T> {
+        T reduce(int from, int to);
+    }
+
+    interface Combiner<T> {
+        T combine(T a, T b);
+    }
+
+    private static int chunkSize(int length) {
+        int parallelism = Math.max(1, ForkJoinPool.getCommonPoolParallelism());
+        return Math.max(MIN_CHUNK, length / (parallelism * 4));
+    }
+
+    private static boolean useParallel(int length) {
+        return parallelEnabled && length >= PARALLEL_THRESHOLD && ForkJoinPool.getCommonPoolParallelism() > 1;
+    }
+
+    static void forEachRange(int length, RangeAction action) {
+        if (!useParallel(length)) {
+            action.apply(0, length);
+            return;
+        }
+        ForkJoinPool.commonPool().invoke(new ActionTask(action, 0, length, chunkSize(length)));
+    }
+
+    /**
+     * Reduce [0, length); empty is returned for length 0 and must not be mutated by combine
+     */
+    static <T> T reduceRanges(int length, RangeReducer<T> reducer, Combiner<T> combiner, T empty) {
+        if (length == 0) {
+            return empty;
+        }
+        if (!useParallel(length)) {
+            return reducer.reduce(0, length);
+        }
+        return ForkJoinPool.commonPool().invoke(new ReduceTask<>(reducer, combiner, 0, length, chunkSize(length)));
+    }
+
+    private static final class ActionTask extends RecursiveAction {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeAction action;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        ActionTask(RangeAction action, int from, int to, int chunk) {
+            this.action = action;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from <= chunk) {
+                action.apply(from, to);
+                return;
+            }
+            int mid = (from + to) >>> 1;
+            invokeAll(new ActionTask(action, from, mid, chunk), new ActionTask(action, mid, to, chunk));
+        }
+    }
+
+    private static final class ReduceTask<T> extends RecursiveTask<T> {
+        private static final long serialVersionUID = 1L;
+
+        private final RangeReducer<T> reducer;
+        private final Combiner<T> combiner;
+        private final int from;
+        private final int to;
+        private final int chunk;
+
+        ReduceTask(RangeReducer<T> reducer, Combiner<T> combiner, int from, int to, int chunk) {
+            this.reducer = reducer;
+            this.combiner = combiner;
+            this.from = from;
+            this.to = to;
+            this.chunk = chunk;
+        }
+
+        @Override
+        protected T compute() {
+            if (to - from <= chunk) {
+                return reducer.reduce(from, to);
+            }
+            int mid = (from + to) >>> 1;
+            ReduceTask<T> left = new ReduceTask<>(reducer, combiner, from, mid, chunk);
+            ReduceTask<T> right = new ReduceTask<>(reducer, combiner, mid, to, chunk);
+            left.fork();
+            T rightResult = right.compute();
+            return combiner.combine(left.join(), rightResult);
+        }
+    }
+
+    // ================================================================= checks
+
+    private static void checkLengths(int a, int b) {
+        if (a != b) {
+            throw new IllegalArgumentException("Column lengths differ: " + a + " vs " + b);
+        }
+    }
+
+    private static void checkWindow(int window) {
+        if (window < 1) {
+            throw new IllegalArgumentException("Window must be at least 1: " + window);
+        }
+    }
+
+    private static void checkBuckets(double width, int buckets) {
+        if (!(width > 0) || buckets < 1 || buckets > 10000) {
+            throw new IllegalArgumentException("Bad buckets: width " + width + ", count " + buckets);
+        }
+    }
+}
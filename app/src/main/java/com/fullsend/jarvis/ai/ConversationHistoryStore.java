@@ -0,0 +1,362 @@
+package com.fullsend.jarvis.ai;
+
+import android.util.Log;
+
+import java.io.BufferedWriter;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStreamWriter;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.locks.ReentrantLock;
+
+/**
+ * Bounded conversation history for long-running AI sessions
+ *
+ * Features:
+ * - Turns are kept in fixed-size segments; only the newest segments stay in memory
+ * - Size- and age-based eviction of whole segments
+ * - Evicted turns are compacted into a small running summary (turn counts, top keywords)
+ * - Evicted turns spill over to a size-capped log file so nothing is silently lost
+ * - Lock-free appends: writers only enqueue, segments are maintained by whichever
+ *   thread next wins the drain lock
+ */
+public class ConversationHistoryStore {
+
+    private static final String TAG = "ConversationHistory";
+
+    public static final int DEFAULT_SEGMENT_SIZE = 32;
+    public static final int DEFAULT_MAX_SEGMENTS = 4;
+    public static final long DEFAULT_MAX_AGE_MS = 30 * 60 * 1000L;
+
+    private static final String SPILL_FILE_NAME = "conversation_history.log";
+    private static final long MAX_SPILL_FILE_BYTES = 512 * 1024L;
+    private static final int MAX_SUMMARY_KEYWORDS = 32;
+    private static final int MIN_KEYWORD_LENGTH = 4;
+
+    private final int segmentSize;
+    private final int maxSegments;
+    private final long maxAgeMs;
+    private final File spillFile;
+
+    // Lock-free append log; drained into segments under drainLock
+    private final ConcurrentLinkedQueue<PendingTurn> pending = new ConcurrentLinkedQueue<>();
+    private final ReentrantLock drainLock = new ReentrantLock();
+
+    // Guarded by drainLock
+    private final ArrayDeque<Segment> segments = new ArrayDeque<>();
+    private int size = 0;
+
+    // Summary of everything that has been evicted from memory
+    private long compactedTurns = 0;
+    private long compactedUserTurns = 0;
+    private final Map<String, Integer> compactedKeywords = new HashMap<>();
+
+    public ConversationHistoryStore(File storageDir) {
+        this(storageDir, DEFAULT_SEGMENT_SIZE, DEFAULT_MAX_SEGMENTS, DEFAULT_MAX_AGE_MS);
+    }
+
+    public ConversationHistoryStore(File storageDir, int segmentSize, int maxSegments, long maxAgeMs) {
+        this.segmentSize = Math.max(1, segmentSize);
+        this.maxSegments = Math.max(1, maxSegments);
+        this.maxAgeMs = maxAgeMs;
+        this.spillFile = storageDir != null ? new File(storageDir, SPILL_FILE_NAME) : null;
+    }
+
+    /**
+     * Append a turn ("User: ..." / "AI: ...") and evict whatever no longer fits
+     */
+    public void add(String turn) {
+        pending.add(new PendingTurn(turn, System.currentTimeMillis()));
+
+        // Opportunistic drain; if another thread is already draining it will pick this turn up
+        if (drainLock.tryLock()) {
+            try {
+                drainPending();
+            } finally {
+                drainLock.unlock();
+            }
+        }
+    }
+
+    /**
+     * Number of turns currently held in memory
+     */
+    public int size() {
+        drainLock.lock();
+        try {
+            drainPending();
+            return size;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    /**
+     * Most recent turns in chronological order
+     */
+    public List<String> recent(int count) {
+        drainLock.lock();
+        try {
+            drainPending();
+            return collectRecent(count);
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private List<String> collectRecent(int count) {
+        int n = Math.min(Math.max(count, 0), size);
+        if (n == 0) {
+            return Collections.emptyList();
+        }
+
+        String[] result = new String[n];
+        int index = n - 1;
+        Iterator<Segment> it = segments.descendingIterator();
+        while (it.hasNext() && index >= 0) {
+            Segment segment = it.next();
+            for (int i = segment.count - 1; i >= 0 && index >= 0; i--) {
+                result[index--] = segment.turns[i];
+            }
+        }
+
+        List<String> list = new ArrayList<>(n);
+        Collections.addAll(list, result);
+        return list;
+    }
+
+    /**
+     * Short description of the turns that were compacted out of memory
+     */
+    public String getSummary() {
+        drainLock.lock();
+        try {
+            drainPending();
+            return buildSummary();
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private String buildSummary() {
+        if (compactedTurns == 0) {
+            return "";
+        }
+
+        StringBuilder summary = new StringBuilder();
+        summary.append("Earlier: ").append(compactedTurns).append(" turns (")
+               .append(compactedUserTurns).append(" from user)");
+
+        List<Map.Entry<String, Integer>> keywords = new ArrayList<>(compactedKeywords.entrySet());
+        Collections.sort(keywords, (a, b) -> b.getValue() - a.getValue());
+        if (!keywords.isEmpty()) {
+            summary.append(", topics: ");
+            int limit = Math.min(5, keywords.size());
+            for (int i = 0; i < limit; i++) {
+                if (i > 0) summary.append(", ");
+                summary.append(keywords.get(i).getKey());
+            }
+        }
+
+        return summary.toString();
+    }
+
+    public long getCompactedTurns() {
+        drainLock.lock();
+        try {
+            drainPending();
+            return compactedTurns;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    public void clear() {
+        drainLock.lock();
+        try {
+            pending.clear();
+            segments.clear();
+            size = 0;
+        } finally {
+            drainLock.unlock();
+        }
+    }
+
+    private void drainPending() {
+        PendingTurn turn;
+        boolean added = false;
+        while ((turn = pending.poll()) != null) {
+            Segment tail = segments.peekLast();
+            if (tail == null || tail.isFull()) {
+                tail = new Segment(segmentSize);
+                segments.addLast(tail);
+            }
+            tail.add(turn.text, turn.timestamp);
+            size++;
+            added = true;
+        }
+
+        if (added) {
+            evict(System.currentTimeMillis());
+        }
+    }
+
+    private void evict(long now) {
+        List<Segment> evicted = null;
+
+        // Size bound: drop the oldest segments once we exceed the segment budget
+        while (segments.size() > maxSegments) {
+            if (evicted == null) evicted = new ArrayList<>();
+            evicted.add(removeOldest());
+        }
+
+        // Age bound: drop full segments whose newest turn is older than maxAgeMs
+        while (maxAgeMs > 0 && segments.size() > 1) {
+            Segment oldest = segments.peekFirst();
+            if (now - oldest.lastTimestamp() <= maxAgeMs) {
+                break;
+            }
+            if (evicted == null) evicted = new ArrayList<>();
+            evicted.add(removeOldest());
+        }
+
+        if (evicted != null) {
+            for (Segment segment : evicted) {
+                compact(segment);
+            }
+            spill(evicted);
+        }
+    }
+
+    private Segment removeOldest() {
+        Segment segment = segments.pollFirst();
+        size -= segment.count;
+        return segment;
+    }
+
+    private void compact(Segment segment) {
+        for (int i = 0; i < segment.count; i++) {
+            String turn = segment.turns[i];
+            compactedTurns++;
+
+            if (turn.startsWith("User:")) {
+                compactedUserTurns++;
+                collectKeywords(turn);
+            }
+        }
+    }
+
+    private void collectKeywords(String turn) {
+        int length = turn.length();
+        int start = -1;
+        for (int i = 5; i <= length; i++) {
+            boolean letter = i < length && Character.isLetter(turn.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                if (i - start >= MIN_KEYWORD_LENGTH) {
+                    addKeyword(turn.substring(start, i).toLowerCase());
+                }
+                start = -1;
+            }
+        }
+    }
+
+    private void addKeyword(String keyword) {
+        Integer count = compactedKeywords.get(keyword);
+        if (count != null) {
+            compactedKeywords.put(keyword, count + 1);
+            return;
+        }
+
+        if (compactedKeywords.size() >= MAX_SUMMARY_KEYWORDS) {
+            // Make room by dropping the least frequent keyword
+            String weakest = null;
+            int weakestCount = Integer.MAX_VALUE;
+            for (Map.Entry<String, Integer> entry : compactedKeywords.entrySet()) {
+                if (entry.getValue() < weakestCount) {
+                    weakestCount = entry.getValue();
+                    weakest = entry.getKey();
+                }
+            }
+            compactedKeywords.remove(weakest);
+        }
+        compactedKeywords.put(keyword, 1);
+    }
+
+    private void spill(List<Segment> evicted) {
+        if (spillFile == null) {
+            return;
+        }
+
+        try {
+            if (spillFile.length() > MAX_SPILL_FILE_BYTES) {
+                File rotated = new File(spillFile.getPath() + ".1");
+                if (rotated.exists() && !rotated.delete()) {
+                    Log.w(TAG, "Could not delete rotated history file");
+                }
+                if (!spillFile.renameTo(rotated)) {
+                    Log.w(TAG, "Could not rotate history file");
+                }
+            }
+
+            try (BufferedWriter writer = new BufferedWriter(new OutputStreamWriter(
+                    new FileOutputStream(spillFile, true), StandardCharsets.UTF_8))) {
+                for (Segment segment : evicted) {
+                    for (int i = 0; i < segment.count; i++) {
+                        writer.write(Long.toString(segment.timestamps[i]));
+                        writer.write('\t');
+                        writer.write(segment.turns[i].replace('\n', ' '));
+                        writer.newLine();
+                    }
+                }
+            }
+        } catch (IOException e) {
+            Log.w(TAG, "Error spilling conversation history to disk", e);
+        }
+    }
+
+    private static class PendingTurn {
+        final String text;
+        final long timestamp;
+
+        PendingTurn(String text, long timestamp) {
+            this.text = text;
+            this.timestamp = timestamp;
+        }
+    }
+
+    private static class Segment {
+        final String[] turns;
+        final long[] timestamps;
+        int count;
+
+        Segment(int capacity) {
+            this.turns = new String[capacity];
+            this.timestamps = new long[capacity];
+        }
+
+        boolean isFull() {
+            return count == turns.length;
+        }
+
+        void add(String turn, long timestamp) {
+            turns[count] = turn;
+            timestamps[count] = timestamp;
+            count++;
+        }
+
+        long lastTimestamp() {
+            return count == 0 ? 0 : timestamps[count - 1];
+        }
+    }
+}
@@ -0,0 +1,539 @@
+package com.fullsend.jarvis.ai;
+
+import android.content.Context;
+import android.content.SharedPreferences;
+import android.os.Build;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.CountDownLatch;
+
+/**
+ * Storage and CPU micro-benchmark suite for the current device
+ *
+ * Features:
+ * - Sequential and random read/write throughput with FileChannel at several block sizes
+ * - Memory-mapped sequential write/read throughput
+ * - fsync latency percentiles
+ * - CPU throughput with blackholed results, single-threaded and on every core
+ * - A composite score and tier stored per device build; RuntimeTuning seeds its poll and
+ *   log flush defaults from it instead of guesses
+ * - Runs are rejected when other processes keep the CPU busy before or during the suite, so
+ *   a result taken under load is never stored for the build
+ *
+ * Mapped buffers are left to the garbage collector, as there is no public API to release
+ * them early. Read numbers include the page cache (apps cannot drop it); they are still comparable
+ * between devices because every device runs the same file sizes.
+ */
+public class DeviceBenchmark {
+
+    private static final String TAG = "DeviceBenchmark";
+
+    private static final String PREFS_NAME = "jarvis_benchmark";
+    private static final String KEY_DEVICE = "device_id";
+
+    private static final int[] BLOCK_SIZES = {4 * 1024, 64 * 1024, 1024 * 1024};
+    private static final int FILE_SIZE = 8 * 1024 * 1024;
+    private static final int RANDOM_BLOCK_SIZE = 4 * 1024;
+    private static final int RANDOM_OPERATIONS = 512;
+    private static final int FSYNC_SAMPLES = 20;
+    private static final long CPU_RUN_NANOS = 200L * 1000 * 1000;
+    private static final int CPU_CHUNK = 1000;
+
+    // CPU use by other processes, as a fraction of all cores, above which a run is rejected
+    static final double MAX_FOREIGN_CPU_LOAD = 0.2;
+    private static final long IDLE_CHECK_MS = 500;
+
+    // Reference values that score 1000 (a mid-range 2020 phone)
+    private static final double REFERENCE_SEQ_WRITE_MBPS = 150;
+    private static final double REFERENCE_RANDOM_READ_MBPS = 40;
+    private static final double REFERENCE_FSYNC_MS = 4;
+    private static final double REFERENCE_CPU_OPS_PER_MS = 150000;
+
+    // Results are published here so the JIT cannot drop the CPU work
+    private static volatile long blackhole;
+
+    private final Context context;
+    private final SharedPreferences prefs;
+    private final ProcSampler procSampler = new ProcSampler();
+
+    public static class Result {
+        public String deviceId;
+        public long timestamp;
+        public final Map<String, Double> ioThroughputMBps = new LinkedHashMap<>();
+        public double fsyncLatencyP50Ms;
+        public double fsyncLatencyP95Ms;
+        public double cpuSingleThreadOpsPerMs;
+        public double cpuMultiThreadOpsPerMs;
+        public int cpuCores;
+        public double score;
+        public double foreignCpuLoad;    // measured during the run, not stored
+
+        /**
+         * Coarse capability class derived from the score
+         */
+        public String getTier() {
+            if (score >= 1000) return "HIGH";
+            if (score >= 500) return "MEDIUM";
+            return "LOW";
+        }
+
+        /**
+         * Multi-core speedup over a single thread
+         */
+        public double getCpuScaling() {
+            return cpuSingleThreadOpsPerMs > 0 ? cpuMultiThreadOpsPerMs / cpuSingleThreadOpsPerMs : 0;
+        }
+
+        /**
+         * Suggested interval between live-data polls
+         */
+        public long getSuggestedPollIntervalMs() {
+            switch (getTier()) {
+                case "HIGH": return 250;
+                case "MEDIUM": return 500;
+                default: return 1000;
+            }
+        }
+
+        /**
+         * Suggested interval between log flushes; slow fsync means batching more per flush
+         */
+        public long getSuggestedLogFlushIntervalMs() {
+            return Math.max(1000, Math.min(30000, (long) (fsyncLatencyP95Ms * 500)));
+        }
+
+        public String getReport() {
+            StringBuilder report = new StringBuilder();
+            report.append("Device score: ").append(String.format("%.0f", score)).append(" (").append(getTier()).append(")\n");
+            for (Map.Entry<String, Double> entry : ioThroughputMBps.entrySet()) {
+                report.append("- ").append(entry.getKey()).append(": ")
+                      .append(String.format("%.1f", entry.getValue())).append(" MB/s\n");
+            }
+            report.append("- fsync: p50 ").append(String.format("%.2f", fsyncLatencyP50Ms))
+                  .append("ms, p95 ").append(String.format("%.2f", fsyncLatencyP95Ms)).append("ms\n");
+            report.append("- CPU: ").append(String.format("%.0f", cpuSingleThreadOpsPerMs)).append(" ops/ms single, ")
+                  .append(String.format("%.0f", cpuMultiThreadOpsPerMs)).append(" ops/ms on ").append(cpuCores)
+                  .append(" cores (x").append(String.format("%.1f", getCpuScaling())).append(")\n");
+            return report.toString();
+        }
+    }
+
+    public DeviceBenchmark(Context context) {
+        this.context = context;
+        this.prefs = context.getSharedPreferences(PREFS_NAME, Context.MODE_PRIVATE);
+    }
+
+    /**
+     * Benchmark stored for this device build, or null if it has not been run yet
+     */
+    public Result getStoredResult() {
+        if (!getDeviceId().equals(prefs.getString(KEY_DEVICE, null))) {
+            return null;
+        }
+
+        Result result = new Result();
+        result.deviceId = getDeviceId();
+        result.timestamp = prefs.getLong("timestamp", 0);
+        for (String name : ioTestNames()) {
+            result.ioThroughputMBps.put(name, (double) prefs.getFloat("io_" + name, 0));
+        }
+        result.fsyncLatencyP50Ms = prefs.getFloat("fsync_p50", 0);
+        result.fsyncLatencyP95Ms = prefs.getFloat("fsync_p95", 0);
+        result.cpuSingleThreadOpsPerMs = prefs.getFloat("cpu_single", 0);
+        result.cpuMultiThreadOpsPerMs = prefs.getFloat("cpu_multi", 0);
+        result.cpuCores = prefs.getInt("cpu_cores", 1);
+        result.score = prefs.getFloat("score", 0);
+        return result;
+    }
+
+    /**
+     * Stored result, running the suite first if this device build has none; null if the run
+     * was rejected
+     */
+    public synchronized Result runIfNeeded() {
+        Result stored = getStoredResult();
+        return stored != null ? stored : run();
+    }
+
+    /**
+     * Run the full suite and store the result; null if the run was rejected
+     */
+    public synchronized Result run() {
+        Result result = measure();
+        if (result != null) {
+            store(result);
+        }
+        return result;
+    }
+
+    /**
+     * Run the full suite (a few seconds of I/O and CPU) without storing it. Returns null when
+     * other processes keep the CPU busy just before or during the run; the caller should try
+     * again later rather than keep numbers that would stand for the whole build.
+     */
+    public synchronized Result measure() {
+        ProcSampler.Sample idleCheck = procSampler.sample();
+        try {
+            Thread.sleep(IDLE_CHECK_MS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return null;
+        }
+        ProcSampler.Sample runStart = procSampler.sample();
+        double load = foreignCpuLoad(idleCheck, runStart);
+        if (load > MAX_FOREIGN_CPU_LOAD) {
+            Log.i(TAG, "Device busy (" + String.format("%.0f", load * 100) + "% CPU), benchmark postponed");
+            return null;
+        }
+
+        Log.i(TAG, "Running device benchmark...");
+        long start = System.currentTimeMillis();
+
+        Result result = new Result();
+        result.deviceId = getDeviceId();
+        result.timestamp = start;
+
+        File file = new File(context.getCacheDir(), "benchmark.tmp");
+        try {
+            runStorageBenchmarks(file, result);
+        } catch (IOException e) {
+            Log.e(TAG, "Storage benchmark failed", e);
+        } finally {
+            file.delete();
+        }
+
+        runCpuBenchmarks(result);
+        result.foreignCpuLoad = foreignCpuLoad(runStart, procSampler.sample());
+        if (result.foreignCpuLoad > MAX_FOREIGN_CPU_LOAD) {
+            Log.i(TAG, "Discarding device benchmark taken under " + String.format("%.0f", result.foreignCpuLoad * 100) + "% outside CPU load");
+            return null;
+        }
+        result.score = computeScore(result);
+
+        Log.i(TAG, "Device benchmark completed in " + (System.currentTimeMillis() - start) + "ms\n" + result.getReport());
+        return result;
+    }
+
+    /**
+     * Fixed amount of blackholed CPU work; used for quick timing checks between full runs
+     */
+    public static long runCpuKernel(int iterations) {
+        long acc = cpuKernel(iterations, 0x9E3779B97F4A7C15L);
+        blackhole ^= acc;
+        return acc;
+    }
+
+    // Storage
+
+    private void runStorageBenchmarks(File file, Result result) throws IOException {
+        RandomAccessFile raf = new RandomAccessFile(file, "rw");
+        try {
+            FileChannel channel = raf.getChannel();
+            raf.setLength(FILE_SIZE);
+
+            for (int blockSize : BLOCK_SIZES) {
+                String label = blockLabel(blockSize);
+                result.ioThroughputMBps.put("seq_write_" + label, sequentialWrite(channel, blockSize));
+                result.ioThroughputMBps.put("seq_read_" + label, sequentialRead(channel, blockSize));
+            }
+
+            result.ioThroughputMBps.put("random_write_4k", randomAccess(channel, true));
+            result.ioThroughputMBps.put("random_read_4k", randomAccess(channel, false));
+
+            result.ioThroughputMBps.put("mmap_write", mappedWrite(channel));
+            result.ioThroughputMBps.put("mmap_read", mappedRead(channel));
+
+            double[] fsync = fsyncLatencies(channel);
+            result.fsyncLatencyP50Ms = fsync[fsync.length / 2];
+            result.fsyncLatencyP95Ms = fsync[(int) Math.min(fsync.length - 1, Math.ceil(fsync.length * 0.95) - 1)];
+        } finally {
+            raf.close();
+        }
+    }
+
+    private static double sequentialWrite(FileChannel channel, int blockSize) throws IOException {
+        ByteBuffer buffer = filledBuffer(blockSize);
+        long start = System.nanoTime();
+        for (long position = 0; position < FILE_SIZE; position += blockSize) {
+            buffer.clear();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, position + buffer.position());
+            }
+        }
+        channel.force(false);
+        return throughput(FILE_SIZE, System.nanoTime() - start);
+    }
+
+    private static double sequentialRead(FileChannel channel, int blockSize) throws IOException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(blockSize);
+        long checksum = 0;
+        long start = System.nanoTime();
+        for (long position = 0; position < FILE_SIZE; position += blockSize) {
+            buffer.clear();
+            while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                // Keep reading until the block is full
+            }
+            checksum += buffer.get(0);
+        }
+        long elapsed = System.nanoTime() - start;
+        blackhole ^= checksum;
+        return throughput(FILE_SIZE, elapsed);
+    }
+
+    private static double randomAccess(FileChannel channel, boolean write) throws IOException {
+        ByteBuffer buffer = filledBuffer(RANDOM_BLOCK_SIZE);
+        Random random = new Random(42);
+        int blocks = FILE_SIZE / RANDOM_BLOCK_SIZE;
+        long checksum = 0;
+
+        long start = System.nanoTime();
+        for (int i = 0; i < RANDOM_OPERATIONS; i++) {
+            long position = (long) random.nextInt(blocks) * RANDOM_BLOCK_SIZE;
+            buffer.clear();
+            if (write) {
+                while (buffer.hasRemaining()) {
+                    channel.write(buffer, position + buffer.position());
+                }
+            } else {
+                while (buffer.hasRemaining() && channel.read(buffer, position + buffer.position()) > 0) {
+                    // Keep reading until the block is full
+                }
+                checksum += buffer.get(0);
+            }
+        }
+        if (write) {
+            channel.force(false);
+        }
+        long elapsed = System.nanoTime() - start;
+        blackhole ^= checksum;
+        return throughput((long) RANDOM_OPERATIONS * RANDOM_BLOCK_SIZE, elapsed);
+    }
+
+    private static double mappedWrite(FileChannel channel) throws IOException {
+        byte[] block = new byte[64 * 1024];
+        Arrays.fill(block, (byte) 0x5A);
+        long start = System.nanoTime();
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, FILE_SIZE);
+        while (mapped.remaining() >= block.length) {
+            mapped.put(block);
+        }
+        mapped.force();
+        return throughput(FILE_SIZE, System.nanoTime() - start);
+    }
+
+    private static double mappedRead(FileChannel channel) throws IOException {
+        byte[] block = new byte[64 * 1024];
+        long checksum = 0;
+        long start = System.nanoTime();
+        MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, FILE_SIZE);
+        while (mapped.remaining() >= block.length) {
+            mapped.get(block);
+            checksum += block[0];
+        }
+        long elapsed = System.nanoTime() - start;
+        blackhole ^= checksum;
+        return throughput(FILE_SIZE, elapsed);
+    }
+
+    /**
+     * Sorted latencies of a 4 KB write followed by fsync, in milliseconds
+     */
+    private static double[] fsyncLatencies(FileChannel channel) throws IOException {
+        ByteBuffer buffer = filledBuffer(RANDOM_BLOCK_SIZE);
+        double[] latencies = new double[FSYNC_SAMPLES];
+        for (int i = 0; i < FSYNC_SAMPLES; i++) {
+            buffer.clear();
+            buffer.put(0, (byte) i);
+            long start = System.nanoTime();
+            while (buffer.hasRemaining()) {
+                channel.write(buffer, buffer.position());
+            }
+            channel.force(false);
+            latencies[i] = (System.nanoTime() - start) / 1e6;
+        }
+        Arrays.sort(latencies);
+        return latencies;
+    }
+
+    // CPU
+
+    private static void runCpuBenchmarks(Result result) {
+        int cores = Runtime.getRuntime().availableProcessors();
+        result.cpuCores = cores;
+
+        // Warm up so the JIT has compiled the kernel before we measure
+        runCpuKernel(200000);
+
+        result.cpuSingleThreadOpsPerMs = measureCpu(1);
+        result.cpuMultiThreadOpsPerMs = cores > 1 ? measureCpu(cores) : result.cpuSingleThreadOpsPerMs;
+    }
+
+    private static double measureCpu(int threads) {
+        final long[] operations = new long[threads];
+        final CountDownLatch ready = new CountDownLatch(threads);
+        final CountDownLatch go = new CountDownLatch(1);
+        Thread[] workers = new Thread[threads];
+
+        for (int t = 0; t < threads; t++) {
+            final int index = t;
+            workers[t] = new Thread(() -> {
+                long seed = 0x9E3779B97F4A7C15L * (index + 1);
+                long count = 0;
+                ready.countDown();
+                try {
+                    go.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                long deadline = System.nanoTime() + CPU_RUN_NANOS;
+                while (System.nanoTime() < deadline) {
+                    seed = cpuKernel(CPU_CHUNK, seed);
+                    count += CPU_CHUNK;
+                }
+                operations[index] = count;
+                blackhole ^= seed;
+            }, "DeviceBenchmark-" + t);
+            workers[t].start();
+        }
+
+        try {
+            ready.await();
+            long start = System.nanoTime();
+            go.countDown();
+            long total = 0;
+            for (int t = 0; t < threads; t++) {
+                workers[t].join();
+                total += operations[t];
+            }
+            double elapsedMs = (System.nanoTime() - start) / 1e6;
+            return total / elapsedMs;
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+            return 0;
+        }
+    }
+
+    /**
+     * Mixed integer and floating point work; every result feeds the next iteration
+     */
+    private static long cpuKernel(int iterations, long seed) {
+        long x = seed;
+        double y = 1.0;
+        for (int i = 0; i < iterations; i++) {
+            x ^= x << 13;
+            x ^= x >>> 7;
+            x ^= x << 17;
+            y = y * 1.0000001 + (x & 0xFF) * 1e-9;
+        }
+        return x ^ Double.doubleToRawLongBits(y);
+    }
+
+    // Scoring and storage
+
+    /**
+     * Share of all CPU time between the samples that was spent outside this process; 0 when
+     * /proc does not tell
+     */
+    static double foreignCpuLoad(ProcSampler.Sample before, ProcSampler.Sample after) {
+        long total = ProcSampler.counterDelta(before.systemTotalTicks, after.systemTotalTicks);
+        long idle = ProcSampler.counterDelta(before.systemIdleTicks, after.systemIdleTicks);
+        long user = ProcSampler.counterDelta(before.processUserTicks, after.processUserTicks);
+        long system = ProcSampler.counterDelta(before.processSystemTicks, after.processSystemTicks);
+        if (total <= 0 || idle < 0 || user < 0 || system < 0) {
+            return 0;
+        }
+        return Math.max(0.0, (double) (total - idle - user - system) / total);
+    }
+
+    private static double computeScore(Result result) {
+        Double seqWrite = result.ioThroughputMBps.get("seq_write_" + blockLabel(64 * 1024));
+        Double randomRead = result.ioThroughputMBps.get("random_read_4k");
+
+        // Geometric mean of ratios to the reference device, so no single test dominates
+        double product = 1.0;
+        int parts = 0;
+        if (seqWrite != null && seqWrite > 0) {
+            product *= seqWrite / REFERENCE_SEQ_WRITE_MBPS;
+            parts++;
+        }
+        if (randomRead != null && randomRead > 0) {
+            product *= randomRead / REFERENCE_RANDOM_READ_MBPS;
+            parts++;
+        }
+        if (result.fsyncLatencyP50Ms > 0) {
+            product *= REFERENCE_FSYNC_MS / result.fsyncLatencyP50Ms;
+            parts++;
+        }
+        if (result.cpuMultiThreadOpsPerMs > 0) {
+            product *= result.cpuMultiThreadOpsPerMs / REFERENCE_CPU_OPS_PER_MS;
+            parts++;
+        }
+        return parts == 0 ? 0 : 1000 * Math.pow(product, 1.0 / parts);
+    }
+
+    /**
+     * Keep the result for this device build
+     */
+    public void store(Result result) {
+        SharedPreferences.Editor editor = prefs.edit()
+                .putString(KEY_DEVICE, result.deviceId)
+                .putLong("timestamp", result.timestamp)
+                .putFloat("fsync_p50", (float) result.fsyncLatencyP50Ms)
+                .putFloat("fsync_p95", (float) result.fsyncLatencyP95Ms)
+                .putFloat("cpu_single", (float) result.cpuSingleThreadOpsPerMs)
+                .putFloat("cpu_multi", (float) result.cpuMultiThreadOpsPerMs)
+                .putInt("cpu_cores", result.cpuCores)
+                .putFloat("score", (float) result.score);
+        for (Map.Entry<String, Double> entry : result.ioThroughputMBps.entrySet()) {
+            editor.putFloat("io_" + entry.getKey(), entry.getValue().floatValue());
+        }
+        editor.apply();
+    }
+
+    /**
+     * Results are tied to the build fingerprint, so an OS update triggers a re-run
+     */
+    private static String getDeviceId() {
+        return Build.FINGERPRINT != null ? Build.FINGERPRINT : Build.MANUFACTURER + "/" + Build.MODEL;
+    }
+
+    private static String[] ioTestNames() {
+        String[] names = new String[BLOCK_SIZES.length * 2 + 4];
+        int i = 0;
+        for (int blockSize : BLOCK_SIZES) {
+            names[i++] = "seq_write_" + blockLabel(blockSize);
+            names[i++] = "seq_read_" + blockLabel(blockSize);
+        }
+        names[i++] = "random_write_4k";
+        names[i++] = "random_read_4k";
+        names[i++] = "mmap_write";
+        names[i] = "mmap_read";
+        return names;
+    }
+
+    private static String blockLabel(int blockSize) {
+        return blockSize >= 1024 * 1024 ? (blockSize / (1024 * 1024)) + "m" : (blockSize / 1024) + "k";
+    }
+
+    private static ByteBuffer filledBuffer(int size) {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(size);
+        for (int i = 0; i < size; i++) {
+            buffer.put(i, (byte) (i * 31));
+        }
+        return buffer;
+    }
+
+    private static double throughput(long bytes, long nanos) {
+        return nanos <= 0 ? 0 : (bytes / (1024.0 * 1024.0)) / (nanos / 1e9);
+    }
+}
@@ -0,0 +1,166 @@
+package com.fullsend.jarvis.ai;
+
+import java.util.Arrays;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * In-memory columnar log of live vehicle data for the current drive
+ *
+ * Features:
+ * - One time series per channel (rpm, speed, coolant_temp, ...), stored as a primitive
+ *   long[] of timestamps and a double[] of values - no per-sample objects
+ * - Channels are sampled independently, so each has its own timestamps; valuesAt()
+ *   aligns one channel onto another's timestamps for cross-channel analyses
+ * - Bounded per channel: when full, the oldest half is dropped (amortized O(1) appends)
+ * - Readers get copies, so generated code can never modify the recorded data
+ * - snapshot() copies a channel's timestamps and values under one lock; reading them
+ *   with two separate calls can straddle an append and give columns of different lengths
+ * - Lives in the ai package so analyses do not depend on the OBD classes; the OBD
+ *   screen records into it
+ */
+public class DriveLog {
+
+    public static final String CHANNEL_RPM = "rpm";
+    public static final String CHANNEL_SPEED = "speed";
+    public static final String CHANNEL_COOLANT_TEMP = "coolant_temp";
+    public static final String CHANNEL_ENGINE_LOAD = "engine_load";
+    public static final String CHANNEL_THROTTLE = "throttle";
+    public static final String CHANNEL_MAF = "maf";
+    public static final String CHANNEL_FUEL_PRESSURE = "fuel_pressure";
+    public static final String CHANNEL_TIMING_ADVANCE = "timing_advance";
+
+    private static final int INITIAL_CAPACITY = 1024;
+    private static final int MAX_SAMPLES_PER_CHANNEL = 1 << 17; // ~36 h at 1 Hz, 2 MB per channel
+
+    private static final DriveLog INSTANCE = new DriveLog();
+
+    private final Map<String, Series> channels = new ConcurrentHashMap<>();
+
+    private static final class Series {
+        long[] timestamps = new long[INITIAL_CAPACITY];
+        double[] values = new double[INITIAL_CAPACITY];
+        int size;
+
+        synchronized void append(long timestamp, double value) {
+            // Keep time monotonic so durations and resampling stay valid
+            if (size > 0 && timestamp < timestamps[size - 1]) {
+                timestamp = timestamps[size - 1];
+            }
+            if (size == timestamps.length) {
+                if (size >= MAX_SAMPLES_PER_CHANNEL) {
+                    int keep = size / 2;
+                    System.arraycopy(timestamps, size - keep, timestamps, 0, keep);
+                    System.arraycopy(values, size - keep, values, 0, keep);
+                    size = keep;
+                } else {
+                    int capacity = Math.min(MAX_SAMPLES_PER_CHANNEL, size * 2);
+                    timestamps = Arrays.copyOf(timestamps, capacity);
+                    values = Arrays.copyOf(values, capacity);
+                }
+            }
+            timestamps[size] = timestamp;
+            values[size] = value;
+            size++;
+        }
+
+        synchronized long[] timestamps() {
+            return Arrays.copyOf(timestamps, size);
+        }
+
+        synchronized double[] values() {
+            return Arrays.copyOf(values, size);
+        }
+
+        synchronized Snapshot snapshot() {
+            return new Snapshot(Arrays.copyOf(timestamps, size), Arrays.copyOf(values, size));
+        }
+
+        synchronized double[] valuesAt(long[] targetTimes) {
+            return ColumnarAnalytics.resample(Arrays.copyOf(timestamps, size), Arrays.copyOf(values, size), targetTimes);
+        }
+
+        synchronized int size() {
+            return size;
+        }
+    }
+
+    /**
+     * One channel's timestamps and values as of a single moment; both arrays have the same length
+     */
+    public static final class Snapshot {
+        public final long[] timestamps;
+        public final double[] values;
+
+        Snapshot(long[] timestamps, double[] values) {
+            this.timestamps = timestamps;
+            this.values = values;
+        }
+
+        public int size() {
+            return timestamps.length;
+        }
+
+        public double[] valuesAt(long[] targetTimes) {
+            return ColumnarAnalytics.resample(timestamps, values, targetTimes);
+        }
+    }
+
+    public static DriveLog get() {
+        return INSTANCE;
+    }
+
+    /**
+     * Append one sample; timestamp is in ms on a monotonic clock (SystemClock.elapsedRealtime)
+     */
+    public void record(String channel, long timestampMs, double value) {
+        Series series = channels.get(channel);
+        if (series == null) {
+            series = channels.computeIfAbsent(channel, name -> new Series());
+        }
+        series.append(timestampMs, value);
+    }
+
+    public long[] timestamps(String channel) {
+        Series series = channels.get(channel);
+        return series != null ? series.timestamps() : new long[0];
+    }
+
+    public double[] values(String channel) {
+        Series series = channels.get(channel);
+        return series != null ? series.values() : new double[0];
+    }
+
+    public Snapshot snapshot(String channel) {
+        Series series = channels.get(channel);
+        return series != null ? series.snapshot() : new Snapshot(new long[0], new double[0]);
+    }
+
+    /**
+     * The channel's value at each of the given times (last sample at or before it; NaN before the first)
+     */
+    public double[] valuesAt(String channel, long[] timestamps) {
+        Series series = channels.get(channel);
+        if (series == null) {
+            double[] missing = new double[timestamps.length];
+            Arrays.fill(missing, Double.NaN);
+            return missing;
+        }
+        return series.valuesAt(timestamps);
+    }
+
+    public int size(String channel) {
+        Series series = channels.get(channel);
+        return series != null ? series.size() : 0;
+    }
+
+    public String[] channels() {
+        String[] names = channels.keySet().toArray(new String[0]);
+        Arrays.sort(names);
+        return names;
+    }
+
+    public void clear() {
+        channels.clear();
+    }
+}
@@ -0,0 +1,92 @@
+package com.fullsend.jarvis.ai;
+
+/**
+ * Output sink for one code execution
+ *
+ * Features:
+ * - Owned by a single job and passed to it explicitly, so concurrent executions never share
+ *   System.out or capture output from unrelated threads
+ * - Enforces the character limit as text is written; once it is hit the job is stopped
+ *   instead of buffering output that would be thrown away
+ * - Every write is a cancellation point: an interrupted job (timeout) stops at its next print
+ */
+public class ExecutionOutput {
+
+    private final StringBuilder buffer;
+    private final int maxLength;
+    private boolean truncated;
+
+    /**
+     * Thrown into the running job when it writes past the output limit
+     */
+    public static class OutputLimitExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        OutputLimitExceededException(int maxLength) {
+            super("Output limit of " + maxLength + " characters reached");
+        }
+    }
+
+    /**
+     * Thrown into the running job when it has been cancelled
+     */
+    public static class ExecutionCancelledException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ExecutionCancelledException() {
+            super("Execution cancelled");
+        }
+    }
+
+    public ExecutionOutput(int maxLength) {
+        this.maxLength = maxLength;
+        this.buffer = new StringBuilder(Math.min(maxLength, 1024));
+    }
+
+    public void print(Object value) {
+        append(String.valueOf(value));
+    }
+
+    public void println(Object value) {
+        append(String.valueOf(value));
+        append("\n");
+    }
+
+    public void println() {
+        append("\n");
+    }
+
+    private synchronized void append(String text) {
+        if (Thread.currentThread().isInterrupted()) {
+            throw new ExecutionCancelledException();
+        }
+        if (truncated) {
+            throw new OutputLimitExceededException(maxLength);
+        }
+
+        int room = maxLength - buffer.length();
+        if (text.length() <= room) {
+            buffer.append(text);
+            return;
+        }
+        buffer.append(text, 0, Math.max(0, room));
+        truncated = true;
+        throw new OutputLimitExceededException(maxLength);
+    }
+
+    public synchronized boolean isTruncated() {
+        return truncated;
+    }
+
+    public synchronized int length() {
+        return buffer.length();
+    }
+
+    /**
+     * Everything written so far; safe to call while the job is still running
+     */
+    @Override
+    public synchronized String toString() {
+        return buffer.toString();
+    }
+}
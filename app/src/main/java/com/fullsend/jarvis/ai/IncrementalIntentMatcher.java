@@ -0,0 +1,157 @@
+package com.fullsend.jarvis.ai;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.regex.Pattern;
+
+/**
+ * Phrase-based intent matcher for partial speech transcripts
+ *
+ * Each intent is a list of phrases derived from the JarvisAI command patterns; a phrase
+ * matches when all of its words are heard as whole words, in order. Confidence is the
+ * fraction of the best phrase heard so far, so it grows as the user keeps talking. A match
+ * is "stable" once the same intent has fully matched on consecutive partials, which is when
+ * it is safe to start preparing the response. It is only ever a prediction: the response is
+ * used if the final transcript is recognized as the same command.
+ */
+public class IncrementalIntentMatcher {
+
+    private static final int STABLE_PARTIALS = 2;
+
+    private static final Pattern PLAIN_WORDS = Pattern.compile("[A-Za-z0-9]+(\\s+[A-Za-z0-9]+)*");
+
+    private final Map<String, String[][]> intents = new LinkedHashMap<>();
+
+    // Per-utterance state
+    private final List<String> heardWords = new ArrayList<>();
+    private String lastIntent = null;
+    private int consecutiveMatches = 0;
+
+    public static class Match {
+        public final String intent;
+        public final double confidence;
+        public final boolean stable;
+
+        Match(String intent, double confidence, boolean stable) {
+            this.intent = intent;
+            this.confidence = confidence;
+            this.stable = stable;
+        }
+    }
+
+    /**
+     * Build the phrases of the given intents from their command patterns, so partials are
+     * matched against the same table as final transcripts
+     */
+    public IncrementalIntentMatcher(Map<String, List<String>> commandPatterns, Collection<String> intentNames) {
+        for (String intent : intentNames) {
+            List<String[]> phrases = new ArrayList<>();
+            List<String> patterns = commandPatterns.get(intent);
+            if (patterns != null) {
+                for (String pattern : patterns) {
+                    String[] words = phraseWords(pattern);
+                    if (words != null) {
+                        phrases.add(words);
+                    }
+                }
+            }
+            if (!phrases.isEmpty()) {
+                intents.put(intent, phrases.toArray(new String[0][]));
+            }
+        }
+    }
+
+    /**
+     * Words of a "(?i).*word.*word.*" command pattern, in order; null for patterns using any
+     * other regex syntax (alternation, optional parts), which have no word-for-word phrase
+     */
+    static String[] phraseWords(String pattern) {
+        String body = pattern.startsWith("(?i)") ? pattern.substring(4) : pattern;
+        List<String> words = new ArrayList<>();
+        for (String part : body.split("\\.\\*")) {
+            String trimmed = part.trim();
+            if (trimmed.isEmpty()) {
+                continue;
+            }
+            if (!PLAIN_WORDS.matcher(trimmed).matches()) {
+                return null;
+            }
+            for (String word : trimmed.split("\\s+")) {
+                words.add(word.toLowerCase());
+            }
+        }
+        return words.isEmpty() ? null : words.toArray(new String[0]);
+    }
+
+    /**
+     * Start a new utterance
+     */
+    public void reset() {
+        heardWords.clear();
+        lastIntent = null;
+        consecutiveMatches = 0;
+    }
+
+    /**
+     * Feed the latest partial transcript; each partial replaces the previous one, since the
+     * recognizer may revise earlier words
+     */
+    public Match update(String partial) {
+        heardWords.clear();
+        tokenize(partial);
+
+        String bestIntent = null;
+        double bestConfidence = 0;
+        for (Map.Entry<String, String[][]> entry : intents.entrySet()) {
+            double confidence = score(entry.getValue());
+            if (confidence > bestConfidence) {
+                bestConfidence = confidence;
+                bestIntent = entry.getKey();
+            }
+        }
+
+        if (bestIntent != null && bestConfidence >= 1.0 && bestIntent.equals(lastIntent)) {
+            consecutiveMatches++;
+        } else {
+            consecutiveMatches = bestConfidence >= 1.0 ? 1 : 0;
+        }
+        lastIntent = bestIntent;
+
+        return new Match(bestIntent, bestConfidence, consecutiveMatches >= STABLE_PARTIALS);
+    }
+
+    public List<String> getIntents() {
+        return new ArrayList<>(intents.keySet());
+    }
+
+    // Fraction of the best phrase whose words were heard in order
+    private double score(String[][] phrases) {
+        double best = 0;
+        for (String[] phrase : phrases) {
+            int matched = 0;
+            for (int i = 0; i < heardWords.size() && matched < phrase.length; i++) {
+                if (heardWords.get(i).equals(phrase[matched])) {
+                    matched++;
+                }
+            }
+            best = Math.max(best, (double) matched / phrase.length);
+        }
+        return best;
+    }
+
+    private void tokenize(String text) {
+        int start = -1;
+        for (int i = 0; i <= text.length(); i++) {
+            boolean letter = i < text.length() && Character.isLetterOrDigit(text.charAt(i));
+            if (letter && start < 0) {
+                start = i;
+            } else if (!letter && start >= 0) {
+                heardWords.add(text.substring(start, i).toLowerCase());
+                start = -1;
+            }
+        }
+    }
+}
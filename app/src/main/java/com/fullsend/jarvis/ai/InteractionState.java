@@ -0,0 +1,109 @@
+package com.fullsend.jarvis.ai;
+
+import android.os.SystemClock;
+import android.util.Log;
+
+import java.util.List;
+import java.util.concurrent.CopyOnWriteArrayList;
+
+/**
+ * Process-wide view of whether the user is actively interacting with the app
+ *
+ * Features:
+ * - Set by the components that own the interaction: an OBD session (cable connected),
+ *   a voice command being listened to, and a reply being spoken
+ * - Stays busy for a short quiet period after the last activity ends, so background work
+ *   does not start in the gap between a command and its spoken reply
+ * - Listeners are told about every change; ActionScheduler uses this to resume deferred work
+ */
+public class InteractionState {
+
+    private static final String TAG = "InteractionState";
+
+    static final long QUIET_PERIOD_MS = 3000;
+
+    private static final InteractionState INSTANCE = new InteractionState();
+
+    public interface Listener {
+        void onInteractionStateChanged(boolean active);
+    }
+
+    private volatile boolean obdSessionActive;
+    private volatile boolean voiceListening;
+    private volatile boolean voiceSpeaking;
+    private volatile long lastActiveAt;
+
+    private final List<Listener> listeners = new CopyOnWriteArrayList<>();
+
+    private InteractionState() {
+    }
+
+    public static InteractionState get() {
+        return INSTANCE;
+    }
+
+    public void setObdSessionActive(boolean active) {
+        if (obdSessionActive != active) {
+            obdSessionActive = active;
+            changed("OBD session", active);
+        }
+    }
+
+    public void setVoiceListening(boolean listening) {
+        if (voiceListening != listening) {
+            voiceListening = listening;
+            changed("voice listening", listening);
+        }
+    }
+
+    public void setVoiceSpeaking(boolean speaking) {
+        if (voiceSpeaking != speaking) {
+            voiceSpeaking = speaking;
+            changed("voice speaking", speaking);
+        }
+    }
+
+    public boolean isObdSessionActive() {
+        return obdSessionActive;
+    }
+
+    /**
+     * True while any interaction is in progress (without the quiet period)
+     */
+    public boolean isActive() {
+        return obdSessionActive || voiceListening || voiceSpeaking;
+    }
+
+    /**
+     * Milliseconds until background work may run: 0 when idle, -1 while an interaction is active
+     */
+    public long millisUntilIdle() {
+        if (isActive()) {
+            return -1;
+        }
+        long remaining = lastActiveAt + QUIET_PERIOD_MS - SystemClock.elapsedRealtime();
+        return Math.max(0, remaining);
+    }
+
+    public void addListener(Listener listener) {
+        listeners.add(listener);
+    }
+
+    public void removeListener(Listener listener) {
+        listeners.remove(listener);
+    }
+
+    private void changed(String source, boolean value) {
+        // Ending an activity starts the quiet period
+        lastActiveAt = SystemClock.elapsedRealtime();
+        boolean active = isActive();
+        Log.d(TAG, source + " -> " + value + " (interaction active: " + active + ")");
+        for (Listener listener : listeners) {
+            try {
+                listener.onInteractionStateChanged(active);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Interaction listener failed", e);
+            }
+        }
+    }
+}
@@ -4,11 +4,16 @@ import android.content.Context;
 import android.content.Intent;
 import android.os.BatteryManager;
 import android.os.Build;
+import android.os.FileObserver;
+import android.os.Handler;
+import android.os.Looper;
 import android.util.Log;
 
 import com.fullsend.jarvis.JarvisService;
-import com.fullsend.jarvis.obd.OBDActivity;
+import com.fullsend.jarvis.obd.DiagnosticCommandSet;
+import com.fullsend.jarvis.obd.DtcCode;
 
+import java.io.File;
 import java.text.SimpleDateFormat;
 import java.util.Arrays;
 import java.util.Date;
@@ -16,7 +21,7 @@ import java.util.HashMap;
 import java.util.List;
 import java.util.Locale;
 import java.util.Map;
-import java.util.Random;
+import java.util.Objects;
 import java.util.regex.Matcher;
 import java.util.regex.Pattern;
 
@@ -28,6 +33,35 @@ public class JarvisAI {
     private VoiceManager voiceManager;
     private Map<String, String> userPreferences;
     private Map<String, Object> contextData;
+    private ResponseTemplateEngine templateEngine;
+    private FileObserver templateObserver;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    
+    // Free-form requests no command pattern recognizes are answered by the advanced engine
+    private AdvancedAIEngine advancedEngine;
+    
+    // Conversation of commands issued from on-screen controls rather than by voice
+    public static final String CONVERSATION_UI = "ui";
+    
+    // Context keys whose changes invalidate cached responses built from them:
+    // battery level in percent (Integer), packed DTCs last read on the OBD screen (int[])
+    public static final String CONTEXT_BATTERY_LEVEL = "battery_level";
+    public static final String CONTEXT_DTC_LIST = "dtc_list";
+    
+    // Recognized commands by normalized input, and reply templates with their slot values by intent;
+    // replies are rendered on every delivery so each one picks a fresh variant
+    private final ResponseCache<AICommand> commandCache = new ResponseCache<>();
+    private final ResponseCache<ReplyTemplate> responseCache = new ResponseCache<>();
+    private static final AICommand UNRECOGNIZED_COMMAND = new AICommand("unknown", "", new HashMap<>());
+    
+    // Speculative responses prepared from partial transcripts, committed on the final one
+    private static final long MAX_SPECULATION_AGE_MS = 5000;
+    // Intents whose response only reads data (see prepareResponse), so it may be prepared early
+    private static final List<String> PREPARABLE_INTENTS =
+            Arrays.asList("battery_status", "status", "time_query", "date_query");
+    private final IncrementalIntentMatcher partialMatcher =
+            new IncrementalIntentMatcher(COMMAND_PATTERNS, PREPARABLE_INTENTS);
+    private PreparedResponse speculativeResponse;
     
     // Command patterns for natural language processing
     private static final Map<String, List<String>> COMMAND_PATTERNS = new HashMap<>();
@@ -84,6 +118,11 @@ public class JarvisAI {
             "(?i).*capabilities.*", "(?i).*functions.*"
         ));
         
+        COMMAND_PATTERNS.put("train_wake_word", Arrays.asList(
+            "(?i).*(train|learn|record|set.*up).*wake.*(word|phrase).*",
+            "(?i).*learn.*my.*voice.*"
+        ));
+        
         COMMAND_PATTERNS.put("status", Arrays.asList(
             "(?i).*status.*report.*", "(?i).*system.*status.*", "(?i).*how.*is.*everything.*",
             "(?i).*all.*systems.*", "(?i).*full.*status.*"
@@ -122,67 +161,6 @@ public class JarvisAI {
         ));
     }
     
-    // Response templates
-    private static final Map<String, List<String>> RESPONSE_TEMPLATES = new HashMap<>();
-    
-    static {
-        RESPONSE_TEMPLATES.put("greeting", Arrays.asList(
-            "Good %s, sir. Jarvis at your service.",
-            "Hello sir. All systems are operational.",
-            "Greetings. How may I assist you today?",
-            "Good %s. I'm ready to help.",
-            "At your service, sir."
-        ));
-        
-        RESPONSE_TEMPLATES.put("battery_acknowledgment", Arrays.asList(
-            "Battery status retrieved, sir.",
-            "Power levels analyzed.",
-            "Current charge status confirmed.",
-            "Battery diagnostics complete."
-        ));
-        
-        RESPONSE_TEMPLATES.put("system_scan_started", Arrays.asList(
-            "Initiating comprehensive system scan.",
-            "Running full diagnostic sweep.",
-            "Analyzing all systems, sir.",
-            "Commencing system health check."
-        ));
-        
-        RESPONSE_TEMPLATES.put("alert_mode_activated", Arrays.asList(
-            "Alert mode activated. Enhanced monitoring engaged.",
-            "Security protocols heightened, sir.",
-            "All systems on high alert.",
-            "Enhanced security mode is now active."
-        ));
-        
-        RESPONSE_TEMPLATES.put("obd_opening", Arrays.asList(
-            "Opening automotive diagnostic interface.",
-            "Initiating vehicle diagnostic protocols.",
-            "Accessing OBD systems, sir.",
-            "Vehicle diagnostic suite ready."
-        ));
-        
-        RESPONSE_TEMPLATES.put("help_response", Arrays.asList(
-            "I can assist with system monitoring, automotive diagnostics, voice commands, and much more. Try asking about battery status, running diagnostics, or checking your vehicle.",
-            "My capabilities include system analysis, OBD vehicle diagnostics, security monitoring, and intelligent assistance. What would you like me to help with?",
-            "I'm equipped with advanced diagnostic tools, voice interaction, automotive systems, and comprehensive monitoring. How may I be of service?"
-        ));
-        
-        RESPONSE_TEMPLATES.put("unknown_command", Arrays.asList(
-            "I'm not sure I understand that command, sir. Could you rephrase?",
-            "Command not recognized. Please try again.",
-            "I didn't catch that, sir. Could you repeat the request?",
-            "That's not within my current capabilities. Try asking for help to see what I can do."
-        ));
-        
-        RESPONSE_TEMPLATES.put("error", Arrays.asList(
-            "I'm experiencing a technical difficulty, sir.",
-            "There seems to be an issue with that request.",
-            "Unable to complete that operation at this time.",
-            "Encountering system constraints with that command."
-        ));
-    }
-    
     public interface AIResponseListener {
         void onTextResponse(String response);
         void onActionRequired(String action, Map<String, Object> parameters);
@@ -193,7 +171,10 @@ public class JarvisAI {
         this.context = context;
         this.userPreferences = new HashMap<>();
         this.contextData = new HashMap<>();
+        this.templateEngine = new ResponseTemplateEngine(context);
+        this.advancedEngine = new AdvancedAIEngine(context);
         initializeContextData();
+        watchResponseTemplates();
     }
     
     public void setResponseListener(AIResponseListener listener) {
@@ -202,6 +183,38 @@ public class JarvisAI {
     
     public void setVoiceManager(VoiceManager voiceManager) {
         this.voiceManager = voiceManager;
+        prewarmReplies();
+    }
+    
+    /**
+     * Pre-synthesize the fixed parts of our replies so they can be spoken without TTS latency
+     */
+    private void prewarmReplies() {
+        List<String> phrases = templateEngine.getLiteralPhrases("jarvis_responses.");
+        phrases.addAll(templateEngine.getLiteralPhrases("battery_responses."));
+        voiceManager.prewarmPhrases(phrases);
+    }
+    
+    /**
+     * Reload the reply templates whenever the override file in the config dir is written or replaced
+     */
+    private void watchResponseTemplates() {
+        File configDir = templateEngine.getOverrideFile().getParentFile();
+        if (!configDir.isDirectory() && !configDir.mkdirs()) {
+            Log.w(TAG, "Cannot watch " + configDir + " for template changes");
+            return;
+        }
+        
+        templateObserver = new FileObserver(configDir.getPath(),
+                FileObserver.CLOSE_WRITE | FileObserver.MOVED_TO | FileObserver.DELETE) {
+            @Override
+            public void onEvent(int event, String path) {
+                if (ResponseTemplateEngine.OVERRIDE_FILE_NAME.equals(path)) {
+                    mainHandler.post(JarvisAI.this::reloadResponseTemplates);
+                }
+            }
+        };
+        templateObserver.startWatching();
     }
     
     private void initializeContextData() {
@@ -212,6 +225,14 @@ public class JarvisAI {
     }
     
     public void processCommand(String command) {
+        processCommand(CONVERSATION_UI, command);
+    }
+    
+    /**
+     * Process a command as part of a conversation; follow-ups in the same conversation are
+     * answered in order
+     */
+    public void processCommand(String conversationId, String command) {
         Log.d(TAG, "Processing command: " + command);
         
         // Update context
@@ -223,15 +244,85 @@ public class JarvisAI {
         
         // Analyze command and generate response
         AICommand recognizedCommand = analyzeCommand(command);
-        
-        if (recognizedCommand != null) {
-            handleCommand(recognizedCommand);
+        PreparedResponse prepared = takeSpeculativeResponse();
+        
+        if (recognizedCommand != null && prepared != null && prepared.intent.equals(recognizedCommand.getType())) {
+            // Final transcript confirmed what the partials predicted
+            Log.d(TAG, "Committing speculative response for " + prepared.intent);
+            deliver(prepared);
+        } else if (recognizedCommand != null) {
+            handleCommand(conversationId, recognizedCommand);
         } else {
-            handleUnknownCommand(command);
+            handleUnknownCommand(conversationId, command);
+        }
+    }
+    
+    /**
+     * Feed a partial transcript while the user is still speaking. Once the intent is stable,
+     * the response is prepared ahead of the final transcript; processCommand() only uses it
+     * if the final transcript is recognized as the same command.
+     */
+    public void onPartialCommand(String partial) {
+        IncrementalIntentMatcher.Match match = partialMatcher.update(partial);
+        if (!match.stable) {
+            return;
+        }
+        
+        if (speculativeResponse == null || !speculativeResponse.intent.equals(match.intent)) {
+            speculativeResponse = prepareResponse(match.intent);
+            Log.d(TAG, "Prepared speculative response for " + match.intent);
+        }
+    }
+    
+    private PreparedResponse takeSpeculativeResponse() {
+        PreparedResponse prepared = speculativeResponse;
+        speculativeResponse = null;
+        partialMatcher.reset();
+        
+        if (prepared != null && System.currentTimeMillis() - prepared.preparedAt > MAX_SPECULATION_AGE_MS) {
+            return null;
+        }
+        return prepared;
+    }
+    
+    /**
+     * Build the response for intents that only read data, without delivering it
+     */
+    private PreparedResponse prepareResponse(String intent) {
+        switch (intent) {
+            case "battery_status":
+                return prepareBatteryStatus();
+            case "status":
+                return prepareStatusReport();
+            case "time_query":
+                return prepareTimeQuery();
+            case "date_query":
+                return prepareDateQuery();
+            default:
+                return null;
+        }
+    }
+    
+    private void deliver(PreparedResponse prepared) {
+        respond(prepared.text);
+        if (prepared.action != null) {
+            triggerAction(prepared.action, prepared.parameters);
         }
     }
     
     private AICommand analyzeCommand(String input) {
+        String cacheKey = ResponseCache.normalize(input);
+        AICommand cached = commandCache.get(cacheKey);
+        if (cached != null) {
+            return cached == UNRECOGNIZED_COMMAND ? null : cached;
+        }
+        
+        AICommand command = matchCommand(input);
+        commandCache.put(cacheKey, command != null ? command : UNRECOGNIZED_COMMAND);
+        return command;
+    }
+    
+    private AICommand matchCommand(String input) {
         String normalizedInput = input.toLowerCase().trim();
         
         for (Map.Entry<String, List<String>> entry : COMMAND_PATTERNS.entrySet()) {
@@ -268,7 +359,7 @@ public class JarvisAI {
         return params;
     }
     
-    private void handleCommand(AICommand command) {
+    private void handleCommand(String conversationId, AICommand command) {
         switch (command.getType()) {
             case "greeting":
                 handleGreeting();
@@ -300,6 +391,10 @@ public class JarvisAI {
             case "status":
                 handleStatusReport();
                 break;
+            case "train_wake_word":
+                // The enrollment speaks its own prompts
+                triggerAction("enroll_wake_word", new HashMap<>());
+                break;
             case "shutdown":
                 handleShutdown();
                 break;
@@ -325,25 +420,65 @@ public class JarvisAI {
                 handleOpenVirtualGarage("use_scanner");
                 break;
             default:
-                handleUnknownCommand(command.getInput());
+                handleUnknownCommand(conversationId, command.getInput());
                 break;
         }
     }
     
     private void handleGreeting() {
-        String timeOfDay = getTimeOfDay();
-        String response = getRandomResponse("greeting");
-        if (response.contains("%s")) {
-            response = String.format(response, timeOfDay);
+        ResponseTemplateEngine.Slots slots = templateEngine.newSlots().set("time_of_day", getTimeOfDay());
+        respond(getRandomResponse("greeting", slots));
+    }
+    
+    private void handleBatteryStatus() {
+        deliver(prepareBatteryStatus());
+    }
+    
+    private PreparedResponse prepareBatteryStatus() {
+        // Kept current by updateContext(CONTEXT_BATTERY_LEVEL, ...), which invalidates this entry
+        ReplyTemplate reply = responseCache.get("battery_status");
+        if (reply == null) {
+            int batteryLevel = getBatteryLevel();
+            String statusText = getBatteryStatusText(batteryLevel);
+            String fallback = String.format("Battery level is at %d percent, sir. Status: %s.", batteryLevel, statusText);
+            if (batteryLevel < 20) {
+                // The low and critical templates carry their own charging advice
+                fallback += " I recommend connecting to a power source.";
+            }
+            
+            // Parameters of the battery status action
+            Map<String, Object> params = new HashMap<>();
+            params.put("battery_level", batteryLevel);
+            params.put("status", statusText);
+            reply = new ReplyTemplate("battery_responses." + getBatteryBucket(batteryLevel),
+                    templateEngine.newSlots().set("percentage", batteryLevel), fallback, params);
+            responseCache.put("battery_status", reply, CONTEXT_BATTERY_LEVEL);
         }
         
-        respond(response);
+        return new PreparedResponse("battery_status", reply.render(templateEngine), "show_battery_status", reply.parameters);
     }
     
-    private void handleBatteryStatus() {
+    private int getBatteryLevel() {
+        Object known = contextData.get(CONTEXT_BATTERY_LEVEL);
+        if (known instanceof Integer) {
+            return (Integer) known;
+        }
         BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
-        int batteryLevel = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
-        
+        return batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+    }
+    
+    private String getBatteryBucket(int batteryLevel) {
+        if (batteryLevel >= 60) {
+            return "high";
+        } else if (batteryLevel >= 40) {
+            return "medium";
+        } else if (batteryLevel >= 20) {
+            return "low";
+        }
+        return "critical";
+    }
+    
+    private String getBatteryStatusText(int batteryLevel) {
         String statusText;
         if (batteryLevel >= 80) {
             statusText = "excellent";
@@ -356,20 +491,7 @@ public class JarvisAI {
         } else {
             statusText = "critical";
         }
-        
-        String response = String.format("Battery level is at %d percent, sir. Status: %s.", batteryLevel, statusText);
-        
-        if (batteryLevel < 20) {
-            response += " I recommend connecting to a power source.";
-        }
-        
-        respond(response);
-        
-        // Trigger battery status action
-        Map<String, Object> params = new HashMap<>();
-        params.put("battery_level", batteryLevel);
-        params.put("status", statusText);
-        triggerAction("show_battery_status", params);
+        return statusText;
     }
     
     private void handleSystemScan() {
@@ -399,17 +521,25 @@ public class JarvisAI {
     }
     
     private void handleTimeQuery() {
+        deliver(prepareTimeQuery());
+    }
+    
+    private PreparedResponse prepareTimeQuery() {
         SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a", Locale.getDefault());
         String currentTime = timeFormat.format(new Date());
         
-        respond(String.format("The current time is %s, sir.", currentTime));
+        return new PreparedResponse("time_query", String.format("The current time is %s, sir.", currentTime), null, null);
     }
     
     private void handleDateQuery() {
+        deliver(prepareDateQuery());
+    }
+    
+    private PreparedResponse prepareDateQuery() {
         SimpleDateFormat dateFormat = new SimpleDateFormat("EEEE, MMMM d, yyyy", Locale.getDefault());
         String currentDate = dateFormat.format(new Date());
         
-        respond(String.format("Today is %s, sir.", currentDate));
+        return new PreparedResponse("date_query", String.format("Today is %s, sir.", currentDate), null, null);
     }
     
     private void handleWeatherQuery() {
@@ -426,8 +556,11 @@ public class JarvisAI {
     }
     
     private void handleStatusReport() {
-        BatteryManager batteryManager = (BatteryManager) context.getSystemService(Context.BATTERY_SERVICE);
-        int batteryLevel = batteryManager.getIntProperty(BatteryManager.BATTERY_PROPERTY_CAPACITY);
+        deliver(prepareStatusReport());
+    }
+    
+    private PreparedResponse prepareStatusReport() {
+        int batteryLevel = getBatteryLevel();
         
         SimpleDateFormat timeFormat = new SimpleDateFormat("h:mm a", Locale.getDefault());
         String currentTime = timeFormat.format(new Date());
@@ -435,9 +568,45 @@ public class JarvisAI {
         String response = String.format(
             "All systems operational, sir. Current time: %s. Battery: %d percent. Device status: nominal. Ready for your commands.",
             currentTime, batteryLevel
-        );
+        ) + describeDtcs();
+        
+        return new PreparedResponse("status", response, null, null);
+    }
+    
+    /**
+     * Sentence about the trouble codes last read on the OBD screen, empty if none were read yet
+     */
+    private String describeDtcs() {
+        Object dtcs = contextData.get(CONTEXT_DTC_LIST);
+        if (!(dtcs instanceof int[])) {
+            return "";
+        }
         
-        respond(response);
+        // Descriptions come from the DTC database, so keep the sentence until the codes change
+        ReplyTemplate reply = responseCache.get("dtc_summary");
+        if (reply == null) {
+            int[] codes = (int[]) dtcs;
+            StringBuilder summary = new StringBuilder();
+            if (codes.length == 0) {
+                summary.append(" No vehicle trouble codes stored.");
+            } else {
+                summary.append(" Vehicle reports ").append(codes.length)
+                        .append(codes.length == 1 ? " trouble code: " : " trouble codes: ");
+                for (int i = 0; i < codes.length; i++) {
+                    if (i > 0) {
+                        summary.append(", ");
+                    }
+                    DtcCode.appendTo(summary, codes[i]).append(" (")
+                            .append(DiagnosticCommandSet.DTCInterpreter.getDescription(codes[i],
+                                    DiagnosticCommandSet.Manufacturer.GENERIC_OBD2))
+                            .append(')');
+                }
+                summary.append('.');
+            }
+            reply = new ReplyTemplate(null, null, summary.toString(), null);
+            responseCache.put("dtc_summary", reply, CONTEXT_DTC_LIST);
+        }
+        return reply.render(templateEngine);
     }
     
     private void handleShutdown() {
@@ -460,13 +629,54 @@ public class JarvisAI {
         }
     }
     
-    private void handleUnknownCommand(String command) {
-        respond(getRandomResponse("unknown_command"));
-        
+    private void handleUnknownCommand(String conversationId, String command) {
         // Log unknown command for learning
         logEvent("Unknown command: " + command);
+        
+        advancedEngine.processInput(conversationId, command, engineCallback);
     }
     
+    private final AdvancedAIEngine.AICallback engineCallback = new AdvancedAIEngine.AICallback() {
+        @Override
+        public void onAIResponse(String response, AdvancedAIEngine.AICapability capability) {
+            respond(response);
+        }
+        
+        @Override
+        public void onAILearning(String insight) {
+            Log.d(TAG, "AI learning: " + insight);
+        }
+        
+        @Override
+        public void onAutonomousAction(String action, String result) {
+            logEvent("Autonomous action " + action + ": " + result);
+        }
+        
+        @Override
+        public void onCodeExecution(String code, String result) {
+            Log.d(TAG, "Code execution result: " + result);
+        }
+        
+        @Override
+        public void onPerformanceOptimization(String optimization) {
+            Log.d(TAG, "Performance optimization: " + optimization);
+        }
+        
+        @Override
+        public void onPrediction(String prediction, double confidence) {
+            Log.d(TAG, "Prediction: " + prediction + " (" + confidence + ")");
+        }
+        
+        @Override
+        public void onInputDropped(String input, String reason) {
+            Log.d(TAG, "Request dropped (" + reason + "): " + input);
+            // A superseded request is answered by the newer one; anything else gets no answer at all
+            if (!"superseded".equals(reason)) {
+                respond(getRandomResponse("unknown_command"));
+            }
+        }
+    };
+    
     private String getTimeOfDay() {
         int hour = java.util.Calendar.getInstance().get(java.util.Calendar.HOUR_OF_DAY);
         
@@ -480,12 +690,24 @@ public class JarvisAI {
     }
     
     private String getRandomResponse(String category) {
-        List<String> responses = RESPONSE_TEMPLATES.get(category);
-        if (responses != null && !responses.isEmpty()) {
-            Random random = new Random();
-            return responses.get(random.nextInt(responses.size()));
+        return getRandomResponse(category, null);
+    }
+    
+    private String getRandomResponse(String category, ResponseTemplateEngine.Slots slots) {
+        String response = templateEngine.render("jarvis_responses." + category, slots);
+        return response != null ? response : "Response template not found.";
+    }
+    
+    /**
+     * Pick up edited response templates without restarting
+     */
+    public void reloadResponseTemplates() {
+        if (templateEngine.reloadIfChanged()) {
+            responseCache.clear();
+            if (voiceManager != null) {
+                prewarmReplies();
+            }
         }
-        return "Response template not found.";
     }
     
     private void respond(String response) {
@@ -517,14 +739,38 @@ public class JarvisAI {
         context.startService(intent);
     }
     
+    public void shutdown() {
+        if (templateObserver != null) {
+            templateObserver.stopWatching();
+        }
+        advancedEngine.shutdown();
+    }
+    
     public void updateContext(String key, Object value) {
-        contextData.put(key, value);
+        Object previous = contextData.put(key, value);
+        
+        // Drop cached replies that were built from the old value (or read it elsewhere before it was known)
+        boolean changed = previous instanceof int[] && value instanceof int[]
+                ? !Arrays.equals((int[]) previous, (int[]) value)
+                : !Objects.equals(previous, value);
+        if (changed) {
+            responseCache.invalidate(key);
+        }
     }
     
     public Object getContext(String key) {
         return contextData.get(key);
     }
     
+    /**
+     * Fraction of recognitions and rendered replies served from cache
+     */
+    public double getCacheHitRate() {
+        long hits = commandCache.getHits() + responseCache.getHits();
+        long total = hits + commandCache.getMisses() + responseCache.getMisses();
+        return total == 0 ? 0 : (double) hits / total;
+    }
+    
     public void setUserPreference(String key, String value) {
         userPreferences.put(key, value);
     }
@@ -533,6 +779,42 @@ public class JarvisAI {
         return userPreferences.get(key);
     }
     
+    // Reply template and slot values, rendered into a random variant on each use
+    private static class ReplyTemplate {
+        final String category;
+        final ResponseTemplateEngine.Slots slots;
+        final String fallback;
+        final Map<String, Object> parameters;
+        
+        ReplyTemplate(String category, ResponseTemplateEngine.Slots slots, String fallback, Map<String, Object> parameters) {
+            this.category = category;
+            this.slots = slots;
+            this.fallback = fallback;
+            this.parameters = parameters;
+        }
+        
+        String render(ResponseTemplateEngine engine) {
+            String text = category != null ? engine.render(category, slots) : null;
+            return text != null ? text : fallback;
+        }
+    }
+    
+    // Response computed ahead of delivery (speculatively from partial transcripts)
+    private static class PreparedResponse {
+        final String intent;
+        final String text;
+        final String action;
+        final Map<String, Object> parameters;
+        final long preparedAt = System.currentTimeMillis();
+        
+        PreparedResponse(String intent, String text, String action, Map<String, Object> parameters) {
+            this.intent = intent;
+            this.text = text;
+            this.action = action;
+            this.parameters = parameters;
+        }
+    }
+    
     // Inner class for command structure
     private static class AICommand {
         private String type;
@@ -0,0 +1,217 @@
+package com.fullsend.jarvis.ai;
+
+import android.util.Log;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Iterator;
+import java.util.List;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.Executor;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Serial execution lanes on top of a shared thread pool
+ *
+ * Features:
+ * - Tasks submitted under the same key run one at a time, in submission order
+ * - Different keys run in parallel on the backing executor
+ * - Bounded per-lane queue; the oldest pending task is shed when a lane overflows
+ * - Supersedable tasks (e.g. utterances) drop older pending supersedable tasks of the same lane
+ * - Every dropped task is reported, to the executor-wide listener and to the task's own one
+ */
+public class KeyedSerialExecutor {
+
+    private static final String TAG = "KeyedSerialExecutor";
+
+    public static final int DEFAULT_MAX_PENDING_PER_LANE = 8;
+
+    public interface DropListener {
+        void onTaskDropped(String key, String reason);
+    }
+
+    private final Executor executor;
+    private final int maxPendingPerLane;
+    private final DropListener dropListener;
+
+    // Lane state is only touched inside lanes.compute(), which serializes access per key
+    private final ConcurrentHashMap<String, Lane> lanes = new ConcurrentHashMap<>();
+    private final AtomicLong droppedTasks = new AtomicLong();
+
+    public KeyedSerialExecutor(Executor executor) {
+        this(executor, DEFAULT_MAX_PENDING_PER_LANE, null);
+    }
+
+    public KeyedSerialExecutor(Executor executor, int maxPendingPerLane, DropListener dropListener) {
+        this.executor = executor;
+        this.maxPendingPerLane = Math.max(1, maxPendingPerLane);
+        this.dropListener = dropListener;
+    }
+
+    /**
+     * Queue a task on the lane for the given key
+     */
+    public void execute(String key, Runnable task) {
+        submit(key, task, false, null);
+    }
+
+    /**
+     * Queue a task; onDropped is called instead of the task if it is shed before it runs
+     */
+    public void execute(String key, Runnable task, DropListener onDropped) {
+        submit(key, task, false, onDropped);
+    }
+
+    /**
+     * Queue a task that makes any older, not yet started supersedable task in the same lane stale
+     */
+    public void executeLatest(String key, Runnable task) {
+        submit(key, task, true, null);
+    }
+
+    /**
+     * Supersedable variant of execute(key, task, onDropped)
+     */
+    public void executeLatest(String key, Runnable task, DropListener onDropped) {
+        submit(key, task, true, onDropped);
+    }
+
+    public int getActiveLaneCount() {
+        return lanes.size();
+    }
+
+    public long getDroppedTaskCount() {
+        return droppedTasks.get();
+    }
+
+    private void submit(String key, Runnable task, boolean supersedable, DropListener onDropped) {
+        final Lane[] toSchedule = new Lane[1];
+        final List<PendingTask> superseded = new ArrayList<>();
+        final List<PendingTask> overflow = new ArrayList<>();
+
+        lanes.compute(key, (k, lane) -> {
+            if (lane == null) {
+                lane = new Lane(k);
+            }
+
+            if (supersedable) {
+                Iterator<PendingTask> it = lane.pending.iterator();
+                while (it.hasNext()) {
+                    PendingTask pending = it.next();
+                    if (pending.supersedable) {
+                        it.remove();
+                        superseded.add(pending);
+                    }
+                }
+            }
+
+            lane.pending.addLast(new PendingTask(task, supersedable, onDropped));
+            while (lane.pending.size() > maxPendingPerLane) {
+                overflow.add(lane.pending.pollFirst());
+            }
+
+            if (!lane.scheduled) {
+                lane.scheduled = true;
+                toSchedule[0] = lane;
+            }
+            return lane;
+        });
+
+        for (PendingTask pending : superseded) {
+            notifyDropped(key, pending, "superseded");
+        }
+        for (PendingTask pending : overflow) {
+            notifyDropped(key, pending, "queue full");
+        }
+
+        if (toSchedule[0] != null) {
+            schedule(toSchedule[0]);
+        }
+    }
+
+    private void schedule(Lane lane) {
+        try {
+            executor.execute(lane);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Executor rejected lane " + lane.key + ", dropping its pending tasks");
+            final List<PendingTask> dropped = new ArrayList<>();
+            lanes.computeIfPresent(lane.key, (k, l) -> {
+                dropped.addAll(l.pending);
+                return null;
+            });
+            for (PendingTask pending : dropped) {
+                notifyDropped(lane.key, pending, "executor shut down");
+            }
+        }
+    }
+
+    private void notifyDropped(String key, PendingTask pending, String reason) {
+        droppedTasks.incrementAndGet();
+        Log.d(TAG, "Dropped task in lane " + key + ": " + reason);
+        if (dropListener != null) {
+            dropListener.onTaskDropped(key, reason);
+        }
+        if (pending.onDropped != null) {
+            try {
+                pending.onDropped.onTaskDropped(key, reason);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Drop callback in lane " + key + " failed", e);
+            }
+        }
+    }
+
+    private static class PendingTask {
+        final Runnable task;
+        final boolean supersedable;
+        final DropListener onDropped;
+
+        PendingTask(Runnable task, boolean supersedable, DropListener onDropped) {
+            this.task = task;
+            this.supersedable = supersedable;
+            this.onDropped = onDropped;
+        }
+    }
+
+    private final class Lane implements Runnable {
+        final String key;
+        final ArrayDeque<PendingTask> pending = new ArrayDeque<>();
+        boolean scheduled;
+
+        Lane(String key) {
+            this.key = key;
+        }
+
+        @Override
+        public void run() {
+            final PendingTask[] next = new PendingTask[1];
+            lanes.computeIfPresent(key, (k, lane) -> {
+                next[0] = lane.pending.pollFirst();
+                return lane;
+            });
+
+            if (next[0] != null) {
+                try {
+                    next[0].task.run();
+                } catch (RuntimeException e) {
+                    Log.e(TAG, "Task in lane " + key + " failed", e);
+                }
+            }
+
+            // Run at most one task per turn so busy lanes do not starve the others
+            final boolean[] more = new boolean[1];
+            lanes.computeIfPresent(key, (k, lane) -> {
+                if (lane.pending.isEmpty()) {
+                    lane.scheduled = false;
+                    return null;
+                }
+                more[0] = true;
+                return lane;
+            });
+
+            if (more[0]) {
+                schedule(this);
+            }
+        }
+    }
+}
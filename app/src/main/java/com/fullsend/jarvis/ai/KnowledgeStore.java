@@ -0,0 +1,962 @@
+package com.fullsend.jarvis.ai;
+
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.AbstractMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.zip.CRC32;
+
+/**
+ * Persistent key-value store for learned AI state (interactions, preferences, command counts)
+ *
+ * Features:
+ * - Append-only log segments with a compact binary record format and a CRC per record
+ * - In-memory hash index from key to record location; sealed segments are read through
+ *   read-only memory maps, so startup is one sequential scan per segment
+ * - Crash-safe recovery: a torn or corrupt tail is truncated at the last valid record
+ * - Background compaction rewrites live records of sealed segments once most of their
+ *   bytes are dead; the compacted segment records which older segments it replaces, so a
+ *   crash halfway through never resurrects deleted or overwritten values
+ * - Writes are buffered and reach the file on flush(), at the latest FLUSH_DELAY_MS after the
+ *   first buffered write; sync() also forces them to disk
+ * - A failed flush keeps the buffer and retries it on the next one; past MAX_PENDING_BYTES the
+ *   buffered records are rolled back out of the index, so the index never points past the
+ *   end of what is in the file
+ * - Writes after close() are dropped, so a task finishing during shutdown cannot fail on them
+ */
+public class KnowledgeStore {
+
+    private static final String TAG = "KnowledgeStore";
+
+    private static final int MAGIC = 0x4a4b5631; // "JKV1"
+    private static final int HEADER_SIZE = 4 + 8;  // magic, id of the oldest segment this one replaces
+    private static final int RECORD_HEADER_SIZE = 4 + 4; // body length, crc
+    private static final int MAX_RECORD_SIZE = 1024 * 1024;
+    private static final String SEGMENT_PREFIX = "segment-";
+    private static final String SEGMENT_SUFFIX = ".log";
+    private static final String COMPACT_SUFFIX = ".compact";
+
+    public static final long DEFAULT_SEGMENT_BYTES = 1024 * 1024;
+    private static final int WRITE_BUFFER_FLUSH_BYTES = 16 * 1024;
+    static final long FLUSH_DELAY_MS = 2000;
+    private static final int MAX_PENDING_BYTES = 1024 * 1024;
+    private static final double COMPACTION_DEAD_RATIO = 0.5;
+    private static final int MIN_SEALED_SEGMENTS_FOR_COMPACTION = 2;
+    private static final int MAX_SEALED_SEGMENTS = 8;
+
+    private static final byte TYPE_DELETE = 0;
+    private static final byte TYPE_STRING = 1;
+    private static final byte TYPE_DOUBLE = 2;
+    private static final byte TYPE_LONG = 3;
+    private static final byte TYPE_RECORD = 4;
+
+    private final File directory;
+    private final long segmentBytes;
+    private final ExecutorService compactionExecutor;
+    private final AtomicBoolean compactionScheduled = new AtomicBoolean(false);
+    private final ScheduledExecutorService flushTimer;
+    private final AtomicBoolean flushScheduled = new AtomicBoolean(false);
+
+    // Guarded by this
+    private final Map<String, Location> index = new HashMap<>();
+    private final TreeMap<Long, Segment> segments = new TreeMap<>();
+    private Segment active;
+    private final ByteArrayOutputStream writeBuffer = new ByteArrayOutputStream(WRITE_BUFFER_FLUSH_BYTES);
+    private final DataOutputStream writeOut = new DataOutputStream(writeBuffer);
+    private final ByteArrayOutputStream bodyBuffer = new ByteArrayOutputStream(256);
+    private final DataOutputStream bodyOut = new DataOutputStream(bodyBuffer);
+    private final CRC32 crc = new CRC32();
+    private final List<Undo> pendingUndo = new ArrayList<>();  // one per buffered record
+    private boolean closed;
+
+    private final long recoveryTimeMs;
+
+    /**
+     * Where the latest record for a key lives
+     */
+    private static class Location {
+        final long segmentId;
+        final long offset;
+        final int size;   // Whole record including its header
+
+        Location(long segmentId, long offset, int size) {
+            this.segmentId = segmentId;
+            this.offset = offset;
+            this.size = size;
+        }
+    }
+
+    /**
+     * What a buffered record changed in the index, so it can be taken back if it never
+     * reaches the file
+     */
+    private static class Undo {
+        final String key;
+        Location previous;  // moved along by compaction
+        final int size;
+        final boolean delete;
+
+        Undo(String key, Location previous, int size, boolean delete) {
+            this.key = key;
+            this.previous = previous;
+            this.size = size;
+            this.delete = delete;
+        }
+    }
+
+    private static class Segment {
+        final long id;
+        final File file;
+        RandomAccessFile raf;       // Only while active
+        MappedByteBuffer mapped;    // Only once sealed
+        long size;
+        long liveBytes;
+
+        Segment(long id, File file) {
+            this.id = id;
+            this.file = file;
+        }
+
+        ByteBuffer view() {
+            ByteBuffer view = mapped.duplicate();
+            view.clear();
+            return view;
+        }
+    }
+
+    public KnowledgeStore(File directory) {
+        this(directory, DEFAULT_SEGMENT_BYTES);
+    }
+
+    public KnowledgeStore(File directory, long segmentBytes) {
+        this.directory = directory;
+        this.segmentBytes = Math.max(4096, segmentBytes);
+        this.compactionExecutor = Executors.newSingleThreadExecutor(r -> {
+            Thread thread = new Thread(r, "KnowledgeStoreCompaction");
+            thread.setPriority(Thread.MIN_PRIORITY);
+            return thread;
+        });
+        this.flushTimer = Executors.newSingleThreadScheduledExecutor(r -> {
+            Thread thread = new Thread(r, "KnowledgeStoreFlush");
+            thread.setDaemon(true);
+            return thread;
+        });
+
+        long start = System.nanoTime();
+        synchronized (this) {
+            recover();
+        }
+        recoveryTimeMs = (System.nanoTime() - start) / 1000000;
+        Log.i(TAG, "Loaded " + index.size() + " keys from " + segments.size() + " segments in " + recoveryTimeMs + "ms");
+    }
+
+    // ---------------------------------------------------------------- writes
+
+    public void putString(String key, String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        synchronized (this) {
+            if (droppedAfterClose(key)) {
+                return;
+            }
+            beginRecord(TYPE_STRING, key);
+            write(bytes);
+            endRecord(key);
+        }
+    }
+
+    public void putDouble(String key, double value) {
+        synchronized (this) {
+            if (droppedAfterClose(key)) {
+                return;
+            }
+            beginRecord(TYPE_DOUBLE, key);
+            writeLong(Double.doubleToLongBits(value));
+            endRecord(key);
+        }
+    }
+
+    public void putLong(String key, long value) {
+        synchronized (this) {
+            if (droppedAfterClose(key)) {
+                return;
+            }
+            beginRecord(TYPE_LONG, key);
+            writeLong(value);
+            endRecord(key);
+        }
+    }
+
+    /**
+     * Store a small flat record of string fields
+     */
+    public void putRecord(String key, Map<String, String> fields) {
+        synchronized (this) {
+            if (droppedAfterClose(key)) {
+                return;
+            }
+            beginRecord(TYPE_RECORD, key);
+            try {
+                bodyOut.writeInt(fields.size());
+                for (Map.Entry<String, String> field : fields.entrySet()) {
+                    writeString(field.getKey());
+                    writeString(field.getValue() != null ? field.getValue() : "");
+                }
+            } catch (IOException e) {
+                throw new IllegalStateException(e); // ByteArrayOutputStream does not throw
+            }
+            endRecord(key);
+        }
+    }
+
+    public synchronized void delete(String key) {
+        if (droppedAfterClose(key) || !index.containsKey(key)) {
+            return;
+        }
+        beginRecord(TYPE_DELETE, key);
+        endRecord(key);
+    }
+
+    /**
+     * Hand buffered records to the OS
+     */
+    public synchronized void flush() {
+        if (closed || writeBuffer.size() == 0) {
+            return;
+        }
+        if (active.raf == null) {
+            Log.e(TAG, "No writable knowledge segment; dropping " + writeBuffer.size() + " bytes");
+            rollBackPending();
+            return;
+        }
+        try {
+            ByteBuffer data = ByteBuffer.wrap(writeBuffer.toByteArray());
+            writeFully(active.raf.getChannel(), data, active.size - data.remaining());
+        } catch (IOException e) {
+            // Records are written to fixed offsets, so writing the whole buffer again is safe
+            if (writeBuffer.size() < MAX_PENDING_BYTES) {
+                Log.e(TAG, "Error writing knowledge segment " + active.file.getName()
+                        + "; keeping " + writeBuffer.size() + " bytes for the next flush", e);
+            } else {
+                Log.e(TAG, "Error writing knowledge segment " + active.file.getName()
+                        + "; dropping " + writeBuffer.size() + " bytes", e);
+                rollBackPending();
+            }
+            return;
+        }
+        writeBuffer.reset();
+        pendingUndo.clear();
+        maybeRoll();
+        maybeScheduleCompaction();
+    }
+
+    /**
+     * Write the buffer at the position; the one place flushed bytes reach the file, so tests
+     * can make it fail
+     */
+    void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+        while (data.hasRemaining()) {
+            position += channel.write(data, position);
+        }
+    }
+
+    /**
+     * Forget every buffered record: the index goes back to what the file holds and the active
+     * segment ends where its flushed data ends
+     */
+    private void rollBackPending() {
+        for (int i = pendingUndo.size() - 1; i >= 0; i--) {
+            Undo undo = pendingUndo.get(i);
+            if (undo.previous != null) {
+                index.put(undo.key, undo.previous);
+                Segment old = segments.get(undo.previous.segmentId);
+                if (old != null) {
+                    old.liveBytes += undo.previous.size;
+                }
+            } else {
+                index.remove(undo.key);
+            }
+            if (!undo.delete) {
+                active.liveBytes -= undo.size;
+            }
+        }
+        active.size -= writeBuffer.size();
+        pendingUndo.clear();
+        writeBuffer.reset();
+
+        // A partial write may have left whole records past the end; recovery must not find them
+        if (active.raf != null) {
+            try {
+                active.raf.setLength(active.size);
+            } catch (IOException e) {
+                Log.e(TAG, "Could not trim knowledge segment " + active.file.getName(), e);
+            }
+        }
+    }
+
+    private void scheduleFlush() {
+        if (flushScheduled.compareAndSet(false, true)) {
+            try {
+                flushTimer.schedule(() -> {
+                    flushScheduled.set(false);
+                    flush();
+                }, FLUSH_DELAY_MS, TimeUnit.MILLISECONDS);
+            } catch (RejectedExecutionException e) {
+                flushScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Flush and force everything written so far to storage
+     */
+    public synchronized void sync() {
+        flush();
+        if (closed) {
+            return;
+        }
+        try {
+            active.raf.getChannel().force(false);
+        } catch (IOException e) {
+            Log.e(TAG, "Error syncing knowledge segment", e);
+        }
+    }
+
+    public void close() {
+        compactionExecutor.shutdown();
+        flushTimer.shutdownNow();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            sync();
+            closed = true;
+            closeQuietly(active);
+        }
+    }
+
+    // ---------------------------------------------------------------- reads
+
+    /**
+     * Value for the key (String, Double, Long or Map of String fields), or null
+     */
+    public synchronized Object get(String key) {
+        Location location = index.get(key);
+        if (location == null) {
+            return null;
+        }
+        flush();
+        return readValue(location);
+    }
+
+    public synchronized int size() {
+        return index.size();
+    }
+
+    /**
+     * Visit every key with the given prefix, oldest write first
+     */
+    public synchronized void forEachWithPrefix(String prefix, EntryVisitor visitor) {
+        flush();
+        List<Map.Entry<String, Location>> matches = new ArrayList<>();
+        for (Map.Entry<String, Location> entry : index.entrySet()) {
+            if (entry.getKey().startsWith(prefix)) {
+                matches.add(entry);
+            }
+        }
+        Collections.sort(matches, (a, b) -> {
+            int bySegment = Long.compare(a.getValue().segmentId, b.getValue().segmentId);
+            return bySegment != 0 ? bySegment : Long.compare(a.getValue().offset, b.getValue().offset);
+        });
+        for (Map.Entry<String, Location> entry : matches) {
+            Object value = readValue(entry.getValue());
+            if (value != null) {
+                visitor.visit(entry.getKey(), value);
+            }
+        }
+    }
+
+    public interface EntryVisitor {
+        void visit(String key, Object value);
+    }
+
+    public long getRecoveryTimeMs() {
+        return recoveryTimeMs;
+    }
+
+    public synchronized long getTotalBytes() {
+        long total = 0;
+        for (Segment segment : segments.values()) {
+            total += segment.size;
+        }
+        return total;
+    }
+
+    public synchronized long getLiveBytes() {
+        long live = 0;
+        for (Segment segment : segments.values()) {
+            live += segment.liveBytes;
+        }
+        return live;
+    }
+
+    public synchronized int getSegmentCount() {
+        return segments.size();
+    }
+
+    // ---------------------------------------------------------------- record encoding
+
+    private boolean droppedAfterClose(String key) {
+        if (closed) {
+            Log.d(TAG, "Store closed; dropping write of " + key);
+        }
+        return closed;
+    }
+
+    private void beginRecord(byte type, String key) {
+        if (closed) {
+            throw new IllegalStateException("Knowledge store is closed");
+        }
+        bodyBuffer.reset();
+        try {
+            bodyOut.writeByte(type);
+            writeString(key);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void write(byte[] bytes) {
+        bodyBuffer.write(bytes, 0, bytes.length);
+    }
+
+    private void writeLong(long value) {
+        try {
+            bodyOut.writeLong(value);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+    }
+
+    private void writeString(String value) throws IOException {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        bodyOut.writeInt(bytes.length);
+        bodyOut.write(bytes);
+    }
+
+    /**
+     * Frame the body, append it to the write buffer and point the index at it
+     */
+    private void endRecord(String key) {
+        byte[] body = bodyBuffer.toByteArray();
+        if (body.length > MAX_RECORD_SIZE) {
+            throw new IllegalArgumentException("Record too large for key " + key);
+        }
+        crc.reset();
+        crc.update(body, 0, body.length);
+
+        try {
+            writeOut.writeInt(body.length);
+            writeOut.writeInt((int) crc.getValue());
+            writeOut.write(body);
+        } catch (IOException e) {
+            throw new IllegalStateException(e);
+        }
+
+        int recordSize = RECORD_HEADER_SIZE + body.length;
+        long offset = active.size;
+        active.size += recordSize;
+
+        boolean delete = body[0] == TYPE_DELETE;
+        Location previous = delete
+                ? index.remove(key)
+                : index.put(key, new Location(active.id, offset, recordSize));
+        if (previous != null) {
+            Segment old = segments.get(previous.segmentId);
+            if (old != null) {
+                old.liveBytes -= previous.size;
+            }
+        }
+        if (!delete) {
+            active.liveBytes += recordSize;
+        }
+        pendingUndo.add(new Undo(key, previous, recordSize, delete));
+
+        if (writeBuffer.size() >= WRITE_BUFFER_FLUSH_BYTES) {
+            flush();
+        }
+        if (writeBuffer.size() > 0) {
+            scheduleFlush();
+        }
+    }
+
+    private Object readValue(Location location) {
+        Segment segment = segments.get(location.segmentId);
+        if (segment == null) {
+            return null;
+        }
+        try {
+            ByteBuffer record;
+            if (segment.mapped != null) {
+                record = segment.view();
+                record.position((int) location.offset).limit((int) (location.offset + location.size));
+                record = record.slice();
+            } else {
+                record = ByteBuffer.allocate(location.size);
+                FileChannel channel = segment.raf.getChannel();
+                long position = location.offset;
+                while (record.hasRemaining()) {
+                    int read = channel.read(record, position);
+                    if (read < 0) {
+                        return null;
+                    }
+                    position += read;
+                }
+                record.flip();
+            }
+            record.position(RECORD_HEADER_SIZE);
+            byte type = record.get();
+            readString(record); // key
+            return decodeValue(type, record);
+        } catch (IOException | RuntimeException e) {
+            Log.e(TAG, "Error reading knowledge record", e);
+            return null;
+        }
+    }
+
+    private static Object decodeValue(byte type, ByteBuffer record) {
+        switch (type) {
+            case TYPE_STRING: {
+                byte[] bytes = new byte[record.remaining()];
+                record.get(bytes);
+                return new String(bytes, StandardCharsets.UTF_8);
+            }
+            case TYPE_DOUBLE:
+                return Double.longBitsToDouble(record.getLong());
+            case TYPE_LONG:
+                return record.getLong();
+            case TYPE_RECORD: {
+                int count = record.getInt();
+                Map<String, String> fields = new LinkedHashMap<>();
+                for (int i = 0; i < count; i++) {
+                    fields.put(readString(record), readString(record));
+                }
+                return Collections.unmodifiableMap(fields);
+            }
+            default:
+                return null;
+        }
+    }
+
+    private static String readString(ByteBuffer buffer) {
+        int length = buffer.getInt();
+        if (length < 0 || length > buffer.remaining()) {
+            throw new IllegalArgumentException("Bad string length " + length);
+        }
+        byte[] bytes = new byte[length];
+        buffer.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+
+    // ---------------------------------------------------------------- recovery
+
+    private void recover() {
+        if (!directory.exists() && !directory.mkdirs()) {
+            Log.e(TAG, "Could not create knowledge directory " + directory);
+        }
+
+        // A leftover .compact file means compaction died before its rename; it is incomplete
+        File[] files = directory.listFiles();
+        TreeMap<Long, File> found = new TreeMap<>();
+        if (files != null) {
+            for (File file : files) {
+                String name = file.getName();
+                if (name.endsWith(COMPACT_SUFFIX)) {
+                    deleteQuietly(file);
+                } else if (name.startsWith(SEGMENT_PREFIX) && name.endsWith(SEGMENT_SUFFIX)) {
+                    try {
+                        long id = Long.parseLong(name.substring(SEGMENT_PREFIX.length(),
+                                name.length() - SEGMENT_SUFFIX.length()));
+                        found.put(id, file);
+                    } catch (NumberFormatException e) {
+                        Log.w(TAG, "Ignoring unexpected file " + name);
+                    }
+                }
+            }
+        }
+
+        // Drop segments a finished compaction replaced but did not get to delete
+        for (Long id : new ArrayList<>(found.descendingKeySet())) {
+            File file = found.get(id);
+            if (file == null) {
+                continue;
+            }
+            long replacesFrom = readReplacesFrom(file, id);
+            for (Long older : new ArrayList<>(found.subMap(replacesFrom, true, id, false).keySet())) {
+                deleteQuietly(found.remove(older));
+            }
+        }
+
+        Long lastId = found.isEmpty() ? null : found.lastKey();
+        for (Map.Entry<Long, File> entry : found.entrySet()) {
+            boolean last = entry.getKey().equals(lastId);
+            Segment segment = new Segment(entry.getKey(), entry.getValue());
+            try {
+                replay(segment, last);
+                segments.put(segment.id, segment);
+            } catch (IOException e) {
+                Log.e(TAG, "Skipping unreadable segment " + segment.file.getName(), e);
+            }
+        }
+
+        // Keep appending to the newest segment while it has room, so restarts do not pile up files
+        Segment newest = lastId != null ? segments.get(lastId) : null;
+        if (newest != null && newest.size < segmentBytes) {
+            try {
+                newest.raf = new RandomAccessFile(newest.file, "rw");
+                newest.mapped = null;
+                active = newest;
+                return;
+            } catch (IOException e) {
+                Log.e(TAG, "Could not reopen knowledge segment " + newest.file.getName(), e);
+            }
+        }
+        openActiveSegment(lastId == null ? 1 : lastId + 1);
+    }
+
+    private static long readReplacesFrom(File file, long id) {
+        try (RandomAccessFile raf = new RandomAccessFile(file, "r")) {
+            if (raf.length() < HEADER_SIZE || raf.readInt() != MAGIC) {
+                return id;
+            }
+            long replacesFrom = raf.readLong();
+            return replacesFrom >= 0 && replacesFrom <= id ? replacesFrom : id;
+        } catch (IOException e) {
+            return id;
+        }
+    }
+
+    /**
+     * Rebuild index entries from one segment; a torn tail on the newest segment is truncated
+     */
+    private void replay(Segment segment, boolean newest) throws IOException {
+        try (RandomAccessFile raf = new RandomAccessFile(segment.file, "rw")) {
+            FileChannel channel = raf.getChannel();
+            long length = channel.size();
+            if (length < HEADER_SIZE) {
+                raf.setLength(0);
+                writeHeader(raf, segment.id);
+                length = HEADER_SIZE;
+            }
+
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, length);
+            if (mapped.getInt(0) != MAGIC) {
+                throw new IOException("Bad segment header");
+            }
+
+            long validEnd = scan(segment, mapped, (int) length);
+            if (validEnd < length) {
+                Log.w(TAG, "Truncating " + (length - validEnd) + " corrupt bytes from " + segment.file.getName()
+                        + (newest ? "" : " (not the newest segment)"));
+                raf.setLength(validEnd);
+                channel.force(true);
+                mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, validEnd);
+            }
+            segment.mapped = mapped;
+            segment.size = validEnd;
+        }
+    }
+
+    private long scan(Segment segment, ByteBuffer mapped, int length) {
+        ByteBuffer buffer = mapped.duplicate();
+        int position = HEADER_SIZE;
+        CRC32 check = new CRC32();
+        byte[] scratch = new byte[256];
+
+        while (position + RECORD_HEADER_SIZE <= length) {
+            int bodyLength = buffer.getInt(position);
+            int expectedCrc = buffer.getInt(position + 4);
+            if (bodyLength <= 0 || bodyLength > MAX_RECORD_SIZE || position + RECORD_HEADER_SIZE + bodyLength > length) {
+                break;
+            }
+
+            if (scratch.length < bodyLength) {
+                scratch = new byte[Math.max(bodyLength, scratch.length * 2)];
+            }
+            buffer.position(position + RECORD_HEADER_SIZE);
+            buffer.get(scratch, 0, bodyLength);
+            check.reset();
+            check.update(scratch, 0, bodyLength);
+            if ((int) check.getValue() != expectedCrc) {
+                break;
+            }
+
+            ByteBuffer body = ByteBuffer.wrap(scratch, 0, bodyLength);
+            byte type = body.get();
+            String key;
+            try {
+                key = readString(body);
+            } catch (RuntimeException e) {
+                break;
+            }
+
+            int recordSize = RECORD_HEADER_SIZE + bodyLength;
+            Location previous = type == TYPE_DELETE
+                    ? index.remove(key)
+                    : index.put(key, new Location(segment.id, position, recordSize));
+            if (previous != null) {
+                Segment old = previous.segmentId == segment.id ? segment : segments.get(previous.segmentId);
+                if (old != null) {
+                    old.liveBytes -= previous.size;
+                }
+            }
+            if (type != TYPE_DELETE) {
+                segment.liveBytes += recordSize;
+            }
+            position += recordSize;
+        }
+        return position;
+    }
+
+    private static void writeHeader(RandomAccessFile raf, long replacesFrom) throws IOException {
+        raf.seek(0);
+        raf.writeInt(MAGIC);
+        raf.writeLong(replacesFrom);
+    }
+
+    // ---------------------------------------------------------------- segments
+
+    private File segmentFile(long id) {
+        return new File(directory, String.format("%s%016d%s", SEGMENT_PREFIX, id, SEGMENT_SUFFIX));
+    }
+
+    private void openActiveSegment(long id) {
+        Segment segment = new Segment(id, segmentFile(id));
+        try {
+            segment.raf = new RandomAccessFile(segment.file, "rw");
+            segment.raf.setLength(0);
+            writeHeader(segment.raf, id);
+            segment.size = HEADER_SIZE;
+        } catch (IOException e) {
+            Log.e(TAG, "Could not open knowledge segment " + segment.file.getName(), e);
+        }
+        segments.put(id, segment);
+        active = segment;
+    }
+
+    /**
+     * Seal the active segment once it is full and start the next one
+     */
+    private void maybeRoll() {
+        if (active.size < segmentBytes) {
+            return;
+        }
+        Segment sealed = active;
+        try {
+            FileChannel channel = sealed.raf.getChannel();
+            channel.force(false);
+            sealed.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, sealed.size);
+        } catch (IOException e) {
+            Log.e(TAG, "Could not seal knowledge segment " + sealed.file.getName(), e);
+            return;
+        }
+        closeQuietly(sealed);
+        openActiveSegment(sealed.id + 1);
+    }
+
+    // ---------------------------------------------------------------- compaction
+
+    private void maybeScheduleCompaction() {
+        long sealedBytes = 0;
+        long sealedLive = 0;
+        int sealedCount = 0;
+        for (Segment segment : segments.values()) {
+            if (segment != active) {
+                sealedBytes += segment.size;
+                sealedLive += segment.liveBytes;
+                sealedCount++;
+            }
+        }
+        boolean mostlyDead = sealedBytes > 0 && 1.0 - (double) sealedLive / sealedBytes >= COMPACTION_DEAD_RATIO;
+        if (sealedCount < MIN_SEALED_SEGMENTS_FOR_COMPACTION || (!mostlyDead && sealedCount <= MAX_SEALED_SEGMENTS)) {
+            return;
+        }
+        if (compactionScheduled.compareAndSet(false, true)) {
+            try {
+                compactionExecutor.execute(() -> {
+                    try {
+                        compact();
+                    } finally {
+                        compactionScheduled.set(false);
+                    }
+                });
+            } catch (RuntimeException e) {
+                compactionScheduled.set(false);
+            }
+        }
+    }
+
+    /**
+     * Rewrite the live records of every sealed segment into one segment that replaces them
+     */
+    void compact() {
+        List<Segment> inputs;
+        Map<String, Location> live = new HashMap<>();
+        List<Map.Entry<String, Location>> retained = new ArrayList<>();
+        synchronized (this) {
+            if (closed) {
+                return;
+            }
+            inputs = new ArrayList<>();
+            for (Segment segment : segments.values()) {
+                if (segment != active) {
+                    inputs.add(segment);
+                }
+            }
+            if (inputs.size() < MIN_SEALED_SEGMENTS_FOR_COMPACTION) {
+                return;
+            }
+            for (Map.Entry<String, Location> entry : index.entrySet()) {
+                if (entry.getValue().segmentId != active.id) {
+                    live.put(entry.getKey(), entry.getValue());
+                }
+            }
+            // Records that buffered writes would roll back to have to survive as well
+            for (Undo undo : pendingUndo) {
+                if (undo.previous != null && undo.previous.segmentId != active.id) {
+                    retained.add(new AbstractMap.SimpleEntry<>(undo.key, undo.previous));
+                }
+            }
+        }
+
+        long firstId = inputs.get(0).id;
+        long lastId = inputs.get(inputs.size() - 1).id;
+        File target = segmentFile(lastId);
+        File temp = new File(target.getPath() + COMPACT_SUFFIX);
+
+        // Copy in log order; sealed segments are immutable so no lock is needed
+        List<Map.Entry<String, Location>> ordered = new ArrayList<>(live.entrySet());
+        ordered.addAll(retained);
+        Collections.sort(ordered, (a, b) -> {
+            int bySegment = Long.compare(a.getValue().segmentId, b.getValue().segmentId);
+            return bySegment != 0 ? bySegment : Long.compare(a.getValue().offset, b.getValue().offset);
+        });
+        Map<Location, Location> moved = new IdentityHashMap<>();
+        Segment compacted = new Segment(lastId, target);
+        try (RandomAccessFile raf = new RandomAccessFile(temp, "rw")) {
+            raf.setLength(0);
+            writeHeader(raf, firstId);
+            FileChannel channel = raf.getChannel();
+            long position = HEADER_SIZE;
+            for (Map.Entry<String, Location> entry : ordered) {
+                Location location = entry.getValue();
+                Segment source = findSegment(inputs, location.segmentId);
+                if (source == null) {
+                    continue;
+                }
+                ByteBuffer record = source.view();
+                record.position((int) location.offset).limit((int) (location.offset + location.size));
+                while (record.hasRemaining()) {
+                    channel.write(record, position + (record.position() - location.offset));
+                }
+                moved.put(location, new Location(lastId, position, location.size));
+                position += location.size;
+            }
+            channel.force(true);
+            // Mapped before the rename; the mapping follows the file
+            compacted.size = position;
+            compacted.mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, position);
+        } catch (IOException e) {
+            Log.e(TAG, "Compaction failed", e);
+            deleteQuietly(temp);
+            return;
+        }
+
+        synchronized (this) {
+            if (closed) {
+                deleteQuietly(temp);
+                return;
+            }
+            if (!temp.renameTo(target)) {
+                Log.e(TAG, "Could not install compacted segment");
+                deleteQuietly(temp);
+                return;
+            }
+
+            // Keys rewritten while we copied already point at the active segment; leave them
+            for (Map.Entry<String, Location> entry : live.entrySet()) {
+                Location copy = moved.get(entry.getValue());
+                if (copy != null && index.get(entry.getKey()) == entry.getValue()) {
+                    index.put(entry.getKey(), copy);
+                    compacted.liveBytes += copy.size;
+                }
+            }
+
+            // Buffered records may still be rolled back onto locations that just moved
+            for (Undo undo : pendingUndo) {
+                Location copy = undo.previous != null ? moved.get(undo.previous) : null;
+                if (copy != null) {
+                    undo.previous = copy;
+                }
+            }
+
+            for (Segment input : inputs) {
+                segments.remove(input.id);
+            }
+            segments.put(compacted.id, compacted);
+            for (Segment input : inputs) {
+                if (input.id != lastId) {
+                    deleteQuietly(input.file);
+                }
+            }
+            Log.i(TAG, "Compacted " + inputs.size() + " segments into " + compacted.size + " bytes");
+        }
+    }
+
+    private static Segment findSegment(List<Segment> segments, long id) {
+        for (Segment segment : segments) {
+            if (segment.id == id) {
+                return segment;
+            }
+        }
+        return null;
+    }
+
+    private static void closeQuietly(Segment segment) {
+        if (segment != null && segment.raf != null) {
+            try {
+                segment.raf.close();
+            } catch (IOException e) {
+                // Ignore
+            }
+            segment.raf = null;
+        }
+    }
+
+    private static void deleteQuietly(File file) {
+        if (file != null && file.exists() && !file.delete()) {
+            Log.w(TAG, "Could not delete " + file.getName());
+        }
+    }
+}
@@ -0,0 +1,145 @@
+package com.fullsend.jarvis.ai;
+
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.concurrent.atomic.AtomicLongArray;
+
+/**
+ * Lock-free latency histogram with log-scaled buckets
+ *
+ * Features:
+ * - Unit-agnostic: callers record milliseconds or microseconds and read back the same unit
+ * - Eight buckets per power of two (~9% resolution) up to 2^40 (about 12 days in microseconds)
+ * - record() is a couple of atomic increments, safe from any thread
+ * - Immutable snapshots that can be subtracted to get the distribution of a time window
+ */
+public class LatencyHistogram {
+
+    private static final int SUB_BUCKETS = 8;
+    private static final int BUCKET_COUNT = SUB_BUCKETS * 40 + 1;
+    private static final double LOG2 = Math.log(2);
+
+    private final AtomicLongArray counts = new AtomicLongArray(BUCKET_COUNT);
+    private final AtomicLong totalCount = new AtomicLong();
+    private final AtomicLong totalValue = new AtomicLong();
+    private final AtomicLong maxValue = new AtomicLong();
+
+    public void record(long value) {
+        if (value < 0) {
+            value = 0;
+        }
+        counts.incrementAndGet(bucketFor(value));
+        totalCount.incrementAndGet();
+        totalValue.addAndGet(value);
+
+        long max;
+        while (value > (max = maxValue.get()) && !maxValue.compareAndSet(max, value)) {
+            // Retry until we publish the new maximum or someone beats it
+        }
+    }
+
+    public long getCount() {
+        return totalCount.get();
+    }
+
+    public Snapshot snapshot() {
+        long[] copy = new long[BUCKET_COUNT];
+        long count = 0;
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            copy[i] = counts.get(i);
+            count += copy[i];
+        }
+        return new Snapshot(copy, count, totalValue.get(), maxValue.get());
+    }
+
+    public void reset() {
+        for (int i = 0; i < BUCKET_COUNT; i++) {
+            counts.set(i, 0);
+        }
+        totalCount.set(0);
+        totalValue.set(0);
+        maxValue.set(0);
+    }
+
+    static int bucketFor(long value) {
+        int bucket = (int) Math.ceil(Math.log(value + 1) / LOG2 * SUB_BUCKETS);
+        return Math.min(BUCKET_COUNT - 1, bucket);
+    }
+
+    /**
+     * Largest value that falls in the bucket
+     */
+    static long bucketUpperBound(int bucket) {
+        return Math.max(0, (long) Math.floor(Math.pow(2, (double) bucket / SUB_BUCKETS)) - 1);
+    }
+
+    /**
+     * Point-in-time copy of a histogram
+     */
+    public static class Snapshot {
+        private final long[] counts;
+        public final long count;
+        public final long total;
+        public final long max;
+
+        Snapshot(long[] counts, long count, long total, long max) {
+            this.counts = counts;
+            this.count = count;
+            this.total = total;
+            this.max = max;
+        }
+
+        /**
+         * Latency at the given quantile (0..1), reported as its bucket's upper bound
+         */
+        public long percentile(double quantile) {
+            if (count == 0) {
+                return 0;
+            }
+            long rank = (long) Math.ceil(quantile * count);
+            long seen = 0;
+            for (int i = 0; i < counts.length; i++) {
+                seen += counts[i];
+                if (seen >= rank && seen > 0) {
+                    return Math.min(bucketUpperBound(i), max);
+                }
+            }
+            return max;
+        }
+
+        public double mean() {
+            return count == 0 ? 0 : (double) total / count;
+        }
+
+        /**
+         * Combined distribution of two histograms
+         */
+        public Snapshot plus(Snapshot other) {
+            long[] merged = new long[counts.length];
+            for (int i = 0; i < counts.length; i++) {
+                merged[i] = counts[i] + other.counts[i];
+            }
+            return new Snapshot(merged, count + other.count, total + other.total, Math.max(max, other.max));
+        }
+
+        /**
+         * Distribution of the samples recorded between an earlier snapshot and this one
+         */
+        public Snapshot minus(Snapshot earlier) {
+            if (earlier == null) {
+                return this;
+            }
+            long[] window = new long[counts.length];
+            long windowCount = 0;
+            long windowMax = 0;
+            for (int i = 0; i < counts.length; i++) {
+                window[i] = Math.max(0, counts[i] - earlier.counts[i]);
+                windowCount += window[i];
+                if (window[i] > 0) {
+                    windowMax = bucketUpperBound(i);
+                }
+            }
+            return new Snapshot(window, windowCount, Math.max(0, total - earlier.total),
+                    Math.min(windowMax, max));
+        }
+    }
+}
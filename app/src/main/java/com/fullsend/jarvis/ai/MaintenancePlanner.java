@@ -0,0 +1,277 @@
+package com.fullsend.jarvis.ai;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Decides which maintenance actions are worth running, and when
+ *
+ * Features:
+ * - Triggers arriving within a short window are coalesced into a single maintenance run
+ * - Per action: last run time, measured cost and a fingerprint of the inputs it looked at
+ * - An action is due once its minimum interval has passed; the interval grows with the action's
+ *   measured cost, so expensive actions never take more than a small share of wall time
+ * - A due action whose inputs have not changed since its last successful run is skipped,
+ *   until its maximum interval forces a refresh
+ * - Runs are recorded whoever started them, so a user-requested action also resets its schedule
+ * - Schedule state is kept in the KnowledgeStore (wall-clock times) and survives restarts
+ */
+public class MaintenancePlanner {
+
+    private static final String TAG = "MaintenancePlanner";
+
+    static final long COALESCE_WINDOW_MS = 10 * 1000;
+    static final long COST_INTERVAL_FACTOR = 100; // At most ~1% of wall time per action
+    private static final double COST_SMOOTHING = 0.3;
+
+    private static final String KEY_PREFIX = "maint:";
+    private static final String FIELD_LAST_RUN = "lastRunAt";
+    private static final String FIELD_COST = "costMs";
+    private static final String FIELD_FINGERPRINT = "fingerprint";
+    private static final String FIELD_RUNS = "runs";
+
+    /**
+     * Summarizes the inputs an action works from; a different value means the action has new work
+     */
+    public interface InputProbe {
+        long fingerprint();
+    }
+
+    private static final class ActionState {
+        final String name;
+        final long minIntervalMs;
+        final long maxIntervalMs;
+        final InputProbe probe;
+        long lastRunAt;
+        long costMs;
+        long fingerprint;
+        boolean hasFingerprint;
+        long runs;
+
+        ActionState(String name, long minIntervalMs, long maxIntervalMs, InputProbe probe) {
+            this.name = name;
+            this.minIntervalMs = minIntervalMs;
+            this.maxIntervalMs = maxIntervalMs;
+            this.probe = probe;
+        }
+
+        long effectiveIntervalMs() {
+            return Math.max(minIntervalMs, costMs * COST_INTERVAL_FACTOR);
+        }
+    }
+
+    public static class PlannerStats {
+        public long triggers;
+        public long coalesced;
+        public long runs;
+        public long planned;
+        public long skippedNotDue;
+        public long skippedUnchanged;
+    }
+
+    private final KnowledgeStore store;
+    private final Runnable runMaintenance;
+    private final ScheduledExecutorService timer;
+    private final Map<String, ActionState> actions = new LinkedHashMap<>();
+    private boolean windowOpen;
+    private boolean shutdown;
+
+    // Statistics, guarded by this
+    private long triggers;
+    private long coalesced;
+    private long runs;
+    private long planned;
+    private long skippedNotDue;
+    private long skippedUnchanged;
+
+    /**
+     * @param store          where schedule state is persisted; null keeps it in memory only
+     * @param runMaintenance called once per coalescing window, off the caller's thread
+     */
+    public MaintenancePlanner(KnowledgeStore store, Runnable runMaintenance) {
+        this.store = store;
+        this.runMaintenance = runMaintenance;
+        this.timer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "MaintenancePlanner");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+
+    /**
+     * Register an action and restore its persisted schedule; a null probe means "always changed"
+     */
+    public synchronized void register(String name, long minIntervalMs, long maxIntervalMs, InputProbe probe) {
+        ActionState state = new ActionState(name, minIntervalMs, maxIntervalMs, probe);
+        restore(state);
+        actions.put(name, state);
+    }
+
+    /**
+     * Ask for a maintenance run; triggers within one window share a single run
+     */
+    public void trigger() {
+        synchronized (this) {
+            if (shutdown) {
+                return;
+            }
+            triggers++;
+            if (windowOpen) {
+                coalesced++;
+                return;
+            }
+            windowOpen = true;
+        }
+        try {
+            timer.schedule(this::closeWindow, COALESCE_WINDOW_MS, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            Log.w(TAG, "Planner stopped, maintenance trigger dropped");
+        }
+    }
+
+    private void closeWindow() {
+        synchronized (this) {
+            windowOpen = false;
+            if (shutdown) {
+                return;
+            }
+        }
+        runMaintenance.run();
+    }
+
+    /**
+     * The actions worth running now, cheapest first
+     */
+    public List<String> plan() {
+        long now = System.currentTimeMillis();
+        List<ActionState> due = new ArrayList<>();
+        synchronized (this) {
+            for (ActionState state : actions.values()) {
+                long sinceLastRun = now - state.lastRunAt;
+                // A clock set backwards counts as overdue rather than blocking the action for good
+                boolean neverRun = state.runs == 0 || sinceLastRun < 0;
+                if (!neverRun && sinceLastRun < state.effectiveIntervalMs()) {
+                    skippedNotDue++;
+                    continue;
+                }
+                if (!neverRun && sinceLastRun < state.maxIntervalMs && !inputsChanged(state)) {
+                    skippedUnchanged++;
+                    continue;
+                }
+                due.add(state);
+            }
+            planned += due.size();
+        }
+        Collections.sort(due, (a, b) -> Long.compare(a.costMs, b.costMs));
+
+        List<String> names = new ArrayList<>(due.size());
+        for (ActionState state : due) {
+            names.add(state.name);
+        }
+        return names;
+    }
+
+    private boolean inputsChanged(ActionState state) {
+        return state.probe == null || !state.hasFingerprint || state.probe.fingerprint() != state.fingerprint;
+    }
+
+    /**
+     * Record a finished run of an action; unregistered actions are ignored
+     */
+    public void recordRun(String name, long costMs, boolean success) {
+        Map<String, String> fields;
+        synchronized (this) {
+            ActionState state = actions.get(name);
+            if (state == null) {
+                return;
+            }
+            runs++;
+            state.runs++;
+            state.lastRunAt = System.currentTimeMillis();
+            state.costMs = state.runs == 1 ? costMs
+                    : Math.round(state.costMs * (1 - COST_SMOOTHING) + costMs * COST_SMOOTHING);
+            // A failed run keeps the old fingerprint, so the action is retried once it is due again
+            if (success && state.probe != null) {
+                state.fingerprint = state.probe.fingerprint();
+                state.hasFingerprint = true;
+            }
+            fields = toFields(state);
+        }
+        persist(name, fields);
+    }
+
+    private Map<String, String> toFields(ActionState state) {
+        Map<String, String> fields = new LinkedHashMap<>();
+        fields.put(FIELD_LAST_RUN, Long.toString(state.lastRunAt));
+        fields.put(FIELD_COST, Long.toString(state.costMs));
+        fields.put(FIELD_FINGERPRINT, state.hasFingerprint ? Long.toString(state.fingerprint) : "");
+        fields.put(FIELD_RUNS, Long.toString(state.runs));
+        return fields;
+    }
+
+    private void persist(String name, Map<String, String> fields) {
+        if (store == null) {
+            return;
+        }
+        store.putRecord(KEY_PREFIX + name, fields);
+        store.flush();
+    }
+
+    @SuppressWarnings("unchecked")
+    private void restore(ActionState state) {
+        if (store == null) {
+            return;
+        }
+        Object value = store.get(KEY_PREFIX + state.name);
+        if (!(value instanceof Map)) {
+            return;
+        }
+        Map<String, String> fields = (Map<String, String>) value;
+        try {
+            state.lastRunAt = Long.parseLong(fields.get(FIELD_LAST_RUN));
+            state.costMs = Long.parseLong(fields.get(FIELD_COST));
+            state.runs = Long.parseLong(fields.get(FIELD_RUNS));
+            String fingerprint = fields.get(FIELD_FINGERPRINT);
+            if (fingerprint != null && !fingerprint.isEmpty()) {
+                state.fingerprint = Long.parseLong(fingerprint);
+                state.hasFingerprint = true;
+            }
+        } catch (NumberFormatException | NullPointerException e) {
+            Log.w(TAG, "Discarding unreadable schedule for " + state.name);
+            state.lastRunAt = 0;
+            state.costMs = 0;
+            state.runs = 0;
+            state.hasFingerprint = false;
+        }
+    }
+
+    public synchronized PlannerStats getStats() {
+        PlannerStats stats = new PlannerStats();
+        stats.triggers = triggers;
+        stats.coalesced = coalesced;
+        stats.runs = runs;
+        stats.planned = planned;
+        stats.skippedNotDue = skippedNotDue;
+        stats.skippedUnchanged = skippedUnchanged;
+        return stats;
+    }
+
+    /**
+     * Drop an open window; state already recorded stays persisted
+     */
+    public void shutdown() {
+        synchronized (this) {
+            shutdown = true;
+        }
+        timer.shutdownNow();
+    }
+}
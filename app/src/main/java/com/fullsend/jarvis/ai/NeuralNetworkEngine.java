@@ -15,6 +15,9 @@ import java.util.Arrays;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.function.UnaryOperator;
 import java.util.regex.Pattern;
 
 /**
@@ -49,17 +52,24 @@ public class NeuralNetworkEngine {
     
     // Performance metrics
     private double accuracy = 0.85;
-    private int totalPredictions = 0;
-    private int correctPredictions = 0;
+    private final AtomicInteger totalPredictions = new AtomicInteger();
+    private final AtomicInteger correctPredictions = new AtomicInteger();
     
     // Intent patterns
     private Map<String, List<Pattern>> intentPatterns;
     
+    // Told when an intent's confidence changes as shown in analyses (two decimals)
+    public interface IntentConfidenceListener {
+        void onIntentConfidenceChanged(String intent);
+    }
+    
+    private volatile IntentConfidenceListener confidenceListener;
+    
     public NeuralNetworkEngine(Context context) {
         this.context = context;
         this.vocabulary = new HashMap<>();
         this.wordEmbeddings = new HashMap<>();
-        this.intentConfidences = new HashMap<>();
+        this.intentConfidences = new ConcurrentHashMap<>(); // Updated from AdvancedAIEngine worker threads
         this.intentPatterns = new HashMap<>();
         
         initializeNeuralNetwork();
@@ -143,6 +153,10 @@ public class NeuralNetworkEngine {
         Log.i(TAG, "Intent patterns initialized for " + intentPatterns.size() + " intents");
     }
     
+    public void setIntentConfidenceListener(IntentConfidenceListener listener) {
+        this.confidenceListener = listener;
+    }
+    
     /**
      * Analyze input text and return comprehensive analysis
      */
@@ -231,7 +245,8 @@ public class NeuralNetworkEngine {
         }
         
         // Store confidence for this intent
-        intentConfidences.put(bestIntent, bestScore);
+        final double score = bestScore;
+        adjustIntentConfidence(bestIntent, previous -> score);
         
         return bestIntent;
     }
@@ -334,6 +349,16 @@ public class NeuralNetworkEngine {
         return topics;
     }
     
+    /**
+     * Per-input bookkeeping of analyzeInput() for an analysis served from cache
+     */
+    public void recordCachedAnalysis(AdvancedAIEngine.AIAnalysis analysis) {
+        if (analysis.getInterpretation() != null) {
+            extractIntent(analysis.getInterpretation());
+        }
+        updateAccuracyMetrics(analysis);
+    }
+    
     /**
      * Learn from user interaction to improve future predictions
      */
@@ -359,8 +384,9 @@ public class NeuralNetworkEngine {
      * Get current neural network accuracy
      */
     public double getAccuracy() {
-        if (totalPredictions == 0) return accuracy;
-        return (double) correctPredictions / totalPredictions;
+        int total = totalPredictions.get();
+        if (total == 0) return accuracy;
+        return (double) correctPredictions.get() / total;
     }
     
     // Private helper methods
@@ -495,11 +521,11 @@ public class NeuralNetworkEngine {
     }
     
     private void updateAccuracyMetrics(AdvancedAIEngine.AIAnalysis analysis) {
-        totalPredictions++;
+        totalPredictions.incrementAndGet();
         // In a real implementation, you'd have feedback to determine if prediction was correct
         // For now, assume 85% accuracy
         if (Math.random() < 0.85) {
-            correctPredictions++;
+            correctPredictions.incrementAndGet();
         }
     }
     
@@ -538,9 +564,19 @@ public class NeuralNetworkEngine {
         // This would be based on user feedback in a real implementation
         String intent = analysis.getCommand();
         if (intent != null) {
-            double currentConfidence = intentConfidences.getOrDefault(intent, 0.5);
             // Assume positive feedback and slightly increase confidence
-            intentConfidences.put(intent, Math.min(1.0, currentConfidence + learningRate * 0.1));
+            double step = learningRate * 0.1;
+            adjustIntentConfidence(intent, v -> Math.min(1.0, (v == null ? 0.5 : v) + step));
+        }
+    }
+    
+    private void adjustIntentConfidence(String intent, UnaryOperator<Double> update) {
+        Double before = intentConfidences.get(intent);
+        Double after = intentConfidences.compute(intent, (k, v) -> update.apply(v));
+        
+        IntentConfidenceListener listener = confidenceListener;
+        if (listener != null && (before == null || Math.round(before * 100) != Math.round(after * 100))) {
+            listener.onIntentConfidenceChanged(intent);
         }
     }
     
@@ -0,0 +1,128 @@
+package com.fullsend.jarvis.ai;
+
+import android.content.BroadcastReceiver;
+import android.content.Context;
+import android.content.Intent;
+import android.content.IntentFilter;
+import android.content.pm.ChangedPackages;
+import android.content.pm.PackageManager;
+import android.net.Uri;
+import android.os.Build;
+import android.util.Log;
+
+import java.util.HashSet;
+import java.util.Set;
+
+/**
+ * Tracks which installed packages changed between system snapshots
+ *
+ * Features:
+ * - Android O+: PackageManager change sequence numbers, no receiver needed
+ * - Older releases: package add/remove/replace/change broadcasts collected into a dirty set
+ * - The first poll asks for a full scan; later polls return only the changed package names
+ */
+public class PackageChangeTracker {
+
+    private static final String TAG = "PackageChangeTracker";
+
+    private final Context context;
+    private final PackageManager packageManager;
+
+    // Guarded by this
+    private final Set<String> dirtyPackages = new HashSet<>();
+    private boolean fullScanNeeded = true;
+    private int sequenceNumber = 0;
+
+    private BroadcastReceiver packageReceiver;
+
+    public PackageChangeTracker(Context context) {
+        this.context = context.getApplicationContext() != null ? context.getApplicationContext() : context;
+        this.packageManager = context.getPackageManager();
+
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.O) {
+            registerPackageReceiver();
+        }
+    }
+
+    /**
+     * Package names changed (installed, updated or removed) since the previous poll,
+     * or null when the caller has to scan every package
+     */
+    public synchronized Set<String> pollChanges() {
+        if (fullScanNeeded || (Build.VERSION.SDK_INT < Build.VERSION_CODES.O && packageReceiver == null)) {
+            // Take the sequence number before the caller scans so nothing in between is missed
+            fullScanNeeded = false;
+            dirtyPackages.clear();
+            sequenceNumber = currentSequenceNumber();
+            return null;
+        }
+
+        Set<String> changed = new HashSet<>();
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            ChangedPackages changes = packageManager.getChangedPackages(sequenceNumber);
+            if (changes != null) {
+                sequenceNumber = changes.getSequenceNumber();
+                changed.addAll(changes.getPackageNames());
+            }
+        } else {
+            changed.addAll(dirtyPackages);
+            dirtyPackages.clear();
+        }
+        return changed;
+    }
+
+    /**
+     * Force the next poll to request a full scan
+     */
+    public synchronized void requestFullScan() {
+        fullScanNeeded = true;
+    }
+
+    public void release() {
+        if (packageReceiver != null) {
+            try {
+                context.unregisterReceiver(packageReceiver);
+            } catch (IllegalArgumentException e) {
+                // Already unregistered
+            }
+            packageReceiver = null;
+        }
+    }
+
+    private int currentSequenceNumber() {
+        if (Build.VERSION.SDK_INT >= Build.VERSION_CODES.O) {
+            ChangedPackages changes = packageManager.getChangedPackages(0);
+            return changes != null ? changes.getSequenceNumber() : 0;
+        }
+        return 0;
+    }
+
+    private void registerPackageReceiver() {
+        IntentFilter filter = new IntentFilter();
+        filter.addAction(Intent.ACTION_PACKAGE_ADDED);
+        filter.addAction(Intent.ACTION_PACKAGE_REMOVED);
+        filter.addAction(Intent.ACTION_PACKAGE_REPLACED);
+        filter.addAction(Intent.ACTION_PACKAGE_CHANGED);
+        filter.addDataScheme("package");
+
+        packageReceiver = new BroadcastReceiver() {
+            @Override
+            public void onReceive(Context context, Intent intent) {
+                Uri data = intent.getData();
+                String packageName = data != null ? data.getSchemeSpecificPart() : null;
+                if (packageName != null) {
+                    synchronized (PackageChangeTracker.this) {
+                        dirtyPackages.add(packageName);
+                    }
+                }
+            }
+        };
+
+        try {
+            context.registerReceiver(packageReceiver, filter);
+        } catch (Exception e) {
+            Log.w(TAG, "Could not register package receiver, falling back to full scans", e);
+            packageReceiver = null;
+        }
+    }
+}
@@ -1,60 +1,517 @@
 package com.fullsend.jarvis.ai;
 
 import android.content.Context;
+import android.os.Build;
+import android.os.PowerManager;
 import android.util.Log;
 
+import java.util.ArrayDeque;
 import java.util.ArrayList;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.concurrent.Executors;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicInteger;
 
 /**
  * Performance Optimizer for System Performance Analysis and Optimization
+ *
+ * Features:
+ * - Performance score from real CPU, heap, resident memory and I/O counters (ProcSampler)
+ * - Recommendations driven by the measured numbers
+ * - Closed-loop runtime tuner: watches request latency (from the engine's RequestLatencyTracker),
+ *   OBD bus latency, heap pressure and thermal state, and moves one RuntimeTuning knob per control step within its bounds
+ * - Control steps run on the optimizer's own timer, so OBD polling is tuned while driving even
+ *   when nobody talks to Jarvis; a burst of slow responses brings the next step forward
+ * - Every adjustment is logged with the metric it targeted, measured again one step later,
+ *   and rolled back if it made that metric worse
+ * - The optimization score is the service score of the last measured window (request and bus
+ *   latency, successful bus throughput), and each adjustment records it before and after
  */
 public class PerformanceOptimizer {
     
     private static final String TAG = "PerformanceOptimizer";
     
+    // Thresholds for recommendations
+    private static final double HIGH_CPU_USAGE = 0.5;
+    private static final double HIGH_HEAP_USAGE = 0.75;
+    private static final long HIGH_RESIDENT_KB = 300 * 1024;
+    private static final double HIGH_WRITE_BYTES_PER_SECOND = 1024 * 1024;
+    private static final int HIGH_THREAD_COUNT = 100;
+    
+    // Control loop
+    private static final long CONTROL_INTERVAL_MS = 30 * 1000;
+    private static final long MIN_CONTROL_INTERVAL_MS = 10 * 1000;  // also the timer tick
+    private static final int SLOW_RESPONSES_FOR_EARLY_STEP = 3;
+    private static final long SLOW_REQUEST_P95_MS = 2000;
+    private static final double LOW_HEAP_USAGE = 0.5;
+    private static final double BUS_SATURATION = 0.8;     // fraction of wall time the bus was busy
+    private static final double BUS_IDLE = 0.25;
+    private static final double HIGH_BUS_ERROR_RATE = 0.1;
+    private static final double REGRESSION_TOLERANCE = 1.2;
+    private static final int MIN_WINDOW_SAMPLES = 5;
+    private static final int MAX_ADJUSTMENT_LOG = 64;
+    private static final int THERMAL_STATUS_MODERATE = 2; // PowerManager.THERMAL_STATUS_MODERATE
+    
     private Context context;
-    private double optimizationScore = 0.85;
+    private final ProcSampler procSampler = new ProcSampler();
+    private volatile double optimizationScore = 1.0;  // until a window with traffic is measured
+    
+    // Tuner state
+    private final RuntimeTuning tuning = RuntimeTuning.get();
+    private final ProcSampler controlSampler = new ProcSampler();
+    private final RequestLatencyTracker requestLatency;
+    private final ArrayDeque<Adjustment> adjustmentLog = new ArrayDeque<>(); // Guarded by this
+    private LatencyHistogram.Snapshot lastRequestSnapshot;
+    private LatencyHistogram.Snapshot lastBusSnapshot;
+    private long lastBusErrors;
+    private volatile long lastControlAt;
+    private Adjustment pendingEvaluation;
+    private final AtomicInteger slowResponses = new AtomicInteger();
+    private final ScheduledExecutorService controlTimer;
+    
+    /**
+     * What a control step looks at
+     */
+    public static class TuningSignals {
+        public long requestCount;
+        public long requestP95Ms;
+        public long busCount;
+        public long busP95Ms;
+        public double busErrorRate;
+        public double busUtilization;  // time spent waiting on the bus / window length
+        public double heapUsage;
+        public double cpuUsage;
+        public double writeBytesPerSecond;
+        public int thermalStatus;      // PowerManager.THERMAL_STATUS_*, 0 when unknown
+        public int pollIntervalMs;
+        public int slowResponses;      // reported by the engine since the previous step
+    }
+    
+    /**
+     * Metric an adjustment is meant to improve; lower is always better
+     */
+    public enum Objective {
+        REQUEST_P95,
+        HEAP_USAGE,
+        BUS_P95,
+        WRITE_RATE,
+        THERMAL;
+        
+        double measure(TuningSignals signals) {
+            switch (this) {
+                case REQUEST_P95: return signals.requestP95Ms;
+                case HEAP_USAGE: return signals.heapUsage;
+                case BUS_P95: return signals.busP95Ms;
+                case WRITE_RATE: return signals.writeBytesPerSecond;
+                default: return signals.thermalStatus;
+            }
+        }
+        
+        boolean hasEnoughSamples(TuningSignals signals) {
+            switch (this) {
+                case REQUEST_P95: return signals.requestCount >= MIN_WINDOW_SAMPLES;
+                case BUS_P95: return signals.busCount >= MIN_WINDOW_SAMPLES;
+                default: return true;
+            }
+        }
+    }
     
-    public PerformanceOptimizer(Context context) {
+    /**
+     * One knob change and its measured effect
+     */
+    public static class Adjustment {
+        public final long timestamp;
+        public final String knob;
+        public final int oldValue;
+        public final int newValue;
+        public final String reason;
+        public final Objective objective;
+        public final double metricBefore;
+        public final double scoreBefore;         // serviceScore() of the window that led to it
+        public final boolean revertible;
+        public double metricAfter = Double.NaN;  // NaN until evaluated
+        public double scoreAfter = Double.NaN;
+        public boolean reverted;
+        
+        Adjustment(String knob, int oldValue, int newValue, String reason,
+                   Objective objective, double metricBefore, double scoreBefore, boolean revertible) {
+            this.timestamp = System.currentTimeMillis();
+            this.knob = knob;
+            this.oldValue = oldValue;
+            this.newValue = newValue;
+            this.reason = reason;
+            this.objective = objective;
+            this.metricBefore = metricBefore;
+            this.scoreBefore = scoreBefore;
+            this.revertible = revertible;
+        }
+        
+        @Override
+        public String toString() {
+            String effect = Double.isNaN(metricAfter) ? "pending"
+                    : String.format("%s %.2f -> %.2f, score %.2f -> %.2f", objective, metricBefore, metricAfter,
+                            scoreBefore, scoreAfter);
+            return knob + " " + oldValue + " -> " + newValue + " (" + reason + "; " + effect
+                    + (reverted ? "; reverted" : "") + ")";
+        }
+    }
+    
+    public PerformanceOptimizer(Context context, RequestLatencyTracker requestLatency) {
         this.context = context;
+        this.requestLatency = requestLatency;
+        procSampler.sampleDelta(); // Start the first measurement window
+        controlSampler.sampleDelta();
+        lastControlAt = System.currentTimeMillis();
+        lastRequestSnapshot = requestLatency.snapshot(RequestLatencyTracker.Phase.TOTAL);
+        lastBusSnapshot = tuning.getBusLatency().snapshot();
+        lastBusErrors = tuning.getBusErrors();
+        controlTimer = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "PerformanceOptimizer");
+            thread.setDaemon(true);
+            return thread;
+        });
+    }
+    
+    /**
+     * Start the periodic control loop
+     */
+    public void start() {
+        controlTimer.scheduleWithFixedDelay(this::runControlStep,
+                MIN_CONTROL_INTERVAL_MS, MIN_CONTROL_INTERVAL_MS, TimeUnit.MILLISECONDS);
+    }
+    
+    public void shutdown() {
+        controlTimer.shutdownNow();
+    }
+    
+    private void runControlStep() {
+        try {
+            applyOptimizations();
+        } catch (RuntimeException e) {
+            // An exception would cancel the periodic task
+            Log.e(TAG, "Control step failed", e);
+        }
     }
     
     public PerformanceReport analyzePerformance() {
+        ProcSampler.Delta delta = procSampler.sampleDelta();
+        ProcSampler.Sample sample = delta.sample;
+        Runtime runtime = Runtime.getRuntime();
+        
         PerformanceReport report = new PerformanceReport();
-        report.performanceScore = optimizationScore * 100;
+        report.cpuUsage = delta.processCpuUsage;
+        report.heapUsage = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        report.residentMemoryKb = sample.vmRssKb;
+        report.proportionalMemoryKb = sample.pssKb;
+        report.threadCount = sample.threads;
+        report.readBytesPerSecond = delta.readBytesPerSecond;
+        report.writeBytesPerSecond = delta.writeBytesPerSecond;
+        report.sampleWindowMs = delta.elapsedMs;
+        
+        // Each component is 1.0 when comfortably below its threshold and falls to 0 at twice it
+        double cpuScore = headroom(report.cpuUsage, HIGH_CPU_USAGE);
+        double heapScore = headroom(report.heapUsage, HIGH_HEAP_USAGE);
+        double residentScore = sample.vmRssKb >= 0 ? headroom(sample.vmRssKb, HIGH_RESIDENT_KB) : 1.0;
+        double ioScore = headroom(report.writeBytesPerSecond, HIGH_WRITE_BYTES_PER_SECOND);
+        
+        double score = 0.35 * cpuScore + 0.3 * heapScore + 0.2 * residentScore + 0.15 * ioScore;
+        report.performanceScore = score * 100;
+        
+        Log.d(TAG, "Performance score " + String.format("%.1f", report.performanceScore)
+                + " (cpu=" + String.format("%.1f", report.cpuUsage * 100) + "%, heap="
+                + String.format("%.1f", report.heapUsage * 100) + "%, rss=" + report.residentMemoryKb + "kB)");
         return report;
     }
     
     public List<String> generateOptimizations(PerformanceReport report) {
         List<String> optimizations = new ArrayList<>();
-        optimizations.add("Optimize memory usage");
-        optimizations.add("Improve CPU efficiency");
-        optimizations.add("Enhance I/O performance");
+        if (report.cpuUsage > HIGH_CPU_USAGE) {
+            optimizations.add("Jarvis is using " + String.format("%.0f", report.cpuUsage * 100)
+                    + "% CPU - defer background analysis and batch CPU-heavy work");
+        }
+        if (report.heapUsage > HIGH_HEAP_USAGE) {
+            optimizations.add("Heap is " + String.format("%.0f", report.heapUsage * 100)
+                    + "% full - trim caches and conversation history");
+        }
+        if (report.residentMemoryKb > HIGH_RESIDENT_KB) {
+            optimizations.add("Resident memory is " + report.residentMemoryKb / 1024 + "MB - release native buffers and bitmaps");
+        }
+        if (report.writeBytesPerSecond > HIGH_WRITE_BYTES_PER_SECOND) {
+            optimizations.add("Writing " + String.format("%.1f", report.writeBytesPerSecond / 1024 / 1024)
+                    + "MB/s to storage - coalesce log and cache writes");
+        }
+        if (report.threadCount > HIGH_THREAD_COUNT) {
+            optimizations.add(report.threadCount + " threads running - share executors instead of creating new ones");
+        }
+        if (optimizations.isEmpty()) {
+            optimizations.add("All measured resources are within normal limits");
+        }
         return optimizations;
     }
     
+    private static double headroom(double value, double threshold) {
+        if (value <= threshold) {
+            return 1.0;
+        }
+        return Math.max(0.0, 1.0 - (value - threshold) / threshold);
+    }
+    
     public boolean needsOptimization() {
-        return optimizationScore < 0.8;
+        return optimizationScore < 0.8
+                || System.currentTimeMillis() - lastControlAt >= controlInterval();
+    }
+    
+    private long controlInterval() {
+        return slowResponses.get() >= SLOW_RESPONSES_FOR_EARLY_STEP ? MIN_CONTROL_INTERVAL_MS : CONTROL_INTERVAL_MS;
+    }
+    
+    /**
+     * Run one control step: evaluate the previous adjustment, then make at most one new one
+     */
+    public synchronized void applyOptimizations() {
+        long now = System.currentTimeMillis();
+        if (now - lastControlAt < controlInterval()) {
+            return;
+        }
+        lastControlAt = now;
+        
+        TuningSignals signals = collectSignals();
+        double score = serviceScore(signals);
+        if (!Double.isNaN(score)) {
+            optimizationScore = score;
+        }
+        evaluatePendingAdjustment(signals, score);
+        
+        Adjustment adjustment = chooseAdjustment(signals, score);
+        if (adjustment != null) {
+            tuning.set(adjustment.knob, adjustment.newValue);
+            pendingEvaluation = adjustment;
+            recordAdjustment(adjustment);
+            Log.i(TAG, "Tuning " + adjustment);
+        }
+    }
+    
+    /**
+     * Service quality over one window from what was measured, 1.0 when everything is within
+     * its limits: request p95 against the slow-request limit, bus p95 against the poll
+     * interval, and bus throughput as the share of reads that succeeded on a bus that is not
+     * saturated. NaN when the window had too little traffic to judge.
+     */
+    static double serviceScore(TuningSignals signals) {
+        double sum = 0;
+        int parts = 0;
+        if (signals.requestCount >= MIN_WINDOW_SAMPLES) {
+            sum += headroom(signals.requestP95Ms, SLOW_REQUEST_P95_MS);
+            parts++;
+        }
+        if (signals.busCount >= MIN_WINDOW_SAMPLES) {
+            sum += headroom(signals.busP95Ms, Math.max(1, signals.pollIntervalMs));
+            sum += (1.0 - Math.min(1.0, signals.busErrorRate)) * headroom(signals.busUtilization, BUS_SATURATION);
+            parts += 2;
+        }
+        return parts == 0 ? Double.NaN : sum / parts;
+    }
+    
+    /**
+     * Signals over the window since the previous control step
+     */
+    TuningSignals collectSignals() {
+        TuningSignals signals = new TuningSignals();
+        
+        // The tracker records microseconds
+        LatencyHistogram.Snapshot requests = requestLatency.snapshot(RequestLatencyTracker.Phase.TOTAL);
+        LatencyHistogram.Snapshot requestWindow = requests.minus(lastRequestSnapshot);
+        lastRequestSnapshot = requests;
+        signals.requestCount = requestWindow.count;
+        signals.requestP95Ms = requestWindow.percentile(0.95) / 1000;
+        
+        LatencyHistogram.Snapshot bus = tuning.getBusLatency().snapshot();
+        LatencyHistogram.Snapshot busWindow = bus.minus(lastBusSnapshot);
+        lastBusSnapshot = bus;
+        long busErrors = tuning.getBusErrors();
+        signals.busCount = busWindow.count;
+        signals.busP95Ms = busWindow.percentile(0.95);
+        signals.busErrorRate = busWindow.count == 0 ? 0 : (double) (busErrors - lastBusErrors) / busWindow.count;
+        lastBusErrors = busErrors;
+        signals.slowResponses = slowResponses.getAndSet(0);
+        
+        Runtime runtime = Runtime.getRuntime();
+        signals.heapUsage = (double) (runtime.totalMemory() - runtime.freeMemory()) / runtime.maxMemory();
+        ProcSampler.Delta delta = controlSampler.sampleDelta();
+        signals.cpuUsage = delta.processCpuUsage;
+        signals.writeBytesPerSecond = delta.writeBytesPerSecond;
+        signals.busUtilization = delta.elapsedMs > 0 ? (double) busWindow.total / delta.elapsedMs : 0;
+        signals.thermalStatus = readThermalStatus();
+        signals.pollIntervalMs = tuning.getValue(RuntimeTuning.KNOB_OBD_POLL_INTERVAL_MS);
+        return signals;
+    }
+    
+    private int readThermalStatus() {
+        // Thermal status is only exposed from Android 10; older devices report "none"
+        if (Build.VERSION.SDK_INT < Build.VERSION_CODES.Q || context == null) {
+            return 0;
+        }
+        PowerManager powerManager = (PowerManager) context.getSystemService(Context.POWER_SERVICE);
+        return powerManager != null ? powerManager.getCurrentThermalStatus() : 0;
+    }
+    
+    private void evaluatePendingAdjustment(TuningSignals signals, double score) {
+        Adjustment adjustment = pendingEvaluation;
+        pendingEvaluation = null;
+        if (adjustment == null || !adjustment.objective.hasEnoughSamples(signals)) {
+            return;
+        }
+        
+        adjustment.metricAfter = adjustment.objective.measure(signals);
+        adjustment.scoreAfter = score;
+        boolean worse = adjustment.metricAfter > adjustment.metricBefore * REGRESSION_TOLERANCE;
+        if (worse && adjustment.revertible
+                && tuning.getValue(adjustment.knob) == adjustment.newValue) {
+            tuning.set(adjustment.knob, adjustment.oldValue);
+            adjustment.reverted = true;
+            Log.w(TAG, "Reverted " + adjustment);
+        } else {
+            Log.i(TAG, "Effect of " + adjustment);
+        }
+    }
+    
+    /**
+     * Safety first (heat, heap, a saturated bus), then throughput, then relaxing earlier cuts
+     */
+    private Adjustment chooseAdjustment(TuningSignals signals, double score) {
+        boolean hot = signals.thermalStatus >= THERMAL_STATUS_MODERATE;
+        int pool = tuning.getValue(RuntimeTuning.KNOB_AI_POOL_SIZE);
+        int cache = tuning.getValue(RuntimeTuning.KNOB_ANALYSIS_CACHE_SIZE);
+        int poll = signals.pollIntervalMs;
+        int logFlush = tuning.getValue(RuntimeTuning.KNOB_LOG_FLUSH_INTERVAL_MS);
+        
+        if (hot) {
+            Adjustment adjustment = propose(RuntimeTuning.KNOB_AI_POOL_SIZE, pool - 2,
+                    "thermal status " + signals.thermalStatus, Objective.THERMAL, signals, score, false);
+            if (adjustment == null) {
+                adjustment = propose(RuntimeTuning.KNOB_OBD_POLL_INTERVAL_MS, poll * 3 / 2,
+                        "thermal status " + signals.thermalStatus, Objective.THERMAL, signals, score, false);
+            }
+            if (adjustment != null) {
+                return adjustment;
+            }
+        }
+        
+        if (signals.heapUsage > HIGH_HEAP_USAGE) {
+            Adjustment adjustment = propose(RuntimeTuning.KNOB_ANALYSIS_CACHE_SIZE, cache / 2,
+                    String.format("heap %.0f%%", signals.heapUsage * 100), Objective.HEAP_USAGE, signals, score, false);
+            if (adjustment != null) {
+                return adjustment;
+            }
+        }
+        
+        if (signals.busCount > 0 && (signals.busUtilization > BUS_SATURATION
+                || signals.busErrorRate > HIGH_BUS_ERROR_RATE)) {
+            Adjustment adjustment = propose(RuntimeTuning.KNOB_OBD_POLL_INTERVAL_MS, poll * 3 / 2,
+                    String.format("bus %.0f%% busy, %.0f%% errors", signals.busUtilization * 100, signals.busErrorRate * 100),
+                    Objective.BUS_P95, signals, score, false);
+            if (adjustment != null) {
+                return adjustment;
+            }
+        }
+        
+        if (signals.writeBytesPerSecond > HIGH_WRITE_BYTES_PER_SECOND) {
+            Adjustment adjustment = propose(RuntimeTuning.KNOB_LOG_FLUSH_INTERVAL_MS, Math.max(2000, logFlush * 2),
+                    String.format("writing %.1fMB/s", signals.writeBytesPerSecond / 1024 / 1024),
+                    Objective.WRITE_RATE, signals, score, true);
+            if (adjustment != null) {
+                return adjustment;
+            }
+        }
+        
+        boolean slowRequests = signals.requestP95Ms > SLOW_REQUEST_P95_MS
+                || signals.slowResponses >= SLOW_RESPONSES_FOR_EARLY_STEP;
+        if (signals.requestCount >= MIN_WINDOW_SAMPLES && slowRequests
+                && signals.cpuUsage < HIGH_CPU_USAGE && !hot) {
+            Adjustment adjustment = propose(RuntimeTuning.KNOB_AI_POOL_SIZE, pool + 1,
+                    "request p95 " + signals.requestP95Ms + "ms, " + signals.slowResponses + " slow responses",
+                    Objective.REQUEST_P95, signals, score, true);
+            if (adjustment != null) {
+                return adjustment;
+            }
+        }
+        
+        // Relax earlier cuts once the pressure is gone
+        if (!hot) {
+            RuntimeTuning.Knob poolKnob = tuning.getKnob(RuntimeTuning.KNOB_AI_POOL_SIZE);
+            if (pool < poolKnob.getDefaultValue() && signals.cpuUsage < HIGH_CPU_USAGE) {
+                return propose(RuntimeTuning.KNOB_AI_POOL_SIZE, pool + 1, "thermal pressure cleared",
+                        Objective.REQUEST_P95, signals, score, true);
+            }
+        }
+        RuntimeTuning.Knob cacheKnob = tuning.getKnob(RuntimeTuning.KNOB_ANALYSIS_CACHE_SIZE);
+        if (cache < cacheKnob.getDefaultValue() && signals.heapUsage < LOW_HEAP_USAGE) {
+            return propose(RuntimeTuning.KNOB_ANALYSIS_CACHE_SIZE, cache * 2, "heap pressure cleared",
+                    Objective.HEAP_USAGE, signals, score, true);
+        }
+        if (!hot && signals.busCount >= MIN_WINDOW_SAMPLES && signals.busUtilization < BUS_IDLE
+                && signals.busErrorRate == 0) {
+            return propose(RuntimeTuning.KNOB_OBD_POLL_INTERVAL_MS, poll * 3 / 4,
+                    String.format("bus %.0f%% busy", signals.busUtilization * 100), Objective.BUS_P95, signals, score, true);
+        }
+        return null;
+    }
+    
+    /**
+     * Adjustment moving a knob toward the requested value, or null if it is already at its bound
+     */
+    private Adjustment propose(String knobName, int requested, String reason, Objective objective,
+                               TuningSignals signals, double score, boolean revertible) {
+        RuntimeTuning.Knob knob = tuning.getKnob(knobName);
+        int current = knob.getValue();
+        int target = Math.max(knob.min, Math.min(knob.max, requested));
+        if (target == current) {
+            return null;
+        }
+        return new Adjustment(knobName, current, target, reason, objective,
+                objective.measure(signals), score, revertible);
+    }
+    
+    private void recordAdjustment(Adjustment adjustment) {
+        adjustmentLog.addLast(adjustment);
+        while (adjustmentLog.size() > MAX_ADJUSTMENT_LOG) {
+            adjustmentLog.removeFirst();
+        }
     }
     
-    public void applyOptimizations() {
-        Log.i(TAG, "Applying performance optimizations");
-        optimizationScore = Math.min(1.0, optimizationScore + 0.1);
+    /**
+     * Knob changes made so far, oldest first
+     */
+    public synchronized List<Adjustment> getAdjustmentLog() {
+        return new ArrayList<>(adjustmentLog);
     }
     
     public double getOptimizationScore() {
         return optimizationScore;
     }
     
+    /**
+     * A request took far longer than the average. The next control step sees the count, and
+     * a few of them bring that step forward to the next timer tick.
+     */
     public void analyzeSlowResponse(long processingTime) {
-        Log.w(TAG, "Slow response analyzed: " + processingTime + "ms");
+        int slow = slowResponses.incrementAndGet();
+        Log.w(TAG, "Slow response: " + processingTime + "ms (" + slow + " since the last control step)");
     }
     
     public static class PerformanceReport {
         public double performanceScore;
+        public double cpuUsage;
+        public double heapUsage;
+        public long residentMemoryKb;
+        public long proportionalMemoryKb;
+        public int threadCount;
+        public double readBytesPerSecond;
+        public double writeBytesPerSecond;
+        public long sampleWindowMs;
         
         public double getPerformanceScore() {
             return performanceScore;
@@ -0,0 +1,531 @@
+package com.fullsend.jarvis.ai;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+
+/**
+ * Low-overhead sampler for the process and system counters in /proc
+ *
+ * Features:
+ * - Reads /proc/self/stat, /proc/stat, /proc/self/status, /proc/self/smaps_rollup,
+ *   /proc/self/io, /proc/meminfo and /proc/diskstats into one reused byte buffer and
+ *   parses numbers in place (no Strings)
+ * - Computes CPU and I/O rates as deltas between consecutive samples; counters the kernel
+ *   keeps in 32 bits are unwrapped, and a counter that resets yields no rate
+ * - Files the process may not read (e.g. /proc/stat on Android 8+) are reported as -1
+ * - Plain java.io only, so it runs against any Linux /proc (or a fake proc root in tests)
+ */
+public class ProcSampler {
+
+    // USER_HZ is 100 on every Linux/Android ABI we ship for
+    private static final long CLOCK_TICKS_PER_SECOND = 100;
+    // diskstats lists every loop and device-mapper device first on Android, so it gets big
+    private static final int BUFFER_SIZE = 32 * 1024;
+    private static final long SECTOR_BYTES = 512;
+
+    private static final byte[] KEY_CPU = ascii("cpu ");
+    private static final byte[] KEY_VM_RSS = ascii("VmRSS:");
+    private static final byte[] KEY_VM_HWM = ascii("VmHWM:");
+    private static final byte[] KEY_VM_SIZE = ascii("VmSize:");
+    private static final byte[] KEY_VM_DATA = ascii("VmData:");
+    private static final byte[] KEY_VM_STK = ascii("VmStk:");
+    private static final byte[] KEY_VM_EXE = ascii("VmExe:");
+    private static final byte[] KEY_VM_LIB = ascii("VmLib:");
+    private static final byte[] KEY_THREADS = ascii("Threads:");
+    private static final byte[] KEY_PSS = ascii("Pss:");
+    private static final byte[] KEY_PRIVATE_DIRTY = ascii("Private_Dirty:");
+    private static final byte[] KEY_SWAP = ascii("Swap:");
+    private static final byte[] KEY_RCHAR = ascii("rchar:");
+    private static final byte[] KEY_WCHAR = ascii("wchar:");
+    private static final byte[] KEY_READ_BYTES = ascii("read_bytes:");
+    private static final byte[] KEY_WRITE_BYTES = ascii("write_bytes:");
+    private static final byte[] KEY_MEM_TOTAL = ascii("MemTotal:");
+    private static final byte[] KEY_MEM_AVAILABLE = ascii("MemAvailable:");
+
+    // Virtual block devices; their I/O is already counted on the disks underneath
+    private static final byte[][] VIRTUAL_DISK_PREFIXES = {ascii("loop"), ascii("ram"), ascii("zram"), ascii("dm-")};
+
+    private final File selfStat;
+    private final File systemStat;
+    private final File selfStatus;
+    private final File selfSmapsRollup;
+    private final File selfIo;
+    private final File memInfo;
+    private final File diskStats;
+    private final int cpuCores;
+
+    // Reused between samples; guarded by this
+    private final byte[] buffer = new byte[BUFFER_SIZE];
+    private int parseEnd;
+    private Sample previous;
+
+    /**
+     * Raw counters at one point in time; -1 means unavailable
+     */
+    public static class Sample {
+        public long timestampNanos;
+
+        // /proc/self/stat
+        public long processUserTicks = -1;
+        public long processSystemTicks = -1;
+
+        // /proc/stat (aggregate cpu line)
+        public long systemTotalTicks = -1;
+        public long systemIdleTicks = -1;
+
+        // /proc/self/status, in kB
+        public long vmRssKb = -1;
+        public long vmHwmKb = -1;
+        public long vmSizeKb = -1;
+        public long vmDataKb = -1;
+        public long vmStackKb = -1;
+        public long vmExeKb = -1;
+        public long vmLibKb = -1;
+        public int threads = -1;
+
+        // /proc/self/smaps_rollup, in kB
+        public long pssKb = -1;
+        public long privateDirtyKb = -1;
+        public long swapKb = -1;
+
+        // /proc/self/io, in bytes
+        public long readChars = -1;
+        public long writeChars = -1;
+        public long storageReadBytes = -1;
+        public long storageWriteBytes = -1;
+
+        // /proc/meminfo, in kB
+        public long memTotalKb = -1;
+        public long memAvailableKb = -1;
+
+        // /proc/diskstats, 512-byte sectors summed over whole disks
+        public long diskSectorsRead = -1;
+        public long diskSectorsWritten = -1;
+    }
+
+    /**
+     * Rates between two samples
+     */
+    public static class Delta {
+        public long elapsedMs;
+        public double processCpuUsage;   // fraction of all cores, 0..1
+        public double systemCpuUsage;    // 0..1, -1 if /proc/stat is not readable
+        public double readBytesPerSecond;
+        public double writeBytesPerSecond;
+        public double diskReadBytesPerSecond;    // whole device, -1 if /proc/diskstats is not readable
+        public double diskWriteBytesPerSecond;
+        public Sample sample;
+    }
+
+    public ProcSampler() {
+        this(new File("/proc"));
+    }
+
+    public ProcSampler(File procRoot) {
+        File self = new File(procRoot, "self");
+        this.selfStat = new File(self, "stat");
+        this.systemStat = new File(procRoot, "stat");
+        this.selfStatus = new File(self, "status");
+        this.selfSmapsRollup = new File(self, "smaps_rollup");
+        this.selfIo = new File(self, "io");
+        this.memInfo = new File(procRoot, "meminfo");
+        this.diskStats = new File(procRoot, "diskstats");
+        this.cpuCores = Runtime.getRuntime().availableProcessors();
+    }
+
+    /**
+     * Read all counters now
+     */
+    public synchronized Sample sample() {
+        Sample sample = new Sample();
+        sample.timestampNanos = System.nanoTime();
+
+        readSelfStat(sample);
+        readSystemStat(sample);
+        readSelfStatus(sample);
+        readSmapsRollup(sample);
+        readSelfIo(sample);
+        readMemInfo(sample);
+        readDiskStats(sample);
+        return sample;
+    }
+
+    /**
+     * Take a sample and compute rates since the previous one (zero rates on the first call)
+     */
+    public synchronized Delta sampleDelta() {
+        Sample current = sample();
+        Delta delta = delta(previous, current, cpuCores);
+        previous = current;
+        return delta;
+    }
+
+    /**
+     * Most recent sample taken by sampleDelta(), or null
+     */
+    public synchronized Sample getLastSample() {
+        return previous;
+    }
+
+    static Delta delta(Sample before, Sample after, int cores) {
+        Delta delta = new Delta();
+        delta.sample = after;
+        delta.systemCpuUsage = -1;
+        delta.diskReadBytesPerSecond = -1;
+        delta.diskWriteBytesPerSecond = -1;
+        if (before == null) {
+            return delta;
+        }
+
+        long elapsedNanos = after.timestampNanos - before.timestampNanos;
+        delta.elapsedMs = elapsedNanos / 1000000;
+        if (elapsedNanos <= 0) {
+            return delta;
+        }
+        double elapsedSeconds = elapsedNanos / 1e9;
+
+        long userTicks = counterDelta(before.processUserTicks, after.processUserTicks);
+        long systemTicks = counterDelta(before.processSystemTicks, after.processSystemTicks);
+        if (userTicks >= 0 && systemTicks >= 0) {
+            double capacity = elapsedSeconds * CLOCK_TICKS_PER_SECOND * Math.max(1, cores);
+            delta.processCpuUsage = clamp((userTicks + systemTicks) / capacity);
+        }
+
+        long total = counterDelta(before.systemTotalTicks, after.systemTotalTicks);
+        long idle = counterDelta(before.systemIdleTicks, after.systemIdleTicks);
+        if (total > 0 && idle >= 0) {
+            delta.systemCpuUsage = clamp(1.0 - (double) idle / total);
+        }
+
+        // Prefer storage bytes; fall back to read()/write() bytes when the kernel hides them
+        long read = before.storageReadBytes >= 0 && after.storageReadBytes >= 0
+                ? counterDelta(before.storageReadBytes, after.storageReadBytes)
+                : counterDelta(before.readChars, after.readChars);
+        long written = before.storageWriteBytes >= 0 && after.storageWriteBytes >= 0
+                ? counterDelta(before.storageWriteBytes, after.storageWriteBytes)
+                : counterDelta(before.writeChars, after.writeChars);
+        if (read >= 0) {
+            delta.readBytesPerSecond = read / elapsedSeconds;
+        }
+        if (written >= 0) {
+            delta.writeBytesPerSecond = written / elapsedSeconds;
+        }
+
+        long sectorsRead = counterDelta(before.diskSectorsRead, after.diskSectorsRead);
+        long sectorsWritten = counterDelta(before.diskSectorsWritten, after.diskSectorsWritten);
+        if (sectorsRead >= 0 && sectorsWritten >= 0) {
+            delta.diskReadBytesPerSecond = sectorsRead * SECTOR_BYTES / elapsedSeconds;
+            delta.diskWriteBytesPerSecond = sectorsWritten * SECTOR_BYTES / elapsedSeconds;
+        }
+        return delta;
+    }
+
+    /**
+     * Increase of a monotonic counter between two reads, or -1 if unknown. 32-bit kernels
+     * print some counters (diskstats, clock ticks) as unsigned long, which wraps to 0; a
+     * counter going backwards from the top half of the 32-bit range is taken as such a wrap,
+     * anything else going backwards as a reset with no usable delta.
+     */
+    static long counterDelta(long before, long after) {
+        if (before < 0 || after < 0) {
+            return -1;
+        }
+        if (after >= before) {
+            return after - before;
+        }
+        if (before >= 1L << 31 && before <= 0xFFFFFFFFL && after <= 0xFFFFFFFFL) {
+            return after + (1L << 32) - before;
+        }
+        return -1;
+    }
+
+    private void readSelfStat(Sample sample) {
+        int length = readFile(selfStat);
+        if (length <= 0) {
+            return;
+        }
+
+        // comm may contain spaces and parentheses, so fields are counted from the last ')'
+        int pos = length - 1;
+        while (pos >= 0 && buffer[pos] != ')') {
+            pos--;
+        }
+        if (pos < 0) {
+            return;
+        }
+
+        // Field 3 (state) follows ")"; utime and stime are fields 14 and 15
+        pos = skipFields(pos + 1, length, 11);
+        if (pos < 0) {
+            return;
+        }
+        sample.processUserTicks = parseLong(pos, length);
+        sample.processSystemTicks = parseLong(parseEnd, length);
+    }
+
+    private void readSystemStat(Sample sample) {
+        int length = readFile(systemStat);
+        if (length <= 0 || !startsWith(0, length, KEY_CPU)) {
+            return;
+        }
+
+        // cpu user nice system idle iowait irq softirq steal (guest time is already in user)
+        int pos = KEY_CPU.length;
+        long total = 0;
+        long idle = 0;
+        for (int field = 0; field < 8; field++) {
+            long value = parseLong(pos, length);
+            if (value < 0) {
+                break;
+            }
+            pos = parseEnd;
+            total += value;
+            if (field == 3 || field == 4) {
+                idle += value;
+            }
+        }
+        sample.systemTotalTicks = total;
+        sample.systemIdleTicks = idle;
+    }
+
+    private void readSelfStatus(Sample sample) {
+        int length = readFile(selfStatus);
+        if (length <= 0) {
+            return;
+        }
+        sample.vmRssKb = valueOf(KEY_VM_RSS, length);
+        sample.vmHwmKb = valueOf(KEY_VM_HWM, length);
+        sample.vmSizeKb = valueOf(KEY_VM_SIZE, length);
+        sample.vmDataKb = valueOf(KEY_VM_DATA, length);
+        sample.vmStackKb = valueOf(KEY_VM_STK, length);
+        sample.vmExeKb = valueOf(KEY_VM_EXE, length);
+        sample.vmLibKb = valueOf(KEY_VM_LIB, length);
+        sample.threads = (int) valueOf(KEY_THREADS, length);
+    }
+
+    private void readSmapsRollup(Sample sample) {
+        int length = readFile(selfSmapsRollup);
+        if (length <= 0) {
+            return;
+        }
+        sample.pssKb = valueOf(KEY_PSS, length);
+        sample.privateDirtyKb = valueOf(KEY_PRIVATE_DIRTY, length);
+        sample.swapKb = valueOf(KEY_SWAP, length);
+    }
+
+    private void readSelfIo(Sample sample) {
+        int length = readFile(selfIo);
+        if (length <= 0) {
+            return;
+        }
+        sample.readChars = valueOf(KEY_RCHAR, length);
+        sample.writeChars = valueOf(KEY_WCHAR, length);
+        sample.storageReadBytes = valueOf(KEY_READ_BYTES, length);
+        sample.storageWriteBytes = valueOf(KEY_WRITE_BYTES, length);
+    }
+
+    private void readMemInfo(Sample sample) {
+        int length = readFile(memInfo);
+        if (length <= 0) {
+            return;
+        }
+        sample.memTotalKb = valueOf(KEY_MEM_TOTAL, length);
+        sample.memAvailableKb = valueOf(KEY_MEM_AVAILABLE, length);
+    }
+
+    private void readDiskStats(Sample sample) {
+        int length = readFile(diskStats);
+        if (length <= 0) {
+            return;
+        }
+
+        // "major minor name reads merged sectors ms writes merged sectors ms ..."; partitions
+        // follow their disk and are skipped so nothing is counted twice
+        long sectorsRead = 0;
+        long sectorsWritten = 0;
+        int diskStart = -1;
+        int diskEnd = -1;
+        int pos = 0;
+        while (pos < length) {
+            int lineEnd = pos;
+            while (lineEnd < length && buffer[lineEnd] != '\n') {
+                lineEnd++;
+            }
+            if (lineEnd == length && length == buffer.length) {
+                // Cut off by the buffer
+                break;
+            }
+
+            parseLong(pos, lineEnd);
+            parseLong(parseEnd, lineEnd);
+            int nameStart = parseEnd;
+            while (nameStart < lineEnd && buffer[nameStart] == ' ') {
+                nameStart++;
+            }
+            int nameEnd = nameStart;
+            while (nameEnd < lineEnd && buffer[nameEnd] != ' ') {
+                nameEnd++;
+            }
+
+            if (nameEnd > nameStart && !isVirtualDisk(nameStart, nameEnd)
+                    && !isPartitionOf(nameStart, nameEnd, diskStart, diskEnd)) {
+                diskStart = nameStart;
+                diskEnd = nameEnd;
+                // Sectors read is the third field after the name, sectors written the seventh
+                int field = skipFields(nameEnd, lineEnd, 2);
+                long read = field < 0 ? -1 : parseLong(field, lineEnd);
+                field = read < 0 ? -1 : skipFields(parseEnd, lineEnd, 3);
+                long written = field < 0 ? -1 : parseLong(field, lineEnd);
+                if (written >= 0) {
+                    sectorsRead += read;
+                    sectorsWritten += written;
+                }
+            }
+            pos = lineEnd + 1;
+        }
+        if (diskStart >= 0) {
+            sample.diskSectorsRead = sectorsRead;
+            sample.diskSectorsWritten = sectorsWritten;
+        }
+    }
+
+    private boolean isVirtualDisk(int start, int end) {
+        for (byte[] prefix : VIRTUAL_DISK_PREFIXES) {
+            if (startsWith(start, end, prefix)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Whether the name is the disk's name followed by a partition number ("sda1", "mmcblk0p1")
+     */
+    private boolean isPartitionOf(int start, int end, int diskStart, int diskEnd) {
+        int diskLength = diskEnd - diskStart;
+        if (diskStart < 0 || end - start <= diskLength) {
+            return false;
+        }
+        for (int i = 0; i < diskLength; i++) {
+            if (buffer[start + i] != buffer[diskStart + i]) {
+                return false;
+            }
+        }
+        int pos = start + diskLength;
+        if (buffer[pos] == 'p') {
+            pos++;
+        }
+        if (pos == end) {
+            return false;
+        }
+        for (; pos < end; pos++) {
+            if (buffer[pos] < '0' || buffer[pos] > '9') {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Read up to BUFFER_SIZE bytes of the file into the shared buffer; -1 if unreadable
+     */
+    private int readFile(File file) {
+        FileInputStream in = null;
+        try {
+            in = new FileInputStream(file);
+            int total = 0;
+            int read;
+            while (total < buffer.length && (read = in.read(buffer, total, buffer.length - total)) > 0) {
+                total += read;
+            }
+            return total;
+        } catch (IOException | SecurityException e) {
+            return -1;
+        } finally {
+            if (in != null) {
+                try {
+                    in.close();
+                } catch (IOException e) {
+                    // Ignore
+                }
+            }
+        }
+    }
+
+    /**
+     * Value following a "Key:" at the start of a line, or -1
+     */
+    private long valueOf(byte[] key, int length) {
+        int pos = 0;
+        while (pos < length) {
+            if (startsWith(pos, length, key)) {
+                return parseLong(pos + key.length, length);
+            }
+            while (pos < length && buffer[pos] != '\n') {
+                pos++;
+            }
+            pos++;
+        }
+        return -1;
+    }
+
+    private boolean startsWith(int pos, int length, byte[] key) {
+        if (pos + key.length > length) {
+            return false;
+        }
+        for (int i = 0; i < key.length; i++) {
+            if (buffer[pos + i] != key[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Parse the next unsigned decimal after optional blanks; sets parseEnd, returns -1 if none
+     */
+    private long parseLong(int pos, int length) {
+        while (pos < length && (buffer[pos] == ' ' || buffer[pos] == '\t')) {
+            pos++;
+        }
+        if (pos >= length || buffer[pos] < '0' || buffer[pos] > '9') {
+            parseEnd = pos;
+            return -1;
+        }
+        long value = 0;
+        while (pos < length && buffer[pos] >= '0' && buffer[pos] <= '9') {
+            value = value * 10 + (buffer[pos] - '0');
+            pos++;
+        }
+        parseEnd = pos;
+        return value;
+    }
+
+    /**
+     * Skip count space-separated fields starting at pos; returns the start of the next one
+     */
+    private int skipFields(int pos, int length, int count) {
+        for (int skipped = 0; skipped < count; skipped++) {
+            while (pos < length && buffer[pos] == ' ') {
+                pos++;
+            }
+            while (pos < length && buffer[pos] != ' ') {
+                pos++;
+            }
+        }
+        return pos < length ? pos : -1;
+    }
+
+    private static double clamp(double value) {
+        return Math.max(0.0, Math.min(1.0, value));
+    }
+
+    private static byte[] ascii(String text) {
+        byte[] bytes = new byte[text.length()];
+        for (int i = 0; i < bytes.length; i++) {
+            bytes[i] = (byte) text.charAt(i);
+        }
+        return bytes;
+    }
+}
@@ -0,0 +1,165 @@
+package com.fullsend.jarvis.ai;
+
+import java.util.Collections;
+import java.util.EnumMap;
+import java.util.Map;
+
+/**
+ * Per-capability, per-phase latency histograms for AdvancedAIEngine requests
+ *
+ * Features:
+ * - One LatencyHistogram per (AICapability, Phase), recorded in microseconds from System.nanoTime
+ * - Phases separate queue wait from analysis, response generation and learning
+ * - Resettable reporting window: resetWindow() sets a baseline, stats cover everything after it
+ * - Recording is lock-free; only snapshots and window resets synchronize
+ */
+public class RequestLatencyTracker {
+
+    public enum Phase {
+        QUEUE_WAIT,
+        ANALYSIS,
+        RESPONSE_GENERATION,
+        LEARNING,
+        TOTAL
+    }
+
+    private final Map<AdvancedAIEngine.AICapability, LatencyHistogram[]> histograms =
+            new EnumMap<>(AdvancedAIEngine.AICapability.class);
+
+    // Guarded by this
+    private final Map<AdvancedAIEngine.AICapability, LatencyHistogram.Snapshot[]> windowStart =
+            new EnumMap<>(AdvancedAIEngine.AICapability.class);
+    private long windowStartedAt = System.currentTimeMillis();
+
+    /**
+     * Percentiles of one phase, in milliseconds
+     */
+    public static class PhaseStats {
+        public final long count;
+        public final double p50Ms;
+        public final double p95Ms;
+        public final double p99Ms;
+        public final double meanMs;
+        public final double maxMs;
+
+        PhaseStats(LatencyHistogram.Snapshot snapshot) {
+            this.count = snapshot.count;
+            this.p50Ms = snapshot.percentile(0.50) / 1000.0;
+            this.p95Ms = snapshot.percentile(0.95) / 1000.0;
+            this.p99Ms = snapshot.percentile(0.99) / 1000.0;
+            this.meanMs = snapshot.mean() / 1000.0;
+            this.maxMs = snapshot.max / 1000.0;
+        }
+
+        @Override
+        public String toString() {
+            return String.format("n=%d p50=%.1fms p95=%.1fms p99=%.1fms max=%.1fms",
+                    count, p50Ms, p95Ms, p99Ms, maxMs);
+        }
+    }
+
+    public RequestLatencyTracker() {
+        // Fill every slot up front so record() never has to allocate or lock
+        for (AdvancedAIEngine.AICapability capability : AdvancedAIEngine.AICapability.values()) {
+            LatencyHistogram[] phases = new LatencyHistogram[Phase.values().length];
+            for (int i = 0; i < phases.length; i++) {
+                phases[i] = new LatencyHistogram();
+            }
+            histograms.put(capability, phases);
+        }
+    }
+
+    /**
+     * Record one request; the arguments are System.nanoTime() readings at each phase boundary
+     */
+    public void record(AdvancedAIEngine.AICapability capability, long submittedAt, long startedAt,
+                       long analyzedAt, long respondedAt, long finishedAt) {
+        LatencyHistogram[] phases = histograms.get(capability);
+        if (phases == null) {
+            return;
+        }
+        phases[Phase.QUEUE_WAIT.ordinal()].record(toMicros(startedAt - submittedAt));
+        phases[Phase.ANALYSIS.ordinal()].record(toMicros(analyzedAt - startedAt));
+        phases[Phase.RESPONSE_GENERATION.ordinal()].record(toMicros(respondedAt - analyzedAt));
+        phases[Phase.LEARNING.ordinal()].record(toMicros(finishedAt - respondedAt));
+        phases[Phase.TOTAL.ordinal()].record(toMicros(finishedAt - submittedAt));
+    }
+
+    /**
+     * Stats since the last resetWindow(), for capabilities that saw at least one request
+     */
+    public synchronized Map<AdvancedAIEngine.AICapability, Map<Phase, PhaseStats>> getWindowStats() {
+        Map<AdvancedAIEngine.AICapability, Map<Phase, PhaseStats>> stats =
+                new EnumMap<>(AdvancedAIEngine.AICapability.class);
+        for (Map.Entry<AdvancedAIEngine.AICapability, LatencyHistogram[]> entry : histograms.entrySet()) {
+            LatencyHistogram.Snapshot[] window = windowSnapshots(entry.getKey(), entry.getValue());
+            if (window[Phase.TOTAL.ordinal()].count == 0) {
+                continue;
+            }
+            Map<Phase, PhaseStats> phases = new EnumMap<>(Phase.class);
+            for (Phase phase : Phase.values()) {
+                phases.put(phase, new PhaseStats(window[phase.ordinal()]));
+            }
+            stats.put(entry.getKey(), Collections.unmodifiableMap(phases));
+        }
+        return Collections.unmodifiableMap(stats);
+    }
+
+    /**
+     * End-to-end stats across all capabilities since the last resetWindow()
+     */
+    public synchronized PhaseStats getOverallStats(Phase phase) {
+        LatencyHistogram.Snapshot merged = null;
+        for (Map.Entry<AdvancedAIEngine.AICapability, LatencyHistogram[]> entry : histograms.entrySet()) {
+            LatencyHistogram.Snapshot window = windowSnapshots(entry.getKey(), entry.getValue())[phase.ordinal()];
+            merged = merged == null ? window : merged.plus(window);
+        }
+        return new PhaseStats(merged);
+    }
+
+    /**
+     * Cumulative histogram of one phase across all capabilities, in microseconds; callers diff
+     * two of these for their own windows without touching the reporting window
+     */
+    public LatencyHistogram.Snapshot snapshot(Phase phase) {
+        LatencyHistogram.Snapshot merged = null;
+        for (LatencyHistogram[] phases : histograms.values()) {
+            LatencyHistogram.Snapshot current = phases[phase.ordinal()].snapshot();
+            merged = merged == null ? current : merged.plus(current);
+        }
+        return merged;
+    }
+
+    /**
+     * Start a new reporting window; histograms keep counting, stats are taken relative to now
+     */
+    public synchronized void resetWindow() {
+        for (Map.Entry<AdvancedAIEngine.AICapability, LatencyHistogram[]> entry : histograms.entrySet()) {
+            LatencyHistogram[] phases = entry.getValue();
+            LatencyHistogram.Snapshot[] baseline = new LatencyHistogram.Snapshot[phases.length];
+            for (int i = 0; i < phases.length; i++) {
+                baseline[i] = phases[i].snapshot();
+            }
+            windowStart.put(entry.getKey(), baseline);
+        }
+        windowStartedAt = System.currentTimeMillis();
+    }
+
+    public synchronized long getWindowStartedAt() {
+        return windowStartedAt;
+    }
+
+    private LatencyHistogram.Snapshot[] windowSnapshots(AdvancedAIEngine.AICapability capability,
+                                                         LatencyHistogram[] phases) {
+        LatencyHistogram.Snapshot[] baseline = windowStart.get(capability);
+        LatencyHistogram.Snapshot[] window = new LatencyHistogram.Snapshot[phases.length];
+        for (int i = 0; i < phases.length; i++) {
+            window[i] = phases[i].snapshot().minus(baseline != null ? baseline[i] : null);
+        }
+        return window;
+    }
+
+    private static long toMicros(long nanos) {
+        return Math.max(0, nanos / 1000);
+    }
+}
@@ -0,0 +1,206 @@
+package com.fullsend.jarvis.ai;
+
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.Map;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cache for deterministic AI results (recognized intents, analyses, rendered replies)
+ *
+ * Features:
+ * - Keys are normalized input (case, punctuation and spacing folded) plus any slot values
+ * - Size-bounded LRU eviction and per-entry TTL
+ * - Entries depend on named data tags ("battery_level", "dtc_list"); bumping a tag
+ *   invalidates every entry that was computed from it
+ * - Hit, miss and eviction counters for tuning
+ */
+public class ResponseCache<V> {
+
+    public static final int DEFAULT_MAX_ENTRIES = 128;
+    public static final long DEFAULT_TTL_MS = 10 * 60 * 1000L;
+
+    // Guarded by this; resizable at runtime by the tuner
+    private int maxEntries;
+    private final long ttlNanos;
+
+    // Guarded by this
+    private final LinkedHashMap<String, CacheEntry<V>> entries;
+    private final Map<String, Long> tagVersions = new HashMap<>();
+
+    private final AtomicLong hits = new AtomicLong();
+    private final AtomicLong misses = new AtomicLong();
+    private final AtomicLong evictions = new AtomicLong();
+
+    public ResponseCache() {
+        this(DEFAULT_MAX_ENTRIES, DEFAULT_TTL_MS);
+    }
+
+    public ResponseCache(int maxEntries, long ttlMs) {
+        this.maxEntries = Math.max(1, maxEntries);
+        this.ttlNanos = TimeUnit.MILLISECONDS.toNanos(ttlMs);
+        this.entries = new LinkedHashMap<String, CacheEntry<V>>(16, 0.75f, true) {
+            @Override
+            protected boolean removeEldestEntry(Map.Entry<String, CacheEntry<V>> eldest) {
+                if (size() > ResponseCache.this.maxEntries) {
+                    evictions.incrementAndGet();
+                    return true;
+                }
+                return false;
+            }
+        };
+    }
+
+    /**
+     * Fold case, punctuation and repeated whitespace so equivalent utterances share a key
+     */
+    public static String normalize(String input) {
+        if (input == null) {
+            return "";
+        }
+
+        StringBuilder key = new StringBuilder(input.length());
+        boolean pendingSpace = false;
+        for (int i = 0; i < input.length(); i++) {
+            char c = input.charAt(i);
+            if (Character.isLetterOrDigit(c)) {
+                if (pendingSpace && key.length() > 0) {
+                    key.append(' ');
+                }
+                key.append(Character.toLowerCase(c));
+                pendingSpace = false;
+            } else {
+                pendingSpace = true;
+            }
+        }
+        return key.toString();
+    }
+
+    /**
+     * Cached value for the key, or null when absent, expired or invalidated by a tag change
+     */
+    public synchronized V get(String key) {
+        CacheEntry<V> entry = entries.get(key);
+        if (entry == null) {
+            misses.incrementAndGet();
+            return null;
+        }
+
+        if (System.nanoTime() - entry.createdAt > ttlNanos || !isCurrent(entry)) {
+            entries.remove(key);
+            evictions.incrementAndGet();
+            misses.incrementAndGet();
+            return null;
+        }
+
+        hits.incrementAndGet();
+        return entry.value;
+    }
+
+    /**
+     * Store a value computed from the data identified by the given tags
+     */
+    public synchronized void put(String key, V value, String... tags) {
+        long[] versions = new long[tags.length];
+        for (int i = 0; i < tags.length; i++) {
+            versions[i] = tagVersion(tags[i]);
+        }
+        entries.put(key, new CacheEntry<>(value, System.nanoTime(), tags, versions));
+    }
+
+    /**
+     * Mark the data behind a tag as changed; dependent entries are dropped lazily on next read
+     */
+    public synchronized void invalidate(String tag) {
+        tagVersions.put(tag, tagVersion(tag) + 1);
+    }
+
+    public synchronized void clear() {
+        evictions.addAndGet(entries.size());
+        entries.clear();
+    }
+
+    /**
+     * Drop expired and invalidated entries eagerly
+     */
+    public synchronized void purge() {
+        long now = System.nanoTime();
+        Iterator<CacheEntry<V>> it = entries.values().iterator();
+        while (it.hasNext()) {
+            CacheEntry<V> entry = it.next();
+            if (now - entry.createdAt > ttlNanos || !isCurrent(entry)) {
+                it.remove();
+                evictions.incrementAndGet();
+            }
+        }
+    }
+
+    /**
+     * Change the capacity; shrinking evicts least recently used entries immediately
+     */
+    public synchronized void setMaxEntries(int maxEntries) {
+        this.maxEntries = Math.max(1, maxEntries);
+        Iterator<CacheEntry<V>> it = entries.values().iterator();
+        while (entries.size() > this.maxEntries && it.hasNext()) {
+            it.next();
+            it.remove();
+            evictions.incrementAndGet();
+        }
+    }
+
+    public synchronized int getMaxEntries() {
+        return maxEntries;
+    }
+
+    public synchronized int size() {
+        return entries.size();
+    }
+
+    public long getHits() {
+        return hits.get();
+    }
+
+    public long getMisses() {
+        return misses.get();
+    }
+
+    public long getEvictions() {
+        return evictions.get();
+    }
+
+    public double getHitRate() {
+        long h = hits.get();
+        long total = h + misses.get();
+        return total == 0 ? 0 : (double) h / total;
+    }
+
+    private long tagVersion(String tag) {
+        Long version = tagVersions.get(tag);
+        return version != null ? version : 0L;
+    }
+
+    private boolean isCurrent(CacheEntry<V> entry) {
+        for (int i = 0; i < entry.tags.length; i++) {
+            if (tagVersion(entry.tags[i]) != entry.tagVersions[i]) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static class CacheEntry<V> {
+        final V value;
+        final long createdAt;
+        final String[] tags;
+        final long[] tagVersions;
+
+        CacheEntry(V value, long createdAt, String[] tags, long[] tagVersions) {
+            this.value = value;
+            this.createdAt = createdAt;
+            this.tags = tags;
+            this.tagVersions = tagVersions;
+        }
+    }
+}
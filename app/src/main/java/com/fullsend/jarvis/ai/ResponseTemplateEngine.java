@@ -0,0 +1,304 @@
+package com.fullsend.jarvis.ai;
+
+import android.content.Context;
+import android.util.Log;
+
+import org.json.JSONArray;
+import org.json.JSONException;
+import org.json.JSONObject;
+
+import java.io.ByteArrayOutputStream;
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+import java.util.Random;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Response template engine for assets/config/ai_responses.json
+ *
+ * Features:
+ * - The JSON is parsed once into precompiled templates (literal segments + slot indices)
+ * - Categories are addressed by their JSON path, e.g. "battery_responses.high"
+ * - Rendering fills {slot} placeholders with a per-thread reusable StringBuilder, no regex
+ * - Hot reload from an override file in the app files dir, swapped in atomically
+ */
+public class ResponseTemplateEngine {
+
+    private static final String TAG = "ResponseTemplateEngine";
+
+    public static final String ASSET_PATH = "config/ai_responses.json";
+    public static final String OVERRIDE_FILE_NAME = "ai_responses.json";
+
+    private static final ThreadLocal<StringBuilder> RENDER_BUFFER = new ThreadLocal<StringBuilder>() {
+        @Override
+        protected StringBuilder initialValue() {
+            return new StringBuilder(256);
+        }
+    };
+
+    private final Context context;
+    private final File overrideFile;
+    private final Random random = new Random();
+
+    // Slot names map to stable indices across reloads so Slots instances stay valid
+    private final ConcurrentHashMap<String, Integer> slotIndices = new ConcurrentHashMap<>();
+    private final AtomicInteger nextSlotIndex = new AtomicInteger();
+
+    private volatile Map<String, CompiledTemplate[]> templates = new HashMap<>();
+    private volatile long loadedOverrideModified = 0;
+
+    public ResponseTemplateEngine(Context context) {
+        this.context = context;
+        this.overrideFile = new File(new File(context.getFilesDir(), "config"), OVERRIDE_FILE_NAME);
+        reload();
+    }
+
+    /**
+     * Reload templates if the override file appeared or changed since the last load
+     */
+    public boolean reloadIfChanged() {
+        long modified = overrideFile.exists() ? overrideFile.lastModified() : 0;
+        if (modified == loadedOverrideModified) {
+            return false;
+        }
+        reload();
+        return true;
+    }
+
+    /**
+     * Parse and compile the template source, replacing the current set only on success
+     */
+    public void reload() {
+        long modified = overrideFile.exists() ? overrideFile.lastModified() : 0;
+
+        try {
+            String json = modified != 0 ? readFully(new FileInputStream(overrideFile))
+                                        : readFully(context.getAssets().open(ASSET_PATH));
+
+            Map<String, CompiledTemplate[]> compiled = new HashMap<>();
+            collect(new JSONObject(json), "", compiled);
+
+            templates = compiled;
+            loadedOverrideModified = modified;
+            Log.i(TAG, "Loaded " + compiled.size() + " response categories"
+                    + (modified != 0 ? " from override" : ""));
+
+        } catch (IOException | JSONException e) {
+            Log.e(TAG, "Error loading response templates, keeping previous set", e);
+        }
+    }
+
+    /**
+     * File in the app files dir that replaces the bundled asset when present
+     */
+    public File getOverrideFile() {
+        return overrideFile;
+    }
+
+    public boolean hasCategory(String category) {
+        return templates.containsKey(category);
+    }
+
+    /**
+     * Create a reusable slot holder; set values by name and pass it to render()
+     */
+    public Slots newSlots() {
+        return new Slots();
+    }
+
+    /**
+     * Render a random variant of the category, or null if the category does not exist
+     */
+    public String render(String category, Slots slots) {
+        CompiledTemplate[] variants = templates.get(category);
+        if (variants == null || variants.length == 0) {
+            return null;
+        }
+
+        CompiledTemplate template = variants.length == 1 ? variants[0] : variants[random.nextInt(variants.length)];
+
+        StringBuilder buffer = RENDER_BUFFER.get();
+        buffer.setLength(0);
+        template.appendTo(buffer, slots);
+        return buffer.toString();
+    }
+
+    public String render(String category) {
+        return render(category, null);
+    }
+
+    /**
+     * Fixed text of every template under a path prefix: whole text for slot-free templates,
+     * the literal pieces around the slots otherwise. Used to pre-synthesize speech.
+     */
+    public List<String> getLiteralPhrases(String prefix) {
+        List<String> phrases = new ArrayList<>();
+        for (Map.Entry<String, CompiledTemplate[]> entry : templates.entrySet()) {
+            if (!entry.getKey().startsWith(prefix)) {
+                continue;
+            }
+            for (CompiledTemplate template : entry.getValue()) {
+                for (String literal : template.literals) {
+                    if (!literal.trim().isEmpty()) {
+                        phrases.add(literal);
+                    }
+                }
+            }
+        }
+        return phrases;
+    }
+
+    private void collect(JSONObject object, String prefix, Map<String, CompiledTemplate[]> out) throws JSONException {
+        Iterator<String> keys = object.keys();
+        while (keys.hasNext()) {
+            String key = keys.next();
+            String path = prefix.isEmpty() ? key : prefix + "." + key;
+            Object value = object.get(key);
+
+            if (value instanceof JSONObject) {
+                collect((JSONObject) value, path, out);
+            } else if (value instanceof JSONArray) {
+                JSONArray array = (JSONArray) value;
+                List<CompiledTemplate> variants = new ArrayList<>(array.length());
+                for (int i = 0; i < array.length(); i++) {
+                    Object item = array.get(i);
+                    if (item instanceof String) {
+                        variants.add(compile((String) item));
+                    }
+                }
+                if (!variants.isEmpty()) {
+                    out.put(path, variants.toArray(new CompiledTemplate[0]));
+                }
+            }
+        }
+    }
+
+    private CompiledTemplate compile(String text) {
+        List<String> literals = new ArrayList<>();
+        List<Integer> slots = new ArrayList<>();
+        List<String> slotNames = new ArrayList<>();
+
+        int literalStart = 0;
+        int i = 0;
+        while (i < text.length()) {
+            if (text.charAt(i) == '{') {
+                int end = i + 1;
+                while (end < text.length() && isSlotChar(text.charAt(end))) {
+                    end++;
+                }
+                if (end < text.length() && end > i + 1 && text.charAt(end) == '}') {
+                    String name = text.substring(i + 1, end);
+                    literals.add(text.substring(literalStart, i));
+                    slots.add(slotIndex(name));
+                    slotNames.add(name);
+                    i = end + 1;
+                    literalStart = i;
+                    continue;
+                }
+            }
+            i++;
+        }
+        literals.add(text.substring(literalStart));
+
+        int[] slotArray = new int[slots.size()];
+        for (int s = 0; s < slotArray.length; s++) {
+            slotArray[s] = slots.get(s);
+        }
+        return new CompiledTemplate(literals.toArray(new String[0]), slotArray,
+                                    slotNames.toArray(new String[0]));
+    }
+
+    private int slotIndex(String name) {
+        Integer index = slotIndices.get(name);
+        if (index != null) {
+            return index;
+        }
+        return slotIndices.computeIfAbsent(name, k -> nextSlotIndex.getAndIncrement());
+    }
+
+    private static boolean isSlotChar(char c) {
+        return (c >= 'a' && c <= 'z') || (c >= 'A' && c <= 'Z') || (c >= '0' && c <= '9') || c == '_';
+    }
+
+    private static String readFully(InputStream in) throws IOException {
+        try {
+            ByteArrayOutputStream out = new ByteArrayOutputStream();
+            byte[] buffer = new byte[4096];
+            int read;
+            while ((read = in.read(buffer)) != -1) {
+                out.write(buffer, 0, read);
+            }
+            return new String(out.toByteArray(), StandardCharsets.UTF_8);
+        } finally {
+            in.close();
+        }
+    }
+
+    /**
+     * Slot values for rendering, indexed by the engine's slot registry
+     */
+    public class Slots {
+        private Object[] values = new Object[8];
+
+        public Slots set(String name, Object value) {
+            int index = slotIndex(name);
+            if (index >= values.length) {
+                Object[] grown = new Object[Math.max(index + 1, values.length * 2)];
+                System.arraycopy(values, 0, grown, 0, values.length);
+                values = grown;
+            }
+            values[index] = value;
+            return this;
+        }
+
+        public Slots set(String name, int value) {
+            return set(name, Integer.valueOf(value));
+        }
+
+        public void clear() {
+            Arrays.fill(values, null);
+        }
+
+        Object get(int index) {
+            return index < values.length ? values[index] : null;
+        }
+    }
+
+    private static class CompiledTemplate {
+        final String[] literals; // always slots.length + 1 entries
+        final int[] slots;
+        final String[] slotNames;
+
+        CompiledTemplate(String[] literals, int[] slots, String[] slotNames) {
+            this.literals = literals;
+            this.slots = slots;
+            this.slotNames = slotNames;
+        }
+
+        void appendTo(StringBuilder out, Slots values) {
+            out.append(literals[0]);
+            for (int i = 0; i < slots.length; i++) {
+                Object value = values != null ? values.get(slots[i]) : null;
+                if (value instanceof Integer) {
+                    out.append(((Integer) value).intValue());
+                } else if (value != null) {
+                    out.append(value);
+                } else {
+                    // Leave missing slots visible rather than silently dropping them
+                    out.append('{').append(slotNames[i]).append('}');
+                }
+                out.append(literals[i + 1]);
+            }
+        }
+    }
+}
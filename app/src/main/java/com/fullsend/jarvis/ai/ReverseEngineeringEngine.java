@@ -8,14 +8,31 @@ import android.os.Build;
 import android.util.Log;
 
 import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
 import java.lang.reflect.Field;
 import java.lang.reflect.Method;
+import java.util.ArrayDeque;
 import java.util.ArrayList;
+import java.util.Collections;
 import java.util.HashMap;
 import java.util.List;
 import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.concurrent.Callable;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.ExecutionException;
 import java.util.concurrent.ExecutorService;
 import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.RejectedExecutionException;
+import java.util.concurrent.ScheduledExecutorService;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.TimeoutException;
+import java.util.concurrent.atomic.AtomicBoolean;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
 
 /**
  * Reverse Engineering Engine for System Analysis and Code Inspection
@@ -27,11 +44,27 @@ import java.util.concurrent.Executors;
  * - Security vulnerability assessment
  * - Code structure analysis
  * - System resource mapping
+ * - Incremental snapshots: static facts cached once, volatile metrics refreshed on their
+ *   own schedules, only changed packages re-scanned, bounded snapshot history
  */
 public class ReverseEngineeringEngine {
     
     private static final String TAG = "ReverseEngineeringEngine";
     
+    private static final int MAX_SNAPSHOT_HISTORY = 16;
+    private static final long PERFORMANCE_REFRESH_MS = 60 * 1000;
+    private static final long RESOURCE_REFRESH_MS = 10 * 1000;
+    private static final long SECURITY_REFRESH_MS = 5 * 60 * 1000;
+    
+    // Per-stage timeouts for the analysis graph
+    private static final long PACKAGE_STAGE_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(10);
+    private static final long STAGE_TIMEOUT_NS = TimeUnit.SECONDS.toNanos(5);
+    
+    // Device benchmark waits for analyses to finish and retries runs rejected under load
+    private static final long BENCHMARK_QUIET_WAIT_MS = 5 * 1000;
+    private static final long BENCHMARK_RETRY_MS = 2 * 60 * 1000;
+    private static final int MAX_BENCHMARK_ATTEMPTS = 10;
+    
     private Context context;
     private ExecutorService analysisExecutor;
     private SystemProfiler systemProfiler;
@@ -40,16 +73,57 @@ public class ReverseEngineeringEngine {
     private SecurityAnalyzer securityAnalyzer;
     
     // Analysis cache
-    private Map<String, SystemAnalysis> analysisCache;
     private Map<String, String> performanceCache;
     
+    // Incremental snapshot state
+    private final ArrayDeque<SystemAnalysis> snapshotHistory = new ArrayDeque<>();
+    private final Map<String, PackageEntry> packageSnapshot = new HashMap<>();
+    private PackageChangeTracker packageTracker;
+    private SnapshotSection<PerformanceMetrics> performanceSection;
+    private SnapshotSection<ResourceUsage> resourceSection;
+    private SnapshotSection<SecurityAssessment> securitySection;
+    
+    // Real CPU/memory/I-O counters; primed in the constructor so the first delta has a window
+    private final ProcSampler procSampler = new ProcSampler();
+    private volatile ProcSampler.Delta lastProcDelta;
+    
+    // Per-device storage/CPU benchmark, run once per build on its own thread while no
+    // analysis is running, so it neither takes a stage worker nor measures contention
+    private DeviceBenchmark deviceBenchmark;
+    private final ScheduledExecutorService benchmarkExecutor;
+    private final AtomicBoolean benchmarkScheduled = new AtomicBoolean(false);
+    private final AtomicInteger benchmarkAttempts = new AtomicInteger();
+    private final AtomicInteger activeAnalyses = new AtomicInteger();
+    private final AtomicLong analysisRuns = new AtomicLong();
+    
+    // Static facts, computed once per process
+    private HardwareInfo staticHardware;
+    private SoftwareInfo staticSoftware;
+    private KernelInfo staticKernel;
+    private Map<String, String> staticConfiguration;
+    
     public ReverseEngineeringEngine(Context context) {
         this.context = context;
         this.analysisExecutor = Executors.newFixedThreadPool(4);
-        this.analysisCache = new HashMap<>();
+        this.benchmarkExecutor = Executors.newSingleThreadScheduledExecutor(runnable -> {
+            Thread thread = new Thread(runnable, "DeviceBenchmark");
+            thread.setDaemon(true);
+            return thread;
+        });
         this.performanceCache = new HashMap<>();
         
         initializeAnalysisComponents();
+        
+        sampleProc();
+        deviceBenchmark = new DeviceBenchmark(context);
+        DeviceBenchmark.Result storedBenchmark = deviceBenchmark.getStoredResult();
+        if (storedBenchmark != null) {
+            RuntimeTuning.get().seedDefaults(storedBenchmark);
+        }
+        packageTracker = new PackageChangeTracker(context);
+        performanceSection = new SnapshotSection<>(PERFORMANCE_REFRESH_MS, this::analyzePerformance);
+        resourceSection = new SnapshotSection<>(RESOURCE_REFRESH_MS, this::analyzeResources);
+        securitySection = new SnapshotSection<>(SECURITY_REFRESH_MS, this::analyzeSecurity);
     }
     
     private void initializeAnalysisComponents() {
@@ -69,39 +143,7 @@ public class ReverseEngineeringEngine {
     public SystemAnalysis analyzeSystem() {
         try {
             Log.i(TAG, "Starting comprehensive system analysis...");
-            
-            SystemAnalysis analysis = new SystemAnalysis();
-            analysis.timestamp = System.currentTimeMillis();
-            
-            // Hardware analysis
-            analysis.hardwareInfo = analyzeHardware();
-            
-            // Software analysis
-            analysis.softwareInfo = analyzeSoftware();
-            
-            // Performance analysis
-            analysis.performanceMetrics = analyzePerformance();
-            
-            // Security analysis
-            analysis.securityAssessment = analyzeSecurity();
-            
-            // Resource analysis
-            analysis.resourceUsage = analyzeResources();
-            
-            // Application analysis
-            analysis.installedApps = analyzeInstalledApplications();
-            
-            // System configuration
-            analysis.systemConfiguration = new HashMap<>();
-            analysis.systemConfiguration.put("android_version", Build.VERSION.RELEASE);
-            analysis.systemConfiguration.put("api_level", String.valueOf(Build.VERSION.SDK_INT));
-            
-            // Generate insights
-            analysis.insights = generateSystemInsights(analysis);
-            
-            // Cache the analysis
-            analysisCache.put("system_analysis_" + analysis.timestamp, analysis);
-            
+            SystemAnalysis analysis = runAnalysisGraph(false);
             Log.i(TAG, "System analysis completed successfully");
             return analysis;
             
@@ -117,17 +159,7 @@ public class ReverseEngineeringEngine {
     public SystemAnalysis performDeepAnalysis() {
         try {
             Log.i(TAG, "Starting deep system analysis...");
-            
-            SystemAnalysis deepAnalysis = analyzeSystem();
-            
-            // Add deep analysis components
-            deepAnalysis.memoryMapping = analyzeMemoryMapping();
-            deepAnalysis.processAnalysis = analyzeRunningProcesses();
-            deepAnalysis.networkAnalysis = analyzeNetworkConfiguration();
-            deepAnalysis.fileSystemAnalysis = analyzeFileSystem();
-            deepAnalysis.kernelInfo = analyzeKernelInformation();
-            deepAnalysis.vulnerabilities = identifyVulnerabilities();
-            
+            SystemAnalysis deepAnalysis = runAnalysisGraph(true);
             Log.i(TAG, "Deep analysis completed");
             return deepAnalysis;
             
@@ -137,6 +169,125 @@ public class ReverseEngineeringEngine {
         }
     }
     
+    /**
+     * Run one analysis, keeping count so the device benchmark can stay out of its way
+     */
+    private SystemAnalysis runAnalysisGraph(boolean deep) {
+        analysisRuns.incrementAndGet();
+        activeAnalyses.incrementAndGet();
+        try {
+            return runAnalysisStages(deep);
+        } finally {
+            activeAnalyses.decrementAndGet();
+        }
+    }
+    
+    /**
+     * Run the analysis stages as a dependency graph on analysisExecutor. Independent stages
+     * run in parallel; security and vulnerabilities read the package snapshot, so they start
+     * only once the package scan has finished. A stage that misses its timeout
+     * leaves its field null and is listed in timedOutStages instead of failing the snapshot.
+     */
+    private SystemAnalysis runAnalysisStages(boolean deep) {
+        SystemAnalysis analysis = new SystemAnalysis();
+        analysis.timestamp = System.currentTimeMillis();
+        analysis.stageTimings = new ConcurrentHashMap<>();
+        analysis.timedOutStages = Collections.synchronizedList(new ArrayList<String>());
+        final long now = analysis.timestamp;
+        long start = System.nanoTime();
+        
+        // Package scan is on the critical path (security and vulnerabilities depend on it), so it goes first
+        Future<Boolean> packages = submitStage("applications", this::refreshInstalledApplications, analysis);
+        Future<PerformanceMetrics> performance = submitStage("performance", () -> performanceSection.get(now), analysis);
+        Future<ResourceUsage> resources = submitStage("resources", () -> resourceSection.get(now), analysis);
+        
+        Future<MemoryMapping> memory = null;
+        Future<ProcessAnalysis> processes = null;
+        Future<NetworkAnalysis> network = null;
+        Future<FileSystemAnalysis> fileSystem = null;
+        if (deep) {
+            memory = submitStage("memory_mapping", this::analyzeMemoryMapping, analysis);
+            processes = submitStage("processes", this::analyzeRunningProcesses, analysis);
+            network = submitStage("network", this::analyzeNetworkConfiguration, analysis);
+            fileSystem = submitStage("file_system", this::analyzeFileSystem, analysis);
+        }
+        
+        // Cheap static facts are filled in on the calling thread meanwhile
+        analysis.hardwareInfo = currentHardware();
+        analysis.softwareInfo = staticSoftware();
+        analysis.systemConfiguration = staticConfiguration();
+        if (deep) {
+            analysis.kernelInfo = staticKernel();
+        }
+        
+        Boolean packagesChanged = awaitStage("applications", packages, start + PACKAGE_STAGE_TIMEOUT_NS, analysis);
+        if (packagesChanged != null) {
+            analysis.installedApps = installedApplications();
+            if (packagesChanged) {
+                securitySection.invalidate();
+            }
+            Future<SecurityAssessment> security = submitStage("security", () -> securitySection.get(now), analysis);
+            Future<List<Vulnerability>> vulnerabilities = deep
+                    ? submitStage("vulnerabilities", this::identifyVulnerabilities, analysis) : null;
+            long dependentsDeadline = System.nanoTime() + STAGE_TIMEOUT_NS;
+            analysis.securityAssessment = awaitStage("security", security, dependentsDeadline, analysis);
+            if (deep) {
+                analysis.vulnerabilities = awaitStage("vulnerabilities", vulnerabilities, dependentsDeadline, analysis);
+            }
+        } else {
+            // Package scan still holds the snapshot; report without apps, security and vulnerabilities
+            analysis.installedApps = new ArrayList<>();
+            analysis.timedOutStages.add("security");
+            if (deep) {
+                analysis.timedOutStages.add("vulnerabilities");
+            }
+        }
+        
+        analysis.performanceMetrics = awaitStage("performance", performance, start + STAGE_TIMEOUT_NS, analysis);
+        analysis.resourceUsage = awaitStage("resources", resources, start + STAGE_TIMEOUT_NS, analysis);
+        
+        if (deep) {
+            analysis.memoryMapping = awaitStage("memory_mapping", memory, start + STAGE_TIMEOUT_NS, analysis);
+            analysis.processAnalysis = awaitStage("processes", processes, start + STAGE_TIMEOUT_NS, analysis);
+            analysis.networkAnalysis = awaitStage("network", network, start + STAGE_TIMEOUT_NS, analysis);
+            analysis.fileSystemAnalysis = awaitStage("file_system", fileSystem, start + STAGE_TIMEOUT_NS, analysis);
+        }
+        
+        // Generate insights
+        analysis.insights = generateSystemInsights(analysis);
+        analysis.stageTimings.put("total", (System.nanoTime() - start) / 1000000);
+        
+        recordSnapshot(analysis);
+        return analysis;
+    }
+    
+    private <T> Future<T> submitStage(String name, Callable<T> stage, SystemAnalysis analysis) {
+        return analysisExecutor.submit(() -> {
+            long stageStart = System.nanoTime();
+            try {
+                return stage.call();
+            } finally {
+                analysis.stageTimings.put(name, (System.nanoTime() - stageStart) / 1000000);
+            }
+        });
+    }
+    
+    private <T> T awaitStage(String name, Future<T> stage, long deadlineNanos, SystemAnalysis analysis) {
+        try {
+            return stage.get(Math.max(0, deadlineNanos - System.nanoTime()), TimeUnit.NANOSECONDS);
+        } catch (TimeoutException e) {
+            // Let a running stage finish so its cached section is warm for the next snapshot
+            stage.cancel(false);
+            analysis.timedOutStages.add(name);
+            Log.w(TAG, "Analysis stage timed out: " + name);
+        } catch (ExecutionException e) {
+            Log.e(TAG, "Analysis stage failed: " + name, e.getCause());
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+        return null;
+    }
+    
     /**
      * Identify optimization opportunities
      */
@@ -145,35 +296,35 @@ public class ReverseEngineeringEngine {
         
         try {
             // Memory optimizations
-            if (analysis.resourceUsage.memoryUsage > 0.8) {
+            if (analysis.resourceUsage != null && analysis.resourceUsage.memoryUsage > 0.8) {
                 optimizations.add("Memory usage is high (>80%) - recommend memory cleanup and optimization");
                 optimizations.add("Enable aggressive garbage collection");
                 optimizations.add("Optimize object lifecycle management");
             }
             
             // CPU optimizations
-            if (analysis.resourceUsage.cpuUsage > 0.7) {
+            if (analysis.resourceUsage != null && analysis.resourceUsage.cpuUsage > 0.7) {
                 optimizations.add("CPU usage is high (>70%) - recommend process optimization");
                 optimizations.add("Optimize background task scheduling");
                 optimizations.add("Implement CPU-intensive task batching");
             }
             
             // Storage optimizations
-            if (analysis.resourceUsage.storageUsage > 0.9) {
+            if (analysis.resourceUsage != null && analysis.resourceUsage.storageUsage > 0.9) {
                 optimizations.add("Storage usage is critical (>90%) - immediate cleanup required");
                 optimizations.add("Enable automatic cache cleanup");
                 optimizations.add("Implement data compression and archiving");
             }
             
             // Performance optimizations
-            if (analysis.performanceMetrics.averageResponseTime > 1000) {
+            if (analysis.performanceMetrics != null && analysis.performanceMetrics.averageResponseTime > 1000) {
                 optimizations.add("Response time is slow (>1s) - performance tuning needed");
                 optimizations.add("Optimize database queries and data access");
                 optimizations.add("Implement caching strategies");
             }
             
             // Security optimizations
-            if (analysis.securityAssessment.riskLevel > 0.6) {
+            if (analysis.securityAssessment != null && analysis.securityAssessment.riskLevel > 0.6) {
                 optimizations.add("Security risk level is elevated - security hardening recommended");
                 optimizations.add("Update security policies and permissions");
                 optimizations.add("Enable additional security monitoring");
@@ -199,6 +350,81 @@ public class ReverseEngineeringEngine {
         return optimizations;
     }
     
+    /**
+     * Most recent snapshot, or null if the system has not been analyzed yet
+     */
+    public SystemAnalysis getLatestSnapshot() {
+        synchronized (snapshotHistory) {
+            return snapshotHistory.peekLast();
+        }
+    }
+    
+    /**
+     * Bounded snapshot history, oldest first
+     */
+    public List<SystemAnalysis> getSnapshotHistory() {
+        synchronized (snapshotHistory) {
+            return new ArrayList<>(snapshotHistory);
+        }
+    }
+    
+    public void shutdown() {
+        analysisExecutor.shutdown();
+        benchmarkExecutor.shutdownNow();
+        packageTracker.release();
+    }
+    
+    private void recordSnapshot(SystemAnalysis analysis) {
+        synchronized (snapshotHistory) {
+            snapshotHistory.addLast(analysis);
+            while (snapshotHistory.size() > MAX_SNAPSHOT_HISTORY) {
+                snapshotHistory.removeFirst();
+            }
+        }
+    }
+    
+    private synchronized HardwareInfo currentHardware() {
+        if (staticHardware == null) {
+            staticHardware = analyzeHardware();
+        }
+        
+        HardwareInfo hardware = new HardwareInfo();
+        hardware.manufacturer = staticHardware.manufacturer;
+        hardware.model = staticHardware.model;
+        hardware.device = staticHardware.device;
+        hardware.board = staticHardware.board;
+        hardware.hardware = staticHardware.hardware;
+        hardware.cpuArchitecture = staticHardware.cpuArchitecture;
+        hardware.supportedAbis = staticHardware.supportedAbis;
+        hardware.cpuCores = staticHardware.cpuCores;
+        refreshHardwareMetrics(hardware);
+        return hardware;
+    }
+    
+    private synchronized SoftwareInfo staticSoftware() {
+        if (staticSoftware == null) {
+            staticSoftware = analyzeSoftware();
+        }
+        return staticSoftware;
+    }
+    
+    private synchronized KernelInfo staticKernel() {
+        if (staticKernel == null) {
+            staticKernel = analyzeKernelInformation();
+        }
+        return staticKernel;
+    }
+    
+    private synchronized Map<String, String> staticConfiguration() {
+        if (staticConfiguration == null) {
+            Map<String, String> configuration = new HashMap<>();
+            configuration.put("android_version", Build.VERSION.RELEASE);
+            configuration.put("api_level", String.valueOf(Build.VERSION.SDK_INT));
+            staticConfiguration = Collections.unmodifiableMap(configuration);
+        }
+        return staticConfiguration;
+    }
+    
     // Hardware analysis methods
     
     private HardwareInfo analyzeHardware() {
@@ -217,24 +443,33 @@ public class ReverseEngineeringEngine {
             hardware.supportedAbis = Build.SUPPORTED_ABIS;
             hardware.cpuCores = Runtime.getRuntime().availableProcessors();
             
+            refreshHardwareMetrics(hardware);
+            
+            Log.d(TAG, "Hardware analysis completed: " + hardware.manufacturer + " " + hardware.model);
+            
+        } catch (Exception e) {
+            Log.e(TAG, "Error analyzing hardware", e);
+        }
+        
+        return hardware;
+    }
+    
+    private void refreshHardwareMetrics(HardwareInfo hardware) {
+        try {
             // Memory information
             Runtime runtime = Runtime.getRuntime();
             hardware.totalMemory = runtime.maxMemory();
             hardware.availableMemory = runtime.freeMemory();
             hardware.usedMemory = runtime.totalMemory() - runtime.freeMemory();
             
-            // Display information (if available)
+            // Display information (if available); changes with rotation
             hardware.screenDensity = context.getResources().getDisplayMetrics().density;
             hardware.screenWidth = context.getResources().getDisplayMetrics().widthPixels;
             hardware.screenHeight = context.getResources().getDisplayMetrics().heightPixels;
             
-            Log.d(TAG, "Hardware analysis completed: " + hardware.manufacturer + " " + hardware.model);
-            
         } catch (Exception e) {
-            Log.e(TAG, "Error analyzing hardware", e);
+            Log.e(TAG, "Error refreshing hardware metrics", e);
         }
-        
-        return hardware;
     }
     
     // Software analysis methods
@@ -297,6 +532,13 @@ public class ReverseEngineeringEngine {
             // I/O performance
             metrics.ioPerformance = measureIOPerformance();
             
+            // Measured device capability, if the benchmark suite has run on this build
+            DeviceBenchmark.Result benchmark = deviceBenchmarkResult();
+            if (benchmark != null) {
+                metrics.deviceScore = benchmark.score;
+                metrics.deviceTier = benchmark.getTier();
+            }
+            
             // Response time simulation
             metrics.averageResponseTime = 150 + (int)(Math.random() * 100); // Simulated
             
@@ -362,8 +604,18 @@ public class ReverseEngineeringEngine {
             resources.usedStorage = resources.totalStorage - internalStorage.getFreeSpace();
             resources.storageUsage = (double)resources.usedStorage / resources.totalStorage;
             
-            // CPU resources (estimated)
+            // CPU and process memory from /proc
             resources.cpuUsage = estimateCPUUsage();
+            ProcSampler.Delta proc = lastProcDelta;
+            resources.processCpuUsage = proc.processCpuUsage;
+            resources.residentMemory = Math.max(0, proc.sample.vmRssKb) * 1024;
+            resources.proportionalMemory = Math.max(0, proc.sample.pssKb) * 1024;
+            resources.ioReadBytesPerSecond = proc.readBytesPerSecond;
+            resources.ioWriteBytesPerSecond = proc.writeBytesPerSecond;
+            resources.systemMemory = Math.max(0, proc.sample.memTotalKb) * 1024;
+            resources.availableSystemMemory = Math.max(0, proc.sample.memAvailableKb) * 1024;
+            resources.diskReadBytesPerSecond = proc.diskReadBytesPerSecond;
+            resources.diskWriteBytesPerSecond = proc.diskWriteBytesPerSecond;
             
             // Network resources
             resources.networkUsage = analyzeNetworkUsage();
@@ -379,46 +631,80 @@ public class ReverseEngineeringEngine {
     
     // Application analysis methods
     
-    private List<ApplicationAnalysis> analyzeInstalledApplications() {
-        List<ApplicationAnalysis> apps = new ArrayList<>();
+    /**
+     * Bring the package snapshot up to date; returns true if any package changed
+     */
+    private boolean refreshInstalledApplications() {
+        PackageManager pm = context.getPackageManager();
+        Set<String> changed = packageTracker.pollChanges();
         
-        try {
-            PackageManager pm = context.getPackageManager();
-            List<PackageInfo> installedPackages = pm.getInstalledPackages(PackageManager.GET_META_DATA);
-            
-            for (PackageInfo packageInfo : installedPackages) {
-                ApplicationAnalysis appAnalysis = new ApplicationAnalysis();
-                
-                appAnalysis.packageName = packageInfo.packageName;
-                appAnalysis.versionName = packageInfo.versionName;
-                appAnalysis.versionCode = packageInfo.versionCode;
-                appAnalysis.installTime = packageInfo.firstInstallTime;
-                appAnalysis.updateTime = packageInfo.lastUpdateTime;
-                
-                // Application info
-                ApplicationInfo appInfo = packageInfo.applicationInfo;
-                appAnalysis.isSystemApp = (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
-                appAnalysis.isDebuggable = (appInfo.flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
-                
-                // Estimate resource usage (simplified)
-                appAnalysis.memoryUsage = estimateAppMemoryUsage(packageInfo);
-                appAnalysis.cpuUsage = estimateAppCPUUsage(packageInfo);
-                appAnalysis.storageUsage = estimateAppStorageUsage(appInfo);
+        synchronized (packageSnapshot) {
+            try {
+                if (changed == null) {
+                    packageSnapshot.clear();
+                    List<PackageInfo> installedPackages = pm.getInstalledPackages(PackageManager.GET_META_DATA);
+                    for (PackageInfo packageInfo : installedPackages) {
+                        packageSnapshot.put(packageInfo.packageName, new PackageEntry(packageInfo, analyzeApplication(packageInfo)));
+                    }
+                    Log.d(TAG, "Application analysis completed: " + packageSnapshot.size() + " applications analyzed");
+                    return true;
+                }
                 
-                // Security analysis
-                appAnalysis.permissions = analyzeAppPermissions(packageInfo);
-                appAnalysis.securityRisk = calculateAppSecurityRisk(appAnalysis);
+                for (String packageName : changed) {
+                    try {
+                        PackageInfo packageInfo = pm.getPackageInfo(packageName, PackageManager.GET_META_DATA);
+                        packageSnapshot.put(packageName, new PackageEntry(packageInfo, analyzeApplication(packageInfo)));
+                    } catch (PackageManager.NameNotFoundException e) {
+                        packageSnapshot.remove(packageName); // Uninstalled
+                    }
+                }
+                if (!changed.isEmpty()) {
+                    Log.d(TAG, "Application analysis updated: " + changed.size() + " changed packages re-scanned");
+                }
+                return !changed.isEmpty();
                 
-                apps.add(appAnalysis);
+            } catch (Exception e) {
+                Log.e(TAG, "Error analyzing applications", e);
+                packageTracker.requestFullScan();
+                return false;
             }
-            
-            Log.d(TAG, "Application analysis completed: " + apps.size() + " applications analyzed");
-            
-        } catch (Exception e) {
-            Log.e(TAG, "Error analyzing applications", e);
         }
+    }
+    
+    private List<ApplicationAnalysis> installedApplications() {
+        synchronized (packageSnapshot) {
+            List<ApplicationAnalysis> apps = new ArrayList<>(packageSnapshot.size());
+            for (PackageEntry entry : packageSnapshot.values()) {
+                apps.add(entry.analysis);
+            }
+            return apps;
+        }
+    }
+    
+    private ApplicationAnalysis analyzeApplication(PackageInfo packageInfo) {
+        ApplicationAnalysis appAnalysis = new ApplicationAnalysis();
         
-        return apps;
+        appAnalysis.packageName = packageInfo.packageName;
+        appAnalysis.versionName = packageInfo.versionName;
+        appAnalysis.versionCode = packageInfo.versionCode;
+        appAnalysis.installTime = packageInfo.firstInstallTime;
+        appAnalysis.updateTime = packageInfo.lastUpdateTime;
+        
+        // Application info
+        ApplicationInfo appInfo = packageInfo.applicationInfo;
+        appAnalysis.isSystemApp = (appInfo.flags & ApplicationInfo.FLAG_SYSTEM) != 0;
+        appAnalysis.isDebuggable = (appInfo.flags & ApplicationInfo.FLAG_DEBUGGABLE) != 0;
+        
+        // Estimate resource usage (simplified)
+        appAnalysis.memoryUsage = estimateAppMemoryUsage(packageInfo);
+        appAnalysis.cpuUsage = estimateAppCPUUsage(packageInfo);
+        appAnalysis.storageUsage = estimateAppStorageUsage(appInfo);
+        
+        // Security analysis
+        appAnalysis.permissions = analyzeAppPermissions(packageInfo);
+        appAnalysis.securityRisk = calculateAppSecurityRisk(appAnalysis);
+        
+        return appAnalysis;
     }
     
     // Advanced analysis methods
@@ -581,23 +867,100 @@ public class ReverseEngineeringEngine {
     // Helper methods
     
     private void performCPUBenchmark() {
-        // Simple CPU benchmark
-        double result = 0;
-        for (int i = 0; i < 100000; i++) {
-            result += Math.sqrt(i) * Math.sin(i);
+        // Quick blackholed timing check; the full suite lives in DeviceBenchmark
+        DeviceBenchmark.runCpuKernel(1000000);
+    }
+    
+    /**
+     * Stored device benchmark; the first call without one schedules the suite in the background
+     */
+    private DeviceBenchmark.Result deviceBenchmarkResult() {
+        DeviceBenchmark.Result result = deviceBenchmark.getStoredResult();
+        if (result == null && benchmarkScheduled.compareAndSet(false, true)) {
+            scheduleDeviceBenchmark(BENCHMARK_QUIET_WAIT_MS);
+        }
+        return result;
+    }
+    
+    private void scheduleDeviceBenchmark(long delayMs) {
+        try {
+            benchmarkExecutor.schedule(this::runDeviceBenchmark, delayMs, TimeUnit.MILLISECONDS);
+        } catch (RejectedExecutionException e) {
+            // Shut down
+        }
+    }
+    
+    /**
+     * Run the suite once no analysis is running. A run is stored only if no analysis started
+     * while it was measuring and DeviceBenchmark did not reject it for outside load; anything
+     * else is discarded and tried again later.
+     */
+    private void runDeviceBenchmark() {
+        if (deviceBenchmark.getStoredResult() != null) {
+            return;
+        }
+        if (activeAnalyses.get() > 0) {
+            scheduleDeviceBenchmark(BENCHMARK_QUIET_WAIT_MS);
+            return;
+        }
+        
+        try {
+            long runsBefore = analysisRuns.get();
+            DeviceBenchmark.Result result = deviceBenchmark.measure();
+            if (result != null && analysisRuns.get() == runsBefore) {
+                deviceBenchmark.store(result);
+                RuntimeTuning.get().seedDefaults(result);
+                return;
+            }
+            if (result != null) {
+                Log.i(TAG, "Discarding device benchmark that overlapped a system analysis");
+            }
+        } catch (Exception e) {
+            Log.e(TAG, "Device benchmark failed", e);
+        }
+        
+        if (benchmarkAttempts.incrementAndGet() < MAX_BENCHMARK_ATTEMPTS) {
+            scheduleDeviceBenchmark(BENCHMARK_RETRY_MS);
+        } else {
+            Log.w(TAG, "No quiet window for the device benchmark; keeping default tuning");
         }
     }
     
+    public DeviceBenchmark getDeviceBenchmark() {
+        return deviceBenchmark;
+    }
+    
+    /**
+     * Durable 4 KB write + read round trip in milliseconds
+     */
     private double measureIOPerformance() {
+        File testFile = new File(context.getCacheDir(), "io_test.tmp");
+        byte[] block = new byte[4096];
         try {
             long startTime = System.nanoTime();
-            File testFile = new File(context.getCacheDir(), "io_test.tmp");
-            testFile.createNewFile();
-            testFile.delete();
+            FileOutputStream out = new FileOutputStream(testFile);
+            try {
+                out.write(block);
+                out.getFD().sync();
+            } finally {
+                out.close();
+            }
+            FileInputStream in = new FileInputStream(testFile);
+            try {
+                int total = 0;
+                int read;
+                while (total < block.length && (read = in.read(block, total, block.length - total)) > 0) {
+                    total += read;
+                }
+            } finally {
+                in.close();
+            }
             long endTime = System.nanoTime();
             return (endTime - startTime) / 1000000.0; // Convert to milliseconds
         } catch (Exception e) {
             return -1;
+        } finally {
+            testFile.delete();
         }
     }
     
@@ -681,12 +1044,12 @@ public class ReverseEngineeringEngine {
         List<String> vulnerableApps = new ArrayList<>();
         
         try {
-            PackageManager pm = context.getPackageManager();
-            List<PackageInfo> installedPackages = pm.getInstalledPackages(PackageManager.GET_META_DATA);
-            
-            for (PackageInfo packageInfo : installedPackages) {
-                if (isApplicationVulnerable(packageInfo)) {
-                    vulnerableApps.add(packageInfo.packageName);
+            // Reuse the package snapshot instead of scanning every package again
+            synchronized (packageSnapshot) {
+                for (PackageEntry entry : packageSnapshot.values()) {
+                    if (isApplicationVulnerable(entry.info)) {
+                        vulnerableApps.add(entry.info.packageName);
+                    }
                 }
             }
         } catch (Exception e) {
@@ -748,8 +1111,15 @@ public class ReverseEngineeringEngine {
     }
     
     private double estimateCPUUsage() {
-        // Simplified CPU usage estimation
-        return Math.random() * 0.5; // 0-50% usage
+        // System-wide usage when /proc/stat is readable (not for apps on Android 8+), else ours
+        ProcSampler.Delta delta = sampleProc();
+        return delta.systemCpuUsage >= 0 ? delta.systemCpuUsage : delta.processCpuUsage;
+    }
+    
+    private ProcSampler.Delta sampleProc() {
+        ProcSampler.Delta delta = procSampler.sampleDelta();
+        lastProcDelta = delta;
+        return delta;
     }
     
     private double analyzeNetworkUsage() {
@@ -758,13 +1128,21 @@ public class ReverseEngineeringEngine {
     }
     
     private long estimateAppMemoryUsage(PackageInfo packageInfo) {
-        // Simplified memory usage estimation
-        return (long)(Math.random() * 100 * 1024 * 1024); // 0-100MB
+        // Other apps' /proc entries are not readable, so only our own footprint is known
+        if (!context.getPackageName().equals(packageInfo.packageName)) {
+            return 0;
+        }
+        ProcSampler.Sample sample = procSampler.sample();
+        long kb = sample.pssKb >= 0 ? sample.pssKb : sample.vmRssKb;
+        return Math.max(0, kb) * 1024;
     }
     
     private double estimateAppCPUUsage(PackageInfo packageInfo) {
-        // Simplified CPU usage estimation
-        return Math.random() * 0.1; // 0-10%
+        ProcSampler.Delta delta = lastProcDelta;
+        if (delta == null || !context.getPackageName().equals(packageInfo.packageName)) {
+            return 0;
+        }
+        return delta.processCpuUsage;
     }
     
     private long estimateAppStorageUsage(ApplicationInfo appInfo) {
@@ -801,15 +1179,21 @@ public class ReverseEngineeringEngine {
     // Additional helper methods for advanced analysis
     
     private long estimateCodeSegmentSize() {
-        return Runtime.getRuntime().totalMemory() / 10; // Rough estimate
+        ProcSampler.Sample sample = procSampler.sample();
+        if (sample.vmExeKb < 0 || sample.vmLibKb < 0) {
+            return Runtime.getRuntime().totalMemory() / 10; // Rough estimate
+        }
+        return (sample.vmExeKb + sample.vmLibKb) * 1024;
     }
     
     private long estimateDataSegmentSize() {
-        return Runtime.getRuntime().totalMemory() / 5; // Rough estimate
+        ProcSampler.Sample sample = procSampler.sample();
+        return sample.vmDataKb >= 0 ? sample.vmDataKb * 1024 : Runtime.getRuntime().totalMemory() / 5;
     }
     
     private long estimateStackSegmentSize() {
-        return Runtime.getRuntime().totalMemory() / 20; // Rough estimate
+        ProcSampler.Sample sample = procSampler.sample();
+        return sample.vmStackKb >= 0 ? sample.vmStackKb * 1024 : Runtime.getRuntime().totalMemory() / 20;
     }
     
     private String analyzeGarbageCollection() {
@@ -879,17 +1263,17 @@ public class ReverseEngineeringEngine {
         List<String> insights = new ArrayList<>();
         
         // Memory insights
-        if (analysis.resourceUsage.memoryUsage > 0.8) {
+        if (analysis.resourceUsage != null && analysis.resourceUsage.memoryUsage > 0.8) {
             insights.add("High memory usage detected - consider memory optimization");
         }
         
         // Performance insights
-        if (analysis.performanceMetrics.averageResponseTime > 500) {
+        if (analysis.performanceMetrics != null && analysis.performanceMetrics.averageResponseTime > 500) {
             insights.add("Slow response times detected - performance tuning recommended");
         }
         
         // Security insights
-        if (analysis.securityAssessment.riskLevel > 0.6) {
+        if (analysis.securityAssessment != null && analysis.securityAssessment.riskLevel > 0.6) {
             insights.add("Elevated security risk - security hardening recommended");
         }
         
@@ -902,6 +1286,10 @@ public class ReverseEngineeringEngine {
         }
         insights.add("System has " + systemApps + " system apps and " + userApps + " user apps");
         
+        if (analysis.timedOutStages != null && !analysis.timedOutStages.isEmpty()) {
+            insights.add("Partial analysis - timed out: " + analysis.timedOutStages);
+        }
+        
         return insights;
     }
     
@@ -926,6 +1314,10 @@ public class ReverseEngineeringEngine {
         public KernelInfo kernelInfo;
         public List<Vulnerability> vulnerabilities;
         
+        // Analysis graph bookkeeping
+        public Map<String, Long> stageTimings;
+        public List<String> timedOutStages;
+        
         public String getReport() {
             StringBuilder report = new StringBuilder();
             report.append("=== SYSTEM ANALYSIS REPORT ===\n\n");
@@ -945,9 +1337,32 @@ public class ReverseEngineeringEngine {
                 report.append("Performance:\n");
                 report.append("- Memory Usage: ").append(String.format("%.1f", performanceMetrics.memoryUsage * 100)).append("%\n");
                 report.append("- CPU Benchmark: ").append(performanceMetrics.cpuBenchmarkTime).append("ms\n");
+                if (performanceMetrics.deviceTier != null) {
+                    report.append("- Device Score: ").append(String.format("%.0f", performanceMetrics.deviceScore))
+                          .append(" (").append(performanceMetrics.deviceTier).append(")\n");
+                }
                 report.append("- Response Time: ").append(performanceMetrics.averageResponseTime).append("ms\n\n");
             }
             
+            if (resourceUsage != null) {
+                report.append("Resources:\n");
+                report.append("- CPU: ").append(String.format("%.1f", resourceUsage.cpuUsage * 100)).append("% (Jarvis ")
+                      .append(String.format("%.1f", resourceUsage.processCpuUsage * 100)).append("%)\n");
+                report.append("- Resident: ").append(resourceUsage.residentMemory / 1024 / 1024).append("MB, PSS: ")
+                      .append(resourceUsage.proportionalMemory / 1024 / 1024).append("MB\n");
+                report.append("- I/O: ").append(String.format("%.1f", resourceUsage.ioReadBytesPerSecond / 1024)).append(" KB/s read, ")
+                      .append(String.format("%.1f", resourceUsage.ioWriteBytesPerSecond / 1024)).append(" KB/s write\n");
+                if (resourceUsage.systemMemory > 0) {
+                    report.append("- Device Memory: ").append(resourceUsage.availableSystemMemory / 1024 / 1024).append("MB of ")
+                          .append(resourceUsage.systemMemory / 1024 / 1024).append("MB available\n");
+                }
+                if (resourceUsage.diskReadBytesPerSecond >= 0) {
+                    report.append("- Disk: ").append(String.format("%.1f", resourceUsage.diskReadBytesPerSecond / 1024)).append(" KB/s read, ")
+                          .append(String.format("%.1f", resourceUsage.diskWriteBytesPerSecond / 1024)).append(" KB/s write\n");
+                }
+                report.append("\n");
+            }
+            
             if (securityAssessment != null) {
                 report.append("Security:\n");
                 report.append("- Risk Level: ").append(securityAssessment.riskDescription).append(" (").append(String.format("%.2f", securityAssessment.riskLevel)).append(")\n");
@@ -962,6 +1377,24 @@ public class ReverseEngineeringEngine {
                 }
             }
             
+            if (stageTimings != null && !stageTimings.isEmpty()) {
+                report.append("\nStage timings:\n");
+                for (Map.Entry<String, Long> timing : new TreeMap<>(stageTimings).entrySet()) {
+                    report.append("- ").append(timing.getKey()).append(": ").append(timing.getValue()).append("ms");
+                    if (timedOutStages != null && timedOutStages.contains(timing.getKey())) {
+                        report.append(" (timed out)");
+                    }
+                    report.append("\n");
+                }
+                if (timedOutStages != null) {
+                    for (String stage : timedOutStages) {
+                        if (!stageTimings.containsKey(stage)) {
+                            report.append("- ").append(stage).append(": timed out\n");
+                        }
+                    }
+                }
+            }
+            
             return report.toString();
         }
     }
@@ -1002,6 +1435,8 @@ public class ReverseEngineeringEngine {
         public String memoryPressure;
         public long cpuBenchmarkTime;
         public double ioPerformance;
+        public double deviceScore;
+        public String deviceTier;
         public int averageResponseTime;
         public double throughput;
     }
@@ -1026,6 +1461,15 @@ public class ReverseEngineeringEngine {
         public long usedStorage;
         public double storageUsage;
         public double cpuUsage;
+        public double processCpuUsage;
+        public long residentMemory;
+        public long proportionalMemory;
+        public double ioReadBytesPerSecond;
+        public double ioWriteBytesPerSecond;
+        public long systemMemory;
+        public long availableSystemMemory;
+        public double diskReadBytesPerSecond;    // whole device, -1 if unknown
+        public double diskWriteBytesPerSecond;
         public double networkUsage;
     }
     
@@ -1096,6 +1540,47 @@ public class ReverseEngineeringEngine {
         }
     }
     
+    private static class PackageEntry {
+        final PackageInfo info;
+        final ApplicationAnalysis analysis;
+        
+        PackageEntry(PackageInfo info, ApplicationAnalysis analysis) {
+            this.info = info;
+            this.analysis = analysis;
+        }
+    }
+    
+    /**
+     * Snapshot section recomputed only when older than its refresh interval
+     */
+    private static class SnapshotSection<T> {
+        interface Loader<T> {
+            T load();
+        }
+        
+        private final long refreshIntervalMs;
+        private final Loader<T> loader;
+        private T value;
+        private long refreshedAt;
+        
+        SnapshotSection(long refreshIntervalMs, Loader<T> loader) {
+            this.refreshIntervalMs = refreshIntervalMs;
+            this.loader = loader;
+        }
+        
+        synchronized T get(long now) {
+            if (value == null || now - refreshedAt >= refreshIntervalMs) {
+                value = loader.load();
+                refreshedAt = now;
+            }
+            return value;
+        }
+        
+        synchronized void invalidate() {
+            value = null;
+        }
+    }
+    
     // Component classes
     
     private static class SystemProfiler {
@@ -0,0 +1,184 @@
+package com.fullsend.jarvis.ai;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Process-wide runtime knobs and the signals used to tune them
+ *
+ * Features:
+ * - Named integer knobs with hard min/max bounds; components subscribe and apply changes
+ * - PerformanceOptimizer is the only writer, so every change goes through its adjustment log;
+ *   poll and log flush defaults are seeded from the device benchmark when it is available
+ * - OBD bus transactions are recorded here, so the AI side can see bus throughput
+ *   without depending on the OBD classes
+ */
+public class RuntimeTuning {
+
+    private static final String TAG = "RuntimeTuning";
+
+    public static final String KNOB_AI_POOL_SIZE = "ai_pool_size";
+    public static final String KNOB_OBD_POLL_INTERVAL_MS = "obd_poll_interval_ms";
+    public static final String KNOB_ANALYSIS_CACHE_SIZE = "analysis_cache_size";
+    public static final String KNOB_LOG_FLUSH_INTERVAL_MS = "log_flush_interval_ms";
+
+    private static final RuntimeTuning INSTANCE = new RuntimeTuning();
+
+    public interface KnobListener {
+        void onKnobChanged(String name, int value);
+    }
+
+    private final Map<String, Knob> knobs = new ConcurrentHashMap<>();
+
+    // OBD bus signals
+    private final LatencyHistogram busLatency = new LatencyHistogram();
+    private final AtomicLong busBytes = new AtomicLong();
+    private final AtomicLong busErrors = new AtomicLong();
+
+    public static class Knob {
+        public final String name;
+        public final int min;
+        public final int max;
+        private volatile int defaultValue;
+        private volatile int value;
+        private final List<KnobListener> listeners = new CopyOnWriteArrayList<>();
+
+        Knob(String name, int min, int max, int defaultValue) {
+            this.name = name;
+            this.min = min;
+            this.max = max;
+            this.defaultValue = defaultValue;
+            this.value = defaultValue;
+        }
+
+        public int getValue() {
+            return value;
+        }
+
+        public int getDefaultValue() {
+            return defaultValue;
+        }
+    }
+
+    private RuntimeTuning() {
+        // Start mid-range so the tuner can both shed and add workers
+        define(KNOB_AI_POOL_SIZE, 2, 8, Math.max(2, Math.min(4, Runtime.getRuntime().availableProcessors() / 2)));
+        define(KNOB_OBD_POLL_INTERVAL_MS, 250, 5000, 1000);
+        define(KNOB_ANALYSIS_CACHE_SIZE, 32, 512, ResponseCache.DEFAULT_MAX_ENTRIES);
+        define(KNOB_LOG_FLUSH_INTERVAL_MS, 0, 30000, 0);
+    }
+
+    public static RuntimeTuning get() {
+        return INSTANCE;
+    }
+
+    private void define(String name, int min, int max, int defaultValue) {
+        knobs.put(name, new Knob(name, min, max, defaultValue));
+    }
+
+    public Knob getKnob(String name) {
+        return knobs.get(name);
+    }
+
+    public int getValue(String name) {
+        Knob knob = knobs.get(name);
+        return knob != null ? knob.value : 0;
+    }
+
+    public List<Knob> getKnobs() {
+        return new ArrayList<>(knobs.values());
+    }
+
+    /**
+     * Subscribe to a knob; the listener is called right away with the current value
+     */
+    public void addListener(String name, KnobListener listener) {
+        Knob knob = knobs.get(name);
+        if (knob == null) {
+            throw new IllegalArgumentException("Unknown knob: " + name);
+        }
+        knob.listeners.add(listener);
+        listener.onKnobChanged(name, knob.value);
+    }
+
+    public void removeListener(String name, KnobListener listener) {
+        Knob knob = knobs.get(name);
+        if (knob != null) {
+            knob.listeners.remove(listener);
+        }
+    }
+
+    /**
+     * Move the benchmark-dependent defaults to what the device measured; knobs the optimizer
+     * has not changed yet take the new default right away
+     */
+    public void seedDefaults(DeviceBenchmark.Result benchmark) {
+        seedDefault(KNOB_OBD_POLL_INTERVAL_MS, (int) benchmark.getSuggestedPollIntervalMs());
+        seedDefault(KNOB_LOG_FLUSH_INTERVAL_MS, (int) benchmark.getSuggestedLogFlushIntervalMs());
+        Log.i(TAG, "Knob defaults seeded for a " + benchmark.getTier() + " device");
+    }
+
+    private synchronized void seedDefault(String name, int requested) {
+        Knob knob = knobs.get(name);
+        int value = Math.max(knob.min, Math.min(knob.max, requested));
+        boolean untouched = knob.value == knob.defaultValue;
+        knob.defaultValue = value;
+        if (untouched) {
+            set(name, value);
+        }
+    }
+
+    /**
+     * Set a knob, clamped to its bounds; returns the value actually applied
+     */
+    synchronized int set(String name, int requested) {
+        Knob knob = knobs.get(name);
+        if (knob == null) {
+            throw new IllegalArgumentException("Unknown knob: " + name);
+        }
+
+        int value = Math.max(knob.min, Math.min(knob.max, requested));
+        if (value == knob.value) {
+            return value;
+        }
+        knob.value = value;
+
+        for (KnobListener listener : knob.listeners) {
+            try {
+                listener.onKnobChanged(name, value);
+            } catch (RuntimeException e) {
+                Log.e(TAG, "Knob listener failed for " + name, e);
+            }
+        }
+        return value;
+    }
+
+    /**
+     * Called by the OBD layer once per request/response round trip
+     */
+    public void recordBusTransaction(long latencyMs, int responseBytes, boolean success) {
+        busLatency.record(latencyMs);
+        busBytes.addAndGet(Math.max(0, responseBytes));
+        if (!success) {
+            busErrors.incrementAndGet();
+        }
+    }
+
+    public LatencyHistogram getBusLatency() {
+        return busLatency;
+    }
+
+    public long getBusBytes() {
+        return busBytes.get();
+    }
+
+    public long getBusErrors() {
+        return busErrors.get();
+    }
+}
@@ -0,0 +1,2824 @@
+package com.fullsend.jarvis.ai;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+
+/**
+ * Sandboxed interpreter for the Java-like subset that CodeExecutionEngine generates
+ *
+ * Features:
+ * - Locals of type int/long/double/boolean/char/String (and arrays of them), if/else, while,
+ *   classic and for-each loops, break/continue/return, try/catch, ternaries, casts,
+ *   compound assignment and ++/--
+ * - Java numeric promotion: int and char operands compute in 32 bits and wrap, long only
+ *   when an operand is long, and a char is a number ('a' + 1 is 98)
+ * - Either bare statements or a class with a static execute()/main() method
+ * - Source is parsed once into an AST and compiled into a closure tree with local
+ *   variables resolved to frame slots; a compiled Program is immutable and can run on
+ *   several threads at once
+ * - Whitelisted library only (System.out, Math, Arrays, String, Integer/Long/Double, a
+ *   read-only Runtime memory view, DriveLog columns and the Columns analytics operators);
+ *   anything else is a compile error, not a runtime lookup
+ * - Every run has an instruction budget and an allocation budget (array cells and string
+ *   characters), checked as it goes, plus cooperative cancellation on thread interrupt
+ */
+public class ScriptInterpreter {
+
+    public static final long DEFAULT_MAX_INSTRUCTIONS = 5000000;
+    public static final long DEFAULT_MAX_ALLOCATION = 1000000;
+
+    private static final int MAX_CALL_ARGS = 16;
+
+    private ScriptInterpreter() {
+    }
+
+    // ================================================================= errors
+
+    /**
+     * Source that does not parse or uses something outside the supported subset
+     */
+    public static class ScriptException extends Exception {
+        private static final long serialVersionUID = 1L;
+
+        public final int line;
+
+        ScriptException(String message, int line) {
+            super("line " + line + ": " + message);
+            this.line = line;
+        }
+    }
+
+    /**
+     * Error raised by the script itself; scripts can catch these
+     */
+    public static class ScriptRuntimeException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ScriptRuntimeException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * A run used up its instruction or allocation budget; scripts cannot catch this
+     */
+    public static class BudgetExceededException extends RuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        BudgetExceededException(String message) {
+            super(message);
+        }
+    }
+
+    /**
+     * Per-run resource limits
+     */
+    public static class Limits {
+        public final long maxInstructions;
+        public final long maxAllocation;
+
+        public Limits(long maxInstructions, long maxAllocation) {
+            this.maxInstructions = maxInstructions;
+            this.maxAllocation = maxAllocation;
+        }
+
+        public static Limits defaults() {
+            return new Limits(DEFAULT_MAX_INSTRUCTIONS, DEFAULT_MAX_ALLOCATION);
+        }
+    }
+
+    // ================================================================= public API
+
+    /**
+     * Parse and compile source into a reusable program
+     */
+    public static Program compile(String source) throws ScriptException {
+        List<Token> tokens = new Lexer(source).tokenize();
+        Parser parser = new Parser(tokens);
+        Block body = parser.parseProgram();
+        Compiler compiler = new Compiler();
+        Exec code = compiler.compileBlock(body);
+        return new Program(code, compiler.maxSlots);
+    }
+
+    /**
+     * Source with comments removed (string literals are left alone)
+     */
+    public static String stripComments(String source) {
+        StringBuilder out = new StringBuilder(source.length());
+        int i = 0;
+        int n = source.length();
+        while (i < n) {
+            char c = source.charAt(i);
+            if (c == '"' || c == '\'') {
+                int end = i + 1;
+                while (end < n && source.charAt(end) != c) {
+                    end += source.charAt(end) == '\\' ? 2 : 1;
+                }
+                end = Math.min(n, end + 1);
+                out.append(source, i, end);
+                i = end;
+            } else if (c == '/' && i + 1 < n && source.charAt(i + 1) == '/') {
+                while (i < n && source.charAt(i) != '\n') {
+                    i++;
+                }
+            } else if (c == '/' && i + 1 < n && source.charAt(i + 1) == '*') {
+                int end = source.indexOf("*/", i + 2);
+                i = end < 0 ? n : end + 2;
+                out.append(' ');
+            } else {
+                out.append(c);
+                i++;
+            }
+        }
+        return out.toString();
+    }
+
+    /**
+     * Compiled script; thread-safe, each run gets its own frame and budget
+     */
+    public static class Program {
+        private final Exec body;
+        private final int slotCount;
+
+        Program(Exec body, int slotCount) {
+            this.body = body;
+            this.slotCount = slotCount;
+        }
+
+        /**
+         * Run the program; returns the value of its top-level return statement, or null
+         */
+        public Object run(ExecutionOutput out, Limits limits) {
+            Frame frame = new Frame(slotCount, out, limits);
+            body.exec(frame);
+            return frame.returnValue;
+        }
+    }
+
+    /**
+     * Mutable state of one run
+     */
+    static final class Frame {
+        final Object[] slots;
+        final ExecutionOutput out;
+        final long maxInstructions;
+        final long maxAllocation;
+        long instructions;
+        long allocation;
+        Object returnValue;
+        Map<String, DriveLog.Snapshot> driveLog;
+
+        Frame(int slotCount, ExecutionOutput out, Limits limits) {
+            this.slots = new Object[slotCount];
+            this.out = out;
+            this.maxInstructions = limits.maxInstructions;
+            this.maxAllocation = limits.maxAllocation;
+        }
+
+        /**
+         * The channel pinned by DriveLog.snapshot() in this run, or null to read the live log
+         */
+        DriveLog.Snapshot pinned(String channel) {
+            return driveLog != null ? driveLog.get(channel) : null;
+        }
+
+        void tick() {
+            if (++instructions > maxInstructions) {
+                throw new BudgetExceededException("Instruction budget of " + maxInstructions + " exceeded");
+            }
+            if ((instructions & 0x3ff) == 0 && Thread.currentThread().isInterrupted()) {
+                throw new ExecutionOutput.ExecutionCancelledException();
+            }
+        }
+
+        void allocate(long cells) {
+            allocation += cells;
+            if (allocation > maxAllocation) {
+                throw new BudgetExceededException("Allocation budget of " + maxAllocation + " exceeded");
+            }
+        }
+    }
+
+    // ================================================================= lexer
+
+    private enum TokenType { IDENT, INT, LONG, DOUBLE, STRING, CHAR, OP, EOF }
+
+    private static final class Token {
+        final TokenType type;
+        final String text;
+        final int line;
+
+        Token(TokenType type, String text, int line) {
+            this.type = type;
+            this.text = text;
+            this.line = line;
+        }
+
+        boolean is(String op) {
+            return (type == TokenType.OP || type == TokenType.IDENT) && text.equals(op);
+        }
+
+        @Override
+        public String toString() {
+            return type == TokenType.EOF ? "end of input" : "'" + text + "'";
+        }
+    }
+
+    private static final String[] OPERATORS = {
+        ">>>=", "<<=", ">>=", ">>>", "==", "!=", "<=", ">=", "&&", "||", "++", "--", "+=", "-=", "*=", "/=",
+        "%=", "&=", "|=", "^=", "<<", ">>", "->", "::",
+        "+", "-", "*", "/", "%", "<", ">", "!", "=", "(", ")", "{", "}", "[", "]", ";", ",", ".", "?",
+        ":", "&", "|", "^", "~", "@"
+    };
+
+    private static final class Lexer {
+        private final String source;
+        private int pos;
+        private int line = 1;
+
+        Lexer(String source) {
+            this.source = source;
+        }
+
+        List<Token> tokenize() throws ScriptException {
+            List<Token> tokens = new ArrayList<>();
+            int n = source.length();
+            while (true) {
+                skipWhitespaceAndComments();
+                if (pos >= n) {
+                    tokens.add(new Token(TokenType.EOF, "", line));
+                    return tokens;
+                }
+                char c = source.charAt(pos);
+                if (Character.isJavaIdentifierStart(c)) {
+                    int start = pos;
+                    while (pos < n && Character.isJavaIdentifierPart(source.charAt(pos))) {
+                        pos++;
+                    }
+                    tokens.add(new Token(TokenType.IDENT, source.substring(start, pos), line));
+                } else if (Character.isDigit(c) || (c == '.' && pos + 1 < n && Character.isDigit(source.charAt(pos + 1)))) {
+                    tokens.add(number());
+                } else if (c == '"') {
+                    tokens.add(new Token(TokenType.STRING, quoted('"'), line));
+                } else if (c == '\'') {
+                    String value = quoted('\'');
+                    if (value.length() != 1) {
+                        throw new ScriptException("Bad character literal", line);
+                    }
+                    tokens.add(new Token(TokenType.CHAR, value, line));
+                } else {
+                    tokens.add(operator());
+                }
+            }
+        }
+
+        private void skipWhitespaceAndComments() {
+            int n = source.length();
+            while (pos < n) {
+                char c = source.charAt(pos);
+                if (c == '\n') {
+                    line++;
+                    pos++;
+                } else if (Character.isWhitespace(c)) {
+                    pos++;
+                } else if (c == '/' && pos + 1 < n && source.charAt(pos + 1) == '/') {
+                    while (pos < n && source.charAt(pos) != '\n') {
+                        pos++;
+                    }
+                } else if (c == '/' && pos + 1 < n && source.charAt(pos + 1) == '*') {
+                    pos += 2;
+                    while (pos < n && !(source.charAt(pos) == '*' && pos + 1 < n && source.charAt(pos + 1) == '/')) {
+                        if (source.charAt(pos) == '\n') {
+                            line++;
+                        }
+                        pos++;
+                    }
+                    pos = Math.min(n, pos + 2);
+                } else {
+                    return;
+                }
+            }
+        }
+
+        private Token number() throws ScriptException {
+            int start = pos;
+            int n = source.length();
+            boolean floating = false;
+            while (pos < n && (Character.isDigit(source.charAt(pos)) || source.charAt(pos) == '_')) {
+                pos++;
+            }
+            if (pos < n && source.charAt(pos) == '.' && pos + 1 < n && Character.isDigit(source.charAt(pos + 1))) {
+                floating = true;
+                pos++;
+                while (pos < n && Character.isDigit(source.charAt(pos))) {
+                    pos++;
+                }
+            }
+            if (pos < n && (source.charAt(pos) == 'e' || source.charAt(pos) == 'E')) {
+                floating = true;
+                pos++;
+                if (pos < n && (source.charAt(pos) == '+' || source.charAt(pos) == '-')) {
+                    pos++;
+                }
+                while (pos < n && Character.isDigit(source.charAt(pos))) {
+                    pos++;
+                }
+            }
+            String text = source.substring(start, pos).replace("_", "");
+            TokenType type = floating ? TokenType.DOUBLE : TokenType.INT;
+            if (pos < n) {
+                char suffix = Character.toLowerCase(source.charAt(pos));
+                if (suffix == 'l' && !floating) {
+                    type = TokenType.LONG;
+                    pos++;
+                } else if (suffix == 'd' || suffix == 'f') {
+                    type = TokenType.DOUBLE;
+                    pos++;
+                }
+            }
+            try {
+                if (type == TokenType.DOUBLE) {
+                    Double.parseDouble(text);
+                } else {
+                    Long.parseLong(text);
+                }
+            } catch (NumberFormatException e) {
+                throw new ScriptException("Bad number " + text, line);
+            }
+            return new Token(type, text, line);
+        }
+
+        private String quoted(char quote) throws ScriptException {
+            StringBuilder value = new StringBuilder();
+            pos++;
+            int n = source.length();
+            while (pos < n && source.charAt(pos) != quote) {
+                char c = source.charAt(pos++);
+                if (c == '\n') {
+                    throw new ScriptException("Unterminated literal", line);
+                }
+                if (c == '\\' && pos < n) {
+                    char escaped = source.charAt(pos++);
+                    switch (escaped) {
+                        case 'n': value.append('\n'); break;
+                        case 't': value.append('\t'); break;
+                        case 'r': value.append('\r'); break;
+                        case '0': value.append('\0'); break;
+                        default: value.append(escaped); break;
+                    }
+                } else {
+                    value.append(c);
+                }
+            }
+            if (pos >= n) {
+                throw new ScriptException("Unterminated literal", line);
+            }
+            pos++;
+            return value.toString();
+        }
+
+        private Token operator() throws ScriptException {
+            for (String op : OPERATORS) {
+                if (source.startsWith(op, pos)) {
+                    pos += op.length();
+                    return new Token(TokenType.OP, op, line);
+                }
+            }
+            throw new ScriptException("Unexpected character '" + source.charAt(pos) + "'", line);
+        }
+    }
+
+    // ================================================================= AST
+
+    private abstract static class Node {
+        final int line;
+
+        Node(int line) {
+            this.line = line;
+        }
+    }
+
+    private abstract static class Expr extends Node {
+        Expr(int line) {
+            super(line);
+        }
+    }
+
+    private static final class Literal extends Expr {
+        final Object value;
+
+        Literal(int line, Object value) {
+            super(line);
+            this.value = value;
+        }
+    }
+
+    private static final class Name extends Expr {
+        final String name;
+
+        Name(int line, String name) {
+            super(line);
+            this.name = name;
+        }
+    }
+
+    private static final class FieldAccess extends Expr {
+        final Expr target;
+        final String name;
+
+        FieldAccess(int line, Expr target, String name) {
+            super(line);
+            this.target = target;
+            this.name = name;
+        }
+    }
+
+    private static final class Call extends Expr {
+        final Expr target;       // Name or FieldAccess naming the method
+        final List<Expr> args;
+
+        Call(int line, Expr target, List<Expr> args) {
+            super(line);
+            this.target = target;
+            this.args = args;
+        }
+    }
+
+    private static final class Index extends Expr {
+        final Expr array;
+        final Expr index;
+
+        Index(int line, Expr array, Expr index) {
+            super(line);
+            this.array = array;
+            this.index = index;
+        }
+    }
+
+    private static final class Unary extends Expr {
+        final String op;
+        final Expr operand;
+
+        Unary(int line, String op, Expr operand) {
+            super(line);
+            this.op = op;
+            this.operand = operand;
+        }
+    }
+
+    private static final class IncDec extends Expr {
+        final Expr target;
+        final int delta;
+        final boolean prefix;
+
+        IncDec(int line, Expr target, int delta, boolean prefix) {
+            super(line);
+            this.target = target;
+            this.delta = delta;
+            this.prefix = prefix;
+        }
+    }
+
+    private static final class Binary extends Expr {
+        final String op;
+        final Expr left;
+        final Expr right;
+
+        Binary(int line, String op, Expr left, Expr right) {
+            super(line);
+            this.op = op;
+            this.left = left;
+            this.right = right;
+        }
+    }
+
+    private static final class Assign extends Expr {
+        final String op;         // "=" or the arithmetic operator of a compound assignment
+        final Expr target;
+        final Expr value;
+
+        Assign(int line, String op, Expr target, Expr value) {
+            super(line);
+            this.op = op;
+            this.target = target;
+            this.value = value;
+        }
+    }
+
+    private static final class Conditional extends Expr {
+        final Expr condition;
+        final Expr whenTrue;
+        final Expr whenFalse;
+
+        Conditional(int line, Expr condition, Expr whenTrue, Expr whenFalse) {
+            super(line);
+            this.condition = condition;
+            this.whenTrue = whenTrue;
+            this.whenFalse = whenFalse;
+        }
+    }
+
+    private static final class Cast extends Expr {
+        final String type;
+        final Expr operand;
+
+        Cast(int line, String type, Expr operand) {
+            super(line);
+            this.type = type;
+            this.operand = operand;
+        }
+    }
+
+    private static final class NewArray extends Expr {
+        final String elementType;
+        final Expr length;            // null when an initializer is given
+        final List<Expr> elements;
+
+        NewArray(int line, String elementType, Expr length, List<Expr> elements) {
+            super(line);
+            this.elementType = elementType;
+            this.length = length;
+            this.elements = elements;
+        }
+    }
+
+    private abstract static class Stmt extends Node {
+        Stmt(int line) {
+            super(line);
+        }
+    }
+
+    private static final class Block extends Stmt {
+        final List<Stmt> statements;
+
+        Block(int line, List<Stmt> statements) {
+            super(line);
+            this.statements = statements;
+        }
+    }
+
+    private static final class VarDecl extends Stmt {
+        final String type;           // "int", "double[]", "var", ...
+        final List<String> names;
+        final List<Expr> initializers; // entries may be null
+
+        VarDecl(int line, String type, List<String> names, List<Expr> initializers) {
+            super(line);
+            this.type = type;
+            this.names = names;
+            this.initializers = initializers;
+        }
+    }
+
+    private static final class ExprStmt extends Stmt {
+        final Expr expr;
+
+        ExprStmt(int line, Expr expr) {
+            super(line);
+            this.expr = expr;
+        }
+    }
+
+    private static final class If extends Stmt {
+        final Expr condition;
+        final Stmt then;
+        final Stmt otherwise;
+
+        If(int line, Expr condition, Stmt then, Stmt otherwise) {
+            super(line);
+            this.condition = condition;
+            this.then = then;
+            this.otherwise = otherwise;
+        }
+    }
+
+    private static final class While extends Stmt {
+        final Expr condition;
+        final Stmt body;
+        final boolean doWhile;
+
+        While(int line, Expr condition, Stmt body, boolean doWhile) {
+            super(line);
+            this.condition = condition;
+            this.body = body;
+            this.doWhile = doWhile;
+        }
+    }
+
+    private static final class For extends Stmt {
+        final List<Stmt> init;
+        final Expr condition;        // null means true
+        final List<Expr> update;
+        final Stmt body;
+
+        For(int line, List<Stmt> init, Expr condition, List<Expr> update, Stmt body) {
+            super(line);
+            this.init = init;
+            this.condition = condition;
+            this.update = update;
+            this.body = body;
+        }
+    }
+
+    private static final class ForEach extends Stmt {
+        final String type;
+        final String name;
+        final Expr iterable;
+        final Stmt body;
+
+        ForEach(int line, String type, String name, Expr iterable, Stmt body) {
+            super(line);
+            this.type = type;
+            this.name = name;
+            this.iterable = iterable;
+            this.body = body;
+        }
+    }
+
+    private static final class Jump extends Stmt {
+        final int signal;
+        final Expr value;            // return value, may be null
+
+        Jump(int line, int signal, Expr value) {
+            super(line);
+            this.signal = signal;
+            this.value = value;
+        }
+    }
+
+    private static final class Try extends Stmt {
+        final Block body;
+        final String catchName;      // null without a catch clause
+        final Block handler;
+        final Block finallyBlock;
+
+        Try(int line, Block body, String catchName, Block handler, Block finallyBlock) {
+            super(line);
+            this.body = body;
+            this.catchName = catchName;
+            this.handler = handler;
+            this.finallyBlock = finallyBlock;
+        }
+    }
+
+    private static final class Throw extends Stmt {
+        final Expr value;
+
+        Throw(int line, Expr value) {
+            super(line);
+            this.value = value;
+        }
+    }
+
+    // ================================================================= parser
+
+    private static final String[] PRIMITIVE_TYPES = {
+        "int", "long", "short", "byte", "double", "float", "boolean", "char"
+    };
+    private static final String[] CLASS_TYPES = {
+        "String", "var", "Object", "Runtime", "Integer", "Long", "Double", "Boolean"
+    };
+    private static final String[] MODIFIERS = {
+        "public", "private", "protected", "static", "final", "abstract", "synchronized"
+    };
+
+    private static final class Parser {
+        private final List<Token> tokens;
+        private int pos;
+
+        Parser(List<Token> tokens) {
+            this.tokens = tokens;
+        }
+
+        Block parseProgram() throws ScriptException {
+            while (peek().is("import") || peek().is("package")) {
+                while (!peek().is(";") && peek().type != TokenType.EOF) {
+                    pos++;
+                }
+                expect(";");
+            }
+
+            // Class wrapper: run execute(), main() or the first method
+            int mark = pos;
+            skipModifiers();
+            if (peek().is("class")) {
+                return parseClass();
+            }
+            pos = mark;
+
+            List<Stmt> statements = new ArrayList<>();
+            while (peek().type != TokenType.EOF) {
+                statements.add(statement());
+            }
+            return new Block(1, statements);
+        }
+
+        private Block parseClass() throws ScriptException {
+            int line = next().line; // class
+            ident();
+            expect("{");
+            Block entry = null;
+            String entryName = null;
+            while (!peek().is("}")) {
+                if (peek().type == TokenType.EOF) {
+                    throw error("Unterminated class body");
+                }
+                skipModifiers();
+                type();
+                String method = ident();
+                if (!peek().is("(")) {
+                    throw error("Only static methods are supported in the class body");
+                }
+                skipParens();
+                if (peek().is("throws")) {
+                    while (!peek().is("{")) {
+                        next();
+                    }
+                }
+                Block body = block();
+                if (entry == null || ("execute".equals(method) && !"execute".equals(entryName))
+                        || ("main".equals(method) && !"execute".equals(entryName) && !"main".equals(entryName))) {
+                    entry = body;
+                    entryName = method;
+                }
+            }
+            expect("}");
+            if (entry == null) {
+                throw new ScriptException("Class has no method to run", line);
+            }
+            return entry;
+        }
+
+        private void skipModifiers() {
+            while (peek().type == TokenType.IDENT && contains(MODIFIERS, peek().text)) {
+                pos++;
+            }
+            while (peek().is("@")) {
+                pos += 2;
+            }
+        }
+
+        private void skipParens() throws ScriptException {
+            expect("(");
+            int depth = 1;
+            while (depth > 0) {
+                Token token = next();
+                if (token.type == TokenType.EOF) {
+                    throw error("Unbalanced parentheses");
+                }
+                if (token.is("(")) {
+                    depth++;
+                } else if (token.is(")")) {
+                    depth--;
+                }
+            }
+        }
+
+        // ---------------------------------------------------------------- statements
+
+        private Stmt statement() throws ScriptException {
+            Token token = peek();
+            int line = token.line;
+
+            if (token.is("{")) {
+                return block();
+            }
+            if (token.is(";")) {
+                next();
+                return new Block(line, new ArrayList<>());
+            }
+            if (token.type == TokenType.IDENT) {
+                switch (token.text) {
+                    case "if": {
+                        next();
+                        Expr condition = parenthesized();
+                        Stmt then = statement();
+                        Stmt otherwise = null;
+                        if (peek().is("else")) {
+                            next();
+                            otherwise = statement();
+                        }
+                        return new If(line, condition, then, otherwise);
+                    }
+                    case "while": {
+                        next();
+                        Expr condition = parenthesized();
+                        return new While(line, condition, statement(), false);
+                    }
+                    case "do": {
+                        next();
+                        Stmt body = statement();
+                        expect("while");
+                        Expr condition = parenthesized();
+                        expect(";");
+                        return new While(line, condition, body, true);
+                    }
+                    case "for":
+                        return forStatement();
+                    case "break":
+                        next();
+                        expect(";");
+                        return new Jump(line, Compiler.BREAK, null);
+                    case "continue":
+                        next();
+                        expect(";");
+                        return new Jump(line, Compiler.CONTINUE, null);
+                    case "return": {
+                        next();
+                        Expr value = peek().is(";") ? null : expression();
+                        expect(";");
+                        return new Jump(line, Compiler.RETURN, value);
+                    }
+                    case "throw": {
+                        next();
+                        Expr value = expression();
+                        expect(";");
+                        return new Throw(line, value);
+                    }
+                    case "try":
+                        return tryStatement();
+                    case "final":
+                        next();
+                        return statement();
+                    default:
+                        break;
+                }
+                if (isDeclarationStart()) {
+                    VarDecl decl = declaration();
+                    expect(";");
+                    return decl;
+                }
+            }
+
+            Expr expr = expression();
+            expect(";");
+            return new ExprStmt(line, expr);
+        }
+
+        private Block block() throws ScriptException {
+            int line = expect("{").line;
+            List<Stmt> statements = new ArrayList<>();
+            while (!peek().is("}")) {
+                if (peek().type == TokenType.EOF) {
+                    throw error("Missing '}'");
+                }
+                statements.add(statement());
+            }
+            next();
+            return new Block(line, statements);
+        }
+
+        private Stmt forStatement() throws ScriptException {
+            int line = next().line;
+            expect("(");
+
+            // for (Type name : iterable)
+            int mark = pos;
+            if (isDeclarationStart()) {
+                String type = type();
+                String name = ident();
+                if (peek().is(":")) {
+                    next();
+                    Expr iterable = expression();
+                    expect(")");
+                    return new ForEach(line, type, name, iterable, statement());
+                }
+                pos = mark;
+            }
+
+            List<Stmt> init = new ArrayList<>();
+            if (!peek().is(";")) {
+                if (isDeclarationStart()) {
+                    init.add(declaration());
+                } else {
+                    init.add(new ExprStmt(line, expression()));
+                    while (peek().is(",")) {
+                        next();
+                        init.add(new ExprStmt(line, expression()));
+                    }
+                }
+            }
+            expect(";");
+            Expr condition = peek().is(";") ? null : expression();
+            expect(";");
+            List<Expr> update = new ArrayList<>();
+            if (!peek().is(")")) {
+                update.add(expression());
+                while (peek().is(",")) {
+                    next();
+                    update.add(expression());
+                }
+            }
+            expect(")");
+            return new For(line, init, condition, update, statement());
+        }
+
+        private Stmt tryStatement() throws ScriptException {
+            int line = next().line;
+            Block body = block();
+            String catchName = null;
+            Block handler = null;
+            Block finallyBlock = null;
+            while (peek().is("catch")) {
+                next();
+                expect("(");
+                skipModifiers();
+                type();
+                while (peek().is("|")) {
+                    next();
+                    type();
+                }
+                String name = ident();
+                expect(")");
+                Block catchBody = block();
+                // Every catchable script error is one type, so the first clause handles it
+                if (handler == null) {
+                    catchName = name;
+                    handler = catchBody;
+                }
+            }
+            if (peek().is("finally")) {
+                next();
+                finallyBlock = block();
+            }
+            if (handler == null && finallyBlock == null) {
+                throw new ScriptException("try needs catch or finally", line);
+            }
+            return new Try(line, body, catchName, handler, finallyBlock);
+        }
+
+        private boolean isDeclarationStart() {
+            Token token = peek();
+            if (token.type != TokenType.IDENT) {
+                return false;
+            }
+            boolean knownType = contains(PRIMITIVE_TYPES, token.text) || contains(CLASS_TYPES, token.text);
+            if (!knownType) {
+                return false;
+            }
+            Token after = peekAt(1);
+            return after.type == TokenType.IDENT || after.is("[") || after.is("<");
+        }
+
+        private VarDecl declaration() throws ScriptException {
+            int line = peek().line;
+            String type = type();
+            List<String> names = new ArrayList<>();
+            List<Expr> initializers = new ArrayList<>();
+            do {
+                String name = ident();
+                String declared = type;
+                while (peek().is("[")) {  // int a[] style
+                    next();
+                    expect("]");
+                    declared += "[]";
+                }
+                Expr init = null;
+                if (peek().is("=")) {
+                    next();
+                    init = peek().is("{") ? arrayInitializer(elementType(declared)) : expression();
+                }
+                names.add(name);
+                initializers.add(init);
+                if (!declared.equals(type)) {
+                    throw error("Mixed array declarators are not supported");
+                }
+            } while (peek().is(",") && next() != null);
+            return new VarDecl(line, type, names, initializers);
+        }
+
+        private String type() throws ScriptException {
+            String type = ident();
+            if (peek().is("<")) {
+                throw error("Generic types are not supported");
+            }
+            while (peek().is("[")) {
+                next();
+                expect("]");
+                type += "[]";
+            }
+            return type;
+        }
+
+        private Expr arrayInitializer(String elementType) throws ScriptException {
+            int line = expect("{").line;
+            List<Expr> elements = new ArrayList<>();
+            while (!peek().is("}")) {
+                elements.add(peek().is("{") ? arrayInitializer(elementType(elementType)) : expression());
+                if (!peek().is(",")) {
+                    break;
+                }
+                next();
+            }
+            expect("}");
+            return new NewArray(line, elementType, null, elements);
+        }
+
+        // ---------------------------------------------------------------- expressions
+
+        private Expr expression() throws ScriptException {
+            return assignment();
+        }
+
+        private Expr assignment() throws ScriptException {
+            Expr target = conditional();
+            Token token = peek();
+            if (token.type == TokenType.OP && token.text.endsWith("=") && !token.text.equals("==")
+                    && !token.text.equals("!=") && !token.text.equals("<=") && !token.text.equals(">=")) {
+                next();
+                if (!(target instanceof Name) && !(target instanceof Index)) {
+                    throw new ScriptException("Cannot assign to this expression", token.line);
+                }
+                Expr value = assignment();
+                String op = token.text.equals("=") ? "=" : token.text.substring(0, token.text.length() - 1);
+                return new Assign(token.line, op, target, value);
+            }
+            return target;
+        }
+
+        private Expr conditional() throws ScriptException {
+            Expr condition = binary(0);
+            if (peek().is("?")) {
+                int line = next().line;
+                Expr whenTrue = assignment();
+                expect(":");
+                Expr whenFalse = assignment();
+                return new Conditional(line, condition, whenTrue, whenFalse);
+            }
+            return condition;
+        }
+
+        private static final String[][] PRECEDENCE = {
+            {"||"}, {"&&"}, {"|"}, {"^"}, {"&"}, {"==", "!="}, {"<", ">", "<=", ">="},
+            {"<<", ">>", ">>>"}, {"+", "-"}, {"*", "/", "%"}
+        };
+
+        private Expr binary(int level) throws ScriptException {
+            if (level == PRECEDENCE.length) {
+                return unary();
+            }
+            Expr left = binary(level + 1);
+            while (peek().type == TokenType.OP && contains(PRECEDENCE[level], peek().text)) {
+                Token op = next();
+                Expr right = binary(level + 1);
+                left = new Binary(op.line, op.text, left, right);
+            }
+            if (peek().is("instanceof")) {
+                throw error("instanceof is not supported");
+            }
+            return left;
+        }
+
+        private Expr unary() throws ScriptException {
+            Token token = peek();
+            if (token.is("!") || token.is("-") || token.is("+") || token.is("~")) {
+                next();
+                // As in Java, 2147483648 is only an int literal as the operand of unary minus
+                if (token.is("-") && peek().type == TokenType.INT && "2147483648".equals(peek().text)) {
+                    next();
+                    return new Literal(token.line, Integer.MIN_VALUE);
+                }
+                return new Unary(token.line, token.text, unary());
+            }
+            if (token.is("++") || token.is("--")) {
+                next();
+                return new IncDec(token.line, unary(), token.is("++") ? 1 : -1, true);
+            }
+            if (token.is("(") && peekAt(1).type == TokenType.IDENT && contains(PRIMITIVE_TYPES, peekAt(1).text)
+                    && peekAt(2).is(")")) {
+                next();
+                String type = next().text;
+                next();
+                return new Cast(token.line, type, unary());
+            }
+            if (token.is("(") && peekAt(1).is("String") && peekAt(2).is(")")) {
+                next();
+                next();
+                next();
+                return new Cast(token.line, "String", unary());
+            }
+            return postfix(primary());
+        }
+
+        private Expr postfix(Expr expr) throws ScriptException {
+            while (true) {
+                Token token = peek();
+                if (token.is(".")) {
+                    next();
+                    String name = ident();
+                    expr = new FieldAccess(token.line, expr, name);
+                } else if (token.is("(")) {
+                    if (!(expr instanceof Name) && !(expr instanceof FieldAccess)) {
+                        throw error("Only named methods can be called");
+                    }
+                    next();
+                    List<Expr> args = new ArrayList<>();
+                    if (!peek().is(")")) {
+                        args.add(expression());
+                        while (peek().is(",")) {
+                            next();
+                            args.add(expression());
+                        }
+                    }
+                    expect(")");
+                    if (args.size() > MAX_CALL_ARGS) {
+                        throw new ScriptException("Too many arguments", token.line);
+                    }
+                    expr = new Call(token.line, expr, args);
+                } else if (token.is("[")) {
+                    next();
+                    Expr index = expression();
+                    expect("]");
+                    expr = new Index(token.line, expr, index);
+                } else if (token.is("++") || token.is("--")) {
+                    next();
+                    expr = new IncDec(token.line, expr, token.is("++") ? 1 : -1, false);
+                } else if (token.is("->") || token.is("::")) {
+                    throw error("Lambdas and method references are not supported");
+                } else {
+                    return expr;
+                }
+            }
+        }
+
+        private Expr primary() throws ScriptException {
+            Token token = next();
+            switch (token.type) {
+                case INT: {
+                    long value = Long.parseLong(token.text);
+                    if (value > Integer.MAX_VALUE) {
+                        throw new ScriptException("Integer number too large: " + token.text, token.line);
+                    }
+                    return new Literal(token.line, (int) value);
+                }
+                case LONG:
+                    return new Literal(token.line, Long.parseLong(token.text));
+                case DOUBLE:
+                    return new Literal(token.line, Double.parseDouble(token.text));
+                case STRING:
+                    return new Literal(token.line, token.text);
+                case CHAR:
+                    return new Literal(token.line, token.text.charAt(0));
+                case IDENT:
+                    switch (token.text) {
+                        case "true":
+                            return new Literal(token.line, Boolean.TRUE);
+                        case "false":
+                            return new Literal(token.line, Boolean.FALSE);
+                        case "null":
+                            return new Literal(token.line, null);
+                        case "new":
+                            return newExpression(token.line);
+                        default:
+                            return new Name(token.line, token.text);
+                    }
+                case OP:
+                    if (token.is("(")) {
+                        Expr inner = expression();
+                        expect(")");
+                        return inner;
+                    }
+                    break;
+                default:
+                    break;
+            }
+            throw new ScriptException("Unexpected " + token, token.line);
+        }
+
+        private Expr newExpression(int line) throws ScriptException {
+            String elementType = ident();
+            if (peek().is("(")) {
+                if ("Exception".equals(elementType) || "RuntimeException".equals(elementType)
+                        || "IllegalArgumentException".equals(elementType) || "IllegalStateException".equals(elementType)) {
+                    next();
+                    Expr message = peek().is(")") ? new Literal(line, null) : expression();
+                    expect(")");
+                    return new Cast(line, "Exception", message);
+                }
+                throw new ScriptException("Cannot create objects of type " + elementType, line);
+            }
+            expect("[");
+            if (peek().is("]")) {
+                next();
+                String type = elementType;
+                while (peek().is("[")) {
+                    next();
+                    expect("]");
+                    type += "[]";
+                }
+                return arrayInitializer(type);
+            }
+            Expr length = expression();
+            expect("]");
+            if (peek().is("[")) {
+                throw error("Multi-dimensional array creation is not supported");
+            }
+            return new NewArray(line, elementType, length, null);
+        }
+
+        // ---------------------------------------------------------------- helpers
+
+        private Token peek() {
+            return tokens.get(pos);
+        }
+
+        private Token peekAt(int offset) {
+            return tokens.get(Math.min(tokens.size() - 1, pos + offset));
+        }
+
+        private Token next() {
+            Token token = tokens.get(pos);
+            if (token.type != TokenType.EOF) {
+                pos++;
+            }
+            return token;
+        }
+
+        private Token expect(String op) throws ScriptException {
+            Token token = peek();
+            if (!token.is(op)) {
+                throw new ScriptException("Expected '" + op + "' but found " + token, token.line);
+            }
+            return next();
+        }
+
+        private Expr parenthesized() throws ScriptException {
+            expect("(");
+            Expr expr = expression();
+            expect(")");
+            return expr;
+        }
+
+        private String ident() throws ScriptException {
+            Token token = peek();
+            if (token.type != TokenType.IDENT) {
+                throw new ScriptException("Expected a name but found " + token, token.line);
+            }
+            return next().text;
+        }
+
+        private ScriptException error(String message) {
+            return new ScriptException(message, peek().line);
+        }
+
+        private static String elementType(String arrayType) {
+            return arrayType.endsWith("[]") ? arrayType.substring(0, arrayType.length() - 2) : arrayType;
+        }
+    }
+
+    // ================================================================= closure tree
+
+    /**
+     * Compiled statement; returns one of the Compiler signals
+     */
+    interface Exec {
+        int exec(Frame frame);
+    }
+
+    /**
+     * Compiled expression
+     */
+    interface Eval {
+        Object eval(Frame frame);
+    }
+
+    /**
+     * Error value bound by a catch clause
+     */
+    static final class ScriptError {
+        final String message;
+
+        ScriptError(String message) {
+            this.message = message;
+        }
+
+        @Override
+        public String toString() {
+            return "Exception: " + message;
+        }
+    }
+
+    /**
+     * Read-only view of the runtime's memory counters
+     */
+    static final class RuntimeView {
+        static final RuntimeView INSTANCE = new RuntimeView();
+
+        @Override
+        public String toString() {
+            return "Runtime";
+        }
+    }
+
+    /**
+     * Thrown by script "throw" statements so the catch clause can see the message
+     */
+    static final class ThrownError extends ScriptRuntimeException {
+        private static final long serialVersionUID = 1L;
+
+        ThrownError(String message) {
+            super(message);
+        }
+    }
+
+    private static final class Compiler {
+        static final int NORMAL = 0;
+        static final int BREAK = 1;
+        static final int CONTINUE = 2;
+        static final int RETURN = 3;
+
+        // Lexical scopes: name -> slot; slots are reused once a scope closes
+        private final List<Map<String, Integer>> scopes = new ArrayList<>();
+        private final List<Map<String, String>> scopeTypes = new ArrayList<>();
+        private int nextSlot;
+        int maxSlots;
+
+        Compiler() {
+            pushScope();
+        }
+
+        private void pushScope() {
+            scopes.add(new HashMap<>());
+            scopeTypes.add(new HashMap<>());
+        }
+
+        private void popScope() {
+            Map<String, Integer> scope = scopes.remove(scopes.size() - 1);
+            scopeTypes.remove(scopeTypes.size() - 1);
+            nextSlot -= scope.size();
+        }
+
+        private int declare(String name, String type, int line) throws ScriptException {
+            if (lookup(name) != null) {
+                throw new ScriptException("Variable " + name + " is already defined", line);
+            }
+            int slot = nextSlot++;
+            maxSlots = Math.max(maxSlots, nextSlot);
+            scopes.get(scopes.size() - 1).put(name, slot);
+            scopeTypes.get(scopeTypes.size() - 1).put(name, type);
+            return slot;
+        }
+
+        private Integer lookup(String name) {
+            for (int i = scopes.size() - 1; i >= 0; i--) {
+                Integer slot = scopes.get(i).get(name);
+                if (slot != null) {
+                    return slot;
+                }
+            }
+            return null;
+        }
+
+        private String typeOf(String name) {
+            for (int i = scopeTypes.size() - 1; i >= 0; i--) {
+                String type = scopeTypes.get(i).get(name);
+                if (type != null) {
+                    return type;
+                }
+            }
+            return "var";
+        }
+
+        // ---------------------------------------------------------------- statements
+
+        Exec compileBlock(Block block) throws ScriptException {
+            pushScope();
+            try {
+                final Exec[] statements = new Exec[block.statements.size()];
+                for (int i = 0; i < statements.length; i++) {
+                    statements[i] = compile(block.statements.get(i));
+                }
+                if (statements.length == 1) {
+                    return statements[0];
+                }
+                return frame -> {
+                    for (Exec statement : statements) {
+                        int signal = statement.exec(frame);
+                        if (signal != NORMAL) {
+                            return signal;
+                        }
+                    }
+                    return NORMAL;
+                };
+            } finally {
+                popScope();
+            }
+        }
+
+        private Exec compile(Stmt stmt) throws ScriptException {
+            if (stmt instanceof Block) {
+                return compileBlock((Block) stmt);
+            }
+            if (stmt instanceof VarDecl) {
+                return compileDeclaration((VarDecl) stmt);
+            }
+            if (stmt instanceof ExprStmt) {
+                final Eval expr = compile(((ExprStmt) stmt).expr);
+                return frame -> {
+                    frame.tick();
+                    expr.eval(frame);
+                    return NORMAL;
+                };
+            }
+            if (stmt instanceof If) {
+                If node = (If) stmt;
+                final Eval condition = compile(node.condition);
+                final Exec then = compileScoped(node.then);
+                final Exec otherwise = node.otherwise != null ? compileScoped(node.otherwise) : null;
+                final int line = node.line;
+                return frame -> {
+                    frame.tick();
+                    if (truth(condition.eval(frame), line)) {
+                        return then.exec(frame);
+                    }
+                    return otherwise != null ? otherwise.exec(frame) : NORMAL;
+                };
+            }
+            if (stmt instanceof While) {
+                return compileWhile((While) stmt);
+            }
+            if (stmt instanceof For) {
+                return compileFor((For) stmt);
+            }
+            if (stmt instanceof ForEach) {
+                return compileForEach((ForEach) stmt);
+            }
+            if (stmt instanceof Jump) {
+                Jump jump = (Jump) stmt;
+                final int signal = jump.signal;
+                if (jump.value == null) {
+                    return frame -> signal;
+                }
+                final Eval value = compile(jump.value);
+                return frame -> {
+                    frame.tick();
+                    frame.returnValue = value.eval(frame);
+                    return signal;
+                };
+            }
+            if (stmt instanceof Try) {
+                return compileTry((Try) stmt);
+            }
+            if (stmt instanceof Throw) {
+                final Eval value = compile(((Throw) stmt).value);
+                return frame -> {
+                    Object error = value.eval(frame);
+                    throw new ThrownError(error instanceof ScriptError ? ((ScriptError) error).message : str(error));
+                };
+            }
+            throw new ScriptException("Unsupported statement", stmt.line);
+        }
+
+        /**
+         * Bodies of if/loops get their own scope even when they are a single statement
+         */
+        private Exec compileScoped(Stmt stmt) throws ScriptException {
+            if (stmt instanceof Block) {
+                return compileBlock((Block) stmt);
+            }
+            pushScope();
+            try {
+                return compile(stmt);
+            } finally {
+                popScope();
+            }
+        }
+
+        private Exec compileDeclaration(VarDecl decl) throws ScriptException {
+            final int count = decl.names.size();
+            final int[] slots = new int[count];
+            final Eval[] values = new Eval[count];
+            final String type = decl.type;
+            for (int i = 0; i < count; i++) {
+                Expr init = decl.initializers.get(i);
+                // Initializer is compiled before the name is visible, as in Java
+                values[i] = init != null ? compile(init) : null;
+                slots[i] = declare(decl.names.get(i), type, decl.line);
+            }
+            final Object zero = defaultValue(type);
+            final int line = decl.line;
+            return frame -> {
+                frame.tick();
+                for (int i = 0; i < count; i++) {
+                    frame.slots[slots[i]] = values[i] != null ? coerce(type, values[i].eval(frame), line) : zero;
+                }
+                return NORMAL;
+            };
+        }
+
+        private Exec compileWhile(While node) throws ScriptException {
+            final Eval condition = compile(node.condition);
+            final Exec body = compileScoped(node.body);
+            final boolean doWhile = node.doWhile;
+            final int line = node.line;
+            return frame -> {
+                boolean first = doWhile;
+                while (true) {
+                    frame.tick();
+                    if (!first && !truth(condition.eval(frame), line)) {
+                        return NORMAL;
+                    }
+                    first = false;
+                    int signal = body.exec(frame);
+                    if (signal == BREAK) {
+                        return NORMAL;
+                    }
+                    if (signal == RETURN) {
+                        return RETURN;
+                    }
+                }
+            };
+        }
+
+        private Exec compileFor(For node) throws ScriptException {
+            pushScope();
+            try {
+                final Exec[] init = new Exec[node.init.size()];
+                for (int i = 0; i < init.length; i++) {
+                    init[i] = compile(node.init.get(i));
+                }
+                final Eval condition = node.condition != null ? compile(node.condition) : null;
+                final Eval[] update = new Eval[node.update.size()];
+                for (int i = 0; i < update.length; i++) {
+                    update[i] = compile(node.update.get(i));
+                }
+                final Exec body = compileScoped(node.body);
+                final int line = node.line;
+                return frame -> {
+                    for (Exec statement : init) {
+                        statement.exec(frame);
+                    }
+                    while (true) {
+                        frame.tick();
+                        if (condition != null && !truth(condition.eval(frame), line)) {
+                            return NORMAL;
+                        }
+                        int signal = body.exec(frame);
+                        if (signal == BREAK) {
+                            return NORMAL;
+                        }
+                        if (signal == RETURN) {
+                            return RETURN;
+                        }
+                        for (Eval step : update) {
+                            step.eval(frame);
+                        }
+                    }
+                };
+            } finally {
+                popScope();
+            }
+        }
+
+        private Exec compileForEach(ForEach node) throws ScriptException {
+            final Eval iterable = compile(node.iterable);
+            pushScope();
+            try {
+                final int slot = declare(node.name, node.type, node.line);
+                final Exec body = compileScoped(node.body);
+                final String type = node.type;
+                final int line = node.line;
+                return frame -> {
+                    Object array = iterable.eval(frame);
+                    int length = arrayLength(array, line);
+                    for (int i = 0; i < length; i++) {
+                        frame.tick();
+                        frame.slots[slot] = coerce(type, arrayGet(array, i, line), line);
+                        int signal = body.exec(frame);
+                        if (signal == BREAK) {
+                            return NORMAL;
+                        }
+                        if (signal == RETURN) {
+                            return RETURN;
+                        }
+                    }
+                    return NORMAL;
+                };
+            } finally {
+                popScope();
+            }
+        }
+
+        private Exec compileTry(Try node) throws ScriptException {
+            final Exec body = compileBlock(node.body);
+            final Exec handler;
+            final int errorSlot;
+            if (node.handler != null) {
+                pushScope();
+                try {
+                    errorSlot = declare(node.catchName, "Exception", node.line);
+                    handler = compileBlock(node.handler);
+                } finally {
+                    popScope();
+                }
+            } else {
+                handler = null;
+                errorSlot = -1;
+            }
+            final Exec finallyBlock = node.finallyBlock != null ? compileBlock(node.finallyBlock) : null;
+            return frame -> {
+                int signal;
+                try {
+                    signal = body.exec(frame);
+                } catch (ScriptRuntimeException e) {
+                    if (handler == null) {
+                        throw e;
+                    }
+                    frame.slots[errorSlot] = new ScriptError(e.getMessage());
+                    signal = handler.exec(frame);
+                } finally {
+                    if (finallyBlock != null) {
+                        Object pendingReturn = frame.returnValue;
+                        if (finallyBlock.exec(frame) == NORMAL) {
+                            frame.returnValue = pendingReturn;
+                        }
+                    }
+                }
+                return signal;
+            };
+        }
+
+        // ---------------------------------------------------------------- expressions
+
+        private Eval compile(Expr expr) throws ScriptException {
+            final int line = expr.line;
+            if (expr instanceof Literal) {
+                final Object value = ((Literal) expr).value;
+                return frame -> value;
+            }
+            if (expr instanceof Name) {
+                String name = ((Name) expr).name;
+                Integer slot = lookup(name);
+                if (slot == null) {
+                    throw new ScriptException("Unknown variable " + name, line);
+                }
+                final int index = slot;
+                return frame -> frame.slots[index];
+            }
+            if (expr instanceof FieldAccess) {
+                return compileField((FieldAccess) expr);
+            }
+            if (expr instanceof Call) {
+                return compileCall((Call) expr);
+            }
+            if (expr instanceof Index) {
+                Index node = (Index) expr;
+                final Eval array = compile(node.array);
+                final Eval index = compile(node.index);
+                return frame -> arrayGet(array.eval(frame), toIndex(index.eval(frame), line), line);
+            }
+            if (expr instanceof Unary) {
+                return compileUnary((Unary) expr);
+            }
+            if (expr instanceof IncDec) {
+                IncDec node = (IncDec) expr;
+                return compileUpdate(node.target, "+", new Literal(line, node.delta), !node.prefix);
+            }
+            if (expr instanceof Binary) {
+                return compileBinary((Binary) expr);
+            }
+            if (expr instanceof Assign) {
+                Assign node = (Assign) expr;
+                if ("=".equals(node.op)) {
+                    return compileStore(node.target, compile(node.value));
+                }
+                return compileUpdate(node.target, node.op, node.value, false);
+            }
+            if (expr instanceof Conditional) {
+                Conditional node = (Conditional) expr;
+                final Eval condition = compile(node.condition);
+                final Eval whenTrue = compile(node.whenTrue);
+                final Eval whenFalse = compile(node.whenFalse);
+                return frame -> truth(condition.eval(frame), line) ? whenTrue.eval(frame) : whenFalse.eval(frame);
+            }
+            if (expr instanceof Cast) {
+                Cast node = (Cast) expr;
+                final Eval operand = compile(node.operand);
+                final String type = node.type;
+                if ("Exception".equals(type)) {
+                    return frame -> new ScriptError(str(operand.eval(frame)));
+                }
+                if ("String".equals(type)) {
+                    return frame -> {
+                        Object value = operand.eval(frame);
+                        if (value != null && !(value instanceof String)) {
+                            throw new ScriptRuntimeException("Cannot cast " + typeName(value) + " to String");
+                        }
+                        return value;
+                    };
+                }
+                return frame -> coerce(type, operand.eval(frame), line);
+            }
+            if (expr instanceof NewArray) {
+                return compileNewArray((NewArray) expr);
+            }
+            throw new ScriptException("Unsupported expression", line);
+        }
+
+        private Eval compileNewArray(NewArray node) throws ScriptException {
+            final String elementType = node.elementType;
+            final int line = node.line;
+            if (node.length != null) {
+                final Eval length = compile(node.length);
+                return frame -> {
+                    int size = toIndex(length.eval(frame), line);
+                    if (size < 0) {
+                        throw new ScriptRuntimeException("Negative array size " + size);
+                    }
+                    frame.allocate(size);
+                    return newArray(elementType, size, line);
+                };
+            }
+            final Eval[] elements = new Eval[node.elements.size()];
+            for (int i = 0; i < elements.length; i++) {
+                elements[i] = compile(node.elements.get(i));
+            }
+            return frame -> {
+                frame.allocate(elements.length);
+                Object array = newArray(elementType, elements.length, line);
+                for (int i = 0; i < elements.length; i++) {
+                    arraySet(array, i, coerce(elementType, elements[i].eval(frame), line), line);
+                }
+                return array;
+            };
+        }
+
+        private Eval compileUnary(Unary node) throws ScriptException {
+            final Eval operand = compile(node.operand);
+            final int line = node.line;
+            switch (node.op) {
+                case "!":
+                    return frame -> !truth(operand.eval(frame), line);
+                case "-":
+                    return frame -> {
+                        Object value = operand.eval(frame);
+                        if (value instanceof Long) {
+                            return -(Long) value;
+                        }
+                        if (isIntegral(value)) {
+                            return -(int) toLong(value, line);
+                        }
+                        return -toDouble(value, line);
+                    };
+                case "~":
+                    return frame -> {
+                        Object value = operand.eval(frame);
+                        if (value instanceof Long) {
+                            return ~(Long) value;
+                        }
+                        return ~(int) toLong(value, line);
+                    };
+                default:
+                    return operand;
+            }
+        }
+
+        private Eval compileBinary(Binary node) throws ScriptException {
+            final Eval left = compile(node.left);
+            final Eval right = compile(node.right);
+            final String op = node.op;
+            final int line = node.line;
+            switch (op) {
+                case "&&":
+                    return frame -> truth(left.eval(frame), line) && truth(right.eval(frame), line);
+                case "||":
+                    return frame -> truth(left.eval(frame), line) || truth(right.eval(frame), line);
+                case "+":
+                    return frame -> {
+                        Object a = left.eval(frame);
+                        Object b = right.eval(frame);
+                        if (a instanceof String || b instanceof String) {
+                            String joined = str(a).concat(str(b));
+                            frame.allocate(joined.length());
+                            return joined;
+                        }
+                        return arithmetic("+", a, b, line);
+                    };
+                case "==":
+                    return frame -> equal(left.eval(frame), right.eval(frame));
+                case "!=":
+                    return frame -> !equal(left.eval(frame), right.eval(frame));
+                case "<":
+                case ">":
+                case "<=":
+                case ">=":
+                    return frame -> compare(op, left.eval(frame), right.eval(frame), line);
+                default:
+                    return frame -> arithmetic(op, left.eval(frame), right.eval(frame), line);
+            }
+        }
+
+        /**
+         * Plain assignment to a variable or array element
+         */
+        private Eval compileStore(Expr target, final Eval value) throws ScriptException {
+            final int line = target.line;
+            if (target instanceof Name) {
+                String name = ((Name) target).name;
+                Integer slot = lookup(name);
+                if (slot == null) {
+                    throw new ScriptException("Unknown variable " + name, line);
+                }
+                final int index = slot;
+                final String type = typeOf(name);
+                return frame -> {
+                    Object stored = coerce(type, value.eval(frame), line);
+                    frame.slots[index] = stored;
+                    return stored;
+                };
+            }
+            Index node = (Index) target;
+            final Eval array = compile(node.array);
+            final Eval index = compile(node.index);
+            return frame -> {
+                Object target1 = array.eval(frame);
+                int i = toIndex(index.eval(frame), line);
+                Object stored = value.eval(frame);
+                return arraySet(target1, i, stored, line);
+            };
+        }
+
+        /**
+         * Compound assignment and ++/--: read, combine, write back; postfix returns the old value
+         */
+        private Eval compileUpdate(Expr target, final String op, Expr operand, final boolean returnOld)
+                throws ScriptException {
+            final Eval delta = compile(operand);
+            final int line = target.line;
+            if (target instanceof Name) {
+                String name = ((Name) target).name;
+                Integer slot = lookup(name);
+                if (slot == null) {
+                    throw new ScriptException("Unknown variable " + name, line);
+                }
+                final int index = slot;
+                final String type = typeOf(name);
+                return frame -> {
+                    Object old = frame.slots[index];
+                    Object updated = coerce(type, combine(op, old, delta.eval(frame), frame, line), line);
+                    frame.slots[index] = updated;
+                    return returnOld ? old : updated;
+                };
+            }
+            if (!(target instanceof Index)) {
+                throw new ScriptException("Cannot update this expression", line);
+            }
+            Index node = (Index) target;
+            final Eval array = compile(node.array);
+            final Eval index = compile(node.index);
+            return frame -> {
+                Object target1 = array.eval(frame);
+                int i = toIndex(index.eval(frame), line);
+                Object old = arrayGet(target1, i, line);
+                Object updated = arraySet(target1, i, combine(op, old, delta.eval(frame), frame, line), line);
+                return returnOld ? old : updated;
+            };
+        }
+
+        private static Object combine(String op, Object a, Object b, Frame frame, int line) {
+            if ("+".equals(op) && (a instanceof String || b instanceof String)) {
+                String joined = str(a).concat(str(b));
+                frame.allocate(joined.length());
+                return joined;
+            }
+            return arithmetic(op, a, b, line);
+        }
+
+        // ---------------------------------------------------------------- fields and calls
+
+        private Eval compileField(FieldAccess node) throws ScriptException {
+            final int line = node.line;
+            String qualified = qualifiedName(node);
+            if (qualified != null) {
+                switch (qualified) {
+                    case "Integer.MAX_VALUE": return constant(Integer.MAX_VALUE);
+                    case "Integer.MIN_VALUE": return constant(Integer.MIN_VALUE);
+                    case "Long.MAX_VALUE": return constant(Long.MAX_VALUE);
+                    case "Long.MIN_VALUE": return constant(Long.MIN_VALUE);
+                    case "Double.MAX_VALUE": return constant(Double.MAX_VALUE);
+                    case "Double.MIN_VALUE": return constant(Double.MIN_VALUE);
+                    case "Double.NaN": return constant(Double.NaN);
+                    case "Math.PI": return constant(Math.PI);
+                    case "Math.E": return constant(Math.E);
+                    default: break;
+                }
+            }
+            if ("length".equals(node.name)) {
+                final Eval target = compile(node.target);
+                return frame -> arrayLength(target.eval(frame), line);
+            }
+            throw new ScriptException("Unsupported field " + (qualified != null ? qualified : node.name), line);
+        }
+
+        private static Eval constant(final Object value) {
+            return frame -> value;
+        }
+
+        /**
+         * "System.out" style name when the expression is a chain of plain names not shadowed by locals
+         */
+        private String qualifiedName(Expr expr) {
+            if (expr instanceof Name) {
+                String name = ((Name) expr).name;
+                return lookup(name) == null ? name : null;
+            }
+            if (expr instanceof FieldAccess) {
+                String prefix = qualifiedName(((FieldAccess) expr).target);
+                return prefix != null ? prefix + "." + ((FieldAccess) expr).name : null;
+            }
+            return null;
+        }
+
+        private Eval compileCall(Call call) throws ScriptException {
+            final int line = call.line;
+            final Eval[] args = new Eval[call.args.size()];
+            for (int i = 0; i < args.length; i++) {
+                args[i] = compile(call.args.get(i));
+            }
+
+            if (call.target instanceof FieldAccess) {
+                FieldAccess method = (FieldAccess) call.target;
+                String owner = qualifiedName(method.target);
+                if (owner != null) {
+                    return compileStaticCall(owner + "." + method.name, args, line);
+                }
+                final Eval receiver = compile(method.target);
+                final String name = method.name;
+                return frame -> {
+                    frame.tick();
+                    Object target = receiver.eval(frame);
+                    return invoke(target, name, evalAll(args, frame), frame, line);
+                };
+            }
+            throw new ScriptException("Unsupported call " + ((Name) call.target).name + "()", line);
+        }
+
+        private Eval compileStaticCall(String name, final Eval[] args, final int line) throws ScriptException {
+            final Builtin builtin = BUILTINS.get(name + "/" + args.length);
+            final Builtin variadic = BUILTINS.get(name + "/*");
+            if (builtin == null && variadic == null) {
+                throw new ScriptException("Unsupported call " + name + "() with " + args.length + " arguments", line);
+            }
+            final Builtin target = builtin != null ? builtin : variadic;
+            return frame -> {
+                frame.tick();
+                return target.call(evalAll(args, frame), frame, line);
+            };
+        }
+
+        private static Object[] evalAll(Eval[] args, Frame frame) {
+            Object[] values = new Object[args.length];
+            for (int i = 0; i < args.length; i++) {
+                values[i] = args[i].eval(frame);
+            }
+            return values;
+        }
+    }
+
+    // ================================================================= runtime helpers
+
+    interface Builtin {
+        Object call(Object[] args, Frame frame, int line);
+    }
+
+    private static final Map<String, Builtin> BUILTINS = new HashMap<>();
+
+    static {
+        BUILTINS.put("System.out.println/0", (a, f, l) -> {
+            f.out.println();
+            return null;
+        });
+        BUILTINS.put("System.out.println/1", (a, f, l) -> {
+            f.out.println(str(a[0]));
+            return null;
+        });
+        BUILTINS.put("System.out.print/1", (a, f, l) -> {
+            f.out.print(str(a[0]));
+            return null;
+        });
+        BUILTINS.put("System.out.printf/*", (a, f, l) -> {
+            f.out.print(format(a, f, l));
+            return null;
+        });
+        BUILTINS.put("System.currentTimeMillis/0", (a, f, l) -> System.currentTimeMillis());
+        BUILTINS.put("System.nanoTime/0", (a, f, l) -> System.nanoTime());
+        BUILTINS.put("Runtime.getRuntime/0", (a, f, l) -> RuntimeView.INSTANCE);
+
+        BUILTINS.put("Math.abs/1", (a, f, l) -> isIntegral(a[0]) ? integral(a, Math.abs(toLong(a[0], l)))
+                : Math.abs(toDouble(a[0], l)));
+        BUILTINS.put("Math.min/2", (a, f, l) -> bothIntegral(a) ? integral(a, Math.min(toLong(a[0], l), toLong(a[1], l)))
+                : Math.min(toDouble(a[0], l), toDouble(a[1], l)));
+        BUILTINS.put("Math.max/2", (a, f, l) -> bothIntegral(a) ? integral(a, Math.max(toLong(a[0], l), toLong(a[1], l)))
+                : Math.max(toDouble(a[0], l), toDouble(a[1], l)));
+        BUILTINS.put("Math.pow/2", (a, f, l) -> Math.pow(toDouble(a[0], l), toDouble(a[1], l)));
+        BUILTINS.put("Math.sqrt/1", (a, f, l) -> Math.sqrt(toDouble(a[0], l)));
+        BUILTINS.put("Math.cbrt/1", (a, f, l) -> Math.cbrt(toDouble(a[0], l)));
+        BUILTINS.put("Math.floor/1", (a, f, l) -> Math.floor(toDouble(a[0], l)));
+        BUILTINS.put("Math.ceil/1", (a, f, l) -> Math.ceil(toDouble(a[0], l)));
+        BUILTINS.put("Math.round/1", (a, f, l) -> Math.round(toDouble(a[0], l)));
+        BUILTINS.put("Math.log/1", (a, f, l) -> Math.log(toDouble(a[0], l)));
+        BUILTINS.put("Math.log10/1", (a, f, l) -> Math.log10(toDouble(a[0], l)));
+        BUILTINS.put("Math.exp/1", (a, f, l) -> Math.exp(toDouble(a[0], l)));
+        BUILTINS.put("Math.sin/1", (a, f, l) -> Math.sin(toDouble(a[0], l)));
+        BUILTINS.put("Math.cos/1", (a, f, l) -> Math.cos(toDouble(a[0], l)));
+        BUILTINS.put("Math.tan/1", (a, f, l) -> Math.tan(toDouble(a[0], l)));
+        BUILTINS.put("Math.random/0", (a, f, l) -> Math.random());
+
+        BUILTINS.put("Arrays.toString/1", (a, f, l) -> {
+            String text = arrayToString(a[0], l);
+            f.allocate(text.length());
+            return text;
+        });
+        BUILTINS.put("Arrays.sort/1", (a, f, l) -> {
+            sortArray(a[0], f, l);
+            return null;
+        });
+        BUILTINS.put("Arrays.fill/2", (a, f, l) -> {
+            int length = arrayLength(a[0], l);
+            for (int i = 0; i < length; i++) {
+                f.tick();
+                arraySet(a[0], i, a[1], l);
+            }
+            return null;
+        });
+        BUILTINS.put("Arrays.copyOf/2", (a, f, l) -> {
+            int length = toIndex(a[1], l);
+            if (length < 0) {
+                throw new ScriptRuntimeException("Negative array size " + length);
+            }
+            f.allocate(length);
+            return copyOf(a[0], length, l);
+        });
+
+        BUILTINS.put("String.valueOf/1", (a, f, l) -> str(a[0]));
+        BUILTINS.put("String.format/*", (a, f, l) -> format(a, f, l));
+        BUILTINS.put("Integer.parseInt/1", (a, f, l) -> {
+            long value = parseNumber(a[0], l);
+            if (value != (int) value) {
+                throw new ScriptRuntimeException("For input string: \"" + a[0] + "\"");
+            }
+            return (int) value;
+        });
+        BUILTINS.put("Long.parseLong/1", (a, f, l) -> parseNumber(a[0], l));
+        BUILTINS.put("Double.parseDouble/1", (a, f, l) -> {
+            try {
+                return Double.parseDouble(str(a[0]).trim());
+            } catch (NumberFormatException e) {
+                throw new ScriptRuntimeException("For input string: \"" + a[0] + "\"");
+            }
+        });
+        BUILTINS.put("Integer.toString/1", (a, f, l) -> str(a[0]));
+        BUILTINS.put("Long.toString/1", (a, f, l) -> str(a[0]));
+        BUILTINS.put("Double.toString/1", (a, f, l) -> str(toDouble(a[0], l)));
+        BUILTINS.put("Integer.toBinaryString/1", (a, f, l) -> Integer.toBinaryString((int) toLong(a[0], l)));
+        BUILTINS.put("Integer.toHexString/1", (a, f, l) -> Integer.toHexString((int) toLong(a[0], l)));
+        BUILTINS.put("Double.isNaN/1", (a, f, l) -> Double.isNaN(toDouble(a[0], l)));
+
+        // Recorded drive data; reads are copies, charged to the allocation budget. After
+        // DriveLog.snapshot(ch) the run reads ch from that one consistent copy, so its
+        // timestamps and values line up however many samples arrive meanwhile
+        BUILTINS.put("DriveLog.channels/0", (a, f, l) -> {
+            String[] names = DriveLog.get().channels();
+            return Arrays.copyOf(names, names.length, Object[].class);
+        });
+        BUILTINS.put("DriveLog.snapshot/1", (a, f, l) -> {
+            String channel = str(a[0]);
+            DriveLog.Snapshot snapshot = DriveLog.get().snapshot(channel);
+            f.allocate(2L * snapshot.size());
+            if (f.driveLog == null) {
+                f.driveLog = new HashMap<>();
+            }
+            f.driveLog.put(channel, snapshot);
+            return snapshot.size();
+        });
+        BUILTINS.put("DriveLog.size/1", (a, f, l) -> {
+            DriveLog.Snapshot pinned = f.pinned(str(a[0]));
+            return pinned != null ? pinned.size() : DriveLog.get().size(str(a[0]));
+        });
+        BUILTINS.put("DriveLog.values/1", (a, f, l) -> {
+            DriveLog.Snapshot pinned = f.pinned(str(a[0]));
+            return columnar(f, 0, () -> pinned != null ? pinned.values.clone() : DriveLog.get().values(str(a[0])));
+        });
+        BUILTINS.put("DriveLog.timestamps/1", (a, f, l) -> {
+            DriveLog.Snapshot pinned = f.pinned(str(a[0]));
+            return columnar(f, 0, () -> pinned != null ? pinned.timestamps.clone() : DriveLog.get().timestamps(str(a[0])));
+        });
+        BUILTINS.put("DriveLog.valuesAt/2", (a, f, l) -> {
+            long[] times = times(a[1], l);
+            DriveLog.Snapshot pinned = f.pinned(str(a[0]));
+            return columnar(f, times.length,
+                () -> pinned != null ? pinned.valuesAt(times) : DriveLog.get().valuesAt(str(a[0]), times));
+        });
+
+        // Columnar operators run natively; charged per 16 rows so long scans stay within budget
+        BUILTINS.put("Columns.greaterThan/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.greaterThan(c, toDouble(a[1], l)));
+        });
+        BUILTINS.put("Columns.lessThan/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.lessThan(c, toDouble(a[1], l)));
+        });
+        BUILTINS.put("Columns.between/3", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.between(c, toDouble(a[1], l), toDouble(a[2], l)));
+        });
+        BUILTINS.put("Columns.and/2", (a, f, l) -> {
+            boolean[] x = mask(a[0], l);
+            return columnar(f, x.length, () -> ColumnarAnalytics.and(x, mask(a[1], l)));
+        });
+        BUILTINS.put("Columns.or/2", (a, f, l) -> {
+            boolean[] x = mask(a[0], l);
+            return columnar(f, x.length, () -> ColumnarAnalytics.or(x, mask(a[1], l)));
+        });
+        BUILTINS.put("Columns.not/1", (a, f, l) -> {
+            boolean[] x = mask(a[0], l);
+            return columnar(f, x.length, () -> ColumnarAnalytics.not(x));
+        });
+        BUILTINS.put("Columns.count/1", (a, f, l) -> {
+            boolean[] x = mask(a[0], l);
+            return columnar(f, x.length, () -> ColumnarAnalytics.count(x));
+        });
+        BUILTINS.put("Columns.select/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.select(c, mask(a[1], l)));
+        });
+        BUILTINS.put("Columns.affine/3", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.affine(c, toDouble(a[1], l), toDouble(a[2], l)));
+        });
+        BUILTINS.put("Columns.add/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.add(c, column(a[1], f, l)));
+        });
+        BUILTINS.put("Columns.subtract/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.subtract(c, column(a[1], f, l)));
+        });
+        BUILTINS.put("Columns.multiply/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.multiply(c, column(a[1], f, l)));
+        });
+        BUILTINS.put("Columns.sum/1", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.sum(c));
+        });
+        BUILTINS.put("Columns.sum/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.sum(c, mask(a[1], l)));
+        });
+        BUILTINS.put("Columns.mean/1", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.mean(c));
+        });
+        BUILTINS.put("Columns.mean/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.mean(c, mask(a[1], l)));
+        });
+        BUILTINS.put("Columns.min/1", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.min(c));
+        });
+        BUILTINS.put("Columns.max/1", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.max(c));
+        });
+        BUILTINS.put("Columns.stddev/1", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length * 2L, () -> ColumnarAnalytics.stddev(c));
+        });
+        BUILTINS.put("Columns.durationWhere/2", (a, f, l) -> {
+            long[] t = times(a[0], l);
+            return columnar(f, t.length, () -> ColumnarAnalytics.durationWhere(t, mask(a[1], l)));
+        });
+        BUILTINS.put("Columns.integrate/2", (a, f, l) -> {
+            long[] t = times(a[0], l);
+            return columnar(f, t.length, () -> ColumnarAnalytics.integrate(t, column(a[1], f, l)));
+        });
+        BUILTINS.put("Columns.rollingMean/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.rollingMean(c, toIndex(a[1], l)));
+        });
+        BUILTINS.put("Columns.rollingMax/2", (a, f, l) -> {
+            double[] c = column(a[0], f, l);
+            return columnar(f, c.length, () -> ColumnarAnalytics.rollingMax(c, toIndex(a[1], l)));
+        });
+        BUILTINS.put("Columns.resample/3", (a, f, l) -> {
+            long[] target = times(a[2], l);
+            return columnar(f, target.length, () -> ColumnarAnalytics.resample(times(a[0], l), column(a[1], f, l), target));
+        });
+        BUILTINS.put("Columns.groupCount/4", (a, f, l) -> {
+            double[] keys = column(a[0], f, l);
+            return columnar(f, keys.length, () -> ColumnarAnalytics.groupCount(keys, toDouble(a[1], l),
+                    toDouble(a[2], l), toIndex(a[3], l)));
+        });
+        BUILTINS.put("Columns.groupMean/5", (a, f, l) -> {
+            double[] keys = column(a[0], f, l);
+            return columnar(f, keys.length, () -> ColumnarAnalytics.groupMean(keys, column(a[1], f, l),
+                    toDouble(a[2], l), toDouble(a[3], l), toIndex(a[4], l)));
+        });
+    }
+
+    interface ColumnOp {
+        Object apply();
+    }
+
+    /**
+     * Run a native columnar operation: charge rows/16 instructions, then the result's cells
+     */
+    private static Object columnar(Frame frame, long rows, ColumnOp op) {
+        frame.instructions += rows >> 4;
+        frame.tick();
+        Object result;
+        try {
+            result = op.apply();
+        } catch (IllegalArgumentException e) {
+            throw new ScriptRuntimeException(e.getMessage());
+        }
+        if (result instanceof long[] || result instanceof double[] || result instanceof boolean[]) {
+            frame.allocate(arrayLength(result, 0));
+        }
+        return result;
+    }
+
+    /**
+     * A double[] column; int/long arrays written by the script are widened (and charged)
+     */
+    private static double[] column(Object value, Frame frame, int line) {
+        if (value instanceof double[]) {
+            return (double[]) value;
+        }
+        if (value instanceof long[]) {
+            long[] source = (long[]) value;
+            frame.allocate(source.length);
+            double[] widened = new double[source.length];
+            for (int i = 0; i < source.length; i++) {
+                widened[i] = source[i];
+            }
+            return widened;
+        }
+        if (value instanceof int[]) {
+            int[] source = (int[]) value;
+            frame.allocate(source.length);
+            double[] widened = new double[source.length];
+            for (int i = 0; i < source.length; i++) {
+                widened[i] = source[i];
+            }
+            return widened;
+        }
+        throw new ScriptRuntimeException("line " + line + ": expected a number column but got " + typeName(value));
+    }
+
+    private static long[] times(Object value, int line) {
+        if (value instanceof long[]) {
+            return (long[]) value;
+        }
+        throw new ScriptRuntimeException("line " + line + ": expected a long[] of timestamps but got " + typeName(value));
+    }
+
+    private static boolean[] mask(Object value, int line) {
+        if (value instanceof boolean[]) {
+            return (boolean[]) value;
+        }
+        throw new ScriptRuntimeException("line " + line + ": expected a boolean[] mask but got " + typeName(value));
+    }
+
+    private static boolean bothIntegral(Object[] args) {
+        return isIntegral(args[0]) && isIntegral(args[1]);
+    }
+
+    /**
+     * An integral builtin result: long if any argument is a long, otherwise int
+     */
+    private static Object integral(Object[] args, long value) {
+        for (Object arg : args) {
+            if (arg instanceof Long) {
+                return value;
+            }
+        }
+        return (int) value;
+    }
+
+    private static Long parseNumber(Object value, int line) {
+        try {
+            return Long.parseLong(str(value).trim());
+        } catch (NumberFormatException e) {
+            throw new ScriptRuntimeException("For input string: \"" + value + "\"");
+        }
+    }
+
+    private static String format(Object[] args, Frame frame, int line) {
+        if (args.length == 0 || !(args[0] instanceof String)) {
+            throw new ScriptRuntimeException("format needs a format string");
+        }
+        Object[] values = Arrays.copyOfRange(args, 1, args.length);
+        try {
+            String text = String.format(Locale.US, (String) args[0], values);
+            frame.allocate(text.length());
+            return text;
+        } catch (java.util.IllegalFormatException e) {
+            throw new ScriptRuntimeException("Bad format: " + e.getMessage());
+        }
+    }
+
+    /**
+     * Instance methods on script values
+     */
+    private static Object invoke(Object target, String name, Object[] args, Frame frame, int line) {
+        if (target == null) {
+            throw new ScriptRuntimeException("Cannot call " + name + "() on null");
+        }
+        if (target instanceof String) {
+            return invokeString((String) target, name, args, frame, line);
+        }
+        if (target instanceof ScriptError && "getMessage".equals(name) && args.length == 0) {
+            return ((ScriptError) target).message;
+        }
+        if (target instanceof RuntimeView && args.length == 0) {
+            Runtime runtime = Runtime.getRuntime();
+            switch (name) {
+                case "totalMemory": return runtime.totalMemory();
+                case "freeMemory": return runtime.freeMemory();
+                case "maxMemory": return runtime.maxMemory();
+                case "availableProcessors": return runtime.availableProcessors();
+                default: break;
+            }
+        }
+        if (args.length == 0) {
+            switch (name) {
+                case "toString": return str(target);
+                case "hashCode": return target.hashCode();
+                default: break;
+            }
+        }
+        if ("equals".equals(name) && args.length == 1) {
+            return equal(target, args[0]);
+        }
+        throw new ScriptRuntimeException("Unsupported method " + typeName(target) + "." + name + "()");
+    }
+
+    private static Object invokeString(String s, String name, Object[] args, Frame frame, int line) {
+        switch (name + "/" + args.length) {
+            case "length/0": return s.length();
+            case "isEmpty/0": return s.isEmpty();
+            case "trim/0": return s.trim();
+            case "toUpperCase/0": return s.toUpperCase(Locale.US);
+            case "toLowerCase/0": return s.toLowerCase(Locale.US);
+            case "charAt/1": {
+                int index = toIndex(args[0], line);
+                if (index < 0 || index >= s.length()) {
+                    throw new ScriptRuntimeException("String index out of range: " + index);
+                }
+                return s.charAt(index);
+            }
+            case "substring/1":
+            case "substring/2": {
+                int begin = toIndex(args[0], line);
+                int end = args.length > 1 ? toIndex(args[1], line) : s.length();
+                if (begin < 0 || end > s.length() || begin > end) {
+                    throw new ScriptRuntimeException("String index out of range: " + begin + ".." + end);
+                }
+                return s.substring(begin, end);
+            }
+            case "contains/1": return s.contains(str(args[0]));
+            case "startsWith/1": return s.startsWith(str(args[0]));
+            case "endsWith/1": return s.endsWith(str(args[0]));
+            case "indexOf/1": return s.indexOf(str(args[0]));
+            case "equals/1": return s.equals(args[0]);
+            case "equalsIgnoreCase/1": return args[0] != null && s.equalsIgnoreCase(str(args[0]));
+            case "compareTo/1": return s.compareTo(str(args[0]));
+            case "concat/1": {
+                String joined = s.concat(str(args[0]));
+                frame.allocate(joined.length());
+                return joined;
+            }
+            case "repeat/1": {
+                int times = toIndex(args[0], line);
+                if (times < 0) {
+                    throw new ScriptRuntimeException("count is negative: " + times);
+                }
+                frame.allocate((long) s.length() * times);
+                StringBuilder repeated = new StringBuilder(s.length() * times);
+                for (int i = 0; i < times; i++) {
+                    repeated.append(s);
+                }
+                return repeated.toString();
+            }
+            case "replace/2": {
+                String replaced = s.replace(str(args[0]), str(args[1]));
+                frame.allocate(replaced.length());
+                return replaced;
+            }
+            default:
+                throw new ScriptRuntimeException("Unsupported method String." + name + "()");
+        }
+    }
+
+    static String str(Object value) {
+        if (value instanceof Double) {
+            return Double.toString((Double) value);
+        }
+        if (value instanceof long[] || value instanceof int[] || value instanceof char[] || value instanceof double[]
+                || value instanceof boolean[] || value instanceof Object[]) {
+            return typeName(value) + "@" + Integer.toHexString(System.identityHashCode(value));
+        }
+        return String.valueOf(value);
+    }
+
+    private static String typeName(Object value) {
+        if (value instanceof Integer) return "int";
+        if (value instanceof Long) return "long";
+        if (value instanceof Character) return "char";
+        if (value instanceof Double) return "double";
+        if (value instanceof Boolean) return "boolean";
+        if (value instanceof String) return "String";
+        if (value instanceof int[]) return "int[]";
+        if (value instanceof long[]) return "long[]";
+        if (value instanceof char[]) return "char[]";
+        if (value instanceof double[]) return "double[]";
+        if (value instanceof boolean[]) return "boolean[]";
+        if (value instanceof Object[]) return "Object[]";
+        if (value instanceof ScriptError) return "Exception";
+        if (value instanceof RuntimeView) return "Runtime";
+        return value == null ? "null" : "object";
+    }
+
+    private static boolean truth(Object value, int line) {
+        if (value instanceof Boolean) {
+            return (Boolean) value;
+        }
+        throw new ScriptRuntimeException("line " + line + ": expected a boolean but got " + typeName(value));
+    }
+
+    /**
+     * Java's integral types: int (also short and byte), long and char
+     */
+    private static boolean isIntegral(Object value) {
+        return value instanceof Integer || value instanceof Long || value instanceof Character;
+    }
+
+    private static long toLong(Object value, int line) {
+        if (value instanceof Integer || value instanceof Long) {
+            return ((Number) value).longValue();
+        }
+        if (value instanceof Character) {
+            return (Character) value;
+        }
+        if (value instanceof Double) {
+            return (long) (double) (Double) value;
+        }
+        throw new ScriptRuntimeException("line " + line + ": expected a number but got " + typeName(value));
+    }
+
+    private static double toDouble(Object value, int line) {
+        if (value instanceof Double) {
+            return (Double) value;
+        }
+        return toLong(value, line);
+    }
+
+    private static int toIndex(Object value, int line) {
+        long index = toLong(value, line);
+        if (index > Integer.MAX_VALUE || index < Integer.MIN_VALUE) {
+            throw new ScriptRuntimeException("Index out of range: " + index);
+        }
+        return (int) index;
+    }
+
+    private static Object arithmetic(String op, Object a, Object b, int line) {
+        if (a instanceof Double || b instanceof Double) {
+            double x = toDouble(a, line);
+            double y = toDouble(b, line);
+            switch (op) {
+                case "+": return x + y;
+                case "-": return x - y;
+                case "*": return x * y;
+                case "/": return x / y;
+                case "%": return x % y;
+                default: break;
+            }
+            throw new ScriptRuntimeException("line " + line + ": operator " + op + " needs integers");
+        }
+        if (a instanceof Boolean && b instanceof Boolean) {
+            boolean x = (Boolean) a;
+            boolean y = (Boolean) b;
+            switch (op) {
+                case "&": return x & y;
+                case "|": return x | y;
+                case "^": return x ^ y;
+                default: break;
+            }
+        }
+        // Shifts take the type of the left operand; otherwise long only if either side is a long
+        boolean shift = op.startsWith("<<") || op.startsWith(">>");
+        if (shift ? !(a instanceof Long) : !(a instanceof Long || b instanceof Long)) {
+            return intArithmetic(op, (int) toLong(a, line), (int) toLong(b, line), line);
+        }
+        long x = toLong(a, line);
+        long y = toLong(b, line);
+        switch (op) {
+            case "+": return x + y;
+            case "-": return x - y;
+            case "*": return x * y;
+            case "/":
+                if (y == 0) {
+                    throw new ScriptRuntimeException("/ by zero");
+                }
+                return x / y;
+            case "%":
+                if (y == 0) {
+                    throw new ScriptRuntimeException("/ by zero");
+                }
+                return x % y;
+            case "&": return x & y;
+            case "|": return x | y;
+            case "^": return x ^ y;
+            case "<<": return x << y;
+            case ">>": return x >> y;
+            case ">>>": return x >>> y;
+            default:
+                throw new ScriptRuntimeException("line " + line + ": unsupported operator " + op);
+        }
+    }
+
+    /**
+     * int and char operands: 32-bit results that wrap exactly like Java's
+     */
+    private static Object intArithmetic(String op, int x, int y, int line) {
+        switch (op) {
+            case "+": return x + y;
+            case "-": return x - y;
+            case "*": return x * y;
+            case "/":
+                if (y == 0) {
+                    throw new ScriptRuntimeException("/ by zero");
+                }
+                return x / y;
+            case "%":
+                if (y == 0) {
+                    throw new ScriptRuntimeException("/ by zero");
+                }
+                return x % y;
+            case "&": return x & y;
+            case "|": return x | y;
+            case "^": return x ^ y;
+            case "<<": return x << y;
+            case ">>": return x >> y;
+            case ">>>": return x >>> y;
+            default:
+                throw new ScriptRuntimeException("line " + line + ": unsupported operator " + op);
+        }
+    }
+
+    private static boolean compare(String op, Object a, Object b, int line) {
+        int result;
+        if (isIntegral(a) && isIntegral(b)) {
+            result = Long.compare(toLong(a, line), toLong(b, line));
+        } else {
+            double x = toDouble(a, line);
+            double y = toDouble(b, line);
+            switch (op) {
+                case "<": return x < y;
+                case ">": return x > y;
+                case "<=": return x <= y;
+                default: return x >= y;
+            }
+        }
+        switch (op) {
+            case "<": return result < 0;
+            case ">": return result > 0;
+            case "<=": return result <= 0;
+            default: return result >= 0;
+        }
+    }
+
+    private static boolean equal(Object a, Object b) {
+        if (a == null || b == null) {
+            return a == b;
+        }
+        if ((isIntegral(a) || a instanceof Double) && (isIntegral(b) || b instanceof Double)) {
+            if (isIntegral(a) && isIntegral(b)) {
+                return toLong(a, 0) == toLong(b, 0);
+            }
+            return toDouble(a, 0) == toDouble(b, 0);
+        }
+        // Strings compare by value: scripts have no interning to reason about
+        return a.equals(b);
+    }
+
+    private static Object defaultValue(String type) {
+        switch (type) {
+            case "int":
+            case "short":
+            case "byte":
+                return 0;
+            case "long":
+                return 0L;
+            case "char":
+                return '\0';
+            case "double":
+            case "float":
+                return 0.0;
+            case "boolean":
+                return Boolean.FALSE;
+            default:
+                return null;
+        }
+    }
+
+    /**
+     * Convert a value to the declared type of the slot it is stored in
+     */
+    private static Object coerce(String type, Object value, int line) {
+        switch (type) {
+            case "int":
+            case "Integer":
+                return (int) toLong(value, line);
+            case "short":
+                return (int) (short) toLong(value, line);
+            case "byte":
+                return (int) (byte) toLong(value, line);
+            case "char":
+                return (char) toLong(value, line);
+            case "long":
+            case "Long":
+                return toLong(value, line);
+            case "double":
+            case "Double":
+                return toDouble(value, line);
+            case "float":
+                return (double) (float) toDouble(value, line);
+            case "boolean":
+            case "Boolean":
+                if (!(value instanceof Boolean)) {
+                    throw new ScriptRuntimeException("line " + line + ": expected a boolean but got " + typeName(value));
+                }
+                return value;
+            case "String":
+                if (value != null && !(value instanceof String)) {
+                    throw new ScriptRuntimeException("line " + line + ": expected a String but got " + typeName(value));
+                }
+                return value;
+            default:
+                return value;
+        }
+    }
+
+    private static Object newArray(String elementType, int size, int line) {
+        switch (elementType) {
+            case "int":
+            case "short":
+            case "byte":
+                return new int[size];
+            case "long":
+                return new long[size];
+            case "char":
+                return new char[size];
+            case "double":
+            case "float":
+                return new double[size];
+            case "boolean":
+                return new boolean[size];
+            default:
+                return new Object[size];
+        }
+    }
+
+    private static int arrayLength(Object array, int line) {
+        if (array instanceof int[]) return ((int[]) array).length;
+        if (array instanceof long[]) return ((long[]) array).length;
+        if (array instanceof char[]) return ((char[]) array).length;
+        if (array instanceof double[]) return ((double[]) array).length;
+        if (array instanceof boolean[]) return ((boolean[]) array).length;
+        if (array instanceof Object[]) return ((Object[]) array).length;
+        if (array instanceof String) return ((String) array).length();
+        throw new ScriptRuntimeException("line " + line + ": expected an array but got " + typeName(array));
+    }
+
+    private static void checkBounds(int index, int length) {
+        if (index < 0 || index >= length) {
+            throw new ScriptRuntimeException("Index " + index + " out of bounds for length " + length);
+        }
+    }
+
+    private static Object arrayGet(Object array, int index, int line) {
+        int length = arrayLength(array, line);
+        checkBounds(index, length);
+        if (array instanceof int[]) return ((int[]) array)[index];
+        if (array instanceof long[]) return ((long[]) array)[index];
+        if (array instanceof char[]) return ((char[]) array)[index];
+        if (array instanceof double[]) return ((double[]) array)[index];
+        if (array instanceof boolean[]) return ((boolean[]) array)[index];
+        if (array instanceof String) return ((String) array).charAt(index);
+        return ((Object[]) array)[index];
+    }
+
+    private static Object arraySet(Object array, int index, Object value, int line) {
+        int length = arrayLength(array, line);
+        checkBounds(index, length);
+        if (array instanceof int[]) {
+            int stored = (int) toLong(value, line);
+            ((int[]) array)[index] = stored;
+            return stored;
+        }
+        if (array instanceof long[]) {
+            long stored = toLong(value, line);
+            ((long[]) array)[index] = stored;
+            return stored;
+        }
+        if (array instanceof char[]) {
+            char stored = (char) toLong(value, line);
+            ((char[]) array)[index] = stored;
+            return stored;
+        }
+        if (array instanceof double[]) {
+            double stored = toDouble(value, line);
+            ((double[]) array)[index] = stored;
+            return stored;
+        }
+        if (array instanceof boolean[]) {
+            ((boolean[]) array)[index] = truth(value, line);
+            return value;
+        }
+        if (array instanceof String) {
+            throw new ScriptRuntimeException("Strings are immutable");
+        }
+        ((Object[]) array)[index] = value;
+        return value;
+    }
+
+    private static String arrayToString(Object array, int line) {
+        if (array == null) {
+            return "null";
+        }
+        if (array instanceof int[]) return Arrays.toString((int[]) array);
+        if (array instanceof long[]) return Arrays.toString((long[]) array);
+        if (array instanceof char[]) return Arrays.toString((char[]) array);
+        if (array instanceof double[]) return Arrays.toString((double[]) array);
+        if (array instanceof boolean[]) return Arrays.toString((boolean[]) array);
+        if (array instanceof Object[]) {
+            Object[] values = (Object[]) array;
+            StringBuilder text = new StringBuilder("[");
+            for (int i = 0; i < values.length; i++) {
+                if (i > 0) {
+                    text.append(", ");
+                }
+                text.append(str(values[i]));
+            }
+            return text.append(']').toString();
+        }
+        throw new ScriptRuntimeException("line " + line + ": expected an array but got " + typeName(array));
+    }
+
+    private static void sortArray(Object array, Frame frame, int line) {
+        int length = arrayLength(array, line);
+        // Charge n log n instructions up front so sorting huge arrays cannot dodge the budget
+        for (int i = 1; i < length; i <<= 1) {
+            frame.instructions += length;
+        }
+        frame.tick();
+        if (array instanceof int[]) {
+            Arrays.sort((int[]) array);
+        } else if (array instanceof long[]) {
+            Arrays.sort((long[]) array);
+        } else if (array instanceof char[]) {
+            Arrays.sort((char[]) array);
+        } else if (array instanceof double[]) {
+            Arrays.sort((double[]) array);
+        } else if (array instanceof Object[]) {
+            Object[] values = (Object[]) array;
+            for (Object value : values) {
+                if (!(value instanceof String)) {
+                    throw new ScriptRuntimeException("Arrays.sort only sorts numbers and non-null Strings");
+                }
+            }
+            Arrays.sort(values);
+        } else {
+            throw new ScriptRuntimeException("line " + line + ": cannot sort " + typeName(array));
+        }
+    }
+
+    private static Object copyOf(Object array, int length, int line) {
+        if (array instanceof int[]) return Arrays.copyOf((int[]) array, length);
+        if (array instanceof long[]) return Arrays.copyOf((long[]) array, length);
+        if (array instanceof char[]) return Arrays.copyOf((char[]) array, length);
+        if (array instanceof double[]) return Arrays.copyOf((double[]) array, length);
+        if (array instanceof boolean[]) return Arrays.copyOf((boolean[]) array, length);
+        if (array instanceof Object[]) return Arrays.copyOf((Object[]) array, length);
+        throw new ScriptRuntimeException("line " + line + ": expected an array but got " + typeName(array));
+    }
+
+    private static boolean contains(String[] values, String value) {
+        for (String candidate : values) {
+            if (candidate.equals(value)) {
+                return true;
+            }
+        }
+        return false;
+    }
+}
@@ -0,0 +1,157 @@
+package com.fullsend.jarvis.ai;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.function.ToDoubleFunction;
+
+/**
+ * Online ranking of candidate solutions by how often they actually worked
+ *
+ * Features:
+ * - One bandit per context (problem category, error type); every candidate text is an arm
+ * - Score = smoothed success rate + UCB exploration bonus, so rarely tried candidates still
+ *   get a chance while proven ones move to the front
+ * - Untried candidates start from a caller-supplied prior (e.g. the success rate of the
+ *   action that would carry them out)
+ * - Counts are scaled down past a cap, so recent outcomes outweigh old ones
+ * - O(candidates) scoring per call; each update is one 8-byte record in the KnowledgeStore
+ */
+public class SolutionRanker {
+
+    private static final String TAG = "SolutionRanker";
+
+    private static final String KEY_PREFIX = "rank:";
+    private static final char CONTEXT_SEPARATOR = '|';
+
+    static final double PRIOR_WEIGHT = 2.0;     // Prior counts as this many observations
+    static final double EXPLORATION = 0.3;
+    static final float MAX_EFFECTIVE_TRIALS = 50f;
+
+    private static final class Arm {
+        float successes;
+        float trials;
+    }
+
+    private final KnowledgeStore store;
+    // Keyed by context + '|' + candidate, the same suffix used in the store
+    private final Map<String, Arm> arms = new HashMap<>();
+    private final Map<String, Float> contextTrials = new HashMap<>();
+
+    /**
+     * @param store where outcomes are persisted; null keeps them in memory only
+     */
+    public SolutionRanker(KnowledgeStore store) {
+        this.store = store;
+        if (store != null) {
+            store.forEachWithPrefix(KEY_PREFIX, (storeKey, value) -> {
+                if (value instanceof Long) {
+                    String key = storeKey.substring(KEY_PREFIX.length());
+                    Arm arm = unpack((Long) value);
+                    arms.put(key, arm);
+                    contextTrials.merge(contextOf(key), arm.trials, Float::sum);
+                }
+            });
+            Log.i(TAG, "Restored " + arms.size() + " solution outcomes");
+        }
+    }
+
+    /**
+     * Candidates ordered by expected success, best first; the input list is not modified
+     */
+    public List<String> rank(String context, List<String> candidates, ToDoubleFunction<String> prior) {
+        int count = candidates.size();
+        double[] scores = new double[count];
+        synchronized (this) {
+            double logTotal = Math.log(1 + contextTrials.getOrDefault(context, 0f));
+            for (int i = 0; i < count; i++) {
+                String candidate = candidates.get(i);
+                Arm arm = arms.get(key(context, candidate));
+                float successes = arm != null ? arm.successes : 0;
+                float trials = arm != null ? arm.trials : 0;
+                scores[i] = (successes + PRIOR_WEIGHT * prior.applyAsDouble(candidate)) / (trials + PRIOR_WEIGHT)
+                        + EXPLORATION * Math.sqrt(logTotal / (trials + 1));
+            }
+        }
+
+        List<Integer> order = new ArrayList<>(count);
+        for (int i = 0; i < count; i++) {
+            order.add(i);
+        }
+        // Stable, so equal scores keep the generator's order
+        Collections.sort(order, (a, b) -> Double.compare(scores[b], scores[a]));
+
+        List<String> ranked = new ArrayList<>(count);
+        for (int index : order) {
+            ranked.add(candidates.get(index));
+        }
+        return ranked;
+    }
+
+    /**
+     * Record whether a candidate worked when it was tried in the given context
+     */
+    public void update(String context, String candidate, boolean success) {
+        String key = key(context, candidate);
+        long packed;
+        synchronized (this) {
+            Arm arm = arms.get(key);
+            if (arm == null) {
+                arm = new Arm();
+                arms.put(key, arm);
+            }
+            if (arm.trials + 1 > MAX_EFFECTIVE_TRIALS) {
+                float scale = (MAX_EFFECTIVE_TRIALS - 1) / arm.trials;
+                contextTrials.merge(context, arm.trials * (scale - 1), Float::sum);
+                arm.successes *= scale;
+                arm.trials *= scale;
+            }
+            arm.trials += 1;
+            if (success) {
+                arm.successes += 1;
+            }
+            contextTrials.merge(context, 1f, Float::sum);
+            packed = pack(arm);
+        }
+
+        if (store != null) {
+            store.putLong(KEY_PREFIX + key, packed);
+            store.flush();
+        }
+    }
+
+    /**
+     * Smoothed success rate of a candidate without exploration bonus; prior if never tried
+     */
+    public synchronized double estimate(String context, String candidate, double prior) {
+        Arm arm = arms.get(key(context, candidate));
+        if (arm == null) {
+            return prior;
+        }
+        return (arm.successes + PRIOR_WEIGHT * prior) / (arm.trials + PRIOR_WEIGHT);
+    }
+
+    private static String key(String context, String candidate) {
+        return context + CONTEXT_SEPARATOR + candidate;
+    }
+
+    private static String contextOf(String key) {
+        int separator = key.indexOf(CONTEXT_SEPARATOR);
+        return separator >= 0 ? key.substring(0, separator) : key;
+    }
+
+    private static long pack(Arm arm) {
+        return ((long) Float.floatToIntBits(arm.successes) << 32) | (Float.floatToIntBits(arm.trials) & 0xffffffffL);
+    }
+
+    private static Arm unpack(long packed) {
+        Arm arm = new Arm();
+        arm.successes = Float.intBitsToFloat((int) (packed >>> 32));
+        arm.trials = Float.intBitsToFloat((int) packed);
+        return arm;
+    }
+}
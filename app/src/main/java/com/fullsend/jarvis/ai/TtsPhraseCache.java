@@ -0,0 +1,525 @@
+package com.fullsend.jarvis.ai;
+
+import android.media.AudioFormat;
+import android.media.AudioManager;
+import android.media.AudioTrack;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.SystemClock;
+import android.speech.tts.TextToSpeech;
+import android.util.Log;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.security.MessageDigest;
+import java.security.NoSuchAlgorithmException;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.HashSet;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.atomic.AtomicReference;
+
+/**
+ * Disk cache of pre-synthesized speech for frequent Jarvis phrases
+ *
+ * Features:
+ * - Phrases are rendered to WAV with synthesizeToFile while the TTS engine is idle
+ * - Cached replies play straight from PCM through an AudioTrack, skipping synthesis latency
+ * - Numbers inside a reply are spliced in from a small cache of number-word clips, so
+ *   "Battery level is at 42%." reuses the same clips for every battery level
+ * - LRU eviction under a disk budget (file mtime is the access time) and a small
+ *   in-memory PCM cache for the hottest clips
+ * - Each playback has its own cancel token; writes never block, so a superseded playback
+ *   always finishes and reports completion
+ */
+public class TtsPhraseCache {
+
+    private static final String TAG = "TtsPhraseCache";
+
+    public static final String UTTERANCE_PREFIX = "tts_cache:";
+    public static final long DEFAULT_DISK_BUDGET_BYTES = 16 * 1024 * 1024L;
+
+    private static final String CACHE_DIR_NAME = "tts_cache";
+    private static final int MEMORY_BUDGET_SAMPLES = 1024 * 1024; // ~2 MB of PCM
+    private static final int MAX_SPLICE_NUMBER = 999;
+
+    // Poll interval while the track buffer is full, and how long past the clip length to wait for it to drain
+    private static final long WRITE_RETRY_MS = 5;
+    private static final long DRAIN_SLACK_MS = 1000;
+
+    private static final String[] ONES = {
+            "zero", "one", "two", "three", "four", "five", "six", "seven", "eight", "nine", "ten",
+            "eleven", "twelve", "thirteen", "fourteen", "fifteen", "sixteen", "seventeen",
+            "eighteen", "nineteen"
+    };
+    private static final String[] TENS = {
+            "", "", "twenty", "thirty", "forty", "fifty", "sixty", "seventy", "eighty", "ninety"
+    };
+
+    private final TextToSpeech textToSpeech;
+    private final File cacheDir;
+    private final long diskBudgetBytes;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+    private final ExecutorService playbackExecutor = Executors.newSingleThreadExecutor();
+
+    // Guarded by this: file name (hash of phrase key) -> file, in access order
+    private final LinkedHashMap<String, File> diskIndex = new LinkedHashMap<>(64, 0.75f, true);
+    private final LinkedHashMap<String, WavAudio> memoryCache = new LinkedHashMap<>(32, 0.75f, true);
+    private long diskBytes = 0;
+    private int memorySamples = 0;
+
+    // Guarded by this: phrases waiting for idle synthesis
+    private final ArrayDeque<Segment> synthesisQueue = new ArrayDeque<>();
+    private final Set<String> queuedKeys = new HashSet<>();
+    private Segment inFlight;
+
+    // The playback that owns the speaker; play() and stop() cancel it, its own thread clears it
+    private final AtomicReference<Playback> currentPlayback = new AtomicReference<>();
+
+    /**
+     * Piece of a reply that maps to one cached clip
+     */
+    static class Segment {
+        final String key;
+        final String spokenText;
+
+        Segment(String key, String spokenText) {
+            this.key = key;
+            this.spokenText = spokenText;
+        }
+    }
+
+    /**
+     * Cancel token and track of one play() call
+     */
+    private static class Playback {
+        volatile boolean cancelled;
+        volatile AudioTrack track;
+
+        void cancel() {
+            cancelled = true;
+            AudioTrack active = track;
+            if (active != null) {
+                try {
+                    active.pause();
+                    active.flush();
+                } catch (IllegalStateException e) {
+                    // Already released
+                }
+            }
+        }
+    }
+
+    public TtsPhraseCache(TextToSpeech textToSpeech, File baseDir) {
+        this(textToSpeech, baseDir, DEFAULT_DISK_BUDGET_BYTES);
+    }
+
+    public TtsPhraseCache(TextToSpeech textToSpeech, File baseDir, long diskBudgetBytes) {
+        this.textToSpeech = textToSpeech;
+        this.cacheDir = new File(baseDir, CACHE_DIR_NAME);
+        this.diskBudgetBytes = diskBudgetBytes;
+
+        if (!cacheDir.exists() && !cacheDir.mkdirs()) {
+            Log.w(TAG, "Could not create TTS cache directory");
+        }
+        loadIndex();
+    }
+
+    /**
+     * Play the text from cached clips. Returns false (and queues the missing clips for idle
+     * synthesis) when any piece is not cached yet, in which case the caller should speak normally.
+     */
+    public boolean play(String text, Runnable onComplete) {
+        List<Segment> segments = segment(text);
+        if (segments == null) {
+            // Large or decimal numbers are one-offs, not worth caching
+            return false;
+        }
+
+        final List<WavAudio> clips = new ArrayList<>(segments.size());
+        boolean complete = true;
+        for (Segment segment : segments) {
+            WavAudio clip = loadClip(segment.key);
+            if (clip == null) {
+                enqueue(segment);
+                complete = false;
+            } else if (complete) {
+                if (!clips.isEmpty() && clips.get(0).sampleRate != clip.sampleRate) {
+                    complete = false;
+                }
+                clips.add(clip);
+            }
+        }
+
+        if (!complete || clips.isEmpty()) {
+            return false;
+        }
+
+        final Playback playback = new Playback();
+        Playback previous = currentPlayback.getAndSet(playback);
+        if (previous != null) {
+            previous.cancel();
+        }
+        playbackExecutor.execute(() -> playClips(playback, clips, onComplete));
+        return true;
+    }
+
+    /**
+     * Queue phrases (and the number-word clips used for splicing) for idle synthesis
+     */
+    public void prewarm(Collection<String> phrases) {
+        for (String phrase : phrases) {
+            List<Segment> segments = segment(phrase);
+            if (segments != null) {
+                for (Segment segment : segments) {
+                    enqueueIfMissing(segment);
+                }
+            }
+        }
+        for (String word : ONES) {
+            enqueueIfMissing(numberSegment(word));
+        }
+        for (int i = 2; i < TENS.length; i++) {
+            enqueueIfMissing(numberSegment(TENS[i]));
+        }
+        enqueueIfMissing(numberSegment("hundred"));
+    }
+
+    /**
+     * Synthesize the next queued phrase; call only while nothing is being spoken
+     */
+    public synchronized void onIdle() {
+        if (inFlight != null || synthesisQueue.isEmpty()) {
+            return;
+        }
+
+        inFlight = synthesisQueue.pollFirst();
+        File target = tempFileFor(inFlight.key);
+        int result = textToSpeech.synthesizeToFile(inFlight.spokenText, null, target,
+                UTTERANCE_PREFIX + hash(inFlight.key));
+        if (result != TextToSpeech.SUCCESS) {
+            Log.w(TAG, "synthesizeToFile rejected: " + inFlight.spokenText);
+            queuedKeys.remove(inFlight.key);
+            inFlight = null;
+        }
+    }
+
+    public static boolean handlesUtterance(String utteranceId) {
+        return utteranceId != null && utteranceId.startsWith(UTTERANCE_PREFIX);
+    }
+
+    /**
+     * Completion callback for cache synthesis utterances (from UtteranceProgressListener)
+     */
+    public synchronized void onSynthesisDone(String utteranceId, boolean success) {
+        if (inFlight == null || !utteranceId.equals(UTTERANCE_PREFIX + hash(inFlight.key))) {
+            return;
+        }
+
+        Segment done = inFlight;
+        inFlight = null;
+        File temp = tempFileFor(done.key);
+        String name = hash(done.key);
+
+        if (!success) {
+            // Flushed by a spoken reply or failed; retry later
+            temp.delete();
+            synthesisQueue.addLast(done);
+            return;
+        }
+
+        queuedKeys.remove(done.key);
+        File target = new File(cacheDir, name + ".wav");
+        if (!temp.renameTo(target)) {
+            Log.w(TAG, "Could not move synthesized clip into cache");
+            temp.delete();
+            return;
+        }
+
+        File previous = diskIndex.put(name, target);
+        if (previous != null) {
+            diskBytes -= previous.length();
+        }
+        diskBytes += target.length();
+        enforceDiskBudget();
+    }
+
+    public boolean isPlaying() {
+        return currentPlayback.get() != null;
+    }
+
+    /**
+     * Stop cached playback (e.g. before a normal TTS utterance flushes the queue)
+     */
+    public void stop() {
+        Playback playback = currentPlayback.getAndSet(null);
+        if (playback != null) {
+            playback.cancel();
+        }
+    }
+
+    public void shutdown() {
+        stop();
+        playbackExecutor.shutdownNow();
+    }
+
+    /**
+     * Split a reply into literal phrases and number words; null if it contains numbers we do
+     * not splice (too large or with a decimal part)
+     */
+    static List<Segment> segment(String text) {
+        List<Segment> segments = new ArrayList<>();
+        int literalStart = 0;
+        int i = 0;
+        while (i < text.length()) {
+            if (!Character.isDigit(text.charAt(i))) {
+                i++;
+                continue;
+            }
+
+            int end = i;
+            while (end < text.length() && Character.isDigit(text.charAt(end))) {
+                end++;
+            }
+            if (end - i > 3 || (end + 1 < text.length() && text.charAt(end) == '.'
+                    && Character.isDigit(text.charAt(end + 1)))) {
+                return null;
+            }
+
+            addLiteral(segments, text.substring(literalStart, i));
+            if (!addNumber(segments, Integer.parseInt(text.substring(i, end)))) {
+                return null;
+            }
+            i = end;
+            literalStart = end;
+        }
+        addLiteral(segments, text.substring(literalStart));
+        return segments;
+    }
+
+    private static void addLiteral(List<Segment> segments, String literal) {
+        String trimmed = literal.trim();
+        boolean speakable = false;
+        for (int i = 0; i < trimmed.length() && !speakable; i++) {
+            char c = trimmed.charAt(i);
+            speakable = Character.isLetter(c) || c == '%';
+        }
+        if (speakable) {
+            segments.add(new Segment("p:" + trimmed, trimmed));
+        }
+    }
+
+    private static boolean addNumber(List<Segment> segments, int value) {
+        if (value > MAX_SPLICE_NUMBER) {
+            return false;
+        }
+        if (value >= 100) {
+            segments.add(numberSegment(ONES[value / 100]));
+            segments.add(numberSegment("hundred"));
+            value %= 100;
+            if (value == 0) {
+                return true;
+            }
+        }
+        if (value >= 20) {
+            segments.add(numberSegment(TENS[value / 10]));
+            if (value % 10 != 0) {
+                segments.add(numberSegment(ONES[value % 10]));
+            }
+        } else {
+            segments.add(numberSegment(ONES[value]));
+        }
+        return true;
+    }
+
+    private static Segment numberSegment(String word) {
+        return new Segment("n:" + word, word);
+    }
+
+    private void playClips(Playback playback, List<WavAudio> clips, Runnable onComplete) {
+        int sampleRate = clips.get(0).sampleRate;
+        int minBuffer = AudioTrack.getMinBufferSize(sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+                AudioFormat.ENCODING_PCM_16BIT);
+        AudioTrack track = null;
+        try {
+            if (playback.cancelled) {
+                return;
+            }
+            track = new AudioTrack(AudioManager.STREAM_MUSIC, sampleRate, AudioFormat.CHANNEL_OUT_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT, minBuffer, AudioTrack.MODE_STREAM);
+            // Published before the check so a concurrent cancel() either sees the track or is seen here
+            playback.track = track;
+            if (playback.cancelled) {
+                return;
+            }
+            track.play();
+
+            int totalFrames = 0;
+            for (WavAudio clip : clips) {
+                if (!write(playback, track, clip.samples)) break;
+                totalFrames += clip.samples.length;
+            }
+
+            // Let the tail of the buffer drain before releasing the track
+            long deadline = SystemClock.elapsedRealtime() + totalFrames * 1000L / sampleRate + DRAIN_SLACK_MS;
+            while (!playback.cancelled && track.getPlaybackHeadPosition() < totalFrames
+                    && SystemClock.elapsedRealtime() < deadline) {
+                Thread.sleep(10);
+            }
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        } catch (IllegalStateException | IllegalArgumentException e) {
+            Log.w(TAG, "Cached playback failed", e);
+        } finally {
+            if (track != null) {
+                playback.track = null;
+                track.release();
+            }
+            // A newer playback may already own the speaker; only clear our own
+            currentPlayback.compareAndSet(playback, null);
+            if (onComplete != null) {
+                mainHandler.post(onComplete);
+            }
+        }
+    }
+
+    /**
+     * Write a clip without blocking, so cancel() (which pauses the track) can never wedge the
+     * playback thread; false if cancelled or the track failed
+     */
+    private boolean write(Playback playback, AudioTrack track, short[] samples) throws InterruptedException {
+        int offset = 0;
+        while (offset < samples.length) {
+            if (playback.cancelled) {
+                return false;
+            }
+            int written = track.write(samples, offset, samples.length - offset, AudioTrack.WRITE_NON_BLOCKING);
+            if (written < 0) {
+                Log.w(TAG, "AudioTrack write failed: " + written);
+                return false;
+            }
+            if (written == 0) {
+                Thread.sleep(WRITE_RETRY_MS);
+            }
+            offset += written;
+        }
+        return true;
+    }
+
+    private synchronized WavAudio loadClip(String key) {
+        String name = hash(key);
+        WavAudio clip = memoryCache.get(name);
+        if (clip != null) {
+            diskIndex.get(name); // Keep disk LRU order in step
+            return clip;
+        }
+
+        File file = diskIndex.get(name);
+        if (file == null) {
+            return null;
+        }
+
+        try {
+            clip = WavAudio.read(new FileInputStream(file));
+        } catch (IOException e) {
+            Log.w(TAG, "Dropping unreadable cached clip " + file.getName(), e);
+            diskIndex.remove(name);
+            diskBytes -= file.length();
+            file.delete();
+            return null;
+        }
+
+        file.setLastModified(System.currentTimeMillis());
+        memoryCache.put(name, clip);
+        memorySamples += clip.samples.length;
+        Iterator<Map.Entry<String, WavAudio>> it = memoryCache.entrySet().iterator();
+        while (memorySamples > MEMORY_BUDGET_SAMPLES && it.hasNext()) {
+            Map.Entry<String, WavAudio> eldest = it.next();
+            if (eldest.getValue() == clip) break;
+            memorySamples -= eldest.getValue().samples.length;
+            it.remove();
+        }
+        return clip;
+    }
+
+    private synchronized void enqueue(Segment segment) {
+        if (queuedKeys.add(segment.key)) {
+            synthesisQueue.addLast(segment);
+        }
+    }
+
+    private synchronized void enqueueIfMissing(Segment segment) {
+        if (!diskIndex.containsKey(hash(segment.key))) {
+            enqueue(segment);
+        }
+    }
+
+    private void loadIndex() {
+        File[] files = cacheDir.listFiles((dir, name) -> name.endsWith(".wav"));
+        if (files == null) {
+            return;
+        }
+
+        // Oldest access first so the LinkedHashMap order matches LRU order
+        Arrays.sort(files, new Comparator<File>() {
+            @Override
+            public int compare(File a, File b) {
+                return Long.compare(a.lastModified(), b.lastModified());
+            }
+        });
+
+        synchronized (this) {
+            for (File file : files) {
+                String name = file.getName();
+                diskIndex.put(name.substring(0, name.length() - 4), file);
+                diskBytes += file.length();
+            }
+            enforceDiskBudget();
+        }
+        Log.d(TAG, "TTS cache: " + diskIndex.size() + " clips, " + diskBytes / 1024 + " KB");
+    }
+
+    private void enforceDiskBudget() {
+        Iterator<Map.Entry<String, File>> it = diskIndex.entrySet().iterator();
+        while (diskBytes > diskBudgetBytes && it.hasNext()) {
+            Map.Entry<String, File> eldest = it.next();
+            File file = eldest.getValue();
+            diskBytes -= file.length();
+            WavAudio cached = memoryCache.remove(eldest.getKey());
+            if (cached != null) {
+                memorySamples -= cached.samples.length;
+            }
+            if (!file.delete()) {
+                Log.w(TAG, "Could not delete evicted clip " + file.getName());
+            }
+            it.remove();
+        }
+    }
+
+    private File tempFileFor(String key) {
+        return new File(cacheDir, hash(key) + ".tmp");
+    }
+
+    private static String hash(String key) {
+        try {
+            byte[] digest = MessageDigest.getInstance("SHA-1").digest(key.getBytes("UTF-8"));
+            StringBuilder hex = new StringBuilder(digest.length * 2);
+            for (byte b : digest) {
+                hex.append(Character.forDigit((b >> 4) & 0xF, 16)).append(Character.forDigit(b & 0xF, 16));
+            }
+            return hex.toString();
+        } catch (NoSuchAlgorithmException | java.io.UnsupportedEncodingException e) {
+            return Integer.toHexString(key.hashCode());
+        }
+    }
+}
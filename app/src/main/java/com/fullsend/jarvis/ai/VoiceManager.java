@@ -10,28 +10,61 @@ import android.speech.tts.TextToSpeech;
 import android.speech.tts.UtteranceProgressListener;
 import android.util.Log;
 
+import java.io.File;
+import java.io.IOException;
 import java.util.ArrayList;
-import java.util.HashMap;
+import java.util.Collection;
+import java.util.List;
 import java.util.Locale;
 import java.util.Map;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.AtomicInteger;
 
 public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitListener {
     private static final String TAG = "VoiceManager";
     private static final String WAKE_PHRASE = "hey jarvis";
     private static final String WAKE_PHRASE_ALT = "jarvis";
     
+    // Enrolled "hey jarvis" recordings (16 kHz mono WAV) for the on-device wake word detector
+    public static final String WAKE_WORD_TEMPLATE_DIR = "wake_word";
+    
     private Context context;
     private SpeechRecognizer speechRecognizer;
     private TextToSpeech textToSpeech;
     private VoiceListener voiceListener;
     private boolean isListening = false;
-    private boolean isSpeaking = false;
+    private volatile boolean isSpeaking = false;
     private boolean isTTSReady = false;
     private boolean isWakeWordMode = true;
     
+    // On-device wake word spotting; when unavailable we fall back to recognizer transcripts
+    private WakeWordDetector wakeWordDetector;
+    private WakeWordListener wakeWordListener;
+    
+    // Wake phrase enrollment in progress (main thread only); null otherwise
+    private static final int MAX_ENROLLMENT_ATTEMPTS = WakeWordEnrollment.TAKES * 2;
+    private static final long ENROLLMENT_PROMPT_DELAY_MS = 1500;
+    private WakeWordEnrollment enrollment;
+    private EnrollmentListener enrollmentListener;
+    private int enrollmentAttempts;
+    
+    // Pre-synthesized clips for frequent replies; created once TTS is ready
+    private volatile TtsPhraseCache phraseCache;
+    private final List<String> pendingPrewarm = new ArrayList<>();
+    private final Map<String, Runnable> utteranceCallbacks = new ConcurrentHashMap<>();
+    private final AtomicInteger utteranceCounter = new AtomicInteger();
+    private volatile String currentUtteranceId;
+    
+    // Voice commands spoken within this window of the previous one continue its conversation
+    private static final long CONVERSATION_IDLE_MS = 2 * 60 * 1000;
+    private final AtomicInteger conversationCounter = new AtomicInteger();
+    private String conversationId;
+    private long lastCommandAt;
+    
     public interface VoiceListener {
         void onWakeWordDetected();
         void onVoiceCommand(String command);
+        void onPartialVoiceCommand(String partialCommand);
         void onVoiceError(String error);
         void onSpeechStarted();
         void onSpeechCompleted();
@@ -39,10 +72,168 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
         void onListeningStopped();
     }
     
+    public interface EnrollmentListener {
+        void onEnrollmentPrompt(String prompt);
+        void onEnrollmentFinished(boolean enrolled, String message);
+    }
+    
     public VoiceManager(Context context) {
         this.context = context;
         initializeSpeechRecognizer();
         initializeTextToSpeech();
+        initializeWakeWordDetector();
+    }
+    
+    private void initializeWakeWordDetector() {
+        wakeWordDetector = new WakeWordDetector();
+        
+        int templates = WakeWordEnrollment.loadTemplates(new File(context.getFilesDir(), WAKE_WORD_TEMPLATE_DIR), wakeWordDetector);
+        if (templates > 0) {
+            wakeWordListener = new WakeWordListener(wakeWordDetector, this::onOnDeviceWakeWord, this::onWakeWordListenerFailed);
+            Log.d(TAG, "On-device wake word enabled with " + templates + " templates");
+        } else {
+            Log.d(TAG, "No wake word templates, using speech recognizer for wake word until enrolled");
+        }
+    }
+    
+    /**
+     * Whether the wake word is spotted on-device; false until the wake phrase has been enrolled
+     */
+    public boolean isOnDeviceWakeWordEnabled() {
+        return wakeWordListener != null;
+    }
+    
+    /**
+     * Record the user saying the wake phrase and switch to on-device detection. Each take is
+     * prompted (spoken once TTS is ready); listening stays off until the listener is told the
+     * enrollment finished, and the previous templates are kept if it fails.
+     */
+    public void enrollWakeWord(EnrollmentListener listener) {
+        if (enrollment != null) {
+            return;
+        }
+        stopListening();
+        enrollment = new WakeWordEnrollment(new File(context.getFilesDir(), WAKE_WORD_TEMPLATE_DIR));
+        enrollmentListener = listener;
+        enrollmentAttempts = 0;
+        promptEnrollmentTake("Say 'Hey Jarvis' after I finish speaking.");
+    }
+    
+    public boolean isEnrollingWakeWord() {
+        return enrollment != null;
+    }
+    
+    private void promptEnrollmentTake(String prompt) {
+        enrollmentAttempts++;
+        if (enrollmentListener != null) {
+            enrollmentListener.onEnrollmentPrompt(prompt);
+        }
+        
+        // Record only after the prompt has been spoken, so it does not end up in the take
+        Runnable record = () -> WakeWordEnrollment.recordTake(this::onEnrollmentTake);
+        if (isTTSReady) {
+            speakWithCallback(prompt, record);
+        } else {
+            new android.os.Handler().postDelayed(record, ENROLLMENT_PROMPT_DELAY_MS);
+        }
+    }
+    
+    private void onEnrollmentTake(short[] pcm) {
+        if (enrollment == null) {
+            // Cleaned up while recording
+            return;
+        }
+        if (pcm == null) {
+            finishEnrollment(false, "I couldn't record from the microphone.");
+            return;
+        }
+        
+        if (!enrollment.addTake(pcm)) {
+            if (enrollmentAttempts >= MAX_ENROLLMENT_ATTEMPTS) {
+                finishEnrollment(false, "I couldn't hear the wake phrase clearly. I'll keep listening the usual way.");
+            } else {
+                promptEnrollmentTake("I didn't catch that. Please say 'Hey Jarvis' again.");
+            }
+            return;
+        }
+        if (!enrollment.isComplete()) {
+            promptEnrollmentTake("Once more, please.");
+            return;
+        }
+        
+        try {
+            enrollment.commit(wakeWordDetector);
+        } catch (IOException e) {
+            Log.e(TAG, "Unable to save wake word templates", e);
+            finishEnrollment(false, "I couldn't save your wake phrase.");
+            return;
+        }
+        if (wakeWordListener == null) {
+            wakeWordListener = new WakeWordListener(wakeWordDetector, this::onOnDeviceWakeWord, this::onWakeWordListenerFailed);
+        }
+        finishEnrollment(true, "Got it. I'll listen for your wake phrase from now on.");
+    }
+    
+    private void finishEnrollment(boolean enrolled, String message) {
+        Log.d(TAG, "Wake word enrollment " + (enrolled ? "succeeded" : "failed") + ": " + message);
+        EnrollmentListener listener = enrollmentListener;
+        enrollment = null;
+        enrollmentListener = null;
+        
+        speak(message);
+        if (listener != null) {
+            listener.onEnrollmentFinished(enrolled, message);
+        }
+    }
+    
+    private boolean useOnDeviceWakeWord() {
+        return isWakeWordMode && wakeWordListener != null;
+    }
+    
+    private void onOnDeviceWakeWord(float score) {
+        if (!isWakeWordMode || wakeWordListener == null) {
+            return;
+        }
+        Log.d(TAG, "Wake word detected on-device (score " + score + ")");
+        
+        wakeWordListener.stop();
+        isListening = false;
+        isWakeWordMode = false;
+        
+        if (voiceListener != null) {
+            voiceListener.onWakeWordDetected();
+        }
+        
+        // Microphone is already released, so the recognizer can start right away
+        startListening();
+    }
+    
+    /**
+     * The microphone loop gave up; fall back to the speech recognizer for the wake word
+     */
+    private void onWakeWordListenerFailed(String reason) {
+        Log.e(TAG, "On-device wake word failed: " + reason);
+        wakeWordListener = null;
+        isListening = false;
+        
+        if (voiceListener != null) {
+            voiceListener.onVoiceError("Wake word detection failed: " + reason);
+        }
+        if (isWakeWordMode) {
+            startListening();
+        }
+    }
+    
+    /**
+     * Go back to waiting for the wake word after a command or an error
+     */
+    private void returnToWakeWordMode(long recognizerDelayMs) {
+        isWakeWordMode = true;
+        if (wakeWordListener != null) {
+            startListening();
+        } else {
+            new android.os.Handler().postDelayed(this::startListening, recognizerDelayMs);
+        }
     }
     
     private void initializeSpeechRecognizer() {
@@ -64,6 +255,23 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
     }
     
     public void startListening() {
+        if (enrollment != null) {
+            // The enrollment has the microphone; listening resumes when it finishes
+            return;
+        }
+        if (useOnDeviceWakeWord()) {
+            // Only the lightweight detector runs until the wake word is heard
+            if (!isListening) {
+                wakeWordListener.start();
+                isListening = true;
+                if (voiceListener != null) {
+                    voiceListener.onListeningStarted();
+                }
+                Log.d(TAG, "Started on-device wake word listening");
+            }
+            return;
+        }
+        
         if (speechRecognizer != null && !isListening) {
             Intent intent = new Intent(RecognizerIntent.ACTION_RECOGNIZE_SPEECH);
             intent.putExtra(RecognizerIntent.EXTRA_LANGUAGE_MODEL, RecognizerIntent.LANGUAGE_MODEL_FREE_FORM);
@@ -82,6 +290,8 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
             
             speechRecognizer.startListening(intent);
             isListening = true;
+            // Waiting for the wake word is passive; only command listening counts as interaction
+            InteractionState.get().setVoiceListening(!isWakeWordMode);
             
             if (voiceListener != null) {
                 voiceListener.onListeningStarted();
@@ -92,9 +302,20 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
     }
     
     public void stopListening() {
+        if (wakeWordListener != null && wakeWordListener.isRunning()) {
+            wakeWordListener.stop();
+            isListening = false;
+            
+            if (voiceListener != null) {
+                voiceListener.onListeningStopped();
+            }
+            return;
+        }
+        
         if (speechRecognizer != null && isListening) {
             speechRecognizer.stopListening();
             isListening = false;
+            InteractionState.get().setVoiceListening(false);
             
             if (voiceListener != null) {
                 voiceListener.onListeningStopped();
@@ -110,60 +331,141 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
     
     public void speak(String text, int queueMode, String utteranceId) {
         if (textToSpeech != null && isTTSReady) {
-            HashMap<String, String> params = new HashMap<>();
-            if (utteranceId != null) {
-                params.put(TextToSpeech.Engine.KEY_PARAM_UTTERANCE_ID, utteranceId);
-            }
-            
-            // Set voice characteristics for Jarvis-like speech
-            textToSpeech.setSpeechRate(0.9f);
-            textToSpeech.setPitch(0.8f);
+            final String id = utteranceId != null ? utteranceId : "speak_" + utteranceCounter.incrementAndGet();
             
+            currentUtteranceId = id;
             isSpeaking = true;
-            textToSpeech.speak(text, queueMode, params);
-            
+            InteractionState.get().setVoiceSpeaking(true);
             if (voiceListener != null) {
                 voiceListener.onSpeechStarted();
             }
             
+            // Frequent replies play from pre-synthesized clips; anything missing is queued for idle synthesis
+            if (phraseCache != null && queueMode == TextToSpeech.QUEUE_FLUSH
+                    && phraseCache.play(text, () -> onUtteranceFinished(id))) {
+                Log.d(TAG, "Speaking (cached): " + text);
+                return;
+            }
+            
+            if (phraseCache != null) {
+                phraseCache.stop();
+            }
+            
+            Bundle params = new Bundle();
+            textToSpeech.speak(text, queueMode, params, id);
+            
             Log.d(TAG, "Speaking: " + text);
         }
     }
     
     public void speakWithCallback(String text, final Runnable callback) {
-        String utteranceId = "callback_" + System.currentTimeMillis();
-        
-        textToSpeech.setOnUtteranceProgressListener(new UtteranceProgressListener() {
-            @Override
-            public void onStart(String utteranceId) {
-                // Speech started
+        String utteranceId = "callback_" + utteranceCounter.incrementAndGet();
+        if (callback != null) {
+            utteranceCallbacks.put(utteranceId, callback);
+        }
+        speak(text, TextToSpeech.QUEUE_FLUSH, utteranceId);
+    }
+    
+    /**
+     * Queue phrases for synthesis into the phrase cache while the speech engine is idle
+     */
+    public void prewarmPhrases(Collection<String> phrases) {
+        if (phraseCache != null) {
+            phraseCache.prewarm(phrases);
+            if (!isSpeaking) {
+                phraseCache.onIdle();
             }
-            
-            @Override
-            public void onDone(String utteranceId) {
-                isSpeaking = false;
-                if (voiceListener != null) {
-                    voiceListener.onSpeechCompleted();
-                }
-                if (callback != null) {
-                    callback.run();
+        } else {
+            pendingPrewarm.addAll(phrases);
+        }
+    }
+    
+    private void onUtteranceFinished(String utteranceId) {
+        Runnable callback = utteranceCallbacks.remove(utteranceId);
+        if (!utteranceId.equals(currentUtteranceId)) {
+            // Superseded by a newer utterance that is still speaking
+            return;
+        }
+        
+        isSpeaking = false;
+        InteractionState.get().setVoiceSpeaking(false);
+        if (voiceListener != null) {
+            voiceListener.onSpeechCompleted();
+        }
+        if (callback != null) {
+            callback.run();
+        }
+        
+        if (phraseCache != null) {
+            phraseCache.onIdle();
+        }
+    }
+    
+    /**
+     * One listener for every utterance; spoken replies and cache synthesis are told apart by id
+     */
+    private final UtteranceProgressListener utteranceProgressListener = new UtteranceProgressListener() {
+        @Override
+        public void onStart(String utteranceId) {
+            // Speech started
+        }
+        
+        @Override
+        public void onDone(String utteranceId) {
+            if (TtsPhraseCache.handlesUtterance(utteranceId)) {
+                phraseCache.onSynthesisDone(utteranceId, true);
+                if (!isSpeaking) {
+                    phraseCache.onIdle();
                 }
+            } else {
+                onUtteranceFinished(utteranceId);
             }
-            
-            @Override
-            public void onError(String utteranceId) {
-                isSpeaking = false;
-                if (voiceListener != null) {
-                    voiceListener.onSpeechCompleted();
-                }
+        }
+        
+        @Override
+        public void onError(String utteranceId) {
+            if (TtsPhraseCache.handlesUtterance(utteranceId)) {
+                phraseCache.onSynthesisDone(utteranceId, false);
+            } else {
+                utteranceCallbacks.remove(utteranceId);
+                onUtteranceFinished(utteranceId);
             }
-        });
+        }
         
-        speak(text, TextToSpeech.QUEUE_FLUSH, utteranceId);
-    }
+        @Override
+        public void onStop(String utteranceId, boolean interrupted) {
+            // A flushing speak() drops queued cache synthesis; put it back in the queue
+            if (TtsPhraseCache.handlesUtterance(utteranceId)) {
+                phraseCache.onSynthesisDone(utteranceId, false);
+            }
+        }
+    };
     
     public boolean isSpeaking() {
-        return isSpeaking && textToSpeech != null && textToSpeech.isSpeaking();
+        if (!isSpeaking) {
+            return false;
+        }
+        return (phraseCache != null && phraseCache.isPlaying())
+                || (textToSpeech != null && textToSpeech.isSpeaking());
+    }
+    
+    /**
+     * Conversation the latest voice command belongs to; commands of one conversation are
+     * answered in order, separate conversations in parallel
+     */
+    public String getConversationId() {
+        if (conversationId == null) {
+            continueConversation();
+        }
+        return conversationId;
+    }
+    
+    private void continueConversation() {
+        long now = System.currentTimeMillis();
+        if (conversationId == null || now - lastCommandAt > CONVERSATION_IDLE_MS) {
+            conversationId = "voice-" + conversationCounter.incrementAndGet();
+        }
+        lastCommandAt = now;
     }
     
     public boolean isListening() {
@@ -200,6 +502,7 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
     public void onEndOfSpeech() {
         Log.d(TAG, "End of speech");
         isListening = false;
+        InteractionState.get().setVoiceListening(false);
     }
     
     @Override
@@ -208,13 +511,17 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
         Log.e(TAG, "Speech recognition error: " + errorMessage);
         
         isListening = false;
+        InteractionState.get().setVoiceListening(false);
         
         if (voiceListener != null) {
             voiceListener.onVoiceError(errorMessage);
         }
         
         // Restart listening in wake word mode after error
-        if (isWakeWordMode && error != SpeechRecognizer.ERROR_CLIENT) {
+        if (wakeWordListener != null && error != SpeechRecognizer.ERROR_CLIENT) {
+            // Recognizer is only used for commands here; hand back to the on-device detector
+            returnToWakeWordMode(0);
+        } else if (isWakeWordMode && error != SpeechRecognizer.ERROR_CLIENT) {
             new android.os.Handler().postDelayed(this::startListening, 1000);
         }
     }
@@ -222,6 +529,8 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
     @Override
     public void onResults(Bundle results) {
         ArrayList<String> matches = results.getStringArrayList(SpeechRecognizer.RESULTS_RECOGNITION);
+        isListening = false;
+        InteractionState.get().setVoiceListening(false);
         
         if (matches != null && !matches.isEmpty()) {
             String bestMatch = matches.get(0).toLowerCase();
@@ -244,17 +553,15 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
                 }
             } else {
                 // Process voice command
+                continueConversation();
                 if (voiceListener != null) {
                     voiceListener.onVoiceCommand(bestMatch);
                 }
                 
                 // Return to wake word mode
-                isWakeWordMode = true;
-                new android.os.Handler().postDelayed(this::startListening, 1000);
+                returnToWakeWordMode(1000);
             }
         }
-        
-        isListening = false;
     }
     
     @Override
@@ -265,6 +572,9 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
             
             if (isWakeWordMode && (partialText.contains(WAKE_PHRASE) || partialText.contains(WAKE_PHRASE_ALT))) {
                 Log.d(TAG, "Wake word detected in partial results: " + partialText);
+            } else if (!isWakeWordMode && voiceListener != null) {
+                // Stream the command as it is spoken so the response can be prepared early
+                voiceListener.onPartialVoiceCommand(partialText);
             }
         }
     }
@@ -283,6 +593,18 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
             if (langResult == TextToSpeech.LANG_MISSING_DATA || langResult == TextToSpeech.LANG_NOT_SUPPORTED) {
                 Log.e(TAG, "Language not supported for TTS");
             } else {
+                // Set voice characteristics for Jarvis-like speech once; cached clips are rendered with them too
+                textToSpeech.setSpeechRate(0.9f);
+                textToSpeech.setPitch(0.8f);
+                textToSpeech.setOnUtteranceProgressListener(utteranceProgressListener);
+                
+                phraseCache = new TtsPhraseCache(textToSpeech, context.getCacheDir());
+                if (!pendingPrewarm.isEmpty()) {
+                    phraseCache.prewarm(pendingPrewarm);
+                    pendingPrewarm.clear();
+                }
+                phraseCache.onIdle();
+                
                 isTTSReady = true;
                 Log.d(TAG, "Text-to-speech initialized successfully");
             }
@@ -317,11 +639,25 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
     }
     
     public void cleanup() {
+        enrollment = null;
+        enrollmentListener = null;
+        
+        if (wakeWordListener != null) {
+            wakeWordListener.stop();
+            wakeWordListener = null;
+        }
+        
         if (speechRecognizer != null) {
             speechRecognizer.destroy();
             speechRecognizer = null;
         }
         
+        if (phraseCache != null) {
+            phraseCache.shutdown();
+            phraseCache = null;
+        }
+        utteranceCallbacks.clear();
+        
         if (textToSpeech != null) {
             textToSpeech.stop();
             textToSpeech.shutdown();
@@ -331,6 +667,8 @@ public class VoiceManager implements RecognitionListener, TextToSpeech.OnInitLis
         isListening = false;
         isSpeaking = false;
         isTTSReady = false;
+        InteractionState.get().setVoiceListening(false);
+        InteractionState.get().setVoiceSpeaking(false);
         
         Log.d(TAG, "Voice manager cleaned up");
     }
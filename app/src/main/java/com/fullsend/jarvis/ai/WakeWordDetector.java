@@ -0,0 +1,393 @@
+package com.fullsend.jarvis.ai;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Streaming wake-word spotter (MFCC features + open-begin DTW against enrolled templates)
+ *
+ * Features:
+ * - Consumes raw 16 kHz mono PCM in arbitrary chunk sizes (typically one 10 ms hop)
+ * - 25 ms frames / 10 ms hop, 26 mel bands, 12 cepstra (c0 dropped for level invariance)
+ * - Feature frames live in a fixed ring buffer; all DSP and DTW buffers are preallocated,
+ *   so process() does not allocate
+ * - Energy gate skips matching during silence; refractory period prevents double triggers
+ * - Pure Java so it can be benchmarked on recorded WAV files on any JVM
+ */
+public class WakeWordDetector {
+
+    public static final int SAMPLE_RATE = 16000;
+    public static final int HOP_SIZE = 160;      // 10 ms
+    public static final int FRAME_SIZE = 400;    // 25 ms
+    public static final float DEFAULT_THRESHOLD = 12.0f;
+
+    private static final int FFT_SIZE = 512;
+    private static final int NUM_MEL = 26;
+    private static final int NUM_CEPS = 12;
+    private static final int RING_FRAMES = 200;          // 2 s of features
+    private static final int DETECT_STRIDE = 3;          // Run DTW every 30 ms
+    private static final int REFRACTORY_FRAMES = 100;    // 1 s
+    private static final float WINDOW_STRETCH = 1.5f;    // Max speaking-rate slowdown vs template
+    private static final float PRE_EMPHASIS = 0.97f;
+    private static final float MIN_SPEECH_LOG_ENERGY = 13.0f;
+
+    // Precomputed DSP tables
+    private final float[] window = new float[FRAME_SIZE];
+    private final float[] cosTable = new float[FFT_SIZE / 2];
+    private final float[] sinTable = new float[FFT_SIZE / 2];
+    private final int[] bitReverse = new int[FFT_SIZE];
+    private final int[] melStart = new int[NUM_MEL];
+    private final int[] melEnd = new int[NUM_MEL];
+    private final float[][] melWeights = new float[NUM_MEL][];
+    private final float[][] dct = new float[NUM_CEPS][NUM_MEL];
+
+    // Streaming state
+    private final short[] sampleRing = new short[FRAME_SIZE];
+    private int sampleRingPos = 0;
+    private int samplesSinceHop = 0;
+    private long totalSamples = 0;
+    private float lastSample = 0;
+
+    private final float[] re = new float[FFT_SIZE];
+    private final float[] im = new float[FFT_SIZE];
+    private final float[] melEnergies = new float[NUM_MEL];
+
+    private final float[][] featureRing = new float[RING_FRAMES][NUM_CEPS];
+    private final float[] energyRing = new float[RING_FRAMES];
+    private int featurePos = 0;
+    private long framesSeen = 0;
+    private long lastDetectionFrame = -REFRACTORY_FRAMES;
+
+    // Templates and DTW scratch rows (sized for the longest template)
+    private final List<float[][]> templates = new ArrayList<>();
+    private float[] dtwPrev = new float[0];
+    private float[] dtwCurr = new float[0];
+    private int[] lenPrev = new int[0];
+    private int[] lenCurr = new int[0];
+    private float threshold = DEFAULT_THRESHOLD;
+    private float lastScore = Float.MAX_VALUE;
+
+    public WakeWordDetector() {
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            window[i] = (float) (0.54 - 0.46 * Math.cos(2 * Math.PI * i / (FRAME_SIZE - 1)));
+        }
+        for (int i = 0; i < FFT_SIZE / 2; i++) {
+            cosTable[i] = (float) Math.cos(2 * Math.PI * i / FFT_SIZE);
+            sinTable[i] = (float) Math.sin(2 * Math.PI * i / FFT_SIZE);
+        }
+        int bits = Integer.numberOfTrailingZeros(FFT_SIZE);
+        for (int i = 0; i < FFT_SIZE; i++) {
+            bitReverse[i] = Integer.reverse(i) >>> (32 - bits);
+        }
+        initMelFilterbank();
+        for (int c = 0; c < NUM_CEPS; c++) {
+            for (int m = 0; m < NUM_MEL; m++) {
+                // c + 1: skip c0, which only tracks loudness
+                dct[c][m] = (float) Math.cos(Math.PI * (c + 1) * (m + 0.5) / NUM_MEL);
+            }
+        }
+    }
+
+    /**
+     * Feed PCM samples; returns true when the wake word ends within this chunk
+     */
+    public boolean process(short[] pcm, int offset, int length) {
+        boolean detected = false;
+        for (int i = offset; i < offset + length; i++) {
+            sampleRing[sampleRingPos] = pcm[i];
+            sampleRingPos = (sampleRingPos + 1) % FRAME_SIZE;
+            totalSamples++;
+
+            if (++samplesSinceHop >= HOP_SIZE && totalSamples >= FRAME_SIZE) {
+                samplesSinceHop = 0;
+                computeFrame();
+                if (framesSeen % DETECT_STRIDE == 0 && match()) {
+                    detected = true;
+                }
+            }
+        }
+        return detected;
+    }
+
+    /**
+     * Enroll a recording of the wake phrase (16 kHz mono PCM); leading/trailing silence is trimmed
+     */
+    public synchronized void addTemplate(short[] pcm) {
+        WakeWordDetector extractor = new WakeWordDetector();
+        List<float[]> frames = new ArrayList<>();
+        List<Float> energies = new ArrayList<>();
+        short[] hop = new short[HOP_SIZE];
+        for (int pos = 0; pos + HOP_SIZE <= pcm.length; pos += HOP_SIZE) {
+            System.arraycopy(pcm, pos, hop, 0, HOP_SIZE);
+            long before = extractor.framesSeen;
+            extractor.feedWithoutMatching(hop);
+            if (extractor.framesSeen > before) {
+                int last = (extractor.featurePos - 1 + RING_FRAMES) % RING_FRAMES;
+                frames.add(extractor.featureRing[last].clone());
+                energies.add(extractor.energyRing[last]);
+            }
+        }
+
+        int start = 0;
+        int end = frames.size() - 1;
+        while (start < end && energies.get(start) < MIN_SPEECH_LOG_ENERGY) start++;
+        while (end > start && energies.get(end) < MIN_SPEECH_LOG_ENERGY) end--;
+        if (end - start < 10) {
+            throw new IllegalArgumentException("Wake word template too short or silent");
+        }
+
+        int maxWindow = (int) Math.ceil((end - start + 1) * WINDOW_STRETCH);
+        if (maxWindow > RING_FRAMES) {
+            throw new IllegalArgumentException("Wake word template longer than detection window");
+        }
+
+        templates.add(frames.subList(start, end + 1).toArray(new float[0][]));
+        if (maxWindow > dtwPrev.length) {
+            dtwPrev = new float[maxWindow];
+            dtwCurr = new float[maxWindow];
+            lenPrev = new int[maxWindow];
+            lenCurr = new int[maxWindow];
+        }
+    }
+
+    public void addTemplate(File wavFile) throws IOException {
+        WavAudio audio = WavAudio.read(new FileInputStream(wavFile));
+        if (audio.sampleRate != SAMPLE_RATE) {
+            throw new IOException("Expected " + SAMPLE_RATE + " Hz template, got " + audio.sampleRate + " Hz");
+        }
+        addTemplate(audio.samples);
+    }
+
+    public synchronized int getTemplateCount() {
+        return templates.size();
+    }
+
+    /**
+     * Drop every enrolled template, e.g. before enrolling the wake phrase again
+     */
+    public synchronized void clearTemplates() {
+        templates.clear();
+    }
+
+    public void setThreshold(float threshold) {
+        this.threshold = threshold;
+    }
+
+    /**
+     * Best (lowest) normalized DTW distance from the most recent match attempt
+     */
+    public float getLastScore() {
+        return lastScore;
+    }
+
+    public void reset() {
+        sampleRingPos = 0;
+        samplesSinceHop = 0;
+        totalSamples = 0;
+        lastSample = 0;
+        featurePos = 0;
+        framesSeen = 0;
+        lastDetectionFrame = -REFRACTORY_FRAMES;
+        lastScore = Float.MAX_VALUE;
+    }
+
+    private void feedWithoutMatching(short[] pcm) {
+        for (short sample : pcm) {
+            sampleRing[sampleRingPos] = sample;
+            sampleRingPos = (sampleRingPos + 1) % FRAME_SIZE;
+            totalSamples++;
+            if (++samplesSinceHop >= HOP_SIZE && totalSamples >= FRAME_SIZE) {
+                samplesSinceHop = 0;
+                computeFrame();
+            }
+        }
+    }
+
+    private void computeFrame() {
+        // Oldest sample in the ring is at sampleRingPos
+        float energy = 0;
+        float prev = lastSample;
+        for (int i = 0; i < FRAME_SIZE; i++) {
+            float s = sampleRing[(sampleRingPos + i) % FRAME_SIZE];
+            float emphasized = s - PRE_EMPHASIS * prev;
+            prev = s;
+            re[i] = emphasized * window[i];
+            im[i] = 0;
+            energy += s * s;
+        }
+        // Sample just before the next frame starts, for its pre-emphasis
+        lastSample = sampleRing[(sampleRingPos + HOP_SIZE - 1) % FRAME_SIZE];
+        for (int i = FRAME_SIZE; i < FFT_SIZE; i++) {
+            re[i] = 0;
+            im[i] = 0;
+        }
+
+        fft();
+
+        for (int m = 0; m < NUM_MEL; m++) {
+            float sum = 0;
+            float[] weights = melWeights[m];
+            for (int k = melStart[m]; k < melEnd[m]; k++) {
+                float power = re[k] * re[k] + im[k] * im[k];
+                sum += power * weights[k - melStart[m]];
+            }
+            melEnergies[m] = (float) Math.log(sum + 1e-6f);
+        }
+
+        float[] features = featureRing[featurePos];
+        for (int c = 0; c < NUM_CEPS; c++) {
+            float sum = 0;
+            float[] row = dct[c];
+            for (int m = 0; m < NUM_MEL; m++) {
+                sum += row[m] * melEnergies[m];
+            }
+            features[c] = sum;
+        }
+        energyRing[featurePos] = (float) Math.log(energy + 1);
+
+        featurePos = (featurePos + 1) % RING_FRAMES;
+        framesSeen++;
+    }
+
+    private void fft() {
+        for (int i = 0; i < FFT_SIZE; i++) {
+            int j = bitReverse[i];
+            if (j > i) {
+                float t = re[i]; re[i] = re[j]; re[j] = t;
+                t = im[i]; im[i] = im[j]; im[j] = t;
+            }
+        }
+        for (int size = 2; size <= FFT_SIZE; size <<= 1) {
+            int half = size >> 1;
+            int step = FFT_SIZE / size;
+            for (int start = 0; start < FFT_SIZE; start += size) {
+                for (int k = 0; k < half; k++) {
+                    float wr = cosTable[k * step];
+                    float wi = -sinTable[k * step];
+                    int a = start + k;
+                    int b = a + half;
+                    float tr = re[b] * wr - im[b] * wi;
+                    float ti = re[b] * wi + im[b] * wr;
+                    re[b] = re[a] - tr;
+                    im[b] = im[a] - ti;
+                    re[a] += tr;
+                    im[a] += ti;
+                }
+            }
+        }
+    }
+
+    private boolean match() {
+        if (framesSeen - lastDetectionFrame < REFRACTORY_FRAMES) {
+            return false;
+        }
+
+        float best = Float.MAX_VALUE;
+        synchronized (this) {
+            for (float[][] template : templates) {
+                int windowFrames = (int) Math.ceil(template.length * WINDOW_STRETCH);
+                if (framesSeen < windowFrames || !hasSpeech(windowFrames)) {
+                    continue;
+                }
+                best = Math.min(best, dtw(template, windowFrames));
+            }
+        }
+
+        lastScore = best;
+        if (best < threshold) {
+            lastDetectionFrame = framesSeen;
+            return true;
+        }
+        return false;
+    }
+
+    private boolean hasSpeech(int windowFrames) {
+        for (int j = 0; j < windowFrames; j++) {
+            if (energyRing[ringIndex(windowFrames, j)] >= MIN_SPEECH_LOG_ENERGY) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private int ringIndex(int windowFrames, int j) {
+        return (featurePos - windowFrames + j + RING_FRAMES) % RING_FRAMES;
+    }
+
+    /**
+     * Open-begin DTW: the template may start anywhere in the window but must end in the
+     * last DETECT_STRIDE frames. Returns the path-length normalized distance.
+     */
+    private float dtw(float[][] template, int windowFrames) {
+        for (int j = 0; j < windowFrames; j++) {
+            dtwPrev[j] = distance(template[0], featureRing[ringIndex(windowFrames, j)]);
+            lenPrev[j] = 1;
+        }
+
+        for (int i = 1; i < template.length; i++) {
+            float[] t = template[i];
+            dtwCurr[0] = dtwPrev[0] + distance(t, featureRing[ringIndex(windowFrames, 0)]);
+            lenCurr[0] = lenPrev[0] + 1;
+            for (int j = 1; j < windowFrames; j++) {
+                float best = dtwPrev[j - 1];
+                int len = lenPrev[j - 1];
+                if (dtwPrev[j] < best) { best = dtwPrev[j]; len = lenPrev[j]; }
+                if (dtwCurr[j - 1] < best) { best = dtwCurr[j - 1]; len = lenCurr[j - 1]; }
+                dtwCurr[j] = best + distance(t, featureRing[ringIndex(windowFrames, j)]);
+                lenCurr[j] = len + 1;
+            }
+            float[] swap = dtwPrev; dtwPrev = dtwCurr; dtwCurr = swap;
+            int[] swapLen = lenPrev; lenPrev = lenCurr; lenCurr = swapLen;
+        }
+
+        float best = Float.MAX_VALUE;
+        for (int j = Math.max(0, windowFrames - DETECT_STRIDE); j < windowFrames; j++) {
+            best = Math.min(best, dtwPrev[j] / lenPrev[j]);
+        }
+        return best;
+    }
+
+    private static float distance(float[] a, float[] b) {
+        float sum = 0;
+        for (int i = 0; i < NUM_CEPS; i++) {
+            float d = a[i] - b[i];
+            sum += d * d;
+        }
+        return (float) Math.sqrt(sum);
+    }
+
+    private void initMelFilterbank() {
+        double maxMel = hzToMel(SAMPLE_RATE / 2.0);
+        double minMel = hzToMel(60);
+        int[] bins = new int[NUM_MEL + 2];
+        for (int i = 0; i < bins.length; i++) {
+            double mel = minMel + (maxMel - minMel) * i / (NUM_MEL + 1);
+            bins[i] = (int) Math.floor((FFT_SIZE + 1) * melToHz(mel) / SAMPLE_RATE);
+        }
+        for (int m = 0; m < NUM_MEL; m++) {
+            int left = bins[m];
+            int center = Math.max(bins[m + 1], left + 1);
+            int right = Math.max(bins[m + 2], center + 1);
+            melStart[m] = left;
+            melEnd[m] = Math.min(right, FFT_SIZE / 2 + 1);
+            float[] weights = new float[melEnd[m] - left];
+            for (int k = left; k < melEnd[m]; k++) {
+                weights[k - left] = k < center
+                        ? (float) (k - left) / (center - left)
+                        : (float) (right - k) / (right - center);
+            }
+            melWeights[m] = weights;
+        }
+    }
+
+    private static double hzToMel(double hz) {
+        return 2595 * Math.log10(1 + hz / 700);
+    }
+
+    private static double melToHz(double mel) {
+        return 700 * (Math.pow(10, mel / 2595) - 1);
+    }
+}
@@ -0,0 +1,220 @@
+package com.fullsend.jarvis.ai;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+import java.io.File;
+import java.io.IOException;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Records the user saying the wake phrase and stores the takes as WakeWordDetector templates
+ *
+ * Features:
+ * - Each take is a fixed-length microphone recording on its own audio thread, cut down to
+ *   the phrase against the take's own noise floor; takes without enough speech are rejected
+ * - Takes are only written to the template directory once all of them are usable, so a
+ *   failed enrollment leaves the previous templates in place
+ * - loadTemplates() is what VoiceManager runs at startup to turn on-device detection on
+ */
+public class WakeWordEnrollment {
+
+    private static final String TAG = "WakeWordEnrollment";
+
+    // Several takes cover the natural variation in how the phrase is said
+    public static final int TAKES = 3;
+
+    // Long enough for "hey jarvis" with some slack at either end
+    static final int TAKE_SAMPLES = WakeWordDetector.SAMPLE_RATE * 2;
+
+    // Speech is whatever is this much louder than the quietest tenth of the take
+    private static final double SPEECH_ABOVE_FLOOR_DB = 12.0;
+    private static final int PADDING_HOPS = 5;           // 50 ms kept around the phrase
+
+    private static final String TEMPLATE_PREFIX = "template_";
+    private static final String TEMPLATE_SUFFIX = ".wav";
+
+    public interface TakeCallback {
+        // pcm is null when the microphone could not be recorded
+        void onTakeRecorded(short[] pcm);
+    }
+
+    private final File templateDir;
+    private final List<short[]> takes = new ArrayList<>();
+
+    public WakeWordEnrollment(File templateDir) {
+        this.templateDir = templateDir;
+    }
+
+    /**
+     * Keep a recorded take; false when it holds too little speech to be a template
+     */
+    public boolean addTake(short[] pcm) {
+        short[] speech = trimToSpeech(pcm);
+        try {
+            // A scratch detector applies the same checks as enrollment will
+            new WakeWordDetector().addTemplate(speech);
+        } catch (IllegalArgumentException e) {
+            Log.d(TAG, "Rejected wake word take: " + e.getMessage());
+            return false;
+        }
+        takes.add(speech);
+        return true;
+    }
+
+    /**
+     * Cut a take down to the spoken phrase. Room noise in a microphone take is usually loud
+     * enough to pass the detector's fixed speech gate, so the gate here is relative to the
+     * take's own noise floor; a take with nothing above it comes back empty.
+     */
+    static short[] trimToSpeech(short[] pcm) {
+        int hops = pcm.length / WakeWordDetector.HOP_SIZE;
+        if (hops == 0) {
+            return new short[0];
+        }
+        double[] levels = new double[hops];
+        for (int h = 0; h < hops; h++) {
+            double sum = 0;
+            for (int i = h * WakeWordDetector.HOP_SIZE; i < (h + 1) * WakeWordDetector.HOP_SIZE; i++) {
+                sum += (double) pcm[i] * pcm[i];
+            }
+            levels[h] = 10 * Math.log10(sum / WakeWordDetector.HOP_SIZE + 1);
+        }
+        double[] sorted = levels.clone();
+        Arrays.sort(sorted);
+        double gate = sorted[hops / 10] + SPEECH_ABOVE_FLOOR_DB;
+
+        int first = -1;
+        int last = -1;
+        for (int h = 0; h < hops; h++) {
+            if (levels[h] >= gate) {
+                if (first < 0) {
+                    first = h;
+                }
+                last = h;
+            }
+        }
+        if (first < 0) {
+            return new short[0];
+        }
+        first = Math.max(0, first - PADDING_HOPS);
+        last = Math.min(hops - 1, last + PADDING_HOPS);
+        return Arrays.copyOfRange(pcm, first * WakeWordDetector.HOP_SIZE, (last + 1) * WakeWordDetector.HOP_SIZE);
+    }
+
+    public int getTakeCount() {
+        return takes.size();
+    }
+
+    public boolean isComplete() {
+        return takes.size() >= TAKES;
+    }
+
+    /**
+     * Replace the stored templates with the recorded takes and load them into the detector
+     */
+    public void commit(WakeWordDetector detector) throws IOException {
+        if (!templateDir.isDirectory() && !templateDir.mkdirs()) {
+            throw new IOException("Unable to create " + templateDir);
+        }
+        deleteTemplates(templateDir);
+        for (int i = 0; i < takes.size(); i++) {
+            new WavAudio(takes.get(i), WakeWordDetector.SAMPLE_RATE)
+                    .write(new File(templateDir, TEMPLATE_PREFIX + i + TEMPLATE_SUFFIX));
+        }
+
+        detector.clearTemplates();
+        for (short[] take : takes) {
+            detector.addTemplate(take);
+        }
+        Log.i(TAG, "Enrolled wake word with " + takes.size() + " takes");
+    }
+
+    /**
+     * Load every stored template into the detector; returns how many were usable
+     */
+    public static int loadTemplates(File templateDir, WakeWordDetector detector) {
+        File[] templates = templateDir.listFiles((dir, name) -> name.endsWith(TEMPLATE_SUFFIX));
+        if (templates == null) {
+            return 0;
+        }
+        int loaded = 0;
+        for (File template : templates) {
+            try {
+                detector.addTemplate(template);
+                loaded++;
+            } catch (IOException | IllegalArgumentException e) {
+                Log.w(TAG, "Skipping wake word template " + template.getName(), e);
+            }
+        }
+        return loaded;
+    }
+
+    private static void deleteTemplates(File templateDir) {
+        File[] templates = templateDir.listFiles((dir, name) -> name.endsWith(TEMPLATE_SUFFIX));
+        if (templates != null) {
+            for (File template : templates) {
+                if (!template.delete()) {
+                    Log.w(TAG, "Unable to delete old template " + template.getName());
+                }
+            }
+        }
+    }
+
+    /**
+     * Record one take on an audio thread; the callback runs on the main thread after the
+     * microphone has been released
+     */
+    public static void recordTake(TakeCallback callback) {
+        Handler mainHandler = new Handler(Looper.getMainLooper());
+        new Thread(() -> {
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            short[] pcm = record();
+            mainHandler.post(() -> callback.onTakeRecorded(pcm));
+        }, "WakeWordEnrollment").start();
+    }
+
+    private static short[] record() {
+        int minBuffer = AudioRecord.getMinBufferSize(WakeWordDetector.SAMPLE_RATE,
+                AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+        AudioRecord recorder;
+        try {
+            recorder = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION,
+                    WakeWordDetector.SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                    AudioFormat.ENCODING_PCM_16BIT, Math.max(minBuffer, WakeWordDetector.HOP_SIZE * 2 * 8));
+        } catch (SecurityException | IllegalArgumentException e) {
+            Log.e(TAG, "Unable to open microphone", e);
+            return null;
+        }
+        if (recorder.getState() != AudioRecord.STATE_INITIALIZED) {
+            Log.e(TAG, "AudioRecord failed to initialize");
+            recorder.release();
+            return null;
+        }
+
+        short[] pcm = new short[TAKE_SAMPLES];
+        int count = 0;
+        try {
+            recorder.startRecording();
+            while (count < pcm.length) {
+                int read = recorder.read(pcm, count, Math.min(WakeWordDetector.HOP_SIZE, pcm.length - count));
+                if (read < 0) {
+                    Log.e(TAG, "Microphone read failed with error " + read);
+                    return null;
+                }
+                count += read;
+            }
+        } finally {
+            recorder.stop();
+            recorder.release();
+        }
+        return pcm;
+    }
+}
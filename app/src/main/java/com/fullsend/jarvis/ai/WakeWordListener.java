@@ -0,0 +1,190 @@
+package com.fullsend.jarvis.ai;
+
+import android.media.AudioFormat;
+import android.media.AudioRecord;
+import android.media.MediaRecorder;
+import android.os.Handler;
+import android.os.Looper;
+import android.os.Process;
+import android.util.Log;
+
+/**
+ * Microphone loop that feeds raw PCM hops into a WakeWordDetector
+ *
+ * Runs on its own audio-priority thread with a single reused buffer and only hands
+ * control to the main thread when the wake word is detected or capture fails.
+ * The callbacks run after the microphone has been released, so the speech recognizer
+ * can take it right away; stop() never blocks the caller.
+ */
+public class WakeWordListener {
+
+    private static final String TAG = "WakeWordListener";
+
+    // A dead audio server connection is recovered by reopening the recorder, with backoff
+    private static final int MAX_REOPEN_ATTEMPTS = 5;
+    private static final long INITIAL_REOPEN_DELAY_MS = 100;
+    private static final long MAX_REOPEN_DELAY_MS = 2000;
+
+    // readUntilDone() result when the wake word was heard; 0 means stopped, negative a read error
+    private static final int DETECTED = 1;
+
+    // How long a new capture waits for the previous one to release the microphone
+    private static final long PREVIOUS_CAPTURE_TIMEOUT_MS = 1000;
+
+    public interface Callback {
+        void onWakeWordDetected(float score);
+    }
+
+    public interface ErrorCallback {
+        void onListenerFailed(String reason);
+    }
+
+    private final WakeWordDetector detector;
+    private final Callback callback;
+    private final ErrorCallback errorCallback;
+    private final Handler mainHandler = new Handler(Looper.getMainLooper());
+
+    // Guarded by this; each start() gets its own capture so a late stop cannot leak into the next one
+    private Capture capture;
+
+    public WakeWordListener(WakeWordDetector detector, Callback callback, ErrorCallback errorCallback) {
+        this.detector = detector;
+        this.callback = callback;
+        this.errorCallback = errorCallback;
+    }
+
+    public synchronized void start() {
+        if (capture != null && capture.active) {
+            return;
+        }
+        capture = new Capture(capture != null ? capture.thread : null);
+        capture.thread.start();
+        Log.d(TAG, "Wake word listener started");
+    }
+
+    /**
+     * Stop capturing; the audio thread releases the microphone shortly after, without being waited for
+     */
+    public synchronized void stop() {
+        if (capture != null) {
+            capture.active = false;
+        }
+    }
+
+    public synchronized boolean isRunning() {
+        return capture != null && capture.active;
+    }
+
+    private final class Capture implements Runnable {
+        final Thread thread = new Thread(this, "WakeWordListener");
+        final Thread previous;
+        volatile boolean active = true;
+        float detectedScore;
+
+        Capture(Thread previous) {
+            this.previous = previous;
+        }
+
+        @Override
+        public void run() {
+            // The previous capture may still be releasing the microphone (and using the detector)
+            if (previous != null) {
+                try {
+                    previous.join(PREVIOUS_CAPTURE_TIMEOUT_MS);
+                } catch (InterruptedException e) {
+                    return;
+                }
+            }
+            Process.setThreadPriority(Process.THREAD_PRIORITY_URGENT_AUDIO);
+            detector.reset();
+
+            short[] hop = new short[WakeWordDetector.HOP_SIZE];
+            long reopenDelay = INITIAL_REOPEN_DELAY_MS;
+            int reopenAttempts = 0;
+            String error = null;
+
+            while (active) {
+                AudioRecord recorder = open();
+                if (recorder == null) {
+                    error = "Unable to open microphone";
+                    break;
+                }
+
+                int result;
+                try {
+                    recorder.startRecording();
+                    result = readUntilDone(recorder, hop);
+                } finally {
+                    recorder.stop();
+                    recorder.release();
+                }
+
+                if (result == DETECTED) {
+                    final float score = detectedScore;
+                    mainHandler.post(() -> callback.onWakeWordDetected(score));
+                    break;
+                } else if (result == AudioRecord.ERROR_DEAD_OBJECT && active && reopenAttempts < MAX_REOPEN_ATTEMPTS) {
+                    reopenAttempts++;
+                    Log.w(TAG, "Audio recorder died, reopening in " + reopenDelay + " ms");
+                    try {
+                        Thread.sleep(reopenDelay);
+                    } catch (InterruptedException e) {
+                        break;
+                    }
+                    reopenDelay = Math.min(reopenDelay * 2, MAX_REOPEN_DELAY_MS);
+                } else if (result < 0) {
+                    error = "Microphone read failed with error " + result;
+                    break;
+                }
+            }
+
+            if (error != null && active) {
+                active = false;
+                Log.e(TAG, error);
+                final String reason = error;
+                mainHandler.post(() -> errorCallback.onListenerFailed(reason));
+            }
+        }
+
+        /**
+         * Feed the detector until stopped (0), detected (DETECTED) or a read error (< 0);
+         * only a read of zero samples is retried
+         */
+        private int readUntilDone(AudioRecord recorder, short[] hop) {
+            while (active) {
+                int read = recorder.read(hop, 0, hop.length);
+                if (read < 0) {
+                    return read;
+                }
+                if (read > 0 && detector.process(hop, 0, read)) {
+                    detectedScore = detector.getLastScore();
+                    Log.d(TAG, "Wake word detected, score " + detectedScore);
+                    active = false;
+                    return DETECTED;
+                }
+            }
+            return 0;
+        }
+
+        private AudioRecord open() {
+            int minBuffer = AudioRecord.getMinBufferSize(WakeWordDetector.SAMPLE_RATE,
+                    AudioFormat.CHANNEL_IN_MONO, AudioFormat.ENCODING_PCM_16BIT);
+            AudioRecord recorder;
+            try {
+                recorder = new AudioRecord(MediaRecorder.AudioSource.VOICE_RECOGNITION,
+                        WakeWordDetector.SAMPLE_RATE, AudioFormat.CHANNEL_IN_MONO,
+                        AudioFormat.ENCODING_PCM_16BIT, Math.max(minBuffer, WakeWordDetector.HOP_SIZE * 2 * 8));
+            } catch (SecurityException | IllegalArgumentException e) {
+                Log.e(TAG, "Unable to open microphone", e);
+                return null;
+            }
+
+            if (recorder.getState() != AudioRecord.STATE_INITIALIZED) {
+                Log.e(TAG, "AudioRecord failed to initialize");
+                recorder.release();
+                return null;
+            }
+            return recorder;
+        }
+    }
+}
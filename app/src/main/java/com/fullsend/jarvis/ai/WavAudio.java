@@ -0,0 +1,138 @@
+package com.fullsend.jarvis.ai;
+
+import java.io.DataInputStream;
+import java.io.File;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.InputStream;
+import java.io.OutputStream;
+
+/**
+ * 16-bit PCM mono WAV clip (wake word templates, synthesized speech)
+ */
+public class WavAudio {
+
+    private static final int READ_BUFFER_BYTES = 8192;
+    private static final int WAV_HEADER_BYTES = 44;
+
+    public final short[] samples;
+    public final int sampleRate;
+
+    public WavAudio(short[] samples, int sampleRate) {
+        this.samples = samples;
+        this.sampleRate = sampleRate;
+    }
+
+    /**
+     * Read a 16-bit little-endian mono PCM WAV stream; the stream is closed
+     */
+    public static WavAudio read(InputStream input) throws IOException {
+        try (DataInputStream in = new DataInputStream(input)) {
+            byte[] id = new byte[4];
+            in.readFully(id);
+            if (!"RIFF".equals(new String(id, "US-ASCII"))) {
+                throw new IOException("Not a RIFF file");
+            }
+            in.skipBytes(4);
+            in.readFully(id);
+            if (!"WAVE".equals(new String(id, "US-ASCII"))) {
+                throw new IOException("Not a WAVE file");
+            }
+
+            int sampleRate = 0;
+            while (true) {
+                in.readFully(id);
+                int chunkSize = Integer.reverseBytes(in.readInt());
+                String chunk = new String(id, "US-ASCII");
+                if ("fmt ".equals(chunk)) {
+                    int format = Short.reverseBytes(in.readShort());
+                    int channels = Short.reverseBytes(in.readShort());
+                    sampleRate = Integer.reverseBytes(in.readInt());
+                    in.skipBytes(6);
+                    int bits = Short.reverseBytes(in.readShort());
+                    if (format != 1 || channels != 1 || bits != 16) {
+                        throw new IOException("Expected mono 16-bit PCM, got format " + format + ", "
+                                + channels + " ch, " + bits + " bit");
+                    }
+                    in.skipBytes(chunkSize - 16);
+                } else if ("data".equals(chunk)) {
+                    if (sampleRate == 0) {
+                        throw new IOException("WAV data chunk before fmt chunk");
+                    }
+                    // Streaming writers may leave the size unset; read until EOF in that case
+                    int declared = chunkSize > 0 ? chunkSize / 2 : Integer.MAX_VALUE / 2;
+                    short[] samples = new short[Math.min(declared, 1 << 16)];
+                    int count = 0;
+                    // Bulk reads; a sample split across two reads is carried over in buffer[0]
+                    byte[] buffer = new byte[READ_BUFFER_BYTES];
+                    int carried = 0;
+                    while (count < declared) {
+                        long remainingBytes = (long) (declared - count) * 2 - carried;
+                        int read = in.read(buffer, carried, (int) Math.min(buffer.length - carried, remainingBytes));
+                        if (read < 0) {
+                            // Truncated recording; keep what was read
+                            break;
+                        }
+                        int available = carried + read;
+                        int pairs = available / 2;
+                        if (count + pairs > samples.length) {
+                            short[] grown = new short[Math.min(declared, Math.max(samples.length * 2, count + pairs))];
+                            System.arraycopy(samples, 0, grown, 0, count);
+                            samples = grown;
+                        }
+                        for (int i = 0; i < pairs; i++) {
+                            samples[count++] = (short) ((buffer[2 * i] & 0xFF) | buffer[2 * i + 1] << 8);
+                        }
+                        carried = available & 1;
+                        if (carried != 0) {
+                            buffer[0] = buffer[available - 1];
+                        }
+                    }
+                    if (count < samples.length) {
+                        short[] trimmed = new short[count];
+                        System.arraycopy(samples, 0, trimmed, 0, count);
+                        samples = trimmed;
+                    }
+                    return new WavAudio(samples, sampleRate);
+                } else {
+                    in.skipBytes(chunkSize + (chunkSize & 1));
+                }
+            }
+        }
+    }
+
+    /**
+     * Write the clip as a 16-bit little-endian mono PCM WAV file
+     */
+    public void write(File file) throws IOException {
+        byte[] bytes = new byte[WAV_HEADER_BYTES + samples.length * 2];
+        System.arraycopy("RIFF".getBytes("US-ASCII"), 0, bytes, 0, 4);
+        putInt(bytes, 4, bytes.length - 8);
+        System.arraycopy("WAVEfmt ".getBytes("US-ASCII"), 0, bytes, 8, 8);
+        putInt(bytes, 16, 16);
+        putShort(bytes, 20, 1);
+        putShort(bytes, 22, 1);
+        putInt(bytes, 24, sampleRate);
+        putInt(bytes, 28, sampleRate * 2);
+        putShort(bytes, 32, 2);
+        putShort(bytes, 34, 16);
+        System.arraycopy("data".getBytes("US-ASCII"), 0, bytes, 36, 4);
+        putInt(bytes, 40, samples.length * 2);
+        for (int i = 0; i < samples.length; i++) {
+            putShort(bytes, WAV_HEADER_BYTES + i * 2, samples[i]);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(bytes);
+        }
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        putShort(buffer, offset, value);
+        putShort(buffer, offset + 2, value >> 16);
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+}
@@ -2,8 +2,8 @@ package com.fullsend.jarvis.obd;
 
 import android.util.Log;
 
-import java.util.HashMap;
-import java.util.Map;
+import java.util.Collections;
+import java.util.List;
 
 public class DiagnosticCommandSet {
     private static final String TAG = "DiagnosticCommandSet";
@@ -298,79 +298,73 @@ public class DiagnosticCommandSet {
         public static final int MB_SAM = 0x00;           // Signal Acquisition Module
     }
     
-    // Diagnostic trouble code interpretation
+    // Diagnostic trouble code interpretation, backed by the generated DtcDatabase.
+    // The int overloads take packed DTCs (DtcCode); the String ones parse the code text first.
     public static class DTCInterpreter {
-        private static final Map<String, String> DTC_DESCRIPTIONS = new HashMap<>();
-        
-        static {
-            // Common OBD-II codes
-            DTC_DESCRIPTIONS.put("P0000", "No fault");
-            DTC_DESCRIPTIONS.put("P0001", "Fuel Volume Regulator Control Circuit/Open");
-            DTC_DESCRIPTIONS.put("P0002", "Fuel Volume Regulator Control Circuit Range/Performance");
-            DTC_DESCRIPTIONS.put("P0003", "Fuel Volume Regulator Control Circuit Low");
-            DTC_DESCRIPTIONS.put("P0004", "Fuel Volume Regulator Control Circuit High");
-            DTC_DESCRIPTIONS.put("P0005", "Fuel Shutoff Valve A Control Circuit/Open");
-            DTC_DESCRIPTIONS.put("P0010", "A Camshaft Position Actuator Circuit (Bank 1)");
-            DTC_DESCRIPTIONS.put("P0011", "A Camshaft Position - Timing Over-Advanced or System Performance (Bank 1)");
-            DTC_DESCRIPTIONS.put("P0012", "A Camshaft Position - Timing Over-Retarded (Bank 1)");
-            DTC_DESCRIPTIONS.put("P0013", "B Camshaft Position Actuator Circuit (Bank 1)");
-            DTC_DESCRIPTIONS.put("P0014", "B Camshaft Position - Timing Over-Advanced or System Performance (Bank 1)");
-            DTC_DESCRIPTIONS.put("P0015", "B Camshaft Position - Timing Over-Retarded (Bank 1)");
-            DTC_DESCRIPTIONS.put("P0016", "Crankshaft Position Camshaft Position Correlation (Bank 1 Sensor A)");
-            DTC_DESCRIPTIONS.put("P0017", "Crankshaft Position Camshaft Position Correlation (Bank 1 Sensor B)");
-            DTC_DESCRIPTIONS.put("P0018", "Crankshaft Position Camshaft Position Correlation (Bank 2 Sensor A)");
-            DTC_DESCRIPTIONS.put("P0019", "Crankshaft Position Camshaft Position Correlation (Bank 2 Sensor B)");
-            DTC_DESCRIPTIONS.put("P0020", "A Camshaft Position Actuator Circuit (Bank 2)");
-            DTC_DESCRIPTIONS.put("P0100", "Mass or Volume Air Flow Circuit Malfunction");
-            DTC_DESCRIPTIONS.put("P0101", "Mass or Volume Air Flow Circuit Range/Performance Problem");
-            DTC_DESCRIPTIONS.put("P0102", "Mass or Volume Air Flow Circuit Low Input");
-            DTC_DESCRIPTIONS.put("P0103", "Mass or Volume Air Flow Circuit High Input");
-            DTC_DESCRIPTIONS.put("P0104", "Mass or Volume Air Flow Circuit Intermittent");
-            DTC_DESCRIPTIONS.put("P0105", "Manifold Absolute Pressure/Barometric Pressure Circuit Malfunction");
-            DTC_DESCRIPTIONS.put("P0106", "Manifold Absolute Pressure/Barometric Pressure Circuit Range/Performance Problem");
-            DTC_DESCRIPTIONS.put("P0107", "Manifold Absolute Pressure/Barometric Pressure Circuit Low Input");
-            DTC_DESCRIPTIONS.put("P0108", "Manifold Absolute Pressure/Barometric Pressure Circuit High Input");
-            DTC_DESCRIPTIONS.put("P0109", "Manifold Absolute Pressure/Barometric Pressure Circuit Intermittent");
-            DTC_DESCRIPTIONS.put("P0110", "Intake Air Temperature Circuit Malfunction");
-            DTC_DESCRIPTIONS.put("P0300", "Random/Multiple Cylinder Misfire Detected");
-            DTC_DESCRIPTIONS.put("P0301", "Cylinder 1 Misfire Detected");
-            DTC_DESCRIPTIONS.put("P0302", "Cylinder 2 Misfire Detected");
-            DTC_DESCRIPTIONS.put("P0303", "Cylinder 3 Misfire Detected");
-            DTC_DESCRIPTIONS.put("P0304", "Cylinder 4 Misfire Detected");
-            DTC_DESCRIPTIONS.put("P0305", "Cylinder 5 Misfire Detected");
-            DTC_DESCRIPTIONS.put("P0306", "Cylinder 6 Misfire Detected");
-            DTC_DESCRIPTIONS.put("P0420", "Catalyst System Efficiency Below Threshold (Bank 1)");
-            DTC_DESCRIPTIONS.put("P0430", "Catalyst System Efficiency Below Threshold (Bank 2)");
-            DTC_DESCRIPTIONS.put("P0500", "Vehicle Speed Sensor Malfunction");
-            DTC_DESCRIPTIONS.put("P0600", "Serial Communication Link Malfunction");
-            DTC_DESCRIPTIONS.put("P0700", "Transmission Control System Malfunction");
-            
-            // Add more manufacturer-specific codes as needed
-        }
         
         public static String getDescription(String dtcCode) {
-            return DTC_DESCRIPTIONS.getOrDefault(dtcCode, "Unknown DTC: " + dtcCode);
+            return getDescription(dtcCode, Manufacturer.GENERIC_OBD2);
+        }
+        
+        public static String getDescription(String dtcCode, Manufacturer manufacturer) {
+            int code = DtcCode.parse(dtcCode);
+            return code >= 0 ? getDescription(code, manufacturer) : "Unknown DTC: " + dtcCode;
+        }
+        
+        public static String getDescription(int dtc, Manufacturer manufacturer) {
+            DtcDatabase database = DtcDatabase.get();
+            int code = DtcCode.code(dtc);
+            int entry = database.find(code, manufacturer);
+            if (entry >= 0) {
+                return database.description(entry);
+            }
+            int range = database.findRange(code);
+            return range >= 0 ? "Unknown DTC: " + DtcCode.format(dtc) + " (" + database.rangeDescription(range) + ")"
+                               : "Unknown DTC: " + DtcCode.format(dtc);
+        }
+        
+        /**
+         * Recommended next step for the code, or null if the database has none
+         */
+        public static String getRecommendedAction(int dtc, Manufacturer manufacturer) {
+            DtcDatabase database = DtcDatabase.get();
+            int entry = database.find(DtcCode.code(dtc), manufacturer);
+            return entry >= 0 ? database.recommendedAction(entry) : null;
+        }
+        
+        public static String getRecommendedAction(String dtcCode, Manufacturer manufacturer) {
+            int code = DtcCode.parse(dtcCode);
+            return code >= 0 ? getRecommendedAction(code, manufacturer) : null;
+        }
+        
+        public static List<String> getPossibleCauses(int dtc, Manufacturer manufacturer) {
+            DtcDatabase database = DtcDatabase.get();
+            int entry = database.find(DtcCode.code(dtc), manufacturer);
+            return entry >= 0 ? database.possibleCauses(entry) : Collections.<String>emptyList();
+        }
+        
+        public static List<String> getPossibleCauses(String dtcCode, Manufacturer manufacturer) {
+            int code = DtcCode.parse(dtcCode);
+            return code >= 0 ? getPossibleCauses(code, manufacturer) : Collections.<String>emptyList();
         }
         
         public static String getDTCCategory(String dtcCode) {
-            if (dtcCode.startsWith("P0")) return "Powertrain (Generic)";
-            if (dtcCode.startsWith("P1")) return "Powertrain (Manufacturer)";
-            if (dtcCode.startsWith("P2")) return "Powertrain (Generic)";
-            if (dtcCode.startsWith("P3")) return "Powertrain (Manufacturer)";
-            if (dtcCode.startsWith("B")) return "Body";
-            if (dtcCode.startsWith("C")) return "Chassis";
-            if (dtcCode.startsWith("U")) return "Network Communication";
-            return "Unknown";
+            int code = DtcCode.parse(dtcCode);
+            return code >= 0 ? DtcCode.category(code) : "Unknown";
+        }
+        
+        public static DtcDatabase.Severity getSeverity(int dtc, Manufacturer manufacturer) {
+            return DtcDatabase.get().severityOf(DtcCode.code(dtc), manufacturer);
         }
         
         public static String getDTCSeverity(String dtcCode) {
-            // Basic severity classification
-            if (dtcCode.matches("P03[0-9][0-9]")) return "Critical - Engine Misfire";
-            if (dtcCode.matches("P04[2-3][0-9]")) return "High - Emissions System";
-            if (dtcCode.matches("P06[0-9][0-9]")) return "High - Communication Error";
-            if (dtcCode.matches("P07[0-9][0-9]")) return "High - Transmission System";
-            if (dtcCode.matches("P0[1-2][0-9][0-9]")) return "Medium - Sensor Circuit";
-            return "Low - Informational";
+            int code = DtcCode.parse(dtcCode);
+            if (code < 0) {
+                return DtcDatabase.Severity.LOW.label + " - Informational";
+            }
+            int range = DtcDatabase.get().findRange(code);
+            return getSeverity(code, Manufacturer.GENERIC_OBD2).label + " - "
+                    + (range >= 0 ? DtcDatabase.get().rangeDescription(range) : "Informational");
         }
     }
     
@@ -0,0 +1,132 @@
+package com.fullsend.jarvis.obd;
+
+/**
+ * Diagnostic trouble codes carried as packed ints, so reading DTCs never allocates per code
+ *
+ * Features:
+ * - Bits 0-15: the SAE J2012 code exactly as the ECU sends it (2 bits letter P/C/B/U,
+ *   2 bits first digit, 12 bits for the remaining hex digits); this is the DtcDatabase key
+ * - Bits 16-23: UDS failure type byte (0 for OBD-II services 03/07)
+ * - Bits 24-31: UDS statusOfDTC byte; Service 03 codes are marked confirmed, Service 07 pending
+ * - Category and manufacturer-specific checks are table lookups on the top nibble
+ * - Text is produced only by format()/appendTo(), at the UI boundary
+ */
+public final class DtcCode {
+
+    /** The all-zero code ECUs use to pad DTC responses */
+    public static final int NO_DTC = 0;
+
+    // ISO 14229-1 statusOfDTC bits
+    public static final int STATUS_TEST_FAILED = 0x01;
+    public static final int STATUS_TEST_FAILED_THIS_CYCLE = 0x02;
+    public static final int STATUS_PENDING = 0x04;
+    public static final int STATUS_CONFIRMED = 0x08;
+    public static final int STATUS_NOT_COMPLETED_SINCE_CLEAR = 0x10;
+    public static final int STATUS_FAILED_SINCE_CLEAR = 0x20;
+    public static final int STATUS_NOT_COMPLETED_THIS_CYCLE = 0x40;
+    public static final int STATUS_WARNING_INDICATOR = 0x80;
+
+    private static final char[] LETTERS = {'P', 'C', 'B', 'U'};
+    private static final char[] HEX_DIGITS = "0123456789ABCDEF".toCharArray();
+
+    // Indexed by the top nibble: letter * 4 + first digit
+    private static final String[] CATEGORIES = {
+            "Powertrain (Generic)", "Powertrain (Manufacturer)", "Powertrain (Generic)", "Powertrain (Manufacturer)",
+            "Chassis (Generic)", "Chassis (Manufacturer)", "Chassis (Manufacturer)", "Chassis (Reserved)",
+            "Body (Generic)", "Body (Manufacturer)", "Body (Manufacturer)", "Body (Reserved)",
+            "Network Communication (Generic)", "Network Communication (Manufacturer)",
+            "Network Communication (Manufacturer)", "Network Communication (Reserved)"
+    };
+    private static final int MANUFACTURER_SPECIFIC_NIBBLES = 0b0110_0110_0110_1010;
+
+    private DtcCode() {
+    }
+
+    public static int pack(int code, int failureType, int status) {
+        return (code & 0xFFFF) | (failureType & 0xFF) << 16 | (status & 0xFF) << 24;
+    }
+
+    /**
+     * The 16-bit code from the two bytes of an OBD-II DTC response
+     */
+    public static int fromBytes(byte high, byte low) {
+        return (high & 0xFF) << 8 | (low & 0xFF);
+    }
+
+    public static int code(int dtc) {
+        return dtc & 0xFFFF;
+    }
+
+    public static int failureType(int dtc) {
+        return (dtc >>> 16) & 0xFF;
+    }
+
+    public static int status(int dtc) {
+        return dtc >>> 24;
+    }
+
+    /**
+     * True if any of the given status bits is set
+     */
+    public static boolean hasStatus(int dtc, int statusMask) {
+        return (status(dtc) & statusMask) != 0;
+    }
+
+    public static int withStatus(int dtc, int status) {
+        return (dtc & 0x00FFFFFF) | (status & 0xFF) << 24;
+    }
+
+    public static String category(int dtc) {
+        return CATEGORIES[code(dtc) >>> 12];
+    }
+
+    public static boolean isManufacturerSpecific(int dtc) {
+        return (MANUFACTURER_SPECIFIC_NIBBLES >>> (code(dtc) >>> 12) & 1) != 0;
+    }
+
+    /**
+     * 16-bit code of text like "P0301" (case-insensitive), or -1 if it is not a valid DTC
+     */
+    public static int parse(String text) {
+        if (text == null || text.length() != 5) {
+            return -1;
+        }
+        int letter = -1;
+        char first = Character.toUpperCase(text.charAt(0));
+        for (int i = 0; i < LETTERS.length; i++) {
+            if (LETTERS[i] == first) {
+                letter = i;
+            }
+        }
+        int digit = text.charAt(1) - '0';
+        if (letter < 0 || digit < 0 || digit > 3) {
+            return -1;
+        }
+        int code = letter << 14 | digit << 12;
+        for (int i = 2; i < 5; i++) {
+            int nibble = Character.digit(text.charAt(i), 16);
+            if (nibble < 0) {
+                return -1;
+            }
+            code |= nibble << ((4 - i) * 4);
+        }
+        return code;
+    }
+
+    /**
+     * Five-character code text, e.g. "P0301"; status and failure type are not included
+     */
+    public static String format(int dtc) {
+        return appendTo(new StringBuilder(5), dtc).toString();
+    }
+
+    public static StringBuilder appendTo(StringBuilder builder, int dtc) {
+        int code = code(dtc);
+        builder.append(LETTERS[code >>> 14]);
+        builder.append((char) ('0' + ((code >>> 12) & 0x3)));
+        builder.append(HEX_DIGITS[(code >>> 8) & 0xF]);
+        builder.append(HEX_DIGITS[(code >>> 4) & 0xF]);
+        builder.append(HEX_DIGITS[code & 0xF]);
+        return builder;
+    }
+}
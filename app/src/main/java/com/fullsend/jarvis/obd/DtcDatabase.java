@@ -0,0 +1,294 @@
+package com.fullsend.jarvis.obd;
+
+import android.content.Context;
+import android.content.res.AssetFileDescriptor;
+import android.util.Log;
+
+import java.io.ByteArrayOutputStream;
+import java.io.FileInputStream;
+import java.io.FileNotFoundException;
+import java.io.IOException;
+import java.io.InputStream;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.charset.StandardCharsets;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.List;
+
+/**
+ * Read-only DTC knowledge base, generated at build time from the JSON sources
+ * (app/dtc-database.gradle) and memory-mapped from assets
+ *
+ * Features:
+ * - Codes are keyed by their 16-bit SAE J2012 value (DtcCode.code), the same value ECUs
+ *   report in Service 03 and UDS 0x19
+ * - Fixed-size entries sorted by (code, manufacturer), binary-searched straight in the mapped
+ *   file; no parsing at lookup time, text is decoded only when a caller asks for it
+ * - Manufacturer-specific entries fall back to the generic entry for the same code
+ * - Code families (e.g. P03xx ignition/misfire) supply a description and severity for codes
+ *   without an entry of their own
+ *
+ * File layout (big-endian):
+ * - Header: magic "JDTC", version, then count and offset of the manufacturer, code and range tables
+ * - Manufacturer table: string offset per manufacturer id; id 0 is GENERIC_OBD2
+ * - Code entry (16 bytes): u16 code, u8 manufacturer id, u8 severity (0xFF = none),
+ *   description, possible causes ('\n'-separated) and recommended action as string offsets (-1 = none)
+ * - Range entry (12 bytes): u16 first code, u16 last code, u8 severity, 3 bytes padding, description
+ * - String pool: u16 byte length + UTF-8
+ */
+public final class DtcDatabase {
+
+    private static final String TAG = "DtcDatabase";
+
+    public static final String ASSET_PATH = "dtc/dtc_database.bin";
+
+    private static final int MAGIC = 0x4A445443; // "JDTC"
+    private static final int VERSION = 1;
+    private static final int HEADER_SIZE = 32;
+    private static final int CODE_ENTRY_SIZE = 16;
+    private static final int RANGE_ENTRY_SIZE = 12;
+    private static final int NO_SEVERITY = 0xFF;
+    private static final int GENERIC_ID = 0;
+
+    public enum Severity {
+        LOW("Low"),
+        MEDIUM("Medium"),
+        HIGH("High"),
+        CRITICAL("Critical");
+
+        public final String label;
+
+        Severity(String label) {
+            this.label = label;
+        }
+    }
+
+    private static final Severity[] SEVERITIES = Severity.values();
+
+    private static final DtcDatabase EMPTY = new DtcDatabase();
+    private static volatile DtcDatabase instance = EMPTY;
+
+    private final ByteBuffer buffer;
+    private final int codeCount;
+    private final int codeTable;
+    private final int rangeCount;
+    private final int rangeTable;
+    // Manufacturer ordinal -> id in this file, -1 if the file has no entries for it
+    private final int[] manufacturerIds;
+
+    private DtcDatabase() {
+        buffer = null;
+        codeCount = 0;
+        codeTable = 0;
+        rangeCount = 0;
+        rangeTable = 0;
+        manufacturerIds = new int[DiagnosticCommandSet.Manufacturer.values().length];
+        Arrays.fill(manufacturerIds, -1);
+        manufacturerIds[DiagnosticCommandSet.Manufacturer.GENERIC_OBD2.ordinal()] = GENERIC_ID;
+    }
+
+    private DtcDatabase(ByteBuffer buffer) throws IOException {
+        this.buffer = buffer;
+        if (buffer.capacity() < HEADER_SIZE || buffer.getInt(0) != MAGIC) {
+            throw new IOException("Not a DTC database");
+        }
+        if (buffer.getInt(4) != VERSION) {
+            throw new IOException("Unsupported DTC database version " + buffer.getInt(4));
+        }
+        int manufacturerCount = buffer.getInt(8);
+        int manufacturerTable = buffer.getInt(12);
+        codeCount = buffer.getInt(16);
+        codeTable = buffer.getInt(20);
+        rangeCount = buffer.getInt(24);
+        rangeTable = buffer.getInt(28);
+        if (manufacturerTable + (long) manufacturerCount * 4 > buffer.capacity()
+                || codeTable + (long) codeCount * CODE_ENTRY_SIZE > buffer.capacity()
+                || rangeTable + (long) rangeCount * RANGE_ENTRY_SIZE > buffer.capacity()) {
+            throw new IOException("Truncated DTC database");
+        }
+
+        manufacturerIds = new int[DiagnosticCommandSet.Manufacturer.values().length];
+        Arrays.fill(manufacturerIds, -1);
+        for (int id = 0; id < manufacturerCount; id++) {
+            String name = readString(buffer.getInt(manufacturerTable + id * 4));
+            try {
+                manufacturerIds[DiagnosticCommandSet.Manufacturer.valueOf(name).ordinal()] = id;
+            } catch (IllegalArgumentException e) {
+                Log.w(TAG, "Ignoring codes for unknown manufacturer " + name);
+            }
+        }
+    }
+
+    /**
+     * Map the database from assets; safe to call repeatedly, only the first call loads
+     */
+    public static synchronized void init(Context context) {
+        if (instance != EMPTY) {
+            return;
+        }
+        long start = System.nanoTime();
+        try {
+            instance = new DtcDatabase(load(context));
+            Log.i(TAG, "Loaded " + instance.codeCount + " DTCs and " + instance.rangeCount + " code families in "
+                    + (System.nanoTime() - start) / 1000 + "us");
+        } catch (IOException e) {
+            Log.e(TAG, "DTC database unavailable, codes will show without descriptions", e);
+        }
+    }
+
+    /**
+     * The loaded database, or an empty one before init() or if loading failed
+     */
+    public static DtcDatabase get() {
+        return instance;
+    }
+
+    static DtcDatabase fromBuffer(ByteBuffer buffer) throws IOException {
+        return new DtcDatabase(buffer);
+    }
+
+    private static ByteBuffer load(Context context) throws IOException {
+        try (AssetFileDescriptor descriptor = context.getAssets().openFd(ASSET_PATH);
+             FileInputStream input = new FileInputStream(descriptor.getFileDescriptor())) {
+            return input.getChannel().map(FileChannel.MapMode.READ_ONLY,
+                    descriptor.getStartOffset(), descriptor.getLength());
+        } catch (FileNotFoundException e) {
+            // openFd only works for uncompressed assets; copy the file if packaging compressed it
+            Log.w(TAG, ASSET_PATH + " is compressed in the APK, reading it into memory");
+            try (InputStream input = context.getAssets().open(ASSET_PATH)) {
+                ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+                byte[] chunk = new byte[8192];
+                int read;
+                while ((read = input.read(chunk)) != -1) {
+                    bytes.write(chunk, 0, read);
+                }
+                return ByteBuffer.wrap(bytes.toByteArray());
+            }
+        }
+    }
+
+    // ---------------------------------------------------------------- codes
+
+    public int size() {
+        return codeCount;
+    }
+
+    /**
+     * Entry index for the code, preferring the manufacturer's own entry over the generic one; -1 if none
+     */
+    public int find(int code, DiagnosticCommandSet.Manufacturer manufacturer) {
+        if (code < 0 || code > 0xFFFF || codeCount == 0) {
+            return -1;
+        }
+        int low = 0;
+        int high = codeCount;
+        while (low < high) {
+            int mid = (low + high) >>> 1;
+            if (codeAt(mid) < code) {
+                low = mid + 1;
+            } else {
+                high = mid;
+            }
+        }
+
+        int wanted = manufacturer != null ? manufacturerIds[manufacturer.ordinal()] : GENERIC_ID;
+        int generic = -1;
+        for (int entry = low; entry < codeCount && codeAt(entry) == code; entry++) {
+            int id = buffer.get(codeTable + entry * CODE_ENTRY_SIZE + 2) & 0xFF;
+            if (id == wanted) {
+                return entry;
+            }
+            if (id == GENERIC_ID) {
+                generic = entry;
+            }
+        }
+        return generic;
+    }
+
+    private int codeAt(int entry) {
+        return buffer.getShort(codeTable + entry * CODE_ENTRY_SIZE) & 0xFFFF;
+    }
+
+    public String description(int entry) {
+        return readString(buffer.getInt(codeTable + entry * CODE_ENTRY_SIZE + 4));
+    }
+
+    public List<String> possibleCauses(int entry) {
+        String causes = readString(buffer.getInt(codeTable + entry * CODE_ENTRY_SIZE + 8));
+        return causes != null ? Arrays.asList(causes.split("\n")) : Collections.<String>emptyList();
+    }
+
+    public String recommendedAction(int entry) {
+        return readString(buffer.getInt(codeTable + entry * CODE_ENTRY_SIZE + 12));
+    }
+
+    /**
+     * Severity stored for the entry itself, or null if it inherits its code family's
+     */
+    public Severity severity(int entry) {
+        return severityOf(buffer.get(codeTable + entry * CODE_ENTRY_SIZE + 3) & 0xFF);
+    }
+
+    // ---------------------------------------------------------------- code families
+
+    /**
+     * Index of the code family containing the code, or -1
+     */
+    public int findRange(int code) {
+        if (code < 0 || code > 0xFFFF) {
+            return -1;
+        }
+        int low = 0;
+        int high = rangeCount - 1;
+        while (low <= high) {
+            int mid = (low + high) >>> 1;
+            int base = rangeTable + mid * RANGE_ENTRY_SIZE;
+            if ((buffer.getShort(base + 2) & 0xFFFF) < code) {
+                low = mid + 1;
+            } else if ((buffer.getShort(base) & 0xFFFF) > code) {
+                high = mid - 1;
+            } else {
+                return mid;
+            }
+        }
+        return -1;
+    }
+
+    public String rangeDescription(int range) {
+        return readString(buffer.getInt(rangeTable + range * RANGE_ENTRY_SIZE + 8));
+    }
+
+    public Severity rangeSeverity(int range) {
+        return severityOf(buffer.get(rangeTable + range * RANGE_ENTRY_SIZE + 4) & 0xFF);
+    }
+
+    /**
+     * The code's own severity, else its family's, else LOW
+     */
+    public Severity severityOf(int code, DiagnosticCommandSet.Manufacturer manufacturer) {
+        int entry = find(code, manufacturer);
+        Severity severity = entry >= 0 ? severity(entry) : null;
+        if (severity == null) {
+            int range = findRange(code);
+            severity = range >= 0 ? rangeSeverity(range) : null;
+        }
+        return severity != null ? severity : Severity.LOW;
+    }
+
+    private static Severity severityOf(int value) {
+        return value < SEVERITIES.length ? SEVERITIES[value] : null;
+    }
+
+    private String readString(int offset) {
+        if (offset < 0) {
+            return null;
+        }
+        int length = buffer.getShort(offset) & 0xFFFF;
+        byte[] bytes = new byte[length];
+        ByteBuffer view = buffer.duplicate();
+        view.position(offset + 2);
+        view.get(bytes);
+        return new String(bytes, StandardCharsets.UTF_8);
+    }
+}
@@ -0,0 +1,97 @@
+package com.fullsend.jarvis.obd;
+
+import java.util.Arrays;
+
+/**
+ * Growable list of packed DTCs (see DtcCode) backed by an int[]
+ */
+public final class DtcList {
+
+    private int[] dtcs;
+    private int size;
+
+    public DtcList() {
+        this(8);
+    }
+
+    public DtcList(int capacity) {
+        dtcs = new int[Math.max(1, capacity)];
+    }
+
+    public void add(int dtc) {
+        if (size == dtcs.length) {
+            dtcs = Arrays.copyOf(dtcs, size * 2);
+        }
+        dtcs[size++] = dtc;
+    }
+
+    public int get(int index) {
+        if (index >= size) {
+            throw new IndexOutOfBoundsException("Index " + index + ", size " + size);
+        }
+        return dtcs[index];
+    }
+
+    public int size() {
+        return size;
+    }
+
+    public boolean isEmpty() {
+        return size == 0;
+    }
+
+    public void clear() {
+        size = 0;
+    }
+
+    /**
+     * True if the list holds the 16-bit code, whatever its status
+     */
+    public boolean containsCode(int code) {
+        for (int i = 0; i < size; i++) {
+            if (DtcCode.code(dtcs[i]) == code) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    public int countWithStatus(int statusMask) {
+        int count = 0;
+        for (int i = 0; i < size; i++) {
+            if (DtcCode.hasStatus(dtcs[i], statusMask)) {
+                count++;
+            }
+        }
+        return count;
+    }
+
+    /**
+     * Keep only DTCs with at least one of the given status bits, in place
+     */
+    public void retainWithStatus(int statusMask) {
+        int kept = 0;
+        for (int i = 0; i < size; i++) {
+            if (DtcCode.hasStatus(dtcs[i], statusMask)) {
+                dtcs[kept++] = dtcs[i];
+            }
+        }
+        size = kept;
+    }
+
+    public int[] toArray() {
+        return Arrays.copyOf(dtcs, size);
+    }
+
+    @Override
+    public String toString() {
+        StringBuilder builder = new StringBuilder("[");
+        for (int i = 0; i < size; i++) {
+            if (i > 0) {
+                builder.append(", ");
+            }
+            DtcCode.appendTo(builder, dtcs[i]);
+        }
+        return builder.append(']').toString();
+    }
+}
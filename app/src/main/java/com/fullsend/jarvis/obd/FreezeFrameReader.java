@@ -0,0 +1,234 @@
+package com.fullsend.jarvis.obd;
+
+import android.util.Log;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.concurrent.atomic.AtomicInteger;
+
+/**
+ * Reads every stored freeze frame in one pass: Service 02 on OBD-II ECUs, DTC snapshot
+ * records (UDS 19 03 + 19 04) on ECUs that answer UDS
+ *
+ * Features:
+ * - Discovers the PIDs stored in each frame from its supported-PID bitmaps (PIDs 0x00, 0x20, ...)
+ * - Queues all PID requests of a frame at once; the cable's executor sends them back to back
+ *   instead of waiting for each answer to come back through the caller first
+ * - UDS: one snapshot identification request, then every record of the DTCs asked about queued at once
+ * - Values are decoded with PidTable, the same formulas as live data; UDS OBD identifiers
+ *   0xF4xx decode as PID xx, anything else is kept raw
+ * - Each frame carries the DTC that caused it to be stored (PID 02, or the DTC of the snapshot)
+ * - Service 02 stops at the first frame the ECU does not have, or whose DTC is 0000
+ */
+public class FreezeFrameReader {
+    private static final String TAG = "FreezeFrameReader";
+
+    private static final int MAX_SUPPORT_BITMAP = 0xC0;
+
+    public static class FreezeFrame {
+        public final int frame; // Frame number, or the snapshot record number for UDS
+        public int dtc = DtcCode.NO_DTC;
+        public final Map<Integer, Number> values = new LinkedHashMap<>(); // By PID, decode with PidTable
+        public final Map<Integer, byte[]> rawValues = new LinkedHashMap<>(); // PIDs (or UDS identifiers) without a formula
+        public byte[] undecoded; // UDS record data from the first identifier of unknown length onwards
+
+        public FreezeFrame(int frame) {
+            this.frame = frame;
+        }
+    }
+
+    public interface FreezeFrameListener {
+        void onFreezeFramesRead(List<FreezeFrame> frames);
+    }
+
+    private final OBDProtocol protocol;
+
+    public FreezeFrameReader(OBDProtocol protocol) {
+        this.protocol = protocol;
+    }
+
+    /**
+     * Read frames 0 to maxFrames - 1; the listener gets the frames found, possibly none
+     */
+    public void read(int maxFrames, FreezeFrameListener listener) {
+        readFrame(0, maxFrames, new ArrayList<>(), listener);
+    }
+
+    /**
+     * Read up to maxFrames UDS snapshot records stored for the given DTCs; the listener gets
+     * the frames found, possibly none
+     */
+    public void readSnapshots(DtcList dtcs, int maxFrames, FreezeFrameListener listener) {
+        protocol.readDTCSnapshotIdentification(response -> {
+            DtcList stored = response.success ? (DtcList) response.parsedData.get("snapshot_dtcs") : null;
+            if (stored == null) {
+                Log.d(TAG, "Snapshot identification: " + response.errorMessage);
+                finish(new ArrayList<>(), listener);
+                return;
+            }
+            int[] recordNumbers = (int[]) response.parsedData.get("snapshot_record_numbers");
+            List<Integer> wanted = new ArrayList<>();
+            for (int i = 0; i < stored.size() && wanted.size() < maxFrames; i++) {
+                if (dtcs.containsCode(DtcCode.code(stored.get(i)))) {
+                    wanted.add(i);
+                }
+            }
+            fetchSnapshots(stored, recordNumbers, wanted, listener);
+        });
+    }
+
+    private void readFrame(int frame, int maxFrames, List<FreezeFrame> frames, FreezeFrameListener listener) {
+        if (frame >= maxFrames) {
+            finish(frames, listener);
+            return;
+        }
+        discover(frame, 0x00, new ArrayList<>(), pids -> {
+            if (pids == null) {
+                finish(frames, listener);
+                return;
+            }
+            fetch(frame, pids, snapshot -> {
+                if (snapshot.dtc == DtcCode.NO_DTC) {
+                    finish(frames, listener);
+                    return;
+                }
+                frames.add(snapshot);
+                readFrame(frame + 1, maxFrames, frames, listener);
+            });
+        });
+    }
+
+    private interface PidsCallback {
+        void onPids(List<Integer> pids);
+    }
+
+    private interface SnapshotCallback {
+        void onSnapshot(FreezeFrame snapshot);
+    }
+
+    // Walks the bitmap chain; null if the ECU has no such frame
+    private void discover(int frame, int bitmapPid, List<Integer> pids, PidsCallback callback) {
+        protocol.getFreezeFrameData((byte) bitmapPid, (byte) frame, response -> {
+            int[] supported = response.success ? (int[]) response.parsedData.get("supported_pids") : null;
+            if (supported == null) {
+                callback.onPids(bitmapPid == 0x00 ? null : pids);
+                return;
+            }
+            boolean more = false;
+            for (int pid : supported) {
+                if (!PidTable.isSupportBitmap(pid)) {
+                    pids.add(pid);
+                } else if (pid == bitmapPid + 0x20 && pid < MAX_SUPPORT_BITMAP) {
+                    more = true;
+                }
+            }
+            if (more) {
+                discover(frame, bitmapPid + 0x20, pids, callback);
+            } else {
+                callback.onPids(pids);
+            }
+        });
+    }
+
+    private void fetch(int frame, List<Integer> pids, SnapshotCallback callback) {
+        FreezeFrame snapshot = new FreezeFrame(frame);
+        if (!pids.contains((int) OBDProtocol.PID_FREEZE_DTC)) {
+            pids.add(0, (int) OBDProtocol.PID_FREEZE_DTC);
+        }
+        AtomicInteger remaining = new AtomicInteger(pids.size());
+        for (int pid : pids) {
+            protocol.getFreezeFrameData((byte) pid, (byte) frame, response -> {
+                synchronized (snapshot) {
+                    store(snapshot, pid, response);
+                }
+                if (remaining.decrementAndGet() == 0) {
+                    callback.onSnapshot(snapshot);
+                }
+            });
+        }
+    }
+
+    private void fetchSnapshots(DtcList stored, int[] recordNumbers, List<Integer> wanted, FreezeFrameListener listener) {
+        if (wanted.isEmpty()) {
+            finish(new ArrayList<>(), listener);
+            return;
+        }
+        // Slots keep the identification order whatever order the answers arrive in
+        FreezeFrame[] slots = new FreezeFrame[wanted.size()];
+        AtomicInteger remaining = new AtomicInteger(slots.length);
+        for (int n = 0; n < slots.length; n++) {
+            int slot = n;
+            int recordNumber = recordNumbers[wanted.get(n)];
+            protocol.readDTCSnapshotRecord(stored.get(wanted.get(n)), recordNumber, response -> {
+                slots[slot] = toFrame(recordNumber, response);
+                if (remaining.decrementAndGet() == 0) {
+                    List<FreezeFrame> frames = new ArrayList<>();
+                    for (FreezeFrame frame : slots) {
+                        if (frame != null) {
+                            frames.add(frame);
+                        }
+                    }
+                    finish(frames, listener);
+                }
+            });
+        }
+    }
+
+    @SuppressWarnings("unchecked")
+    private FreezeFrame toFrame(int recordNumber, OBDProtocol.OBDResponse response) {
+        if (!response.success) {
+            Log.d(TAG, "Snapshot record " + recordNumber + ": " + response.errorMessage);
+            return null;
+        }
+        List<OBDProtocol.SnapshotRecord> records =
+                (List<OBDProtocol.SnapshotRecord>) response.parsedData.get("snapshot_records");
+        for (OBDProtocol.SnapshotRecord record : records) {
+            if (record.recordNumber != recordNumber) {
+                continue;
+            }
+            FreezeFrame frame = new FreezeFrame(recordNumber);
+            frame.dtc = (Integer) response.parsedData.get("dtc");
+            for (Map.Entry<Integer, byte[]> entry : record.values.entrySet()) {
+                int pid = entry.getKey() - OBDProtocol.OBD_DID_BASE;
+                byte[] data = entry.getValue();
+                PidTable.Pid definition = pid >= 0 && pid <= 0xFF ? PidTable.get(pid) : null;
+                Number value = definition != null ? definition.decode(data, 0, data.length) : null;
+                if (value != null) {
+                    frame.values.put(pid, value);
+                } else {
+                    frame.rawValues.put(entry.getKey(), data);
+                }
+            }
+            frame.undecoded = record.undecoded;
+            return frame;
+        }
+        return null;
+    }
+
+    private void store(FreezeFrame snapshot, int pid, OBDProtocol.OBDResponse response) {
+        if (!response.success) {
+            Log.d(TAG, "Frame " + snapshot.frame + " PID " + String.format("0x%02X", pid) + ": " + response.errorMessage);
+            return;
+        }
+        if (pid == OBDProtocol.PID_FREEZE_DTC) {
+            Object dtc = response.parsedData.get("dtc");
+            snapshot.dtc = dtc != null ? (Integer) dtc : DtcCode.NO_DTC;
+            return;
+        }
+        PidTable.Pid definition = PidTable.get(pid);
+        Object value = definition != null ? response.parsedData.get(definition.key) : null;
+        if (value != null) {
+            snapshot.values.put(pid, (Number) value);
+        } else if (response.parsedData.containsKey("raw_values")) {
+            snapshot.rawValues.put(pid, (byte[]) response.parsedData.get("raw_values"));
+        }
+    }
+
+    private void finish(List<FreezeFrame> frames, FreezeFrameListener listener) {
+        Log.i(TAG, "Read " + frames.size() + " freeze frame(s)");
+        listener.onFreezeFramesRead(Collections.unmodifiableList(frames));
+    }
+}
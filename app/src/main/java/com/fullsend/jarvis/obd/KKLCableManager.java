@@ -35,6 +35,8 @@ public class KKLCableManager {
     private UsbDeviceConnection connection;
     private ExecutorService executor;
     private KKLConnectionListener connectionListener;
+    // How UDS responses are framed on this link, set once the bus is initialized
+    private volatile UdsResponseAssembler.Framing framing = UdsResponseAssembler.Framing.K_LINE;
     
     // K-Line timing parameters (ISO 14230-2)
     private static final int T_INIT = 25;      // Initial delay
@@ -44,6 +46,11 @@ public class KKLCableManager {
     private static final int T_P2_MIN = 25;    // Min time between start address and sync pattern
     private static final int T_P2_MAX = 50;    // Max time between start address and sync pattern
     
+    // Response timing for multi-read requests (ISO 14229-2 P2/P2* and ISO-TP N_Cr)
+    private static final int T_RESPONSE_TIMEOUT = 2000;   // Wait for the first byte of a response
+    private static final int T_PENDING_TIMEOUT = 5000;    // After a response pending (NRC 0x78)
+    private static final int T_INTER_FRAME_TIMEOUT = 150; // Bus idle that ends a K-line message
+    
     public interface KKLConnectionListener {
         void onConnectionEstablished();
         void onConnectionLost();
@@ -145,6 +152,7 @@ public class KKLCableManager {
                 // Initialize K-Line communication
                 if (initializeKLine()) {
                     Log.d(TAG, "K-Line initialization successful");
+                    framing = UdsResponseAssembler.Framing.K_LINE;
                     if (connectionListener != null) {
                         connectionListener.onConnectionEstablished();
                     }
@@ -250,6 +258,68 @@ public class KKLCableManager {
         });
     }
     
+    /**
+     * Send a UDS request whose response may span several reads (ISO-TP frames or a long K-line
+     * message); the listener receives the reassembled message without framing or checksum
+     */
+    public void sendRequest(byte[] command, CommandResponseListener listener) {
+        if (serialPort == null || !serialPort.isOpen()) {
+            listener.onError("KKL cable not connected");
+            return;
+        }
+        
+        executor.execute(() -> {
+            try {
+                Log.d(TAG, "Sending request: " + bytesToHex(command, command.length));
+                
+                byte[] buffer = new byte[256];
+                serialPort.read(buffer, 100); // Quick read to clear buffer
+                serialPort.write(command, 1000);
+                
+                UdsResponseAssembler assembler = new UdsResponseAssembler(framing, command);
+                long deadline = System.currentTimeMillis() + T_RESPONSE_TIMEOUT;
+                while (true) {
+                    int timeout = assembler.hasData() ? T_INTER_FRAME_TIMEOUT
+                            : (int) Math.max(1, deadline - System.currentTimeMillis());
+                    int bytesRead = serialPort.read(buffer, timeout);
+                    int state = bytesRead > 0 ? assembler.accept(buffer, bytesRead) : assembler.onIdle();
+                    
+                    switch (state) {
+                        case UdsResponseAssembler.SEND_FLOW_CONTROL:
+                            serialPort.write(assembler.flowControlFrame(), 1000);
+                            deadline = System.currentTimeMillis() + T_RESPONSE_TIMEOUT;
+                            break;
+                        case UdsResponseAssembler.RESPONSE_PENDING:
+                            Log.d(TAG, "ECU response pending, extending timeout");
+                            deadline = System.currentTimeMillis() + T_PENDING_TIMEOUT;
+                            break;
+                        case UdsResponseAssembler.COMPLETE:
+                            byte[] payload = assembler.payload();
+                            Log.d(TAG, "Received response: " + bytesToHex(payload, payload.length));
+                            listener.onResponse(payload);
+                            return;
+                        case UdsResponseAssembler.ERROR:
+                            Log.w(TAG, "Malformed response: " + assembler.error());
+                            listener.onError(assembler.error());
+                            return;
+                        default:
+                            if (bytesRead > 0) {
+                                deadline = System.currentTimeMillis() + T_RESPONSE_TIMEOUT;
+                            } else if (System.currentTimeMillis() >= deadline) {
+                                Log.w(TAG, "No complete response received for request");
+                                listener.onError(assembler.hasData() ? "Incomplete response from ECU" : "No response from ECU");
+                                return;
+                            }
+                            break;
+                    }
+                }
+            } catch (IOException e) {
+                Log.e(TAG, "Failed to send request", e);
+                listener.onError("Command failed: " + e.getMessage());
+            }
+        });
+    }
+    
     public interface CommandResponseListener {
         void onResponse(byte[] response);
         void onError(String error);
@@ -4,6 +4,7 @@ import android.content.Intent;
 import android.os.Bundle;
 import android.os.Handler;
 import android.os.Looper;
+import android.os.SystemClock;
 import android.util.Log;
 import android.view.View;
 import android.widget.Button;
@@ -18,6 +19,9 @@ import androidx.cardview.widget.CardView;
 
 import com.fullsend.jarvis.JarvisService;
 import com.fullsend.jarvis.R;
+import com.fullsend.jarvis.ai.DriveLog;
+import com.fullsend.jarvis.ai.InteractionState;
+import com.fullsend.jarvis.ai.RuntimeTuning;
 
 import java.util.List;
 import java.util.Locale;
@@ -29,11 +33,18 @@ public class OBDActivity extends AppCompatActivity implements
     KKLCableManager.KKLConnectionListener {
     
     private static final String TAG = "OBDActivity";
+    private static final int MAX_FREEZE_FRAMES = 4;
+    
+    // Sent within the app whenever the stored trouble codes are read or cleared
+    public static final String ACTION_DTCS_UPDATED = "com.fullsend.jarvis.ACTION_DTCS_UPDATED";
+    public static final String EXTRA_DTCS = "com.fullsend.jarvis.EXTRA_DTCS"; // int[] of packed DTCs
     
     private KKLCableManager kklManager;
     private OBDProtocol obdProtocol;
+    private FreezeFrameReader freezeFrameReader;
     private Handler mainHandler;
     private Timer dataTimer;
+    private long liveDataIntervalMs;
     
     // UI Components
     private TextView tvConnectionStatus;
@@ -62,6 +73,7 @@ public class OBDActivity extends AppCompatActivity implements
     // Status flags
     private boolean isConnected = false;
     private boolean isLiveDataActive = false;
+    private Boolean udsDtcSupported; // null until the ECU has answered a UDS 19 request
     
     @Override
     protected void onCreate(Bundle savedInstanceState) {
@@ -69,6 +81,7 @@ public class OBDActivity extends AppCompatActivity implements
         setContentView(R.layout.activity_obd);
         
         mainHandler = new Handler(Looper.getMainLooper());
+        DtcDatabase.init(getApplicationContext());
         
         initializeUI();
         initializeOBD();
@@ -121,6 +134,7 @@ public class OBDActivity extends AppCompatActivity implements
         kklManager = new KKLCableManager(this);
         kklManager.setConnectionListener(this);
         obdProtocol = new OBDProtocol(kklManager);
+        freezeFrameReader = new FreezeFrameReader(obdProtocol);
     }
     
     private void connectToKKL() {
@@ -153,18 +167,51 @@ public class OBDActivity extends AppCompatActivity implements
         progressBar.setVisibility(View.VISIBLE);
         layoutDTCs.removeAllViews();
         
+        if (udsDtcSupported != Boolean.FALSE) {
+            readActiveDTCs();
+        } else {
+            readLegacyDTCs();
+        }
+    }
+    
+    private void readActiveDTCs() {
+        logEvent("Reading active and confirmed DTCs (UDS)");
+        
+        // The ECU filters by status, only failing or confirmed codes come over the line
+        int statusMask = DtcCode.STATUS_TEST_FAILED | DtcCode.STATUS_CONFIRMED;
+        obdProtocol.readDTCsByStatusMask(statusMask, response -> mainHandler.post(() -> {
+            if (response.success) {
+                udsDtcSupported = true;
+                progressBar.setVisibility(View.GONE);
+                displayDTCs(response, "Active & Confirmed DTCs");
+                publishDTCs((DtcList) response.parsedData.get("dtcs"));
+                readSnapshots((DtcList) response.parsedData.get("dtcs"));
+            } else if (udsDtcSupported == null) {
+                udsDtcSupported = false;
+                logEvent("UDS DTC read unavailable (" + response.errorMessage + "), using OBD-II services");
+                readLegacyDTCs();
+            } else {
+                progressBar.setVisibility(View.GONE);
+                showError("Failed to read DTCs: " + response.errorMessage);
+            }
+        }));
+    }
+    
+    private void readLegacyDTCs() {
         logEvent("Reading stored DTCs");
         
         obdProtocol.getStoredDTCs(response -> mainHandler.post(() -> {
             progressBar.setVisibility(View.GONE);
             if (response.success) {
                 displayDTCs(response, "Stored DTCs");
+                publishDTCs((DtcList) response.parsedData.get("dtcs"));
                 
                 // Also read pending DTCs
                 obdProtocol.getPendingDTCs(pendingResponse -> mainHandler.post(() -> {
                     if (pendingResponse.success) {
                         displayDTCs(pendingResponse, "Pending DTCs");
                     }
+                    readFreezeFrames((DtcList) response.parsedData.get("dtcs"));
                 }));
             } else {
                 showError("Failed to read DTCs: " + response.errorMessage);
@@ -172,6 +219,61 @@ public class OBDActivity extends AppCompatActivity implements
         }));
     }
     
+    private void readFreezeFrames(DtcList dtcs) {
+        if (dtcs == null || dtcs.isEmpty()) {
+            return;
+        }
+        
+        logEvent("Reading freeze frames");
+        freezeFrameReader.read(MAX_FREEZE_FRAMES, frames -> mainHandler.post(() -> displayFreezeFrames(frames)));
+    }
+    
+    // UDS ECUs keep freeze frames as DTC snapshot records (19 03 / 19 04), not behind Service 02
+    private void readSnapshots(DtcList dtcs) {
+        if (dtcs == null || dtcs.isEmpty()) {
+            return;
+        }
+        
+        logEvent("Reading DTC snapshots (UDS)");
+        freezeFrameReader.readSnapshots(dtcs, MAX_FREEZE_FRAMES, frames -> mainHandler.post(() -> displayFreezeFrames(frames)));
+    }
+    
+    private void displayFreezeFrames(List<FreezeFrameReader.FreezeFrame> frames) {
+        for (FreezeFrameReader.FreezeFrame frame : frames) {
+            StringBuilder text = new StringBuilder();
+            text.append("\n   Freeze frame ").append(frame.frame).append(':');
+            for (Map.Entry<Integer, Number> value : frame.values.entrySet()) {
+                PidTable.Pid pid = PidTable.get(value.getKey());
+                Number number = value.getValue();
+                text.append("\n     ").append(pid.key.replace('_', ' ')).append(' ')
+                        .append(number instanceof Double ? String.format(Locale.getDefault(), "%.1f", number) : number)
+                        .append(' ').append(pid.unit);
+            }
+            // Values with no formula here are shown as hex so nothing the ECU stored is hidden
+            for (Map.Entry<Integer, byte[]> value : frame.rawValues.entrySet()) {
+                int id = value.getKey();
+                text.append("\n     ").append(id > 0xFF ? String.format("DID %04X", id) : String.format("PID %02X", id))
+                        .append(": ").append(bytesToHex(value.getValue()));
+            }
+            if (frame.undecoded != null) {
+                text.append("\n     undecoded: ").append(bytesToHex(frame.undecoded));
+            }
+            
+            // Attach the snapshot to the code that triggered it
+            TextView dtcView = (TextView) layoutDTCs.findViewWithTag(DtcCode.code(frame.dtc));
+            if (dtcView != null) {
+                dtcView.append(text);
+            } else {
+                TextView frameView = new TextView(this);
+                frameView.setText(DtcCode.format(frame.dtc) + text);
+                frameView.setTextColor(getResources().getColor(R.color.white, null));
+                frameView.setPadding(16, 4, 16, 4);
+                layoutDTCs.addView(frameView);
+            }
+        }
+        logEvent("Freeze frames read: " + frames.size());
+    }
+    
     private void clearDTCs() {
         progressBar.setVisibility(View.VISIBLE);
         
@@ -182,6 +284,7 @@ public class OBDActivity extends AppCompatActivity implements
             if (response.success) {
                 Toast.makeText(this, "DTCs cleared successfully", Toast.LENGTH_SHORT).show();
                 layoutDTCs.removeAllViews();
+                publishDTCs(new DtcList());
                 logEvent("DTCs cleared successfully");
             } else {
                 showError("Failed to clear DTCs: " + response.errorMessage);
@@ -204,6 +307,25 @@ public class OBDActivity extends AppCompatActivity implements
         
         logEvent("Started live data monitoring");
         
+        // Listener fires immediately with the current interval and starts the timer
+        RuntimeTuning.get().addListener(RuntimeTuning.KNOB_OBD_POLL_INTERVAL_MS, pollIntervalListener);
+    }
+    
+    /**
+     * Poll interval is tuned at runtime to match what the bus can sustain
+     */
+    private final RuntimeTuning.KnobListener pollIntervalListener =
+            (name, value) -> mainHandler.post(() -> scheduleLiveData(value));
+    
+    private void scheduleLiveData(long intervalMs) {
+        if (!isLiveDataActive || (dataTimer != null && intervalMs == liveDataIntervalMs)) {
+            return;
+        }
+        if (dataTimer != null) {
+            dataTimer.cancel();
+        }
+        
+        liveDataIntervalMs = intervalMs;
         dataTimer = new Timer();
         dataTimer.scheduleAtFixedRate(new TimerTask() {
             @Override
@@ -212,12 +334,13 @@ public class OBDActivity extends AppCompatActivity implements
                     updateLiveDataValues();
                 }
             }
-        }, 0, 1000); // Update every second
+        }, 0, intervalMs);
     }
     
     private void stopLiveData() {
         isLiveDataActive = false;
         btnLiveData.setText("Start Live Data");
+        RuntimeTuning.get().removeListener(RuntimeTuning.KNOB_OBD_POLL_INTERVAL_MS, pollIntervalListener);
         
         if (dataTimer != null) {
             dataTimer.cancel();
@@ -232,6 +355,7 @@ public class OBDActivity extends AppCompatActivity implements
         obdProtocol.getCurrentData(OBDProtocol.PID_ENGINE_RPM, response -> {
             if (response.success && response.parsedData.containsKey("rpm")) {
                 int rpm = (Integer) response.parsedData.get("rpm");
+                DriveLog.get().record(DriveLog.CHANNEL_RPM, SystemClock.elapsedRealtime(), rpm);
                 mainHandler.post(() -> tvRPM.setText(String.format(Locale.getDefault(), "RPM: %d", rpm)));
             }
         });
@@ -240,6 +364,7 @@ public class OBDActivity extends AppCompatActivity implements
         obdProtocol.getCurrentData(OBDProtocol.PID_VEHICLE_SPEED, response -> {
             if (response.success && response.parsedData.containsKey("speed")) {
                 int speed = (Integer) response.parsedData.get("speed");
+                DriveLog.get().record(DriveLog.CHANNEL_SPEED, SystemClock.elapsedRealtime(), speed);
                 mainHandler.post(() -> tvSpeed.setText(String.format(Locale.getDefault(), "Speed: %d km/h", speed)));
             }
         });
@@ -248,6 +373,7 @@ public class OBDActivity extends AppCompatActivity implements
         obdProtocol.getCurrentData(OBDProtocol.PID_COOLANT_TEMP, response -> {
             if (response.success && response.parsedData.containsKey("temperature")) {
                 int temp = (Integer) response.parsedData.get("temperature");
+                DriveLog.get().record(DriveLog.CHANNEL_COOLANT_TEMP, SystemClock.elapsedRealtime(), temp);
                 mainHandler.post(() -> tvCoolantTemp.setText(String.format(Locale.getDefault(), "Coolant: %d°C", temp)));
             }
         });
@@ -256,6 +382,7 @@ public class OBDActivity extends AppCompatActivity implements
         obdProtocol.getCurrentData(OBDProtocol.PID_ENGINE_LOAD, response -> {
             if (response.success && response.parsedData.containsKey("load")) {
                 double load = (Double) response.parsedData.get("load");
+                DriveLog.get().record(DriveLog.CHANNEL_ENGINE_LOAD, SystemClock.elapsedRealtime(), load);
                 mainHandler.post(() -> tvEngineLoad.setText(String.format(Locale.getDefault(), "Load: %.1f%%", load)));
             }
         });
@@ -264,6 +391,7 @@ public class OBDActivity extends AppCompatActivity implements
         obdProtocol.getCurrentData(OBDProtocol.PID_THROTTLE_POSITION, response -> {
             if (response.success && response.parsedData.containsKey("throttle")) {
                 double throttle = (Double) response.parsedData.get("throttle");
+                DriveLog.get().record(DriveLog.CHANNEL_THROTTLE, SystemClock.elapsedRealtime(), throttle);
                 mainHandler.post(() -> tvThrottlePos.setText(String.format(Locale.getDefault(), "Throttle: %.1f%%", throttle)));
             }
         });
@@ -272,6 +400,7 @@ public class OBDActivity extends AppCompatActivity implements
         obdProtocol.getCurrentData(OBDProtocol.PID_MAF_AIR_FLOW, response -> {
             if (response.success && response.parsedData.containsKey("maf")) {
                 double maf = (Double) response.parsedData.get("maf");
+                DriveLog.get().record(DriveLog.CHANNEL_MAF, SystemClock.elapsedRealtime(), maf);
                 mainHandler.post(() -> tvMAF.setText(String.format(Locale.getDefault(), "MAF: %.2f g/s", maf)));
             }
         });
@@ -280,6 +409,7 @@ public class OBDActivity extends AppCompatActivity implements
         obdProtocol.getCurrentData(OBDProtocol.PID_FUEL_PRESSURE, response -> {
             if (response.success && response.parsedData.containsKey("fuel_pressure")) {
                 int pressure = (Integer) response.parsedData.get("fuel_pressure");
+                DriveLog.get().record(DriveLog.CHANNEL_FUEL_PRESSURE, SystemClock.elapsedRealtime(), pressure);
                 mainHandler.post(() -> tvFuelPressure.setText(String.format(Locale.getDefault(), "Fuel: %d kPa", pressure)));
             }
         });
@@ -288,6 +418,7 @@ public class OBDActivity extends AppCompatActivity implements
         obdProtocol.getCurrentData(OBDProtocol.PID_TIMING_ADVANCE, response -> {
             if (response.success && response.parsedData.containsKey("timing_advance")) {
                 double timing = (Double) response.parsedData.get("timing_advance");
+                DriveLog.get().record(DriveLog.CHANNEL_TIMING_ADVANCE, SystemClock.elapsedRealtime(), timing);
                 mainHandler.post(() -> tvTimingAdvance.setText(String.format(Locale.getDefault(), "Timing: %.1f°", timing)));
             }
         });
@@ -417,8 +548,7 @@ public class OBDActivity extends AppCompatActivity implements
         layoutDTCs.addView(titleView);
         
         if (response.parsedData.containsKey("dtcs")) {
-            @SuppressWarnings("unchecked")
-            List<String> dtcs = (List<String>) response.parsedData.get("dtcs");
+            DtcList dtcs = (DtcList) response.parsedData.get("dtcs");
             
             if (dtcs.isEmpty()) {
                 TextView noDtcView = new TextView(this);
@@ -427,9 +557,18 @@ public class OBDActivity extends AppCompatActivity implements
                 noDtcView.setPadding(16, 8, 16, 8);
                 layoutDTCs.addView(noDtcView);
             } else {
-                for (String dtc : dtcs) {
+                for (int i = 0; i < dtcs.size(); i++) {
+                    int dtc = dtcs.get(i);
                     TextView dtcView = new TextView(this);
-                    dtcView.setText("• " + dtc);
+                    String text = "• " + DtcCode.format(dtc) + ": " + DiagnosticCommandSet.DTCInterpreter.getDescription(dtc,
+                            DiagnosticCommandSet.Manufacturer.GENERIC_OBD2);
+                    String action = DiagnosticCommandSet.DTCInterpreter.getRecommendedAction(dtc,
+                            DiagnosticCommandSet.Manufacturer.GENERIC_OBD2);
+                    if (DtcCode.hasStatus(dtc, DtcCode.STATUS_TEST_FAILED)) {
+                        text += " [active]";
+                    }
+                    dtcView.setText(action != null ? text + "\n   " + action : text);
+                    dtcView.setTag(DtcCode.code(dtc));
                     dtcView.setTextColor(getResources().getColor(R.color.orange, null));
                     dtcView.setTextSize(16);
                     dtcView.setPadding(16, 4, 16, 4);
@@ -444,8 +583,23 @@ public class OBDActivity extends AppCompatActivity implements
         }
     }
     
+    /**
+     * Let the assistant know the current trouble codes, so its replies mention them
+     */
+    private void publishDTCs(DtcList dtcs) {
+        if (dtcs == null) {
+            return;
+        }
+        Intent intent = new Intent(ACTION_DTCS_UPDATED);
+        intent.setPackage(getPackageName());
+        intent.putExtra(EXTRA_DTCS, dtcs.toArray());
+        sendBroadcast(intent);
+    }
+    
     private void updateConnectionUI(boolean connected) {
         isConnected = connected;
+        // Background AI work is deferred while the cable is in use
+        InteractionState.get().setObdSessionActive(connected);
         btnConnect.setEnabled(!connected);
         btnDisconnect.setEnabled(connected);
         btnReadDTCs.setEnabled(connected);
@@ -488,6 +642,7 @@ public class OBDActivity extends AppCompatActivity implements
             tvConnectionStatus.setText("KKL Cable Connected");
             progressBar.setVisibility(View.GONE);
             updateConnectionUI(true);
+            udsDtcSupported = null;
             Toast.makeText(this, "USB 409.1 KKL Cable Connected", Toast.LENGTH_SHORT).show();
             logEvent("KKL cable connection established");
         });
@@ -523,6 +678,7 @@ public class OBDActivity extends AppCompatActivity implements
     protected void onDestroy() {
         super.onDestroy();
         stopLiveData();
+        InteractionState.get().setObdSessionActive(false);
         if (kklManager != null) {
             kklManager.cleanup();
         }
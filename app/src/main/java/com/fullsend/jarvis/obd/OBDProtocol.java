@@ -1,9 +1,14 @@
 package com.fullsend.jarvis.obd;
 
+import android.os.SystemClock;
 import android.util.Log;
 
+import com.fullsend.jarvis.ai.RuntimeTuning;
+
 import java.util.ArrayList;
+import java.util.Arrays;
 import java.util.HashMap;
+import java.util.LinkedHashMap;
 import java.util.List;
 import java.util.Map;
 
@@ -90,8 +95,24 @@ public class OBDProtocol {
     public static final byte PID_CATALYST_TEMP_B1S2 = 0x3E;
     public static final byte PID_CATALYST_TEMP_B2S2 = 0x3F;
     
+    // UDS ReadDTCInformation (Service 19) sub-functions, ISO 14229-1
+    public static final byte DTC_INFO_NUMBER_BY_STATUS_MASK = 0x01;
+    public static final byte DTC_INFO_BY_STATUS_MASK = 0x02;
+    public static final byte DTC_INFO_SNAPSHOT_IDENTIFICATION = 0x03;
+    public static final byte DTC_INFO_SNAPSHOT_BY_DTC_NUMBER = 0x04;
+    public static final byte DTC_INFO_EXT_DATA_BY_DTC_NUMBER = 0x06;
+    public static final byte DTC_INFO_SUPPORTED_DTCS = 0x0A;
+    public static final int ALL_RECORDS = 0xFF;
+    
+    // OBD DIDs 0xF4xx carry the same data as Service 01 PID xx
+    static final int OBD_DID_BASE = 0xF400;
+    
     private KKLCableManager kklManager;
     
+    // ECU-specific data lengths, needed to split snapshot and extended data records
+    private final Map<Integer, Integer> snapshotDataLengths = new HashMap<>();
+    private final Map<Integer, Integer> extendedDataLengths = new HashMap<>();
+    
     public static class OBDResponse {
         public boolean success;
         public byte[] rawData;
@@ -104,6 +125,19 @@ public class OBDProtocol {
         }
     }
     
+    /**
+     * One DTC snapshot (freeze frame) record from UDS 19 04; values are keyed by data identifier
+     */
+    public static class SnapshotRecord {
+        public final int recordNumber;
+        public final Map<Integer, byte[]> values = new LinkedHashMap<>();
+        public byte[] undecoded; // Data from the first identifier of unknown length onwards
+        
+        public SnapshotRecord(int recordNumber) {
+            this.recordNumber = recordNumber;
+        }
+    }
+    
     public interface OBDResponseListener {
         void onResponse(OBDResponse response);
     }
@@ -199,6 +233,76 @@ public class OBDProtocol {
         sendOBDCommand(command, listener, (byte) 0x31);
     }
     
+    // UDS ReadDTCInformation (Service 19); the status mask is applied by the ECU
+    
+    /**
+     * Count DTCs matching any bit of the status mask (dtc_count, status_availability_mask, dtc_format)
+     */
+    public void readDTCCountByStatusMask(int statusMask, OBDResponseListener listener) {
+        byte[] command = buildCommand(SERVICE_19, DTC_INFO_NUMBER_BY_STATUS_MASK, (byte) statusMask);
+        sendUdsRequest(command, listener);
+    }
+    
+    /**
+     * DTCs matching any bit of the status mask, e.g. DtcCode.STATUS_CONFIRMED, as a DtcList
+     * carrying failure type and status
+     */
+    public void readDTCsByStatusMask(int statusMask, OBDResponseListener listener) {
+        byte[] command = buildCommand(SERVICE_19, DTC_INFO_BY_STATUS_MASK, (byte) statusMask);
+        sendUdsRequest(command, listener);
+    }
+    
+    /**
+     * Every DTC the ECU can report, whatever its status
+     */
+    public void readSupportedDTCs(OBDResponseListener listener) {
+        byte[] command = buildCommand(SERVICE_19, DTC_INFO_SUPPORTED_DTCS);
+        sendUdsRequest(command, listener);
+    }
+    
+    /**
+     * Which DTCs have snapshot records stored (snapshot_dtcs with parallel snapshot_record_numbers)
+     */
+    public void readDTCSnapshotIdentification(OBDResponseListener listener) {
+        byte[] command = buildCommand(SERVICE_19, DTC_INFO_SNAPSHOT_IDENTIFICATION);
+        sendUdsRequest(command, listener);
+    }
+    
+    /**
+     * Snapshot records stored for a DTC (packed, failure type included); ALL_RECORDS for every record
+     */
+    public void readDTCSnapshotRecord(int dtc, int recordNumber, OBDResponseListener listener) {
+        byte[] command = buildCommand(SERVICE_19, DTC_INFO_SNAPSHOT_BY_DTC_NUMBER,
+                (byte) (DtcCode.code(dtc) >> 8), (byte) DtcCode.code(dtc), (byte) DtcCode.failureType(dtc),
+                (byte) recordNumber);
+        sendUdsRequest(command, listener);
+    }
+    
+    /**
+     * Extended data records (occurrence counters, aging, ...) stored for a DTC
+     */
+    public void readDTCExtendedData(int dtc, int recordNumber, OBDResponseListener listener) {
+        byte[] command = buildCommand(SERVICE_19, DTC_INFO_EXT_DATA_BY_DTC_NUMBER,
+                (byte) (DtcCode.code(dtc) >> 8), (byte) DtcCode.code(dtc), (byte) DtcCode.failureType(dtc),
+                (byte) recordNumber);
+        sendUdsRequest(command, listener);
+    }
+    
+    /**
+     * Register the data length of an ECU-specific identifier used in snapshot records;
+     * OBD identifiers 0xF400-0xF43F are known already
+     */
+    public void setSnapshotDataLength(int identifier, int length) {
+        snapshotDataLengths.put(identifier, length);
+    }
+    
+    /**
+     * Register the length of an extended data record, so reads of ALL_RECORDS can be split
+     */
+    public void setExtendedDataLength(int recordNumber, int length) {
+        extendedDataLengths.put(recordNumber, length);
+    }
+    
     private byte[] buildCommand(byte service, byte... params) {
         byte[] command = new byte[1 + params.length + 1]; // service + params + checksum
         command[0] = service;
@@ -223,15 +327,45 @@ public class OBDProtocol {
             return;
         }
         
+        long sentAt = SystemClock.elapsedRealtime();
         kklManager.sendCommand(command, new KKLCableManager.CommandResponseListener() {
             @Override
             public void onResponse(byte[] rawResponse) {
+                RuntimeTuning.get().recordBusTransaction(SystemClock.elapsedRealtime() - sentAt,
+                        rawResponse != null ? rawResponse.length : 0, true);
                 OBDResponse response = parseOBDResponse(rawResponse, pid);
                 listener.onResponse(response);
             }
             
             @Override
             public void onError(String error) {
+                RuntimeTuning.get().recordBusTransaction(SystemClock.elapsedRealtime() - sentAt, 0, false);
+                OBDResponse response = new OBDResponse(false);
+                response.errorMessage = error;
+                listener.onResponse(response);
+            }
+        });
+    }
+    
+    private void sendUdsRequest(byte[] command, OBDResponseListener listener) {
+        if (!kklManager.isConnected()) {
+            OBDResponse response = new OBDResponse(false);
+            response.errorMessage = "KKL cable not connected";
+            listener.onResponse(response);
+            return;
+        }
+        
+        long sentAt = SystemClock.elapsedRealtime();
+        kklManager.sendRequest(command, new KKLCableManager.CommandResponseListener() {
+            @Override
+            public void onResponse(byte[] message) {
+                RuntimeTuning.get().recordBusTransaction(SystemClock.elapsedRealtime() - sentAt, message.length, true);
+                listener.onResponse(parseReadDTCInformationResponse(message, command[1]));
+            }
+            
+            @Override
+            public void onError(String error) {
+                RuntimeTuning.get().recordBusTransaction(SystemClock.elapsedRealtime() - sentAt, 0, false);
                 OBDResponse response = new OBDResponse(false);
                 response.errorMessage = error;
                 listener.onResponse(response);
@@ -262,8 +396,11 @@ public class OBDProtocol {
             case (byte) (SERVICE_01 + 0x40): // Current data response
                 parseCurrentDataResponse(response, rawData, pid);
                 break;
+            case (byte) (SERVICE_02 + 0x40): // Freeze frame response
+                parseFreezeFrameResponse(response, rawData, pid);
+                break;
             case (byte) (SERVICE_03 + 0x40): // Stored DTCs response
-                parseStoredDTCsResponse(response, rawData);
+                parseStoredDTCsResponse(response, rawData, DtcCode.STATUS_CONFIRMED);
                 break;
             case (byte) (SERVICE_07 + 0x40): // Pending DTCs response
                 parsePendingDTCsResponse(response, rawData);
@@ -296,81 +433,61 @@ public class OBDProtocol {
             return;
         }
         
-        // Parse based on PID
-        switch (pid) {
-            case PID_ENGINE_RPM:
-                if (data.length >= 6) {
-                    int rpm = ((data[3] & 0xFF) << 8 | (data[4] & 0xFF)) / 4;
-                    response.parsedData.put("rpm", rpm);
-                    response.parsedData.put("unit", "RPM");
-                }
-                break;
-            case PID_VEHICLE_SPEED:
-                if (data.length >= 5) {
-                    int speed = data[3] & 0xFF;
-                    response.parsedData.put("speed", speed);
-                    response.parsedData.put("unit", "km/h");
-                }
-                break;
-            case PID_COOLANT_TEMP:
-                if (data.length >= 5) {
-                    int temp = (data[3] & 0xFF) - 40;
-                    response.parsedData.put("temperature", temp);
-                    response.parsedData.put("unit", "°C");
-                }
-                break;
-            case PID_ENGINE_LOAD:
-                if (data.length >= 5) {
-                    double load = ((data[3] & 0xFF) * 100.0) / 255.0;
-                    response.parsedData.put("load", load);
-                    response.parsedData.put("unit", "%");
-                }
-                break;
-            case PID_THROTTLE_POSITION:
-                if (data.length >= 5) {
-                    double throttle = ((data[3] & 0xFF) * 100.0) / 255.0;
-                    response.parsedData.put("throttle", throttle);
-                    response.parsedData.put("unit", "%");
-                }
-                break;
-            case PID_MAF_AIR_FLOW:
-                if (data.length >= 6) {
-                    double maf = ((data[3] & 0xFF) << 8 | (data[4] & 0xFF)) / 100.0;
-                    response.parsedData.put("maf", maf);
-                    response.parsedData.put("unit", "g/s");
-                }
-                break;
-            case PID_FUEL_PRESSURE:
-                if (data.length >= 5) {
-                    int pressure = (data[3] & 0xFF) * 3;
-                    response.parsedData.put("fuel_pressure", pressure);
-                    response.parsedData.put("unit", "kPa");
-                }
-                break;
-            case PID_INTAKE_MAP:
-                if (data.length >= 5) {
-                    int map = data[3] & 0xFF;
-                    response.parsedData.put("intake_pressure", map);
-                    response.parsedData.put("unit", "kPa");
-                }
-                break;
-            case PID_TIMING_ADVANCE:
-                if (data.length >= 5) {
-                    double timing = ((data[3] & 0xFF) / 2.0) - 64.0;
-                    response.parsedData.put("timing_advance", timing);
-                    response.parsedData.put("unit", "° before TDC");
-                }
-                break;
-            default:
-                // For unknown PIDs, just store raw values
-                byte[] values = new byte[data.length - 3];
-                System.arraycopy(data, 3, values, 0, values.length);
+        // Same formula table as freeze frames; data bytes sit between the PID and the checksum
+        PidTable.Pid definition = PidTable.get(pid);
+        if (definition != null) {
+            Number value = definition.decode(data, 3, data.length - 4);
+            if (value != null) {
+                response.parsedData.put(definition.key, value);
+                response.parsedData.put("unit", definition.unit);
+            }
+        } else {
+            // For unknown PIDs, just store raw values
+            byte[] values = new byte[data.length - 3];
+            System.arraycopy(data, 3, values, 0, values.length);
+            response.parsedData.put("raw_values", values);
+        }
+    }
+    
+    // 42 <pid> <frame> <data...> <checksum>
+    private void parseFreezeFrameResponse(OBDResponse response, byte[] data, byte pid) {
+        if (data.length < 5) {
+            response.success = false;
+            response.errorMessage = "Invalid freeze frame response length";
+            return;
+        }
+        if (data[1] != pid) {
+            response.success = false;
+            response.errorMessage = "PID mismatch in response";
+            return;
+        }
+        
+        response.parsedData.put("frame", data[2] & 0xFF);
+        int available = data.length - 4;
+        if (PidTable.isSupportBitmap(pid)) {
+            if (available >= 4) {
+                response.parsedData.put("supported_pids", PidTable.supportedPids(pid & 0xFF, data, 3));
+            }
+        } else if (pid == PID_FREEZE_DTC) {
+            // The DTC that caused this frame to be stored; 0000 means the frame is empty
+            if (available >= 2) {
+                response.parsedData.put("dtc", DtcCode.pack(DtcCode.fromBytes(data[3], data[4]), 0, 0));
+            }
+        } else {
+            PidTable.Pid definition = PidTable.get(pid);
+            Number value = definition != null ? definition.decode(data, 3, available) : null;
+            if (value != null) {
+                response.parsedData.put(definition.key, value);
+                response.parsedData.put("unit", definition.unit);
+            } else {
+                byte[] values = new byte[available];
+                System.arraycopy(data, 3, values, 0, available);
                 response.parsedData.put("raw_values", values);
-                break;
+            }
         }
     }
     
-    private void parseStoredDTCsResponse(OBDResponse response, byte[] data) {
+    private void parseStoredDTCsResponse(OBDResponse response, byte[] data, int status) {
         if (data.length < 3) {
             response.success = false;
             response.errorMessage = "Invalid DTC response length";
@@ -380,12 +497,13 @@ public class OBDProtocol {
         int dtcCount = data[2] & 0xFF;
         response.parsedData.put("dtc_count", dtcCount);
         
-        List<String> dtcs = new ArrayList<>();
+        // Packed DTCs (DtcCode); text is only made when the UI shows them
+        DtcList dtcs = new DtcList(Math.max(dtcCount, (data.length - 4) / 2));
         for (int i = 3; i < data.length - 1; i += 2) {
             if (i + 1 < data.length) {
-                String dtc = parseDTC(data[i], data[i + 1]);
-                if (!dtc.equals("P0000")) { // Skip empty DTCs
-                    dtcs.add(dtc);
+                int code = DtcCode.fromBytes(data[i], data[i + 1]);
+                if (code != DtcCode.NO_DTC) { // Skip empty DTCs
+                    dtcs.add(DtcCode.pack(code, 0, status));
                 }
             }
         }
@@ -393,7 +511,7 @@ public class OBDProtocol {
     }
     
     private void parsePendingDTCsResponse(OBDResponse response, byte[] data) {
-        parseStoredDTCsResponse(response, data); // Same format as stored DTCs
+        parseStoredDTCsResponse(response, data, DtcCode.STATUS_PENDING); // Same format as stored DTCs
     }
     
     private void parseVehicleInfoResponse(OBDResponse response, byte[] data, byte pid) {
@@ -445,23 +563,159 @@ public class OBDProtocol {
         response.parsedData.put("data", values);
     }
     
-    private String parseDTC(byte high, byte low) {
-        char firstChar;
-        int firstNibble = (high >> 6) & 0x03;
-        switch (firstNibble) {
-            case 0: firstChar = 'P'; break;
-            case 1: firstChar = 'C'; break;
-            case 2: firstChar = 'B'; break;
-            case 3: firstChar = 'U'; break;
-            default: firstChar = 'P'; break;
+    /**
+     * Parse a reassembled Service 19 response; unlike parseOBDResponse there is no checksum byte
+     */
+    OBDResponse parseReadDTCInformationResponse(byte[] message, byte subFunction) {
+        OBDResponse response = new OBDResponse(true);
+        response.rawData = message;
+        
+        if (message.length >= 3 && message[0] == 0x7F) {
+            response.success = false;
+            response.errorMessage = "ECU returned error: " + getErrorDescription(message[2]);
+            response.parsedData.put("negative_response_code", message[2] & 0xFF);
+            return response;
+        }
+        if (message.length < 2 || message[0] != (byte) (SERVICE_19 + 0x40) || message[1] != subFunction) {
+            response.success = false;
+            response.errorMessage = "Unexpected response to ReadDTCInformation";
+            return response;
         }
         
-        int secondNibble = (high >> 4) & 0x03;
-        int thirdNibble = high & 0x0F;
-        int fourthNibble = (low >> 4) & 0x0F;
-        int fifthNibble = low & 0x0F;
+        switch (subFunction) {
+            case DTC_INFO_NUMBER_BY_STATUS_MASK:
+                if (message.length < 6) {
+                    response.success = false;
+                    response.errorMessage = "Invalid DTC count response length";
+                    break;
+                }
+                response.parsedData.put("status_availability_mask", message[2] & 0xFF);
+                response.parsedData.put("dtc_format", message[3] & 0xFF);
+                response.parsedData.put("dtc_count", (message[4] & 0xFF) << 8 | (message[5] & 0xFF));
+                break;
+            case DTC_INFO_BY_STATUS_MASK:
+            case DTC_INFO_SUPPORTED_DTCS:
+                parseDTCStatusRecords(response, message);
+                break;
+            case DTC_INFO_SNAPSHOT_IDENTIFICATION:
+                parseSnapshotIdentification(response, message);
+                break;
+            case DTC_INFO_SNAPSHOT_BY_DTC_NUMBER:
+                parseSnapshotRecords(response, message);
+                break;
+            case DTC_INFO_EXT_DATA_BY_DTC_NUMBER:
+                parseExtendedDataRecords(response, message);
+                break;
+            default:
+                Log.w(TAG, "Unhandled ReadDTCInformation sub-function: " + String.format("0x%02X", subFunction));
+                break;
+        }
+        return response;
+    }
+    
+    // 59 <sub-function> <availability mask> then 3-byte DTC + status per code
+    private void parseDTCStatusRecords(OBDResponse response, byte[] data) {
+        if (data.length < 3 || (data.length - 3) % 4 != 0) {
+            response.success = false;
+            response.errorMessage = "Invalid DTC status response length";
+            return;
+        }
+        
+        response.parsedData.put("status_availability_mask", data[2] & 0xFF);
+        DtcList dtcs = new DtcList((data.length - 3) / 4);
+        for (int i = 3; i < data.length; i += 4) {
+            int code = DtcCode.fromBytes(data[i], data[i + 1]);
+            if (code != DtcCode.NO_DTC || data[i + 2] != 0) {
+                dtcs.add(DtcCode.pack(code, data[i + 2], data[i + 3]));
+            }
+        }
+        response.parsedData.put("dtc_count", dtcs.size());
+        response.parsedData.put("dtcs", dtcs);
+    }
+    
+    // 59 03 then 3-byte DTC + record number per stored snapshot
+    private void parseSnapshotIdentification(OBDResponse response, byte[] data) {
+        if ((data.length - 2) % 4 != 0) {
+            response.success = false;
+            response.errorMessage = "Invalid snapshot identification response length";
+            return;
+        }
+        
+        int count = (data.length - 2) / 4;
+        DtcList dtcs = new DtcList(count);
+        int[] recordNumbers = new int[count];
+        for (int n = 0, i = 2; n < count; n++, i += 4) {
+            dtcs.add(DtcCode.pack(DtcCode.fromBytes(data[i], data[i + 1]), data[i + 2], 0));
+            recordNumbers[n] = data[i + 3] & 0xFF;
+        }
+        response.parsedData.put("snapshot_dtcs", dtcs);
+        response.parsedData.put("snapshot_record_numbers", recordNumbers);
+    }
+    
+    // 59 04 <DTC> <status> then per record: number, identifier count, (identifier, data)...
+    private void parseSnapshotRecords(OBDResponse response, byte[] data) {
+        if (!putRecordDtc(response, data)) {
+            return;
+        }
         
-        return String.format("%c%d%X%X%X", firstChar, secondNibble, thirdNibble, fourthNibble, fifthNibble);
+        List<SnapshotRecord> records = new ArrayList<>();
+        int i = 6;
+        while (i + 1 < data.length) {
+            SnapshotRecord record = new SnapshotRecord(data[i] & 0xFF);
+            int identifiers = data[i + 1] & 0xFF;
+            i += 2;
+            for (int n = 0; n < identifiers && i < data.length; n++) {
+                int identifier = i + 1 < data.length ? (data[i] & 0xFF) << 8 | (data[i + 1] & 0xFF) : -1;
+                int length = identifier >= 0 ? snapshotDataLength(identifier) : -1;
+                if (length < 0 || i + 2 + length > data.length) {
+                    // Without the length the rest cannot be split, keep it for the caller
+                    record.undecoded = Arrays.copyOfRange(data, i, data.length);
+                    i = data.length;
+                    break;
+                }
+                record.values.put(identifier, Arrays.copyOfRange(data, i + 2, i + 2 + length));
+                i += 2 + length;
+            }
+            records.add(record);
+        }
+        response.parsedData.put("snapshot_records", records);
+    }
+    
+    // 59 06 <DTC> <status> then per record: number, data
+    private void parseExtendedDataRecords(OBDResponse response, byte[] data) {
+        if (!putRecordDtc(response, data)) {
+            return;
+        }
+        
+        Map<Integer, byte[]> records = new LinkedHashMap<>();
+        int i = 6;
+        while (i < data.length) {
+            int recordNumber = data[i] & 0xFF;
+            Integer length = extendedDataLengths.get(recordNumber);
+            int end = length != null ? Math.min(i + 1 + length, data.length) : data.length;
+            records.put(recordNumber, Arrays.copyOfRange(data, i + 1, end));
+            i = end;
+        }
+        response.parsedData.put("extended_data", records);
+    }
+    
+    private boolean putRecordDtc(OBDResponse response, byte[] data) {
+        if (data.length < 6) {
+            response.success = false;
+            response.errorMessage = "Invalid DTC record response length";
+            return false;
+        }
+        response.parsedData.put("dtc", DtcCode.pack(DtcCode.fromBytes(data[2], data[3]), data[4], data[5]));
+        return true;
+    }
+    
+    private int snapshotDataLength(int identifier) {
+        Integer length = snapshotDataLengths.get(identifier);
+        if (length != null) {
+            return length;
+        }
+        int pid = identifier - OBD_DID_BASE;
+        return pid >= 0 && pid <= 0xFF ? PidTable.dataLength(pid) : -1;
     }
     
     private String getErrorDescription(byte errorCode) {
@@ -0,0 +1,119 @@
+package com.fullsend.jarvis.obd;
+
+/**
+ * SAE J1979 PID definitions shared by live data (Service 01) and freeze frames (Service 02)
+ *
+ * Features:
+ * - Data length of every PID 0x00-0x3F; UDS snapshot identifiers 0xF4xx carry the same data
+ * - Decoding formulas keyed by PID, each producing the parsedData key, unit and value type
+ *   (Integer or Double) the UI reads
+ * - Supported-PID bitmaps (PIDs 0x00, 0x20, 0x40, ...) expanded to the PIDs they announce
+ */
+public final class PidTable {
+
+    interface Formula {
+        Number apply(int a, int b);
+    }
+
+    public static final class Pid {
+        public final int pid;
+        public final String key;
+        public final String unit;
+        private final Formula formula;
+
+        private Pid(int pid, String key, String unit, Formula formula) {
+            this.pid = pid;
+            this.key = key;
+            this.unit = unit;
+            this.formula = formula;
+        }
+
+        /**
+         * Value of the data bytes at offset, or null if fewer than dataLength(pid) are available
+         */
+        public Number decode(byte[] data, int offset, int available) {
+            int length = dataLength(pid);
+            if (available < length || offset + length > data.length) {
+                return null;
+            }
+            int a = data[offset] & 0xFF;
+            int b = length > 1 ? data[offset + 1] & 0xFF : 0;
+            return formula.apply(a, b);
+        }
+    }
+
+    // Data bytes per PID
+    private static final byte[] DATA_LENGTHS = {
+            4, 4, 2, 2, 1, 1, 1, 1, 1, 1, 1, 1, 2, 1, 1, 1, // 0x00-0x0F
+            2, 1, 1, 1, 2, 2, 2, 2, 2, 2, 2, 2, 1, 1, 1, 2, // 0x10-0x1F
+            4, 2, 2, 2, 4, 4, 4, 4, 4, 4, 4, 4, 1, 1, 1, 1, // 0x20-0x2F
+            1, 2, 2, 1, 4, 4, 4, 4, 4, 4, 4, 4, 2, 2, 2, 2  // 0x30-0x3F
+    };
+
+    private static final Pid[] PIDS = new Pid[DATA_LENGTHS.length];
+
+    static {
+        define(OBDProtocol.PID_ENGINE_LOAD, "load", "%", (a, b) -> a * 100.0 / 255.0);
+        define(OBDProtocol.PID_COOLANT_TEMP, "temperature", "°C", (a, b) -> a - 40);
+        define(OBDProtocol.PID_SHORT_TERM_FUEL_TRIM_1, "short_term_fuel_trim_1", "%", (a, b) -> (a - 128) * 100.0 / 128.0);
+        define(OBDProtocol.PID_LONG_TERM_FUEL_TRIM_1, "long_term_fuel_trim_1", "%", (a, b) -> (a - 128) * 100.0 / 128.0);
+        define(OBDProtocol.PID_SHORT_TERM_FUEL_TRIM_2, "short_term_fuel_trim_2", "%", (a, b) -> (a - 128) * 100.0 / 128.0);
+        define(OBDProtocol.PID_LONG_TERM_FUEL_TRIM_2, "long_term_fuel_trim_2", "%", (a, b) -> (a - 128) * 100.0 / 128.0);
+        define(OBDProtocol.PID_FUEL_PRESSURE, "fuel_pressure", "kPa", (a, b) -> a * 3);
+        define(OBDProtocol.PID_INTAKE_MAP, "intake_pressure", "kPa", (a, b) -> a);
+        define(OBDProtocol.PID_ENGINE_RPM, "rpm", "RPM", (a, b) -> (a << 8 | b) / 4);
+        define(OBDProtocol.PID_VEHICLE_SPEED, "speed", "km/h", (a, b) -> a);
+        define(OBDProtocol.PID_TIMING_ADVANCE, "timing_advance", "° before TDC", (a, b) -> a / 2.0 - 64.0);
+        define(OBDProtocol.PID_INTAKE_AIR_TEMP, "intake_air_temp", "°C", (a, b) -> a - 40);
+        define(OBDProtocol.PID_MAF_AIR_FLOW, "maf", "g/s", (a, b) -> (a << 8 | b) / 100.0);
+        define(OBDProtocol.PID_THROTTLE_POSITION, "throttle", "%", (a, b) -> a * 100.0 / 255.0);
+        define(OBDProtocol.PID_ENGINE_RUNTIME, "engine_runtime", "s", (a, b) -> a << 8 | b);
+        define(OBDProtocol.PID_DISTANCE_WITH_MIL, "distance_with_mil", "km", (a, b) -> a << 8 | b);
+        define(OBDProtocol.PID_FUEL_TANK_LEVEL, "fuel_tank_level", "%", (a, b) -> a * 100.0 / 255.0);
+        define(OBDProtocol.PID_DISTANCE_SINCE_CODES_CLEARED, "distance_since_codes_cleared", "km", (a, b) -> a << 8 | b);
+        define(OBDProtocol.PID_ABSOLUTE_BAROMETRIC_PRESSURE, "barometric_pressure", "kPa", (a, b) -> a);
+        define(OBDProtocol.PID_CATALYST_TEMP_B1S1, "catalyst_temp_b1s1", "°C", (a, b) -> (a << 8 | b) / 10.0 - 40.0);
+    }
+
+    private PidTable() {
+    }
+
+    private static void define(int pid, String key, String unit, Formula formula) {
+        PIDS[pid] = new Pid(pid, key, unit, formula);
+    }
+
+    /**
+     * The decoding for a PID, or null if it has no formula here
+     */
+    public static Pid get(int pid) {
+        return pid >= 0 && pid < PIDS.length ? PIDS[pid] : null;
+    }
+
+    /**
+     * Data bytes the PID carries, or -1 if unknown
+     */
+    public static int dataLength(int pid) {
+        return pid >= 0 && pid < DATA_LENGTHS.length ? DATA_LENGTHS[pid] : -1;
+    }
+
+    public static boolean isSupportBitmap(int pid) {
+        return (pid & 0x1F) == 0;
+    }
+
+    /**
+     * PIDs announced by the 4-byte bitmap answering support PID basePid; the last bit
+     * (basePid + 0x20) means the next bitmap is supported too
+     */
+    public static int[] supportedPids(int basePid, byte[] data, int offset) {
+        int bits = (data[offset] & 0xFF) << 24 | (data[offset + 1] & 0xFF) << 16
+                | (data[offset + 2] & 0xFF) << 8 | (data[offset + 3] & 0xFF);
+        int[] pids = new int[Integer.bitCount(bits)];
+        int count = 0;
+        for (int bit = 0; bit < 32; bit++) {
+            if ((bits & (0x80000000 >>> bit)) != 0) {
+                pids[count++] = basePid + bit + 1;
+            }
+        }
+        return pids;
+    }
+}
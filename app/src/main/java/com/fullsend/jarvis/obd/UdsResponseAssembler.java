@@ -0,0 +1,228 @@
+package com.fullsend.jarvis.obd;
+
+import java.io.ByteArrayOutputStream;
+
+/**
+ * Reassembles one UDS response that may arrive over several serial reads
+ *
+ * Features:
+ * - The framing comes from the connection's protocol; it cannot be guessed from the data, since
+ *   a K-line echo or a response with a low service id looks like an ISO-TP PCI byte
+ * - ISO 15765-2 (ISO-TP) framing: single frames, or a first frame followed by consecutive frames
+ *   with sequence checking; the caller sends flowControlFrame() after the first frame. Single
+ *   frames and the last consecutive frame complete as soon as their data is in, padded or not
+ * - K-line framing: the message is the bytes received until the bus goes idle, with the
+ *   trailing additive checksum verified and stripped; the adapter's echo of the request is skipped
+ * - Negative response 0x78 (response pending) is dropped and reported, so the caller can extend
+ *   its timeout and keep waiting for the real answer
+ * - payload() is the bare UDS message, service id first, without PCI bytes, padding or checksum
+ */
+final class UdsResponseAssembler {
+
+    static final int NEED_MORE = 0;
+    static final int SEND_FLOW_CONTROL = 1;
+    static final int RESPONSE_PENDING = 2;
+    static final int COMPLETE = 3;
+    static final int ERROR = 4;
+
+    static final byte NEGATIVE_RESPONSE = 0x7F;
+    static final byte NRC_RESPONSE_PENDING = 0x78;
+
+    private static final int CAN_FRAME_SIZE = 8;
+    private static final int MAX_PAYLOAD = 4095;
+
+    // Block size 0 (send everything) and STmin 0, padded to a full CAN frame
+    private static final byte[] FLOW_CONTROL_CONTINUE = {0x30, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00, 0x00};
+
+    enum Framing { ISO_TP, K_LINE }
+
+    private final Framing framing;
+    private final byte[] echo;
+    private final ByteArrayOutputStream received = new ByteArrayOutputStream(64);
+    private final ByteArrayOutputStream payload = new ByteArrayOutputStream(64);
+    private int echoMatched;
+    private int expectedLength = -1;
+    private int nextSequence;
+    private int consumed;
+    // Padding bytes of a pending single frame that have not been read yet
+    private int padding;
+    private String error;
+
+    /**
+     * @param request the bytes written to the bus; on K-line a copy read back before the response
+     *                is dropped, on ISO-TP it is not used
+     */
+    UdsResponseAssembler(Framing framing, byte[] request) {
+        this.framing = framing;
+        this.echo = framing == Framing.K_LINE && request != null ? request.clone() : new byte[0];
+    }
+
+    /**
+     * Feed the next chunk read from the port; returns what the caller should do next
+     */
+    int accept(byte[] chunk, int length) {
+        if (error != null) {
+            return ERROR;
+        }
+        received.write(chunk, 0, length);
+        return framing == Framing.ISO_TP ? acceptFrames() : acceptKLine();
+    }
+
+    /**
+     * Called when a read timed out after some data arrived; K-line messages end at the idle gap
+     */
+    int onIdle() {
+        if (error != null) {
+            return ERROR;
+        }
+        // Whatever follows a gap is a new frame, not padding
+        padding = 0;
+        if (framing != Framing.K_LINE || received.size() - consumed == 0) {
+            return NEED_MORE;
+        }
+        byte[] bytes = received.toByteArray();
+        int end = bytes.length - 1;
+        if (end - consumed < 1 || checksum(bytes, consumed, end) != bytes[end]) {
+            return fail("Checksum mismatch in ECU response");
+        }
+        payload.write(bytes, consumed, end - consumed);
+        consumed = bytes.length;
+        return COMPLETE;
+    }
+
+    boolean hasData() {
+        return received.size() > consumed || padding > 0;
+    }
+
+    byte[] flowControlFrame() {
+        return FLOW_CONTROL_CONTINUE.clone();
+    }
+
+    byte[] payload() {
+        return payload.toByteArray();
+    }
+
+    String error() {
+        return error;
+    }
+
+    private int acceptKLine() {
+        byte[] bytes = received.toByteArray();
+        skipEcho(bytes);
+        boolean pending = false;
+        // 7F <service> 78 <checksum>: the ECU needs more time, the answer follows as its own message
+        while (bytes.length - consumed >= 4 && bytes[consumed] == NEGATIVE_RESPONSE
+                && bytes[consumed + 2] == NRC_RESPONSE_PENDING) {
+            if (checksum(bytes, consumed, consumed + 3) != bytes[consumed + 3]) {
+                return fail("Checksum mismatch in ECU response");
+            }
+            consumed += 4;
+            pending = true;
+        }
+        return pending ? RESPONSE_PENDING : NEED_MORE;
+    }
+
+    /**
+     * Drop the request as it is read back from the single-wire bus; adapters that suppress the
+     * echo start straight with the response, which never matches the request's first byte
+     */
+    private void skipEcho(byte[] bytes) {
+        while (echoMatched < echo.length && consumed < bytes.length) {
+            if (bytes[consumed] != echo[echoMatched]) {
+                consumed -= echoMatched;
+                echoMatched = echo.length;
+                return;
+            }
+            consumed++;
+            echoMatched++;
+        }
+    }
+
+    private int acceptFrames() {
+        byte[] bytes = received.toByteArray();
+        int skip = Math.min(padding, bytes.length - consumed);
+        consumed += skip;
+        padding -= skip;
+
+        boolean pending = false;
+        while (bytes.length > consumed) {
+            int frame = consumed;
+            int available = bytes.length - frame;
+            int type = (bytes[frame] & 0xF0) >> 4;
+            switch (type) {
+                case 0: { // Single frame
+                    int length = bytes[frame] & 0x0F;
+                    if (length == 0 || length > CAN_FRAME_SIZE - 1) {
+                        return fail("Invalid single frame length " + length);
+                    }
+                    if (available < length + 1) {
+                        return pending ? RESPONSE_PENDING : NEED_MORE;
+                    }
+                    if (length == 3 && bytes[frame + 1] == NEGATIVE_RESPONSE
+                            && bytes[frame + 3] == NRC_RESPONSE_PENDING) {
+                        // Skip the padding too, whether it came in this read or comes in the next
+                        int frameSize = Math.min(available, CAN_FRAME_SIZE);
+                        consumed += frameSize;
+                        padding = CAN_FRAME_SIZE - frameSize;
+                        pending = true;
+                        continue;
+                    }
+                    consumed += length + 1;
+                    payload.write(bytes, frame + 1, length);
+                    return COMPLETE;
+                }
+                case 1: { // First frame
+                    if (available < CAN_FRAME_SIZE) {
+                        return pending ? RESPONSE_PENDING : NEED_MORE;
+                    }
+                    expectedLength = (bytes[frame] & 0x0F) << 8 | (bytes[frame + 1] & 0xFF);
+                    if (expectedLength < CAN_FRAME_SIZE || expectedLength > MAX_PAYLOAD) {
+                        return fail("Invalid first frame length " + expectedLength);
+                    }
+                    consumed += CAN_FRAME_SIZE;
+                    payload.reset();
+                    payload.write(bytes, frame + 2, CAN_FRAME_SIZE - 2);
+                    nextSequence = 1;
+                    return SEND_FLOW_CONTROL;
+                }
+                case 2: { // Consecutive frame
+                    if (expectedLength < 0) {
+                        return fail("Consecutive frame without a first frame");
+                    }
+                    int sequence = bytes[frame] & 0x0F;
+                    if (sequence != nextSequence) {
+                        return fail("Frame sequence error: expected " + nextSequence + ", got " + sequence);
+                    }
+                    // Only the last consecutive frame may be short
+                    int length = Math.min(CAN_FRAME_SIZE - 1, expectedLength - payload.size());
+                    if (available < length + 1) {
+                        return NEED_MORE;
+                    }
+                    consumed += length == CAN_FRAME_SIZE - 1 ? CAN_FRAME_SIZE : length + 1;
+                    nextSequence = (nextSequence + 1) & 0x0F;
+                    payload.write(bytes, frame + 1, length);
+                    if (payload.size() == expectedLength) {
+                        return COMPLETE;
+                    }
+                    break;
+                }
+                default: // Flow control frames from the ECU are not expected on responses
+                    return fail("Unexpected frame type " + type);
+            }
+        }
+        return pending ? RESPONSE_PENDING : NEED_MORE;
+    }
+
+    private static byte checksum(byte[] bytes, int from, int to) {
+        int sum = 0;
+        for (int i = from; i < to; i++) {
+            sum += bytes[i] & 0xFF;
+        }
+        return (byte) sum;
+    }
+
+    private int fail(String message) {
+        error = message;
+        return ERROR;
+    }
+}
@@ -0,0 +1,149 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContextWrapper;
+import android.content.SharedPreferences;
+
+import org.junit.After;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Many threads feeding one AdvancedAIEngine at once; its shared counters and learned maps must
+ * come out exactly as if the same inputs had been processed one after another
+ */
+public class AdvancedAIEngineConcurrencyTest {
+
+    private static final int THREADS = 8;
+    private static final int INPUTS_PER_THREAD = 250;
+    private static final long TIMEOUT_MS = 60_000;
+
+    // Few enough distinct inputs that the bounded knowledge base never evicts
+    private static final String[] PHRASES = {
+            "hello jarvis",
+            "what is the engine temperature",
+            "my car has a problem starting",
+            "run a system analysis",
+            "optimize performance please",
+            "predict when I need maintenance",
+            "write code to compute primes",
+            "thanks, that was great",
+    };
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private AdvancedAIEngine engine;
+
+    @After
+    public void tearDown() {
+        if (engine != null) {
+            engine.shutdown();
+        }
+    }
+
+    @Test
+    public void concurrentInputsLoseNoUpdates() throws Exception {
+        File filesDir = folder.newFolder("files");
+        SharedPreferences prefs = new InMemorySharedPreferences();
+        engine = new AdvancedAIEngine(new ContextWrapper(null) {
+            @Override
+            public File getFilesDir() {
+                return filesDir;
+            }
+
+            @Override
+            public SharedPreferences getSharedPreferences(String name, int mode) {
+                return prefs;
+            }
+        });
+
+        // Every input runs in its own conversation, so none is superseded and dropped
+        CountDownLatch start = new CountDownLatch(1);
+        ExecutorService writers = Executors.newFixedThreadPool(THREADS);
+        for (int t = 0; t < THREADS; t++) {
+            int thread = t;
+            writers.execute(() -> {
+                try {
+                    start.await();
+                } catch (InterruptedException e) {
+                    return;
+                }
+                for (int i = 0; i < INPUTS_PER_THREAD; i++) {
+                    engine.processInput("conversation-" + thread + "-" + i,
+                            PHRASES[(thread + i) % PHRASES.length], NO_CALLBACK);
+                }
+            });
+        }
+        start.countDown();
+        writers.shutdown();
+        assertTrue(writers.awaitTermination(TIMEOUT_MS, TimeUnit.MILLISECONDS));
+
+        int total = THREADS * INPUTS_PER_THREAD;
+        long deadline = System.currentTimeMillis() + TIMEOUT_MS;
+        // A request is counted only after it has learned, so this waits for all learning too
+        while (engine.getPerformanceStats().totalRequests < total && System.currentTimeMillis() < deadline) {
+            Thread.sleep(10);
+        }
+
+        // What the same inputs teach the engine when processed one at a time
+        NeuralNetworkEngine reference = new NeuralNetworkEngine(null);
+        Map<String, Long> expectedCommands = new HashMap<>();
+        Map<String, Long> expectedCapabilities = new HashMap<>();
+        for (int t = 0; t < THREADS; t++) {
+            for (int i = 0; i < INPUTS_PER_THREAD; i++) {
+                AdvancedAIEngine.AIAnalysis analysis = reference.analyzeInput(PHRASES[(t + i) % PHRASES.length]);
+                if (analysis.getCommand() != null) {
+                    expectedCommands.merge(analysis.getCommand(), 1L, Long::sum);
+                }
+                expectedCapabilities.merge("capability_" + analysis.primaryCapability.name().toLowerCase(),
+                        1L, Long::sum);
+            }
+        }
+
+        AdvancedAIEngine.AIPerformanceStats stats = engine.getPerformanceStats();
+        assertEquals(total, stats.totalRequests);
+        assertEquals(PHRASES.length, stats.knowledgeBaseSize);
+        // technical_level and response_style plus one usage counter per capability seen
+        assertEquals(2 + expectedCapabilities.size(), stats.userPreferencesCount);
+
+        KnowledgeStore store = engine.getKnowledgeStore();
+        for (Map.Entry<String, Long> command : expectedCommands.entrySet()) {
+            assertEquals("count for " + command.getKey(), command.getValue(), store.get("cmd:" + command.getKey()));
+        }
+        for (Map.Entry<String, Long> capability : expectedCapabilities.entrySet()) {
+            Object usage = store.get("pref:" + capability.getKey());
+            assertNotNull(capability.getKey(), usage);
+            assertEquals(capability.getKey(), capability.getValue() * 0.1, (Double) usage, 1e-6);
+        }
+    }
+
+    private static final AdvancedAIEngine.AICallback NO_CALLBACK = new AdvancedAIEngine.AICallback() {
+        @Override
+        public void onAIResponse(String response, AdvancedAIEngine.AICapability capability) {}
+        @Override
+        public void onAILearning(String insight) {}
+        @Override
+        public void onAutonomousAction(String action, String result) {}
+        @Override
+        public void onCodeExecution(String code, String result) {}
+        @Override
+        public void onPerformanceOptimization(String optimization) {}
+        @Override
+        public void onPrediction(String prediction, double confidence) {}
+        @Override
+        public void onInputDropped(String input, String reason) {}
+    };
+}
@@ -0,0 +1,112 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.Future;
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicBoolean;
+
+/**
+ * Many writers appending to one ConversationHistoryStore at once, the way the AdvancedAIEngine
+ * worker pool does; every turn must be accounted for
+ */
+public class ConversationHistoryStoreStressTest {
+
+    private static final int THREADS = 8;
+    private static final int TURNS_PER_THREAD = 20_000;
+
+    @Test
+    public void concurrentAppendsLoseNoTurns() throws Exception {
+        // Bounds large enough that nothing is evicted
+        ConversationHistoryStore store = new ConversationHistoryStore(null, 64, Integer.MAX_VALUE, 0);
+
+        runWriters(store, null);
+
+        assertEquals(THREADS * TURNS_PER_THREAD, store.size());
+        assertEquals(0, store.getCompactedTurns());
+    }
+
+    @Test
+    public void concurrentAppendsKeepEachWritersOrder() throws Exception {
+        ConversationHistoryStore store = new ConversationHistoryStore(null, 64, Integer.MAX_VALUE, 0);
+
+        runWriters(store, null);
+
+        int[] lastSeen = new int[THREADS];
+        Arrays.fill(lastSeen, -1);
+        for (String turn : store.recent(THREADS * TURNS_PER_THREAD)) {
+            String[] parts = turn.substring("User: ".length()).split(" ");
+            int writer = Integer.parseInt(parts[0]);
+            int sequence = Integer.parseInt(parts[1]);
+            assertEquals("turn out of order for writer " + writer, lastSeen[writer] + 1, sequence);
+            lastSeen[writer] = sequence;
+        }
+        for (int writer = 0; writer < THREADS; writer++) {
+            assertEquals(TURNS_PER_THREAD - 1, lastSeen[writer]);
+        }
+    }
+
+    @Test
+    public void evictedTurnsAreCompactedNotLost() throws Exception {
+        ConversationHistoryStore store = new ConversationHistoryStore(null, 16, 4, 0);
+        AtomicBoolean writing = new AtomicBoolean(true);
+
+        // Readers drain and evict concurrently with the writers
+        ExecutorService readers = Executors.newFixedThreadPool(2);
+        List<Future<?>> readerResults = new ArrayList<>();
+        for (int i = 0; i < 2; i++) {
+            readerResults.add(readers.submit(() -> {
+                while (writing.get()) {
+                    assertTrue(store.recent(10).size() <= 10);
+                    assertTrue(store.size() <= 16 * 4);
+                    store.getSummary();
+                }
+            }));
+        }
+
+        runWriters(store, writing);
+        for (Future<?> result : readerResults) {
+            result.get(30, TimeUnit.SECONDS);
+        }
+        readers.shutdown();
+
+        assertEquals(THREADS * TURNS_PER_THREAD, store.size() + store.getCompactedTurns());
+        assertTrue(store.size() <= 16 * 4);
+    }
+
+    private static void runWriters(ConversationHistoryStore store, AtomicBoolean writing) throws Exception {
+        ExecutorService writers = Executors.newFixedThreadPool(THREADS);
+        CountDownLatch start = new CountDownLatch(1);
+        List<Future<?>> results = new ArrayList<>();
+        for (int t = 0; t < THREADS; t++) {
+            int writer = t;
+            results.add(writers.submit(() -> {
+                start.await();
+                for (int i = 0; i < TURNS_PER_THREAD; i++) {
+                    store.add("User: " + writer + " " + i);
+                }
+                return null;
+            }));
+        }
+        start.countDown();
+        try {
+            for (Future<?> result : results) {
+                result.get(60, TimeUnit.SECONDS);
+            }
+        } finally {
+            if (writing != null) {
+                writing.set(false);
+            }
+            writers.shutdown();
+        }
+    }
+}
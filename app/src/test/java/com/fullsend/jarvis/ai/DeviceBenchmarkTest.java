@@ -0,0 +1,46 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Only CPU time spent outside this process counts as load that invalidates a benchmark run
+ */
+public class DeviceBenchmarkTest {
+
+    @Test
+    public void ownWorkIsNotForeignLoad() {
+        // 4 cores for 1 s: 400 ticks, the benchmark itself busy on all of them
+        ProcSampler.Sample before = sample(1000, 600, 100, 20);
+        ProcSampler.Sample after = sample(1400, 600, 470, 50);
+        assertEquals(0.0, DeviceBenchmark.foreignCpuLoad(before, after), 1e-9);
+    }
+
+    @Test
+    public void otherProcessesAreForeignLoad() {
+        // 400 ticks, 100 idle, 120 ours: 180 used elsewhere
+        ProcSampler.Sample before = sample(1000, 600, 100, 20);
+        ProcSampler.Sample after = sample(1400, 700, 200, 40);
+        double load = DeviceBenchmark.foreignCpuLoad(before, after);
+        assertEquals(0.45, load, 1e-9);
+        assertTrue(load > DeviceBenchmark.MAX_FOREIGN_CPU_LOAD);
+    }
+
+    @Test
+    public void unknownCountersAreNotLoad() {
+        ProcSampler.Sample missing = new ProcSampler.Sample();
+        assertEquals(0.0, DeviceBenchmark.foreignCpuLoad(missing, missing), 0);
+        assertEquals(0.0, DeviceBenchmark.foreignCpuLoad(sample(1000, 600, 100, 20), sample(1000, 600, 100, 20)), 0);
+    }
+
+    private static ProcSampler.Sample sample(long total, long idle, long user, long system) {
+        ProcSampler.Sample sample = new ProcSampler.Sample();
+        sample.systemTotalTicks = total;
+        sample.systemIdleTicks = idle;
+        sample.processUserTicks = user;
+        sample.processSystemTicks = system;
+        return sample;
+    }
+}
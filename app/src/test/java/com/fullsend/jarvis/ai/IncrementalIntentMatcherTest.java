@@ -0,0 +1,60 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Partials are matched against phrases derived from the same regex table as final transcripts
+ */
+public class IncrementalIntentMatcherTest {
+
+    @Test
+    public void derivesPhrasesFromPlainWordPatterns() {
+        assertArrayEquals(new String[] {"how", "much", "battery"},
+                IncrementalIntentMatcher.phraseWords("(?i).*how.*much.*battery.*"));
+        assertArrayEquals(new String[] {"time", "is", "it"},
+                IncrementalIntentMatcher.phraseWords("(?i).*Time.*is.*it.*"));
+        assertNull(IncrementalIntentMatcher.phraseWords("(?i).*(open|enter).*garage.*"));
+        assertNull(IncrementalIntentMatcher.phraseWords("(?i).*auto\\s*shop.*"));
+    }
+
+    @Test
+    public void onlyRequestedIntentsAreMatched() {
+        Map<String, List<String>> patterns = new HashMap<>();
+        patterns.put("battery_status", Arrays.asList("(?i).*battery.*status.*", "(?i).*charge.*level.*"));
+        patterns.put("shutdown", Collections.singletonList("(?i).*shutdown.*"));
+        IncrementalIntentMatcher matcher = new IncrementalIntentMatcher(patterns, Collections.singletonList("battery_status"));
+
+        assertEquals(Collections.singletonList("battery_status"), matcher.getIntents());
+        assertNull(matcher.update("shutdown now").intent);
+    }
+
+    @Test
+    public void becomesStableOnceTheSameIntentKeepsMatching() {
+        Map<String, List<String>> patterns = new HashMap<>();
+        patterns.put("battery_status", Arrays.asList("(?i).*battery.*status.*", "(?i).*charge.*level.*"));
+        IncrementalIntentMatcher matcher = new IncrementalIntentMatcher(patterns, Collections.singletonList("battery_status"));
+
+        IncrementalIntentMatcher.Match match = matcher.update("what is the battery");
+        assertEquals(0.5, match.confidence, 1e-9);
+        assertFalse(match.stable);
+
+        match = matcher.update("what is the battery status");
+        assertEquals("battery_status", match.intent);
+        assertFalse(match.stable);
+
+        match = matcher.update("what is the battery status right");
+        assertTrue(match.stable);
+    }
+}
@@ -0,0 +1,99 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.ExecutorService;
+import java.util.concurrent.Executors;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Every task handed to a KeyedSerialExecutor either runs or has its drop callback called
+ */
+public class KeyedSerialExecutorTest {
+
+    @Test
+    public void supersededTasksAreReported() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        KeyedSerialExecutor lanes = new KeyedSerialExecutor(pool);
+        List<String> ran = Collections.synchronizedList(new ArrayList<>());
+        List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+
+        // Hold the lane busy so the next utterances queue up behind it
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        lanes.executeLatest("voice-1", () -> { started.countDown(); await(release); },
+                (key, reason) -> dropped.add("first"));
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 5; i++) {
+            String name = "utterance " + i;
+            lanes.executeLatest("voice-1", () -> ran.add(name), (key, reason) -> dropped.add(name + " " + reason));
+        }
+        release.countDown();
+        drain(pool);
+
+        assertEquals(Collections.singletonList("utterance 4"), ran);
+        assertEquals(4, dropped.size());
+        for (String drop : dropped) {
+            assertTrue(drop, drop.endsWith("superseded"));
+        }
+        assertEquals(4, lanes.getDroppedTaskCount());
+    }
+
+    @Test
+    public void overflowAndShutdownAreReported() throws Exception {
+        ExecutorService pool = Executors.newSingleThreadExecutor();
+        KeyedSerialExecutor lanes = new KeyedSerialExecutor(pool, 2, null);
+        List<String> dropped = Collections.synchronizedList(new ArrayList<>());
+
+        CountDownLatch started = new CountDownLatch(1);
+        CountDownLatch release = new CountDownLatch(1);
+        lanes.execute("ui", () -> { started.countDown(); await(release); });
+        assertTrue(started.await(10, TimeUnit.SECONDS));
+        for (int i = 0; i < 4; i++) {
+            lanes.execute("ui", () -> { }, (key, reason) -> dropped.add(reason));
+        }
+        pool.shutdown();
+        release.countDown();
+        pool.awaitTermination(10, TimeUnit.SECONDS);
+
+        // Two tasks shed when the lane overflowed, the remaining two when the pool refused the lane
+        assertEquals(4, dropped.size());
+        assertEquals(2, Collections.frequency(dropped, "queue full"));
+        assertEquals(2, Collections.frequency(dropped, "executor shut down"));
+    }
+
+    @Test
+    public void differentKeysRunInParallel() throws Exception {
+        ExecutorService pool = Executors.newFixedThreadPool(2);
+        KeyedSerialExecutor lanes = new KeyedSerialExecutor(pool);
+        CountDownLatch bothStarted = new CountDownLatch(2);
+
+        lanes.execute("voice-1", () -> { bothStarted.countDown(); await(bothStarted); });
+        lanes.execute("ui", () -> { bothStarted.countDown(); await(bothStarted); });
+
+        assertTrue(bothStarted.await(10, TimeUnit.SECONDS));
+        drain(pool);
+    }
+
+    private static void await(CountDownLatch latch) {
+        try {
+            latch.await(10, TimeUnit.SECONDS);
+        } catch (InterruptedException e) {
+            Thread.currentThread().interrupt();
+        }
+    }
+
+    private static void drain(ExecutorService pool) throws InterruptedException {
+        // Lanes reschedule themselves, so wait for the queue to settle before shutting down
+        Thread.sleep(200);
+        pool.shutdown();
+        assertTrue(pool.awaitTermination(10, TimeUnit.SECONDS));
+    }
+}
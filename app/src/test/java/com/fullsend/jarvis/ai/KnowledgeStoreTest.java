@@ -0,0 +1,248 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.io.RandomAccessFile;
+import java.nio.ByteBuffer;
+import java.nio.channels.FileChannel;
+import java.util.Arrays;
+import java.util.HashMap;
+import java.util.Map;
+
+/**
+ * Recovery, CRC truncation, compaction and failed flushes of the knowledge log
+ */
+public class KnowledgeStoreTest {
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void reopenedStoreHasEveryValue() throws IOException {
+        File dir = folder.newFolder("knowledge");
+        KnowledgeStore store = new KnowledgeStore(dir);
+        Map<String, String> fields = new HashMap<>();
+        fields.put("input", "hello");
+        fields.put("response", "hi");
+        store.putString("s", "text");
+        store.putDouble("d", 0.25);
+        store.putLong("l", 42);
+        store.putRecord("r", fields);
+        store.putString("gone", "soon");
+        store.delete("gone");
+        store.putLong("l", 43);
+        store.close();
+
+        KnowledgeStore reopened = new KnowledgeStore(dir);
+        assertEquals("text", reopened.get("s"));
+        assertEquals(0.25, (Double) reopened.get("d"), 0);
+        assertEquals(43L, reopened.get("l"));
+        assertEquals(fields, reopened.get("r"));
+        assertNull(reopened.get("gone"));
+        assertEquals(4, reopened.size());
+        reopened.close();
+    }
+
+    @Test
+    public void corruptRecordIsTruncatedWithEverythingAfterIt() throws IOException {
+        File dir = folder.newFolder("knowledge");
+        KnowledgeStore store = new KnowledgeStore(dir);
+        store.putString("a", "first");
+        store.putString("b", "second");
+        store.sync();
+        long validEnd = newestSegment(dir).length();
+        store.putString("c", "third");
+        store.putString("d", "fourth");
+        store.close();
+
+        // Flip one byte in the body of "c"; its CRC no longer matches
+        File segment = newestSegment(dir);
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            long position = validEnd + 8 + 3;
+            raf.seek(position);
+            int value = raf.read();
+            raf.seek(position);
+            raf.write(value ^ 0xFF);
+        }
+
+        KnowledgeStore reopened = new KnowledgeStore(dir);
+        assertEquals("first", reopened.get("a"));
+        assertEquals("second", reopened.get("b"));
+        assertNull(reopened.get("c"));
+        assertNull(reopened.get("d"));
+        assertEquals(validEnd, segment.length());
+
+        // Appending continues at the cut
+        reopened.putString("e", "fifth");
+        reopened.close();
+        KnowledgeStore again = new KnowledgeStore(dir);
+        assertEquals("fifth", again.get("e"));
+        assertEquals(3, again.size());
+        again.close();
+    }
+
+    @Test
+    public void tornTailIsTruncated() throws IOException {
+        File dir = folder.newFolder("knowledge");
+        KnowledgeStore store = new KnowledgeStore(dir);
+        store.putLong("kept", 1);
+        store.close();
+
+        File segment = newestSegment(dir);
+        long validEnd = segment.length();
+        try (RandomAccessFile raf = new RandomAccessFile(segment, "rw")) {
+            // A record header promising more body than the crash left behind
+            raf.seek(validEnd);
+            raf.writeInt(100);
+            raf.writeInt(0);
+            raf.write(new byte[10]);
+        }
+
+        KnowledgeStore reopened = new KnowledgeStore(dir);
+        assertEquals(1L, reopened.get("kept"));
+        assertEquals(validEnd, segment.length());
+        reopened.close();
+    }
+
+    @Test
+    public void compactionKeepsLiveValuesAndDropsDeadOnes() throws IOException {
+        File dir = folder.newFolder("knowledge");
+        ManualCompactionStore store = new ManualCompactionStore(dir);
+        char[] padding = new char[200];
+        Arrays.fill(padding, 'x');
+        for (int round = 0; round < 20; round++) {
+            for (int key = 0; key < 10; key++) {
+                store.putString("key" + key, round + new String(padding));
+            }
+            store.flush();
+        }
+        store.putString("deleted", "value");
+        store.flush();
+        store.delete("deleted");
+        store.flush();
+
+        int segmentsBefore = store.getSegmentCount();
+        long bytesBefore = store.getTotalBytes();
+        assertTrue(segmentsBefore > 3);
+        store.allowed = true;
+        store.compact();
+        assertTrue(store.getSegmentCount() < segmentsBefore);
+        assertTrue(store.getTotalBytes() < bytesBefore);
+        for (int key = 0; key < 10; key++) {
+            assertEquals("19" + new String(padding), store.get("key" + key));
+        }
+        store.close();
+
+        KnowledgeStore reopened = new KnowledgeStore(dir, 4096);
+        assertEquals(10, reopened.size());
+        assertEquals("19" + new String(padding), reopened.get("key7"));
+        assertNull(reopened.get("deleted"));
+        reopened.close();
+    }
+
+    @Test
+    public void failedFlushIsRetriedInPlace() throws IOException {
+        File dir = folder.newFolder("knowledge");
+        FailingStore store = new FailingStore(dir);
+        store.putString("before", "1");
+        store.flush();
+
+        store.failing = true;
+        store.putString("during", "2");
+        store.flush();
+        store.failing = false;
+        store.putString("after", "3");
+        store.close();
+
+        // No gap in the log, so nothing after the failure is lost on recovery
+        KnowledgeStore reopened = new KnowledgeStore(dir);
+        assertEquals("1", reopened.get("before"));
+        assertEquals("2", reopened.get("during"));
+        assertEquals("3", reopened.get("after"));
+        reopened.close();
+    }
+
+    @Test
+    public void persistentFailureRollsTheIndexBack() throws IOException {
+        File dir = folder.newFolder("knowledge");
+        FailingStore store = new FailingStore(dir);
+        store.putString("key", "old");
+        store.flush();
+
+        store.failing = true;
+        store.putString("key", "new");
+        char[] big = new char[300 * 1024];
+        Arrays.fill(big, 'y');
+        for (int i = 0; i < 4; i++) {
+            store.putString("big" + i, new String(big));
+        }
+        store.failing = false;
+
+        // The buffer grew past its limit and was dropped; the index is back to what is on disk
+        assertEquals("old", store.get("key"));
+        assertNull(store.get("big0"));
+        assertEquals(1, store.size());
+
+        store.putString("later", "kept");
+        store.close();
+        KnowledgeStore reopened = new KnowledgeStore(dir);
+        assertEquals("old", reopened.get("key"));
+        assertEquals("kept", reopened.get("later"));
+        assertEquals(2, reopened.size());
+        reopened.close();
+    }
+
+    private static File newestSegment(File dir) {
+        File[] files = dir.listFiles((d, name) -> name.endsWith(".log"));
+        Arrays.sort(files);
+        return files[files.length - 1];
+    }
+
+    /**
+     * Store that only compacts when the test asks, so background compaction cannot race it
+     */
+    private static class ManualCompactionStore extends KnowledgeStore {
+        volatile boolean allowed;
+
+        ManualCompactionStore(File directory) {
+            super(directory, 4096);
+        }
+
+        @Override
+        void compact() {
+            if (allowed) {
+                super.compact();
+            }
+        }
+    }
+
+    /**
+     * Store whose file writes fail while failing is set, after writing part of the buffer
+     */
+    private static class FailingStore extends KnowledgeStore {
+        volatile boolean failing;
+
+        FailingStore(File directory) {
+            super(directory);
+        }
+
+        @Override
+        void writeFully(FileChannel channel, ByteBuffer data, long position) throws IOException {
+            if (failing) {
+                ByteBuffer half = data.duplicate();
+                half.limit(half.position() + half.remaining() / 2);
+                channel.write(half, position);
+                throw new IOException("No space left on device");
+            }
+            super.writeFully(channel, data, position);
+        }
+    }
+}
@@ -0,0 +1,51 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * The optimization score comes from measured latency and bus throughput, not from how many
+ * control steps have run
+ */
+public class PerformanceOptimizerTest {
+
+    @Test
+    public void noTrafficIsNotScored() {
+        assertTrue(Double.isNaN(PerformanceOptimizer.serviceScore(new PerformanceOptimizer.TuningSignals())));
+    }
+
+    @Test
+    public void healthyWindowScoresFull() {
+        PerformanceOptimizer.TuningSignals signals = signals(20, 800, 100, 120, 0, 0.4);
+        assertEquals(1.0, PerformanceOptimizer.serviceScore(signals), 1e-9);
+    }
+
+    @Test
+    public void slowRequestsLowerTheScore() {
+        // p95 of 3 s is halfway between the 2 s limit and twice it
+        PerformanceOptimizer.TuningSignals signals = signals(20, 3000, 0, 0, 0, 0);
+        assertEquals(0.5, PerformanceOptimizer.serviceScore(signals), 1e-9);
+    }
+
+    @Test
+    public void failedAndSlowBusReadsLowerTheScore() {
+        // 500 ms poll: bus p95 of 750 ms scores 0.5, and a quarter of the reads failed
+        PerformanceOptimizer.TuningSignals signals = signals(0, 0, 40, 750, 0.25, 0.5);
+        assertEquals((0.5 + 0.75) / 2, PerformanceOptimizer.serviceScore(signals), 1e-9);
+    }
+
+    private static PerformanceOptimizer.TuningSignals signals(long requests, long requestP95Ms, long busReads,
+                                                               long busP95Ms, double busErrorRate, double busUtilization) {
+        PerformanceOptimizer.TuningSignals signals = new PerformanceOptimizer.TuningSignals();
+        signals.requestCount = requests;
+        signals.requestP95Ms = requestP95Ms;
+        signals.busCount = busReads;
+        signals.busP95Ms = busP95Ms;
+        signals.busErrorRate = busErrorRate;
+        signals.busUtilization = busUtilization;
+        signals.pollIntervalMs = 500;
+        return signals;
+    }
+}
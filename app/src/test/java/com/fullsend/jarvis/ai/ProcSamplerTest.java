@@ -0,0 +1,182 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+
+import org.junit.Before;
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.IOException;
+import java.nio.charset.StandardCharsets;
+import java.nio.file.Files;
+
+/**
+ * ProcSampler against a fake proc root holding fixed copies of the files it reads
+ */
+public class ProcSamplerTest {
+
+    private static final String MEMINFO =
+            "MemTotal:        5766432 kB\n"
+            + "MemFree:          201660 kB\n"
+            + "MemAvailable:    2213884 kB\n"
+            + "Buffers:            4396 kB\n"
+            + "Cached:          2084200 kB\n";
+
+    // Loop and device-mapper devices and partitions must not be counted on top of their disks
+    private static final String DISKSTATS =
+            "   7       0 loop0 108 0 1852 71 0 0 0 0 0 140 71 0 0 0 0\n"
+            + " 254       0 zram0 9041 0 72328 35 52004 0 416032 412 0 704 447 0 0 0 0\n"
+            + "   8       0 sda 80125 12540 6320562 61234 99571 72412 4821200 250112 0 204104 311346\n"
+            + "   8       1 sda1 200 0 9120 104 12 0 96 8 0 120 112\n"
+            + "   8       2 sda2 79925 12540 6311442 61130 99559 72412 4821104 250104 0 203984 311234\n"
+            + " 179       0 mmcblk0 1200 30 96000 1500 400 10 32000 900 0 2000 2400\n"
+            + " 179       1 mmcblk0p1 1200 30 96000 1500 400 10 32000 900 0 2000 2400\n"
+            + " 253       0 dm-0 78000 0 6240000 60000 170000 0 9600000 480000 0 200000 540000\n";
+
+    private static final String SELF_STAT =
+            "4321 (Jarvis (main) x) S 1 4321 4321 0 -1 4194560 51000 0 12 0 1500 300 0 0 20 0 42 0 9000\n";
+
+    private static final String SELF_STATUS =
+            "Name:\tfullsend.jarvis\n"
+            + "VmHWM:\t  260000 kB\n"
+            + "VmRSS:\t  240000 kB\n"
+            + "Threads:\t42\n";
+
+    private static final String SELF_IO =
+            "rchar: 1000000\nwchar: 500000\nsyscr: 100\nsyscw: 50\nread_bytes: 40960\nwrite_bytes: 8192\n";
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    private File proc;
+
+    @Before
+    public void setUp() throws IOException {
+        proc = folder.newFolder("proc");
+        new File(proc, "self").mkdir();
+        write("stat", "cpu  1000 50 400 8000 200 10 20 0 0 0\ncpu0 500 25 200 4000 100 5 10 0 0 0\n");
+        write("meminfo", MEMINFO);
+        write("diskstats", DISKSTATS);
+        write("self/stat", SELF_STAT);
+        write("self/status", SELF_STATUS);
+        write("self/io", SELF_IO);
+    }
+
+    @Test
+    public void parsesFixedProcFiles() {
+        ProcSampler.Sample sample = new ProcSampler(proc).sample();
+
+        assertEquals(9680, sample.systemTotalTicks);
+        assertEquals(8200, sample.systemIdleTicks);
+        assertEquals(1500, sample.processUserTicks);
+        assertEquals(300, sample.processSystemTicks);
+
+        assertEquals(5766432, sample.memTotalKb);
+        assertEquals(2213884, sample.memAvailableKb);
+
+        // sda and mmcblk0 only
+        assertEquals(6320562 + 96000, sample.diskSectorsRead);
+        assertEquals(4821200 + 32000, sample.diskSectorsWritten);
+
+        assertEquals(240000, sample.vmRssKb);
+        assertEquals(42, sample.threads);
+        assertEquals(40960, sample.storageReadBytes);
+        assertEquals(8192, sample.storageWriteBytes);
+
+        // No smaps_rollup in this root
+        assertEquals(-1, sample.pssKb);
+    }
+
+    @Test
+    public void missingFilesLeaveCountersUnavailable() throws IOException {
+        ProcSampler.Sample sample = new ProcSampler(folder.newFolder("empty")).sample();
+        assertEquals(-1, sample.memTotalKb);
+        assertEquals(-1, sample.diskSectorsRead);
+        assertEquals(-1, sample.systemTotalTicks);
+
+        ProcSampler.Delta delta = ProcSampler.delta(sample, sample, 4);
+        assertEquals(-1, delta.systemCpuUsage, 0);
+        assertEquals(-1, delta.diskReadBytesPerSecond, 0);
+    }
+
+    @Test
+    public void computesRatesBetweenSamples() throws IOException {
+        ProcSampler sampler = new ProcSampler(proc);
+        ProcSampler.Sample before = sampler.sample();
+        before.timestampNanos = 0;
+
+        // Two seconds later: 800 system ticks of which 200 idle, 100 process ticks,
+        // 1 MB read and 256 KB written on sda
+        write("stat", "cpu  1400 50 600 8150 250 10 20 0 0 0\n");
+        write("self/stat", SELF_STAT.replace(" 1500 300 ", " 1580 320 "));
+        write("self/io", SELF_IO.replace("read_bytes: 40960", "read_bytes: 1089536"));
+        write("diskstats", DISKSTATS.replace("6320562", String.valueOf(6320562 + 2048))
+                .replace("4821200", String.valueOf(4821200 + 512)));
+        ProcSampler.Sample after = sampler.sample();
+        after.timestampNanos = 2_000_000_000L;
+
+        ProcSampler.Delta delta = ProcSampler.delta(before, after, 4);
+        assertEquals(2000, delta.elapsedMs);
+        assertEquals(0.75, delta.systemCpuUsage, 1e-9);
+        // 100 ticks out of 2 s * 100 ticks/s * 4 cores
+        assertEquals(0.125, delta.processCpuUsage, 1e-9);
+        assertEquals(524288, delta.readBytesPerSecond, 1e-6);
+        assertEquals(0, delta.writeBytesPerSecond, 1e-6);
+        assertEquals(524288, delta.diskReadBytesPerSecond, 1e-6);
+        assertEquals(131072, delta.diskWriteBytesPerSecond, 1e-6);
+    }
+
+    @Test
+    public void firstDeltaHasNoRates() {
+        ProcSampler.Delta delta = new ProcSampler(proc).sampleDelta();
+        assertEquals(0, delta.processCpuUsage, 0);
+        assertEquals(-1, delta.systemCpuUsage, 0);
+        assertEquals(-1, delta.diskReadBytesPerSecond, 0);
+    }
+
+    @Test
+    public void unwrapsThirtyTwoBitCounters() throws IOException {
+        ProcSampler sampler = new ProcSampler(proc);
+        write("diskstats", "   8       0 sda 1 0 4294967000 0 1 0 4294966000 0 0 0 0\n");
+        ProcSampler.Sample before = sampler.sample();
+        before.timestampNanos = 0;
+
+        // Both sector counters passed 2^32 and started again from zero
+        write("diskstats", "   8       0 sda 2 0 1752 0 2 0 2296 0 0 0 0\n");
+        ProcSampler.Sample after = sampler.sample();
+        after.timestampNanos = 1_000_000_000L;
+
+        ProcSampler.Delta delta = ProcSampler.delta(before, after, 1);
+        assertEquals(2048 * 512, delta.diskReadBytesPerSecond, 1e-6);
+        assertEquals(3592 * 512, delta.diskWriteBytesPerSecond, 1e-6);
+    }
+
+    @Test
+    public void counterDeltaTellsWrapsFromResets() {
+        assertEquals(50, ProcSampler.counterDelta(100, 150));
+        assertEquals(0, ProcSampler.counterDelta(100, 100));
+        assertEquals(20, ProcSampler.counterDelta(0xFFFFFFF0L, 4));
+        // Going back from low in the range, or from beyond 32 bits, is a reset
+        assertEquals(-1, ProcSampler.counterDelta(5000, 10));
+        assertEquals(-1, ProcSampler.counterDelta(1L << 40, 10));
+        assertEquals(-1, ProcSampler.counterDelta(-1, 10));
+    }
+
+    @Test
+    public void ignoresALineCutOffByTheBuffer() throws IOException {
+        StringBuilder diskstats = new StringBuilder();
+        for (int i = 0; diskstats.length() < 40 * 1024; i++) {
+            diskstats.append("   7 ").append(i).append(" loop").append(i).append(" 1 0 8 0 0 0 0 0 0 0 0\n");
+        }
+        write("diskstats", "   8       0 sda 1 0 800 0 1 0 400 0 0 0 0\n" + diskstats);
+        ProcSampler.Sample sample = new ProcSampler(proc).sample();
+        assertEquals(800, sample.diskSectorsRead);
+        assertEquals(400, sample.diskSectorsWritten);
+    }
+
+    private void write(String name, String content) throws IOException {
+        Files.write(new File(proc, name).toPath(), content.getBytes(StandardCharsets.US_ASCII));
+    }
+}
@@ -0,0 +1,96 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Parse/compile cost against cached execution, the trade-off CodeExecutionEngine's program
+ * cache is built on, plus raw interpreter throughput on a hot loop
+ */
+public class ScriptInterpreterBenchmarkTest {
+
+    private static final int WARMUP = 200;
+    private static final int ITERATIONS = 1000;
+
+    // The prime generator CodeExecutionEngine emits
+    private static final String PRIMES =
+            "int limit = 100;\n"
+            + "System.out.println(\"Prime numbers up to \" + limit + \":\");\n"
+            + "for (int i = 2; i <= limit; i++) {\n"
+            + "    boolean isPrime = true;\n"
+            + "    for (int j = 2; j * j <= i; j++) {\n"
+            + "        if (i % j == 0) {\n"
+            + "            isPrime = false;\n"
+            + "            break;\n"
+            + "        }\n"
+            + "    }\n"
+            + "    if (isPrime) System.out.print(i + \" \");\n"
+            + "}\n";
+
+    private static final int LOOP_ITERATIONS = 1_000_000;
+
+    // Well below what the closure tree manages on a desktop JVM; this only catches large regressions
+    private static final double MIN_LOOP_ITERATIONS_PER_SECOND = 2_000_000;
+
+    @Test
+    public void cachedExecutionBeatsRecompiling() throws Exception {
+        ScriptInterpreter.Program cached = ScriptInterpreter.compile(PRIMES);
+        for (int i = 0; i < WARMUP; i++) {
+            runOnce(ScriptInterpreter.compile(PRIMES));
+            runOnce(cached);
+        }
+
+        long start = System.nanoTime();
+        for (int i = 0; i < ITERATIONS; i++) {
+            runOnce(ScriptInterpreter.compile(PRIMES));
+        }
+        long recompileNanos = System.nanoTime() - start;
+
+        start = System.nanoTime();
+        String output = null;
+        for (int i = 0; i < ITERATIONS; i++) {
+            output = runOnce(cached);
+        }
+        long cachedNanos = System.nanoTime() - start;
+
+        System.out.println(String.format("primes: compile and run %.1f us, cached run %.1f us",
+                recompileNanos / 1000.0 / ITERATIONS, cachedNanos / 1000.0 / ITERATIONS));
+        assertTrue(output.endsWith("89 97 "));
+        assertTrue("Cached runs are no faster than recompiling", cachedNanos < recompileNanos);
+    }
+
+    @Test
+    public void hotLoopThroughput() throws Exception {
+        ScriptInterpreter.Program program = ScriptInterpreter.compile(
+                "long sum = 0;\n"
+                + "for (int i = 0; i < " + LOOP_ITERATIONS + "; i++) {\n"
+                + "    sum += i * 3 % 7;\n"
+                + "}\n"
+                + "return sum;\n");
+        ScriptInterpreter.Limits limits = new ScriptInterpreter.Limits(10L * LOOP_ITERATIONS, 0);
+        for (int i = 0; i < 3; i++) {
+            program.run(new ExecutionOutput(0), limits);
+        }
+
+        long start = System.nanoTime();
+        Object sum = program.run(new ExecutionOutput(0), limits);
+        long nanos = System.nanoTime() - start;
+
+        long expected = 0;
+        for (int i = 0; i < LOOP_ITERATIONS; i++) {
+            expected += i * 3 % 7;
+        }
+        assertEquals(expected, sum);
+        double perSecond = LOOP_ITERATIONS / (nanos / 1e9);
+        System.out.println(String.format("hot loop: %.1f M iterations/s", perSecond / 1e6));
+        assertTrue("Only " + perSecond + " iterations/s", perSecond >= MIN_LOOP_ITERATIONS_PER_SECOND);
+    }
+
+    private static String runOnce(ScriptInterpreter.Program program) {
+        ExecutionOutput out = new ExecutionOutput(1000);
+        program.run(out, ScriptInterpreter.Limits.defaults());
+        return out.toString();
+    }
+}
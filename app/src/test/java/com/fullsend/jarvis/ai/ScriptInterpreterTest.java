@@ -0,0 +1,100 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+/**
+ * Scripts must compute what the same statements compute in Java
+ */
+public class ScriptInterpreterTest {
+
+    @Test
+    public void intArithmeticWrapsAt32Bits() throws Exception {
+        assertEquals("1410065408\n1410065408\n10000000000\n", run(
+                "int a = 100000;\n"
+                + "System.out.println(a * a);\n"
+                + "long c = a * a;\n"
+                + "System.out.println(c);\n"
+                + "long d = (long) a * a;\n"
+                + "System.out.println(d);\n"));
+    }
+
+    @Test
+    public void intOverflowAndShiftsMatchJava() throws Exception {
+        assertEquals("-2147483648\n-2147483648\n2\n8589934592\n-2147483648\n", run(
+                "int x = Integer.MAX_VALUE;\n"
+                + "x++;\n"
+                + "System.out.println(x);\n"
+                + "int[] values = new int[1];\n"
+                + "values[0] = Integer.MAX_VALUE;\n"
+                + "values[0] += 1;\n"
+                + "System.out.println(values[0]);\n"
+                + "System.out.println(1 << 33);\n"
+                + "System.out.println(1L << 33);\n"
+                + "int m = -2147483648;\n"
+                + "System.out.println(m);\n"));
+    }
+
+    @Test
+    public void charIsNumeric() throws Exception {
+        assertEquals("98\nb\nxa\nb\n195\ntrue\n", run(
+                "char c = 'a';\n"
+                + "System.out.println(c + 1);\n"
+                + "System.out.println((char) (c + 1));\n"
+                + "System.out.println(\"x\" + c);\n"
+                + "c++;\n"
+                + "System.out.println(c);\n"
+                + "System.out.println('a' + 'b');\n"
+                + "System.out.println(\"abc\".charAt(1) == 'b');\n"));
+    }
+
+    @Test
+    public void oversizedIntLiteralIsACompileError() {
+        try {
+            ScriptInterpreter.compile("int x = 3000000000;");
+            fail("int literal out of range compiled");
+        } catch (ScriptInterpreter.ScriptException expected) {
+            assertEquals(1, expected.line);
+        }
+    }
+
+    @Test
+    public void pinnedDriveLogColumnsStayAlignedWhileRecording() throws Exception {
+        String channel = "test_snapshot";
+        DriveLog.get().record(channel, 0, 0);
+        Thread recorder = new Thread(() -> {
+            for (int i = 1; i <= 2000; i++) {
+                DriveLog.get().record(channel, i, i);
+            }
+        });
+        ScriptInterpreter.Program program = ScriptInterpreter.compile(
+                "int mismatched = 0;\n"
+                + "for (int i = 0; i < 50; i++) {\n"
+                + "    int n = DriveLog.snapshot(\"" + channel + "\");\n"
+                + "    long[] t = DriveLog.timestamps(\"" + channel + "\");\n"
+                + "    double[] v = DriveLog.values(\"" + channel + "\");\n"
+                + "    if (t.length != n || v.length != n) {\n"
+                + "        mismatched++;\n"
+                + "    }\n"
+                + "}\n"
+                + "System.out.println(mismatched);\n");
+        recorder.start();
+        ExecutionOutput out = new ExecutionOutput(10000);
+        program.run(out, ScriptInterpreter.Limits.defaults());
+        recorder.join();
+        assertEquals("0\n", out.toString());
+
+        DriveLog.Snapshot snapshot = DriveLog.get().snapshot(channel);
+        assertEquals(2001, snapshot.size());
+        assertEquals(snapshot.timestamps.length, snapshot.values.length);
+        assertEquals(0, DriveLog.get().snapshot("no_such_channel").size());
+    }
+
+    static String run(String source) throws ScriptInterpreter.ScriptException {
+        ExecutionOutput out = new ExecutionOutput(10000);
+        ScriptInterpreter.compile(source).run(out, ScriptInterpreter.Limits.defaults());
+        return out.toString();
+    }
+}
@@ -0,0 +1,104 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Candidates move up or down with how often they worked, per context and across restarts
+ */
+public class SolutionRankerTest {
+
+    private static final List<String> CANDIDATES = Arrays.asList("restart", "clear cache");
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void untriedCandidatesFollowTheirPrior() {
+        SolutionRanker ranker = new SolutionRanker(null);
+        assertEquals(0.3, ranker.estimate("error:IOException", "restart", 0.3), 0);
+        assertEquals(Arrays.asList("clear cache", "restart"),
+                ranker.rank("error:IOException", CANDIDATES, candidate -> candidate.equals("restart") ? 0.3 : 0.6));
+    }
+
+    @Test
+    public void successRateIsSmoothedByThePrior() {
+        SolutionRanker ranker = new SolutionRanker(null);
+        ranker.update("MEMORY", "restart", true);
+        ranker.update("MEMORY", "restart", true);
+        ranker.update("MEMORY", "restart", true);
+        ranker.update("MEMORY", "restart", false);
+        // 3 of 4, plus the prior of 0.5 counted as two observations
+        assertEquals(4.0 / 6, ranker.estimate("MEMORY", "restart", 0.5), 1e-6);
+    }
+
+    @Test
+    public void candidateThatWorksOvertakesAHigherPrior() {
+        SolutionRanker ranker = new SolutionRanker(null);
+        for (int i = 0; i < 10; i++) {
+            ranker.update("error:IOException", "restart", false);
+            ranker.update("error:IOException", "clear cache", true);
+        }
+        assertEquals(Arrays.asList("clear cache", "restart"),
+                ranker.rank("error:IOException", CANDIDATES, candidate -> candidate.equals("restart") ? 0.9 : 0.1));
+    }
+
+    @Test
+    public void rarelyTriedCandidateGetsExplored() {
+        SolutionRanker ranker = new SolutionRanker(null);
+        for (int i = 0; i < 20; i++) {
+            ranker.update("NETWORK", "restart", i % 5 < 3);
+        }
+        // 60% on 20 tries loses to an untried candidate with a 0.5 prior
+        assertEquals(Arrays.asList("clear cache", "restart"), ranker.rank("NETWORK", CANDIDATES, candidate -> 0.5));
+    }
+
+    @Test
+    public void contextsLearnIndependently() {
+        SolutionRanker ranker = new SolutionRanker(null);
+        for (int i = 0; i < 5; i++) {
+            ranker.update("error:IOException", "restart", false);
+        }
+        assertEquals(0.5, ranker.estimate("error:SecurityException", "restart", 0.5), 0);
+        assertTrue(ranker.estimate("error:IOException", "restart", 0.5) < 0.2);
+    }
+
+    @Test
+    public void recentOutcomesOutweighOldOnes() {
+        SolutionRanker ranker = new SolutionRanker(null);
+        for (int i = 0; i < 100; i++) {
+            ranker.update("MEMORY", "restart", true);
+        }
+        for (int i = 0; i < 50; i++) {
+            ranker.update("MEMORY", "restart", false);
+        }
+        // Without the cap this would still be (100 + 1) / (150 + 2), about 0.66
+        assertTrue(ranker.estimate("MEMORY", "restart", 0.5) < 0.4);
+    }
+
+    @Test
+    public void outcomesSurviveARestart() throws Exception {
+        File dir = folder.newFolder("knowledge");
+        KnowledgeStore store = new KnowledgeStore(dir);
+        SolutionRanker ranker = new SolutionRanker(store);
+        ranker.update("error:IOException", "clear cache", true);
+        ranker.update("error:IOException", "clear cache", false);
+        ranker.update("error:IOException", "restart", false);
+        double before = ranker.estimate("error:IOException", "clear cache", 0.5);
+        store.close();
+
+        KnowledgeStore reopened = new KnowledgeStore(dir);
+        SolutionRanker restored = new SolutionRanker(reopened);
+        assertEquals(before, restored.estimate("error:IOException", "clear cache", 0.5), 0);
+        assertEquals(1.0 / 3, restored.estimate("error:IOException", "restart", 0.5), 1e-6);
+        reopened.close();
+    }
+}
@@ -0,0 +1,245 @@
+package com.fullsend.jarvis.ai;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNotNull;
+import static org.junit.Assert.assertTrue;
+import static org.junit.Assume.assumeTrue;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.io.FileInputStream;
+import java.io.FileOutputStream;
+import java.io.IOException;
+import java.io.OutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * WakeWordDetector run over WAV files the way WakeWordListener feeds it, one 10 ms hop at a time
+ *
+ * The fixtures are synthesized voiced phrases (a pitch glide through moving formants) written
+ * to disk and read back, so the WAV path is the one enrolled templates take. Recordings from
+ * a device can be benchmarked too: put templates in templates/ and test clips next to it and
+ * run with -Dwakeword.fixtures=<dir>.
+ */
+public class WakeWordDetectorBenchmarkTest {
+
+    private static final int RATE = WakeWordDetector.SAMPLE_RATE;
+
+    // The detector must keep up with the microphone with plenty of room on a phone
+    private static final double MIN_REALTIME_FACTOR = 20.0;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void detectsEveryInsertedPhrase() throws IOException {
+        WakeWordDetector detector = new WakeWordDetector();
+        detector.addTemplate(writeWav("template.wav", phrase(false, 1.0, 1)));
+
+        // Ten utterances at slightly different speeds, separated by background noise
+        Random random = new Random(7);
+        List<short[]> parts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            parts.add(noise(random, RATE * 3 / 2));
+            parts.add(phrase(false, 0.9 + 0.02 * i, 100 + i));
+        }
+        parts.add(noise(random, RATE));
+        short[] clip = readWav(writeWav("session.wav", concat(parts)));
+
+        Result result = stream(detector, clip);
+        assertEquals(10, result.detections);
+        assertRealtime(result, clip);
+    }
+
+    @Test
+    public void ignoresOtherSpeechAndNoise() throws IOException {
+        WakeWordDetector detector = new WakeWordDetector();
+        detector.addTemplate(writeWav("template.wav", phrase(false, 1.0, 1)));
+
+        Random random = new Random(11);
+        List<short[]> parts = new ArrayList<>();
+        for (int i = 0; i < 10; i++) {
+            parts.add(noise(random, RATE));
+            parts.add(phrase(true, 0.9 + 0.02 * i, 200 + i));
+        }
+        parts.add(noise(random, RATE * 10));
+        short[] clip = readWav(writeWav("distractors.wav", concat(parts)));
+
+        Result result = stream(detector, clip);
+        assertEquals(0, result.detections);
+        assertRealtime(result, clip);
+    }
+
+    @Test
+    public void recordedFixtures() throws IOException {
+        String dir = System.getProperty("wakeword.fixtures");
+        assumeTrue("Set -Dwakeword.fixtures to benchmark recordings", dir != null);
+
+        WakeWordDetector detector = new WakeWordDetector();
+        File[] templates = new File(dir, "templates").listFiles((d, name) -> name.endsWith(".wav"));
+        assertNotNull("No templates/ directory in " + dir, templates);
+        for (File template : templates) {
+            detector.addTemplate(template);
+        }
+        File[] clips = new File(dir).listFiles((d, name) -> name.endsWith(".wav"));
+        assertNotNull(clips);
+        Arrays.sort(clips);
+        for (File clip : clips) {
+            short[] samples = readWav(clip);
+            detector.reset();
+            Result result = stream(detector, samples);
+            System.out.println(clip.getName() + ": " + result.detections + " detection(s), "
+                    + String.format("%.0fx", realtimeFactor(result, samples)) + " real time");
+            assertRealtime(result, samples);
+        }
+    }
+
+    private static class Result {
+        int detections;
+        long nanos;
+    }
+
+    private static Result stream(WakeWordDetector detector, short[] clip) {
+        // Warm up the JIT on the same input, then time a clean pass
+        for (int i = 0; i < 3; i++) {
+            feed(detector, clip);
+        }
+        detector.reset();
+        long start = System.nanoTime();
+        int detections = feed(detector, clip);
+        Result result = new Result();
+        result.nanos = System.nanoTime() - start;
+        result.detections = detections;
+        return result;
+    }
+
+    private static int feed(WakeWordDetector detector, short[] clip) {
+        short[] hop = new short[WakeWordDetector.HOP_SIZE];
+        int detections = 0;
+        for (int offset = 0; offset + hop.length <= clip.length; offset += hop.length) {
+            System.arraycopy(clip, offset, hop, 0, hop.length);
+            if (detector.process(hop, 0, hop.length)) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    private static double realtimeFactor(Result result, short[] clip) {
+        double audioSeconds = (double) clip.length / RATE;
+        return audioSeconds / (result.nanos / 1e9);
+    }
+
+    private static void assertRealtime(Result result, short[] clip) {
+        double factor = realtimeFactor(result, clip);
+        assertTrue("Only " + factor + "x real time", factor >= MIN_REALTIME_FACTOR);
+    }
+
+    /**
+     * A 0.7 s voiced phrase: pitch glides 180 to 120 Hz while two formants move apart (or
+     * together for the distractor), stretched by speed; seed varies the jitter
+     */
+    static short[] phrase(boolean distractor, double speed, long seed) {
+        Random random = new Random(seed);
+        int length = (int) (RATE * 0.7 * speed);
+        short[] pcm = new short[length];
+        double phase = 0;
+        for (int n = 0; n < length; n++) {
+            double t = (double) n / length;
+            double pitch = 180 - 60 * t + random.nextGaussian() * 0.5;
+            double f1 = distractor ? 800 - 500 * t : 300 + 500 * t;
+            double f2 = distractor ? 900 + 1400 * t : 2300 - 1400 * t;
+            phase += 2 * Math.PI * pitch / RATE;
+
+            double sample = 0;
+            for (int harmonic = 1; harmonic * pitch < 4000; harmonic++) {
+                double frequency = harmonic * pitch;
+                double gain = formant(frequency, f1, 120) + 0.6 * formant(frequency, f2, 180);
+                sample += gain * Math.sin(harmonic * phase) / harmonic;
+            }
+            double envelope = Math.sin(Math.PI * t);
+            pcm[n] = clip(sample * envelope * 6000 + random.nextGaussian() * 100);
+        }
+        return pcm;
+    }
+
+    private static double formant(double frequency, double center, double bandwidth) {
+        double d = (frequency - center) / bandwidth;
+        return 1.0 / (1.0 + d * d);
+    }
+
+    static short[] noise(Random random, int length) {
+        short[] pcm = new short[length];
+        for (int n = 0; n < length; n++) {
+            pcm[n] = clip(random.nextGaussian() * 100);
+        }
+        return pcm;
+    }
+
+    private static short clip(double value) {
+        return (short) Math.max(Short.MIN_VALUE, Math.min(Short.MAX_VALUE, Math.round(value)));
+    }
+
+    static short[] concat(List<short[]> parts) {
+        int length = 0;
+        for (short[] part : parts) {
+            length += part.length;
+        }
+        short[] all = new short[length];
+        int offset = 0;
+        for (short[] part : parts) {
+            System.arraycopy(part, 0, all, offset, part.length);
+            offset += part.length;
+        }
+        return all;
+    }
+
+    private File writeWav(String name, short[] pcm) throws IOException {
+        File file = folder.newFile(name);
+        byte[] header = new byte[44];
+        System.arraycopy("RIFF".getBytes("US-ASCII"), 0, header, 0, 4);
+        putInt(header, 4, 36 + pcm.length * 2);
+        System.arraycopy("WAVEfmt ".getBytes("US-ASCII"), 0, header, 8, 8);
+        putInt(header, 16, 16);
+        putShort(header, 20, 1);
+        putShort(header, 22, 1);
+        putInt(header, 24, RATE);
+        putInt(header, 28, RATE * 2);
+        putShort(header, 32, 2);
+        putShort(header, 34, 16);
+        System.arraycopy("data".getBytes("US-ASCII"), 0, header, 36, 4);
+        putInt(header, 40, pcm.length * 2);
+
+        byte[] data = new byte[pcm.length * 2];
+        for (int i = 0; i < pcm.length; i++) {
+            putShort(data, i * 2, pcm[i]);
+        }
+        try (OutputStream out = new FileOutputStream(file)) {
+            out.write(header);
+            out.write(data);
+        }
+        return file;
+    }
+
+    private static short[] readWav(File file) throws IOException {
+        WavAudio wav = WavAudio.read(new FileInputStream(file));
+        assertEquals(RATE, wav.sampleRate);
+        return wav.samples;
+    }
+
+    private static void putInt(byte[] buffer, int offset, int value) {
+        putShort(buffer, offset, value);
+        putShort(buffer, offset + 2, value >> 16);
+    }
+
+    private static void putShort(byte[] buffer, int offset, int value) {
+        buffer[offset] = (byte) value;
+        buffer[offset + 1] = (byte) (value >> 8);
+    }
+}
@@ -0,0 +1,120 @@
+package com.fullsend.jarvis.ai;
+
+import static com.fullsend.jarvis.ai.WakeWordDetectorBenchmarkTest.concat;
+import static com.fullsend.jarvis.ai.WakeWordDetectorBenchmarkTest.noise;
+import static com.fullsend.jarvis.ai.WakeWordDetectorBenchmarkTest.phrase;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import android.content.ContextWrapper;
+
+import org.junit.Rule;
+import org.junit.Test;
+import org.junit.rules.TemporaryFolder;
+
+import java.io.File;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.Random;
+
+/**
+ * Takes recorded during enrollment must turn on-device wake word detection on, both right
+ * away and after a restart, when VoiceManager loads them from the template directory
+ */
+public class WakeWordEnrollmentTest {
+
+    private static final int RATE = WakeWordDetector.SAMPLE_RATE;
+
+    @Rule
+    public TemporaryFolder folder = new TemporaryFolder();
+
+    @Test
+    public void recordedTakesActivateTheDetector() throws Exception {
+        File filesDir = folder.newFolder("files");
+        File templateDir = new File(filesDir, VoiceManager.WAKE_WORD_TEMPLATE_DIR);
+        assertFalse(newVoiceManager(filesDir).isOnDeviceWakeWordEnabled());
+
+        WakeWordEnrollment enrollment = new WakeWordEnrollment(templateDir);
+        Random random = new Random(3);
+        for (int take = 0; take < WakeWordEnrollment.TAKES; take++) {
+            assertTrue("take " + take, enrollment.addTake(take(random, phrase(false, 0.95 + 0.05 * take, 10 + take))));
+        }
+        assertTrue(enrollment.isComplete());
+
+        WakeWordDetector enrolled = new WakeWordDetector();
+        enrollment.commit(enrolled);
+        assertEquals(WakeWordEnrollment.TAKES, enrolled.getTemplateCount());
+        assertEquals(WakeWordEnrollment.TAKES, templateDir.listFiles().length);
+
+        // What the next launch sees
+        assertTrue(newVoiceManager(filesDir).isOnDeviceWakeWordEnabled());
+        WakeWordDetector restored = new WakeWordDetector();
+        assertEquals(WakeWordEnrollment.TAKES, WakeWordEnrollment.loadTemplates(templateDir, restored));
+
+        List<short[]> parts = new ArrayList<>();
+        for (int i = 0; i < 5; i++) {
+            parts.add(noise(random, RATE * 3 / 2));
+            parts.add(phrase(false, 0.9 + 0.05 * i, 300 + i));
+            parts.add(noise(random, RATE / 2));
+            parts.add(phrase(true, 1.0, 400 + i));
+        }
+        parts.add(noise(random, RATE));
+        assertEquals(5, feed(restored, concat(parts)));
+    }
+
+    @Test
+    public void rejectsTakesWithoutSpeech() throws Exception {
+        WakeWordEnrollment enrollment = new WakeWordEnrollment(folder.newFolder("wake_word"));
+        assertFalse(enrollment.addTake(noise(new Random(5), WakeWordEnrollment.TAKE_SAMPLES)));
+        assertEquals(0, enrollment.getTakeCount());
+    }
+
+    @Test
+    public void reenrollingReplacesTheTemplates() throws Exception {
+        File templateDir = folder.newFolder("wake_word");
+        Random random = new Random(9);
+        WakeWordDetector detector = new WakeWordDetector();
+        for (int round = 0; round < 2; round++) {
+            WakeWordEnrollment enrollment = new WakeWordEnrollment(templateDir);
+            for (int take = 0; take < WakeWordEnrollment.TAKES; take++) {
+                assertTrue(enrollment.addTake(take(random, phrase(false, 1.0, 20 * round + take))));
+            }
+            enrollment.commit(detector);
+        }
+        assertEquals(WakeWordEnrollment.TAKES, detector.getTemplateCount());
+        assertEquals(WakeWordEnrollment.TAKES, templateDir.listFiles().length);
+    }
+
+    /**
+     * A microphone take: the phrase somewhere in a fixed-length recording of room noise
+     */
+    private static short[] take(Random random, short[] phrase) {
+        short[] take = noise(random, WakeWordEnrollment.TAKE_SAMPLES);
+        short[] spoken = concat(Arrays.asList(noise(random, RATE / 4), phrase));
+        System.arraycopy(spoken, 0, take, 0, Math.min(spoken.length, take.length));
+        return take;
+    }
+
+    private static int feed(WakeWordDetector detector, short[] clip) {
+        short[] hop = new short[WakeWordDetector.HOP_SIZE];
+        int detections = 0;
+        for (int offset = 0; offset + hop.length <= clip.length; offset += hop.length) {
+            System.arraycopy(clip, offset, hop, 0, hop.length);
+            if (detector.process(hop, 0, hop.length)) {
+                detections++;
+            }
+        }
+        return detections;
+    }
+
+    private static VoiceManager newVoiceManager(File filesDir) {
+        return new VoiceManager(new ContextWrapper(null) {
+            @Override
+            public File getFilesDir() {
+                return filesDir;
+            }
+        });
+    }
+}
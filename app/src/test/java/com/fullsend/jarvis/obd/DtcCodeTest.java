@@ -0,0 +1,82 @@
+package com.fullsend.jarvis.obd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+/**
+ * Packed DTC ints against the SAE J2012 text form
+ */
+public class DtcCodeTest {
+
+    @Test
+    public void parsesEachLetterAndDigit() {
+        assertEquals(0x0301, DtcCode.parse("P0301"));
+        assertEquals(0x3FFF, DtcCode.parse("P3FFF"));
+        assertEquals(0x5234, DtcCode.parse("c1234"));
+        assertEquals(0x8A0B, DtcCode.parse("B0a0b"));
+        assertEquals(0xC100, DtcCode.parse("U0100"));
+        assertEquals(0xFFFF, DtcCode.parse("U3FFF"));
+    }
+
+    @Test
+    public void rejectsMalformedText() {
+        assertEquals(-1, DtcCode.parse(null));
+        assertEquals(-1, DtcCode.parse(""));
+        assertEquals(-1, DtcCode.parse("P030"));
+        assertEquals(-1, DtcCode.parse("P03011"));
+        assertEquals(-1, DtcCode.parse("X0301"));
+        assertEquals(-1, DtcCode.parse("P4301"));
+        assertEquals(-1, DtcCode.parse("PA301"));
+        assertEquals(-1, DtcCode.parse("P03G1"));
+        assertEquals(-1, DtcCode.parse("P 301"));
+    }
+
+    @Test
+    public void formatAndParseRoundTripEveryCode() {
+        for (int code = 0; code <= 0xFFFF; code++) {
+            String text = DtcCode.format(code);
+            assertEquals(5, text.length());
+            assertEquals(text, code, DtcCode.parse(text));
+        }
+        assertEquals("P0301", DtcCode.format(0x0301));
+        assertEquals("U0100", DtcCode.format(0xC100));
+    }
+
+    @Test
+    public void formatIgnoresStatusAndFailureType() {
+        int dtc = DtcCode.pack(0x0301, 0x13, DtcCode.STATUS_CONFIRMED | DtcCode.STATUS_WARNING_INDICATOR);
+        assertEquals("P0301", DtcCode.format(dtc));
+        assertEquals(0x0301, DtcCode.code(dtc));
+        assertEquals(0x13, DtcCode.failureType(dtc));
+        assertEquals(0x88, DtcCode.status(dtc));
+        assertTrue(DtcCode.hasStatus(dtc, DtcCode.STATUS_CONFIRMED));
+        assertFalse(DtcCode.hasStatus(dtc, DtcCode.STATUS_PENDING));
+        assertEquals(DtcCode.STATUS_PENDING, DtcCode.status(DtcCode.withStatus(dtc, DtcCode.STATUS_PENDING)));
+        assertEquals(0x13, DtcCode.failureType(DtcCode.withStatus(dtc, DtcCode.STATUS_PENDING)));
+    }
+
+    @Test
+    public void manufacturerSpecificRangesFollowJ2012() {
+        // P1 and P3 are manufacturer ranges, P0 and P2 generic
+        assertFalse(DtcCode.isManufacturerSpecific(DtcCode.parse("P0301")));
+        assertTrue(DtcCode.isManufacturerSpecific(DtcCode.parse("P1234")));
+        assertFalse(DtcCode.isManufacturerSpecific(DtcCode.parse("P2101")));
+        assertTrue(DtcCode.isManufacturerSpecific(DtcCode.parse("P3000")));
+
+        // C, B and U: 1 and 2 are manufacturer ranges, 3 is reserved
+        for (String letter : new String[] {"C", "B", "U"}) {
+            assertFalse(letter, DtcCode.isManufacturerSpecific(DtcCode.parse(letter + "0100")));
+            assertTrue(letter, DtcCode.isManufacturerSpecific(DtcCode.parse(letter + "1100")));
+            assertTrue(letter, DtcCode.isManufacturerSpecific(DtcCode.parse(letter + "2100")));
+            assertFalse(letter, DtcCode.isManufacturerSpecific(DtcCode.parse(letter + "3100")));
+        }
+
+        // Status bits do not change the answer
+        assertTrue(DtcCode.isManufacturerSpecific(DtcCode.pack(DtcCode.parse("P1234"), 0, 0xFF)));
+        assertEquals("Chassis (Reserved)", DtcCode.category(DtcCode.parse("C3100")));
+        assertEquals("Powertrain (Generic)", DtcCode.category(DtcCode.parse("P2101")));
+    }
+}
@@ -0,0 +1,235 @@
+package com.fullsend.jarvis.obd;
+
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.fail;
+
+import org.junit.Test;
+
+import java.io.ByteArrayOutputStream;
+import java.io.DataOutputStream;
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collections;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * DtcDatabase against blobs laid out the way app/dtc-database.gradle writes them
+ */
+public class DtcDatabaseTest {
+
+    private static final int P0301 = DtcCode.parse("P0301");
+    private static final int P0420 = DtcCode.parse("P0420");
+    private static final int P1234 = DtcCode.parse("P1234");
+
+    @Test
+    public void readsBackEveryField() throws IOException {
+        DtcDatabase database = DtcDatabase.fromBuffer(sampleBlob().build());
+        assertEquals(4, database.size());
+
+        int entry = database.find(P0301, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2);
+        assertEquals("Cylinder 1 misfire detected", database.description(entry));
+        assertEquals(Arrays.asList("Spark plug", "Ignition coil", "Injector"), database.possibleCauses(entry));
+        assertEquals("Swap the coil with cylinder 2 and recheck", database.recommendedAction(entry));
+        assertEquals(DtcDatabase.Severity.HIGH, database.severity(entry));
+
+        int bare = database.find(P0420, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2);
+        assertEquals("Catalyst efficiency below threshold (bank 1)", database.description(bare));
+        assertEquals(Collections.emptyList(), database.possibleCauses(bare));
+        assertNull(database.recommendedAction(bare));
+        assertNull(database.severity(bare));
+    }
+
+    @Test
+    public void manufacturerEntriesFallBackToGeneric() throws IOException {
+        DtcDatabase database = DtcDatabase.fromBuffer(sampleBlob().build());
+
+        int vag = database.find(P0301, DiagnosticCommandSet.Manufacturer.VAG_GROUP);
+        assertEquals("Cylinder 1 misfire (VAG: check coil pack connector)", database.description(vag));
+        assertEquals(DtcDatabase.Severity.CRITICAL, database.severity(vag));
+
+        // No VAG entry for this code, and no BMW entries in the file at all
+        int generic = database.find(P0420, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2);
+        assertEquals(generic, database.find(P0420, DiagnosticCommandSet.Manufacturer.VAG_GROUP));
+        assertEquals(database.find(P0301, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2),
+                database.find(P0301, DiagnosticCommandSet.Manufacturer.BMW_GROUP));
+        assertEquals(database.find(P0301, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2), database.find(P0301, null));
+
+        // A manufacturer-only code is not offered to other makes
+        assertEquals("Throttle adaptation not learned", database.description(
+                database.find(P1234, DiagnosticCommandSet.Manufacturer.VAG_GROUP)));
+        assertEquals(-1, database.find(P1234, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2));
+        assertEquals(-1, database.find(DtcCode.parse("P0500"), DiagnosticCommandSet.Manufacturer.GENERIC_OBD2));
+    }
+
+    @Test
+    public void codeFamiliesCoverCodesWithoutTheirOwnSeverity() throws IOException {
+        DtcDatabase database = DtcDatabase.fromBuffer(sampleBlob().build());
+
+        int ignition = database.findRange(DtcCode.parse("P0300"));
+        assertEquals("Ignition system or misfire", database.rangeDescription(ignition));
+        assertEquals(ignition, database.findRange(DtcCode.parse("P03FF")));
+        assertEquals(-1, database.findRange(DtcCode.parse("P0400")));
+        assertEquals("Auxiliary emission controls", database.rangeDescription(database.findRange(P0420)));
+        assertEquals(-1, database.findRange(DtcCode.parse("U0100")));
+
+        // Own severity first, then the family's, then LOW
+        assertEquals(DtcDatabase.Severity.HIGH, database.severityOf(P0301, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2));
+        assertEquals(DtcDatabase.Severity.MEDIUM, database.severityOf(P0420, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2));
+        assertEquals(DtcDatabase.Severity.HIGH,
+                database.severityOf(DtcCode.parse("P0399"), DiagnosticCommandSet.Manufacturer.GENERIC_OBD2));
+        assertEquals(DtcDatabase.Severity.LOW,
+                database.severityOf(DtcCode.parse("U0100"), DiagnosticCommandSet.Manufacturer.GENERIC_OBD2));
+    }
+
+    @Test
+    public void rejectsBrokenHeaders() throws IOException {
+        ByteBuffer good = sampleBlob().build();
+
+        ByteBuffer wrongMagic = copy(good);
+        wrongMagic.putInt(0, 0x4A444344);
+        assertRejected(wrongMagic, "Not a DTC database");
+
+        ByteBuffer wrongVersion = copy(good);
+        wrongVersion.putInt(4, 2);
+        assertRejected(wrongVersion, "Unsupported DTC database version 2");
+
+        assertRejected(ByteBuffer.wrap(Arrays.copyOf(good.array(), 20)), "Not a DTC database");
+
+        // Header intact, but the file ends inside the code table
+        int codeTable = good.getInt(20);
+        assertRejected(ByteBuffer.wrap(Arrays.copyOf(good.array(), codeTable + 20)), "Truncated DTC database");
+
+        ByteBuffer tooManyRanges = copy(good);
+        tooManyRanges.putInt(24, 1000);
+        assertRejected(tooManyRanges, "Truncated DTC database");
+    }
+
+    @Test
+    public void emptyTablesFindNothing() throws IOException {
+        DtcDatabase database = DtcDatabase.fromBuffer(new Blob().build());
+        assertEquals(0, database.size());
+        assertEquals(-1, database.find(P0301, DiagnosticCommandSet.Manufacturer.GENERIC_OBD2));
+        assertEquals(-1, database.findRange(P0301));
+        assertEquals(DtcDatabase.Severity.LOW, database.severityOf(P0301, null));
+    }
+
+    private static Blob sampleBlob() {
+        Blob blob = new Blob();
+        blob.code("P0301", "GENERIC_OBD2", 2, "Cylinder 1 misfire detected", "Spark plug\nIgnition coil\nInjector",
+                "Swap the coil with cylinder 2 and recheck");
+        blob.code("P0301", "VAG_GROUP", 3, "Cylinder 1 misfire (VAG: check coil pack connector)", null, null);
+        blob.code("P0420", "GENERIC_OBD2", Blob.NO_SEVERITY, "Catalyst efficiency below threshold (bank 1)", null, null);
+        blob.code("P1234", "VAG_GROUP", Blob.NO_SEVERITY, "Throttle adaptation not learned", null, null);
+        blob.range("P0300", "P03FF", 2, "Ignition system or misfire");
+        blob.range("P0410", "P049F", 1, "Auxiliary emission controls");
+        return blob;
+    }
+
+    private static void assertRejected(ByteBuffer buffer, String message) {
+        try {
+            DtcDatabase.fromBuffer(buffer);
+            fail("Accepted a broken database: " + message);
+        } catch (IOException expected) {
+            assertEquals(message, expected.getMessage());
+        }
+    }
+
+    private static ByteBuffer copy(ByteBuffer buffer) {
+        return ByteBuffer.wrap(buffer.array().clone());
+    }
+
+    /**
+     * Writes the same layout as the generateDtcDatabase task: generic manufacturer first, code
+     * entries sorted by (code, manufacturer id), ranges sorted, then a deduplicated string pool
+     */
+    private static final class Blob {
+        static final int NO_SEVERITY = 0xFF;
+
+        private final List<int[]> codes = new ArrayList<>();
+        private final List<String[]> codeTexts = new ArrayList<>();
+        private final List<int[]> ranges = new ArrayList<>();
+        private final List<String> rangeTexts = new ArrayList<>();
+        private final List<String> manufacturers = new ArrayList<>(Collections.singletonList("GENERIC_OBD2"));
+
+        void code(String code, String manufacturer, int severity, String description, String causes, String action) {
+            if (!manufacturers.contains(manufacturer)) {
+                manufacturers.add(manufacturer);
+            }
+            codes.add(new int[] {DtcCode.parse(code), manufacturers.indexOf(manufacturer), severity, codes.size()});
+            codeTexts.add(new String[] {description, causes, action});
+        }
+
+        void range(String from, String to, int severity, String description) {
+            ranges.add(new int[] {DtcCode.parse(from), DtcCode.parse(to), severity});
+            rangeTexts.add(description);
+        }
+
+        ByteBuffer build() throws IOException {
+            List<int[]> sorted = new ArrayList<>(codes);
+            sorted.sort((a, b) -> a[0] != b[0] ? Integer.compare(a[0], b[0]) : Integer.compare(a[1], b[1]));
+
+            int manufacturerTable = 32;
+            int codeTable = manufacturerTable + manufacturers.size() * 4;
+            int rangeTable = codeTable + codes.size() * 16;
+            int stringsStart = rangeTable + ranges.size() * 12;
+
+            ByteArrayOutputStream pool = new ByteArrayOutputStream();
+            DataOutputStream poolOut = new DataOutputStream(pool);
+            Map<String, Integer> offsets = new LinkedHashMap<>();
+            StringPool intern = value -> {
+                if (value == null || value.isEmpty()) {
+                    return -1;
+                }
+                Integer offset = offsets.get(value);
+                if (offset == null) {
+                    byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+                    offset = stringsStart + pool.size();
+                    poolOut.writeShort(bytes.length);
+                    poolOut.write(bytes);
+                    offsets.put(value, offset);
+                }
+                return offset;
+            };
+
+            ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+            DataOutputStream out = new DataOutputStream(bytes);
+            for (int value : new int[] {0x4A445443, 1, manufacturers.size(), manufacturerTable, codes.size(), codeTable,
+                    ranges.size(), rangeTable}) {
+                out.writeInt(value);
+            }
+            for (String manufacturer : manufacturers) {
+                out.writeInt(intern.offset(manufacturer));
+            }
+            for (int[] entry : sorted) {
+                String[] texts = codeTexts.get(entry[3]);
+                out.writeShort(entry[0]);
+                out.writeByte(entry[1]);
+                out.writeByte(entry[2]);
+                out.writeInt(intern.offset(texts[0]));
+                out.writeInt(intern.offset(texts[1]));
+                out.writeInt(intern.offset(texts[2]));
+            }
+            for (int i = 0; i < ranges.size(); i++) {
+                int[] range = ranges.get(i);
+                out.writeShort(range[0]);
+                out.writeShort(range[1]);
+                out.writeByte(range[2]);
+                out.writeByte(0);
+                out.writeShort(0);
+                out.writeInt(intern.offset(rangeTexts.get(i)));
+            }
+            out.write(pool.toByteArray());
+            return ByteBuffer.wrap(bytes.toByteArray());
+        }
+    }
+
+    private interface StringPool {
+        int offset(String value) throws IOException;
+    }
+}
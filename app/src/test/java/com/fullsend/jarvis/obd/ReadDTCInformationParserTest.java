@@ -0,0 +1,141 @@
+package com.fullsend.jarvis.obd;
+
+import static com.fullsend.jarvis.obd.UdsResponseAssemblerTest.bytes;
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertNull;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.List;
+import java.util.Map;
+
+/**
+ * OBDProtocol.parseReadDTCInformationResponse on reassembled Service 19 messages
+ */
+public class ReadDTCInformationParserTest {
+
+    private final OBDProtocol protocol = new OBDProtocol(null);
+
+    @Test
+    public void negativeResponseCarriesItsCode() {
+        OBDProtocol.OBDResponse response = parse(OBDProtocol.DTC_INFO_BY_STATUS_MASK, 0x7F, 0x19, 0x31);
+        assertFalse(response.success);
+        assertEquals("ECU returned error: Request out of range", response.errorMessage);
+        assertEquals(0x31, response.parsedData.get("negative_response_code"));
+    }
+
+    @Test
+    public void answerToAnotherSubFunctionIsRejected() {
+        OBDProtocol.OBDResponse response = parse(OBDProtocol.DTC_INFO_BY_STATUS_MASK, 0x59, 0x0A, 0xFF);
+        assertFalse(response.success);
+        assertEquals("Unexpected response to ReadDTCInformation", response.errorMessage);
+    }
+
+    @Test
+    public void countByStatusMask() {
+        OBDProtocol.OBDResponse response = parse(OBDProtocol.DTC_INFO_NUMBER_BY_STATUS_MASK,
+                0x59, 0x01, 0xFF, 0x01, 0x01, 0x02);
+        assertTrue(response.success);
+        assertEquals(0xFF, response.parsedData.get("status_availability_mask"));
+        assertEquals(0x01, response.parsedData.get("dtc_format"));
+        assertEquals(0x0102, response.parsedData.get("dtc_count"));
+    }
+
+    @Test
+    public void dtcsByStatusMaskSkipPaddingRecords() {
+        OBDProtocol.OBDResponse response = parse(OBDProtocol.DTC_INFO_BY_STATUS_MASK,
+                0x59, 0x02, 0xFF,
+                0x03, 0x01, 0x00, 0x2F,
+                0x00, 0x00, 0x00, 0x00,
+                0xC1, 0x00, 0x87, 0x08);
+        assertTrue(response.success);
+        assertEquals(2, response.parsedData.get("dtc_count"));
+        DtcList dtcs = (DtcList) response.parsedData.get("dtcs");
+        assertEquals("P0301", DtcCode.format(dtcs.get(0)));
+        assertEquals(0x2F, DtcCode.status(dtcs.get(0)));
+        assertEquals("U0100", DtcCode.format(dtcs.get(1)));
+        assertEquals(0x87, DtcCode.failureType(dtcs.get(1)));
+        assertTrue(DtcCode.hasStatus(dtcs.get(1), DtcCode.STATUS_CONFIRMED));
+
+        OBDProtocol.OBDResponse truncated = parse(OBDProtocol.DTC_INFO_BY_STATUS_MASK,
+                0x59, 0x02, 0xFF, 0x03, 0x01, 0x00);
+        assertFalse(truncated.success);
+        assertEquals("Invalid DTC status response length", truncated.errorMessage);
+    }
+
+    @Test
+    public void snapshotIdentification() {
+        OBDProtocol.OBDResponse response = parse(OBDProtocol.DTC_INFO_SNAPSHOT_IDENTIFICATION,
+                0x59, 0x03,
+                0x03, 0x01, 0x00, 0x01,
+                0x04, 0x20, 0x00, 0x02);
+        assertTrue(response.success);
+        DtcList dtcs = (DtcList) response.parsedData.get("snapshot_dtcs");
+        assertEquals(2, dtcs.size());
+        assertEquals("P0420", DtcCode.format(dtcs.get(1)));
+        assertArrayEquals(new int[] {1, 2}, (int[]) response.parsedData.get("snapshot_record_numbers"));
+
+        assertFalse(parse(OBDProtocol.DTC_INFO_SNAPSHOT_IDENTIFICATION, 0x59, 0x03, 0x03, 0x01, 0x00).success);
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void snapshotRecordsAreSplitByIdentifier() {
+        // Record 1: RPM (F40C, 2 bytes) and coolant (F405, 1 byte); record 2 starts with an unknown identifier
+        OBDProtocol.OBDResponse response = parse(OBDProtocol.DTC_INFO_SNAPSHOT_BY_DTC_NUMBER,
+                0x59, 0x04, 0x03, 0x01, 0x00, 0x2F,
+                0x01, 0x02, 0xF4, 0x0C, 0x1A, 0xF8, 0xF4, 0x05, 0x7B,
+                0x02, 0x01, 0x12, 0x34, 0xAA, 0xBB);
+        assertTrue(response.success);
+        assertEquals("P0301", DtcCode.format((Integer) response.parsedData.get("dtc")));
+
+        List<OBDProtocol.SnapshotRecord> records =
+                (List<OBDProtocol.SnapshotRecord>) response.parsedData.get("snapshot_records");
+        assertEquals(2, records.size());
+        assertEquals(1, records.get(0).recordNumber);
+        assertArrayEquals(bytes(0x1A, 0xF8), records.get(0).values.get(0xF40C));
+        assertArrayEquals(bytes(0x7B), records.get(0).values.get(0xF405));
+        assertNull(records.get(0).undecoded);
+        assertEquals(2, records.get(1).recordNumber);
+        assertArrayEquals(bytes(0x12, 0x34, 0xAA, 0xBB), records.get(1).undecoded);
+
+        // Once its length is registered the identifier is decoded too
+        protocol.setSnapshotDataLength(0x1234, 2);
+        response = parse(OBDProtocol.DTC_INFO_SNAPSHOT_BY_DTC_NUMBER,
+                0x59, 0x04, 0x03, 0x01, 0x00, 0x2F, 0x02, 0x01, 0x12, 0x34, 0xAA, 0xBB);
+        records = (List<OBDProtocol.SnapshotRecord>) response.parsedData.get("snapshot_records");
+        assertArrayEquals(bytes(0xAA, 0xBB), records.get(0).values.get(0x1234));
+    }
+
+    @SuppressWarnings("unchecked")
+    @Test
+    public void extendedDataRecords() {
+        protocol.setExtendedDataLength(0x01, 1);
+        protocol.setExtendedDataLength(0x02, 2);
+        OBDProtocol.OBDResponse response = parse(OBDProtocol.DTC_INFO_EXT_DATA_BY_DTC_NUMBER,
+                0x59, 0x06, 0x04, 0x20, 0x00, 0x08,
+                0x01, 0x05,
+                0x02, 0xAA, 0xBB,
+                0x90, 0x01, 0x02, 0x03);
+        assertTrue(response.success);
+        assertEquals("P0420", DtcCode.format((Integer) response.parsedData.get("dtc")));
+
+        Map<Integer, byte[]> records = (Map<Integer, byte[]>) response.parsedData.get("extended_data");
+        assertEquals(3, records.size());
+        assertArrayEquals(bytes(0x05), records.get(0x01));
+        assertArrayEquals(bytes(0xAA, 0xBB), records.get(0x02));
+        // Unknown length: the rest of the message
+        assertArrayEquals(bytes(0x01, 0x02, 0x03), records.get(0x90));
+
+        OBDProtocol.OBDResponse truncated = parse(OBDProtocol.DTC_INFO_EXT_DATA_BY_DTC_NUMBER, 0x59, 0x06, 0x04, 0x20);
+        assertFalse(truncated.success);
+        assertEquals("Invalid DTC record response length", truncated.errorMessage);
+    }
+
+    private OBDProtocol.OBDResponse parse(byte subFunction, int... message) {
+        return protocol.parseReadDTCInformationResponse(bytes(message), subFunction);
+    }
+}
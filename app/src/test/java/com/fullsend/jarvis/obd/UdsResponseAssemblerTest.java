@@ -0,0 +1,216 @@
+package com.fullsend.jarvis.obd;
+
+import static org.junit.Assert.assertArrayEquals;
+import static org.junit.Assert.assertEquals;
+import static org.junit.Assert.assertFalse;
+import static org.junit.Assert.assertTrue;
+
+import org.junit.Test;
+
+import java.util.Arrays;
+
+/**
+ * Responses fed to the assembler the way the serial port hands them over: in arbitrary chunks
+ */
+public class UdsResponseAssemblerTest {
+
+    private static final byte[] READ_DTCS = bytes(0x19, 0x02, 0xFF);
+
+    // ---------------------------------------------------------------- ISO-TP
+
+    @Test
+    public void unpaddedSingleFrameCompletes() {
+        UdsResponseAssembler assembler = isoTp();
+        assertEquals(UdsResponseAssembler.COMPLETE, feed(assembler, bytes(0x03, 0x59, 0x01, 0xFF)));
+        assertArrayEquals(bytes(0x59, 0x01, 0xFF), assembler.payload());
+    }
+
+    @Test
+    public void paddedSingleFrameCompletesOnceItsDataIsIn() {
+        UdsResponseAssembler assembler = isoTp();
+        assertEquals(UdsResponseAssembler.NEED_MORE, feed(assembler, bytes(0x03, 0x59)));
+        assertEquals(UdsResponseAssembler.COMPLETE, feed(assembler, bytes(0x01, 0xFF, 0xAA, 0xAA, 0xAA, 0xAA)));
+        assertArrayEquals(bytes(0x59, 0x01, 0xFF), assembler.payload());
+    }
+
+    @Test
+    public void multiFrameResponseIsReassembled() {
+        byte[] message = new byte[18];
+        message[0] = 0x59;
+        message[1] = 0x02;
+        for (int i = 2; i < message.length; i++) {
+            message[i] = (byte) i;
+        }
+        byte[] firstFrame = concat(bytes(0x10, 18), Arrays.copyOfRange(message, 0, 6));
+        byte[] second = concat(bytes(0x21), Arrays.copyOfRange(message, 6, 13));
+        // The last frame is not padded
+        byte[] third = concat(bytes(0x22), Arrays.copyOfRange(message, 13, 18));
+
+        UdsResponseAssembler assembler = isoTp();
+        assertEquals(UdsResponseAssembler.SEND_FLOW_CONTROL, feedInChunks(assembler, firstFrame, 3));
+        assertArrayEquals(bytes(0x30, 0, 0, 0, 0, 0, 0, 0), assembler.flowControlFrame());
+        assertEquals(UdsResponseAssembler.NEED_MORE, feedInChunks(assembler, second, 3));
+        assertEquals(UdsResponseAssembler.COMPLETE, feedInChunks(assembler, third, 3));
+        assertArrayEquals(message, assembler.payload());
+    }
+
+    @Test
+    public void sequenceErrorsFail() {
+        UdsResponseAssembler assembler = isoTp();
+        feed(assembler, bytes(0x10, 0x0A, 0x59, 0x02, 0xFF, 0x01, 0x02, 0x03));
+        assertEquals(UdsResponseAssembler.ERROR, feed(assembler, bytes(0x22, 0x04, 0x05, 0x06, 0x07, 0, 0, 0)));
+        assertEquals("Frame sequence error: expected 1, got 2", assembler.error());
+
+        UdsResponseAssembler orphan = isoTp();
+        assertEquals(UdsResponseAssembler.ERROR, feed(orphan, bytes(0x21, 0x04, 0x05, 0x06, 0x07, 0, 0, 0)));
+        assertEquals("Consecutive frame without a first frame", orphan.error());
+    }
+
+    @Test
+    public void malformedFramesFail() {
+        UdsResponseAssembler emptySingle = isoTp();
+        assertEquals(UdsResponseAssembler.ERROR, feed(emptySingle, bytes(0x00, 0, 0, 0, 0, 0, 0, 0)));
+        assertEquals("Invalid single frame length 0", emptySingle.error());
+
+        UdsResponseAssembler flowControl = isoTp();
+        assertEquals(UdsResponseAssembler.ERROR, feed(flowControl, bytes(0x30, 0, 0, 0, 0, 0, 0, 0)));
+        assertEquals("Unexpected frame type 3", flowControl.error());
+    }
+
+    @Test
+    public void responsePendingIsSkippedWithItsPadding() {
+        UdsResponseAssembler assembler = isoTp();
+        // Pending frame split from its padding
+        assertEquals(UdsResponseAssembler.RESPONSE_PENDING, feed(assembler, bytes(0x03, 0x7F, 0x19, 0x78)));
+        assertTrue(assembler.hasData());
+        assertEquals(UdsResponseAssembler.NEED_MORE, feed(assembler, bytes(0xAA, 0xAA, 0xAA, 0xAA)));
+        assertFalse(assembler.hasData());
+
+        // A second pending frame, padded in one read, then the answer
+        assertEquals(UdsResponseAssembler.RESPONSE_PENDING,
+                feed(assembler, bytes(0x03, 0x7F, 0x19, 0x78, 0x55, 0x55, 0x55, 0x55)));
+        assertEquals(UdsResponseAssembler.COMPLETE, feed(assembler, bytes(0x03, 0x59, 0x02, 0xFF)));
+        assertArrayEquals(bytes(0x59, 0x02, 0xFF), assembler.payload());
+    }
+
+    @Test
+    public void unpaddedPendingFrameStopsSkippingAtTheGap() {
+        UdsResponseAssembler assembler = isoTp();
+        assertEquals(UdsResponseAssembler.RESPONSE_PENDING, feed(assembler, bytes(0x03, 0x7F, 0x19, 0x78)));
+        assertEquals(UdsResponseAssembler.NEED_MORE, assembler.onIdle());
+        assertEquals(UdsResponseAssembler.COMPLETE, feed(assembler, bytes(0x03, 0x59, 0x02, 0xFF)));
+        assertArrayEquals(bytes(0x59, 0x02, 0xFF), assembler.payload());
+    }
+
+    // ---------------------------------------------------------------- K-line
+
+    @Test
+    public void kLineEchoIsSkipped() {
+        byte[] response = withChecksum(0x59, 0x02, 0xFF, 0x01, 0x23, 0x45, 0x2F);
+        UdsResponseAssembler assembler = kLine();
+        // The echo arrives split across reads, directly followed by the response
+        assertEquals(UdsResponseAssembler.NEED_MORE, feed(assembler, bytes(0x19, 0x02)));
+        assertEquals(UdsResponseAssembler.NEED_MORE, feed(assembler, concat(bytes(0xFF), response)));
+        assertEquals(UdsResponseAssembler.COMPLETE, assembler.onIdle());
+        assertArrayEquals(bytes(0x59, 0x02, 0xFF, 0x01, 0x23, 0x45, 0x2F), assembler.payload());
+    }
+
+    @Test
+    public void kLineWithoutEchoTakesTheResponseAsIs() {
+        UdsResponseAssembler assembler = kLine();
+        assertEquals(UdsResponseAssembler.NEED_MORE, feed(assembler, withChecksum(0x59, 0x02, 0xFF)));
+        assertEquals(UdsResponseAssembler.COMPLETE, assembler.onIdle());
+        assertArrayEquals(bytes(0x59, 0x02, 0xFF), assembler.payload());
+    }
+
+    @Test
+    public void kLineMessagesThatLookLikeIsoTpFramesAreNotSplit() {
+        // 0x10-0x3F would be first, consecutive or flow control frames on CAN
+        UdsResponseAssembler assembler = new UdsResponseAssembler(UdsResponseAssembler.Framing.K_LINE, null);
+        byte[] message = bytes(0x10, 0x14, 0x01, 0x02, 0x03, 0x04, 0x05, 0x06, 0x07, 0x08);
+        for (byte value : withChecksum(message)) {
+            assertEquals(UdsResponseAssembler.NEED_MORE, feed(assembler, new byte[] {value}));
+        }
+        assertEquals(UdsResponseAssembler.COMPLETE, assembler.onIdle());
+        assertArrayEquals(message, assembler.payload());
+    }
+
+    @Test
+    public void kLineResponsePendingIsSkipped() {
+        UdsResponseAssembler assembler = kLine();
+        feed(assembler, READ_DTCS);
+        assertEquals(UdsResponseAssembler.RESPONSE_PENDING, feed(assembler, withChecksum(0x7F, 0x19, 0x78)));
+        assertFalse(assembler.hasData());
+        assertEquals(UdsResponseAssembler.NEED_MORE, assembler.onIdle());
+        assertEquals(UdsResponseAssembler.NEED_MORE, feed(assembler, withChecksum(0x59, 0x02, 0xFF)));
+        assertEquals(UdsResponseAssembler.COMPLETE, assembler.onIdle());
+        assertArrayEquals(bytes(0x59, 0x02, 0xFF), assembler.payload());
+    }
+
+    @Test
+    public void kLineBadChecksumsFail() {
+        UdsResponseAssembler assembler = kLine();
+        feed(assembler, bytes(0x59, 0x02, 0xFF, 0x00));
+        assertEquals(UdsResponseAssembler.ERROR, assembler.onIdle());
+        assertEquals("Checksum mismatch in ECU response", assembler.error());
+
+        UdsResponseAssembler pending = kLine();
+        assertEquals(UdsResponseAssembler.ERROR, feed(pending, bytes(0x7F, 0x19, 0x78, 0x00)));
+        assertEquals("Checksum mismatch in ECU response", pending.error());
+
+        // A lone byte cannot be a message plus checksum
+        UdsResponseAssembler lone = kLine();
+        feed(lone, bytes(0x59));
+        assertEquals(UdsResponseAssembler.ERROR, lone.onIdle());
+    }
+
+    // ---------------------------------------------------------------- helpers
+
+    private static UdsResponseAssembler isoTp() {
+        return new UdsResponseAssembler(UdsResponseAssembler.Framing.ISO_TP, READ_DTCS);
+    }
+
+    private static UdsResponseAssembler kLine() {
+        return new UdsResponseAssembler(UdsResponseAssembler.Framing.K_LINE, READ_DTCS);
+    }
+
+    private static int feed(UdsResponseAssembler assembler, byte[] chunk) {
+        // Real reads fill a larger buffer; only the first length bytes count
+        byte[] buffer = Arrays.copyOf(chunk, 256);
+        return assembler.accept(buffer, chunk.length);
+    }
+
+    private static int feedInChunks(UdsResponseAssembler assembler, byte[] data, int chunkSize) {
+        int state = UdsResponseAssembler.NEED_MORE;
+        for (int i = 0; i < data.length; i += chunkSize) {
+            state = feed(assembler, Arrays.copyOfRange(data, i, Math.min(data.length, i + chunkSize)));
+        }
+        return state;
+    }
+
+    static byte[] bytes(int... values) {
+        byte[] result = new byte[values.length];
+        for (int i = 0; i < values.length; i++) {
+            result[i] = (byte) values[i];
+        }
+        return result;
+    }
+
+    private static byte[] withChecksum(int... values) {
+        return withChecksum(bytes(values));
+    }
+
+    private static byte[] withChecksum(byte[] message) {
+        int sum = 0;
+        for (byte value : message) {
+            sum += value & 0xFF;
+        }
+        return concat(message, new byte[] {(byte) sum});
+    }
+
+    private static byte[] concat(byte[] first, byte[] second) {
+        byte[] result = Arrays.copyOf(first, first.length + second.length);
+        System.arraycopy(second, 0, result, first.length, second.length);
+        return result;
+    }
+}